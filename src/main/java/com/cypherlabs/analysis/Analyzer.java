@@ -0,0 +1,131 @@
+package com.cypherlabs.analysis;
+
+import com.cypherlabs.crawler.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Turns text into index tokens: a tokenizer splits the text into runs of ASCII letters and digits, then
+ * each term goes through an ordered chain of {@link TokenFilter}s.
+ *
+ * A chain is described by a spec, a comma separated list of filters applied left to right:
+ * - lowercase: lower cases the term
+ * - stop: drops English stop words
+ * - length:min[:max]: drops terms shorter than min or longer than max
+ * - stem: Snowball English stemming
+ *
+ * e.g. "lowercase,stop,length:2:255,stem". The spec is recorded in each segment's metadata, so that a query
+ * is analyzed the way the documents of the segment were.
+ *
+ * The term buffer and filters are reused for every term, so an analyzer is not thread safe: each thread
+ * creates its own from the spec.
+ */
+public final class Analyzer {
+
+    public static final String DEFAULT_SPEC = "lowercase,stop,length:2:255,stem";
+    /**
+     * Analysis applied before analyzers were configurable, for segments whose metadata records none.
+     */
+    public static final String LEGACY_SPEC = "lowercase,length:2,stem";
+
+    private final List<TokenFilter> filters;
+    private final TermBuffer term = new TermBuffer();
+
+    public Analyzer(List<TokenFilter> filters) {
+        this.filters = List.copyOf(filters);
+    }
+
+    public static Analyzer standard() {
+        return fromSpec(DEFAULT_SPEC);
+    }
+
+    /**
+     * @param spec Comma separated filters, see class doc
+     * @throws IllegalArgumentException If a filter is unknown or its arguments are invalid
+     */
+    public static Analyzer fromSpec(String spec) {
+        List<TokenFilter> filters = new ArrayList<>();
+        for (String filterSpec : spec.split(",")) {
+            String[] parts = filterSpec.trim().split(":");
+            TokenFilter filter = switch (parts[0]) {
+                case LowercaseFilter.NAME -> new LowercaseFilter();
+                case StopWordFilter.NAME -> new StopWordFilter();
+                case StemFilter.NAME -> new StemFilter();
+                case LengthFilter.NAME -> {
+                    if (parts.length < 2 || parts.length > 3) {
+                        throw new IllegalArgumentException("Expected length:min[:max], got " + filterSpec);
+                    }
+                    yield new LengthFilter(Integer.parseInt(parts[1]),
+                            parts.length == 3 ? Integer.parseInt(parts[2]) : Integer.MAX_VALUE);
+                }
+                default -> throw new IllegalArgumentException("Unknown token filter " + filterSpec);
+            };
+            filters.add(filter);
+        }
+        return new Analyzer(filters);
+    }
+
+    /**
+     * @return Spec of this analyzer's chain, which {@link #fromSpec(String)} parses back to the same chain
+     */
+    public String spec() {
+        return filters.stream().map(TokenFilter::spec).collect(Collectors.joining(","));
+    }
+
+    /**
+     * Analyzes the text, handing each term that passes all filters to the consumer. The consumer gets the
+     * analyzer's own buffer, valid only until it returns.
+     */
+    public void analyze(CharSequence text, Consumer<TermBuffer> consumer) {
+        term.clear();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isTokenChar(c)) {
+                term.append(c);
+            } else if (term.length() > 0) {
+                emit(consumer);
+            }
+        }
+        if (term.length() > 0) {
+            emit(consumer);
+        }
+    }
+
+    /**
+     * @return Tokens of the text, in order and with repetitions
+     */
+    public List<Token> analyze(CharSequence text) {
+        List<Token> tokens = new ArrayList<>();
+        analyze(text, t -> tokens.add(new Token(t.toString())));
+        return tokens;
+    }
+
+    /**
+     * Analyzes a single query term.
+     *
+     * @return The token to look up, empty if the chain drops the term (e.g. a stop word)
+     */
+    public Optional<String> analyzeTerm(String text) {
+        List<Token> tokens = analyze(text);
+        return tokens.size() == 1 ? Optional.of(tokens.getFirst().key()) : Optional.empty();
+    }
+
+    private void emit(Consumer<TermBuffer> consumer) {
+        boolean kept = true;
+        for (int i = 0; i < filters.size() && kept; i++) {
+            kept = filters.get(i).accept(term);
+        }
+        if (kept) {
+            consumer.accept(term);
+        }
+        term.clear();
+    }
+
+    private static boolean isTokenChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+}
@@ -0,0 +1,30 @@
+package com.cypherlabs.analysis;
+
+/**
+ * Drops terms shorter than a minimum or longer than a maximum length, both inclusive.
+ */
+public class LengthFilter implements TokenFilter {
+
+    static final String NAME = "length";
+
+    private final int min;
+    private final int max;
+
+    public LengthFilter(int min, int max) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Invalid length bounds " + min + ".." + max);
+        }
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    public boolean accept(TermBuffer term) {
+        return term.length() >= min && term.length() <= max;
+    }
+
+    @Override
+    public String spec() {
+        return max == Integer.MAX_VALUE ? NAME + ":" + min : NAME + ":" + min + ":" + max;
+    }
+}
@@ -0,0 +1,20 @@
+package com.cypherlabs.analysis;
+
+public class LowercaseFilter implements TokenFilter {
+
+    static final String NAME = "lowercase";
+
+    @Override
+    public boolean accept(TermBuffer term) {
+        char[] chars = term.buffer();
+        for (int i = 0; i < term.length(); i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return true;
+    }
+
+    @Override
+    public String spec() {
+        return NAME;
+    }
+}
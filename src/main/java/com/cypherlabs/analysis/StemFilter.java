@@ -0,0 +1,28 @@
+package com.cypherlabs.analysis;
+
+import org.tartarus.snowball.ext.EnglishStemmer;
+
+/**
+ * Reduces terms to their stem with the Snowball English stemmer, e.g. "running" to "run".
+ * The stemmer works on the term's chars in place of a String, and is reused for every term.
+ */
+public class StemFilter implements TokenFilter {
+
+    static final String NAME = "stem";
+
+    private final EnglishStemmer stemmer = new EnglishStemmer();
+
+    @Override
+    public boolean accept(TermBuffer term) {
+        stemmer.setCurrent(term.buffer(), term.length());
+        if (stemmer.stem()) {
+            term.set(stemmer.getCurrentBuffer(), stemmer.getCurrentBufferLength());
+        }
+        return true;
+    }
+
+    @Override
+    public String spec() {
+        return NAME;
+    }
+}
@@ -0,0 +1,37 @@
+package com.cypherlabs.analysis;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+
+/**
+ * Drops stop words: terms so frequent that their postings list nearly every document, which makes them
+ * costly to store and to query while telling documents apart hardly at all. The lookup works on the term's
+ * chars, without building a String. Place it after {@link LowercaseFilter}, the set is case sensitive.
+ */
+public class StopWordFilter implements TokenFilter {
+
+    static final String NAME = "stop";
+
+    private final CharArraySet stopWords;
+
+    /**
+     * Filters English stop words ("a", "and", "the", "to", ...).
+     */
+    public StopWordFilter() {
+        this(EnglishAnalyzer.ENGLISH_STOP_WORDS_SET);
+    }
+
+    public StopWordFilter(CharArraySet stopWords) {
+        this.stopWords = stopWords;
+    }
+
+    @Override
+    public boolean accept(TermBuffer term) {
+        return !stopWords.contains(term.buffer(), 0, term.length());
+    }
+
+    @Override
+    public String spec() {
+        return NAME;
+    }
+}
@@ -0,0 +1,52 @@
+package com.cypherlabs.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Mutable term the tokenizer fills and token filters rewrite in place. A single buffer is reused for every
+ * token of a text, so analysis allocates only for the tokens that make it to the end of the chain.
+ */
+public final class TermBuffer {
+
+    private char[] buffer = new char[32];
+    private int length;
+
+    public char[] buffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public void setLength(int length) {
+        this.length = length;
+    }
+
+    void clear() {
+        length = 0;
+    }
+
+    void append(char c) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = c;
+    }
+
+    /**
+     * Replaces the content of the term, e.g. with the output of a stemmer.
+     */
+    public void set(char[] chars, int length) {
+        if (length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+        }
+        System.arraycopy(chars, 0, buffer, 0, length);
+        this.length = length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length);
+    }
+}
@@ -0,0 +1,19 @@
+package com.cypherlabs.analysis;
+
+/**
+ * Step of an {@link Analyzer} chain. A filter either rewrites the term in place and keeps it, or drops it.
+ * Filters may keep state between calls (e.g. a stemmer), so a chain is used by one thread at a time.
+ */
+public interface TokenFilter {
+
+    /**
+     * @param term Term to filter, may be modified in place
+     * @return Whether the term is kept and passed to the next filter
+     */
+    boolean accept(TermBuffer term);
+
+    /**
+     * @return Spec of this filter, as parsed by {@link Analyzer#fromSpec(String)}
+     */
+    String spec();
+}
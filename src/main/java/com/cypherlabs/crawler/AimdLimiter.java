@@ -0,0 +1,168 @@
+package com.cypherlabs.crawler;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit that adapts to observed latency and errors, the way TCP congestion control does.
+ *
+ * - Additive increase: every successful, fast sample taken while the limit is actually in use
+ *   grows the limit by 1/limit, i.e. by about one per window of limit samples
+ * - Multiplicative decrease: a failure, or a latency above LATENCY_TOLERANCE times the baseline,
+ *   shrinks the limit by BACKOFF_RATIO. Decreases are applied at most once per window, so one
+ *   burst of slow responses counts as one congestion signal
+ *
+ * The baseline is the lowest latency seen, drifting slowly upwards so that it follows a host
+ * whose normal latency changes.
+ *
+ * Callers are virtual threads, so waiting is done on a ReentrantLock condition, which unlike a
+ * monitor does not pin the carrier thread.
+ */
+public class AimdLimiter {
+
+    static final double LATENCY_TOLERANCE = 2.0;
+    static final double BACKOFF_RATIO = 0.75;
+    static final double BASELINE_DRIFT = 0.01;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private double baselineLatencyNanos = Double.MAX_VALUE;
+    private int samplesUntilNextDecrease;
+
+    public AimdLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid limits: initial " + initialLimit + ", min " + minLimit
+                    + ", max " + maxLimit);
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Waits until the number of permits in use is below the current limit, and takes one.
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                permitReleased.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a permit if the number of permits in use is below the current limit, without waiting.
+     *
+     * @return Whether a permit was taken
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Whether a permit could be taken now
+     */
+    public boolean hasPermit() {
+        lock.lock();
+        try {
+            return inFlight < (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a permit without feeding a sample, e.g. when the work was abandoned before it started.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            // one permit freed, one waiter can take it
+            permitReleased.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a permit and adjusts the limit with the outcome of the work done under it.
+     *
+     * @param latencyNanos Time the work took
+     * @param failed Whether the work failed, which counts as congestion
+     */
+    public void release(long latencyNanos, boolean failed) {
+        lock.lock();
+        try {
+            boolean wasSaturated = inFlight >= limit / 2;
+            int previousLimit = (int) limit;
+            inFlight--;
+            onSample(latencyNanos, failed, wasSaturated);
+            permitReleased.signal();
+            if ((int) limit > previousLimit) {
+                // the limit grew by one permit, for a second waiter
+                permitReleased.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onSample(long latencyNanos, boolean failed, boolean wasSaturated) {
+        if (samplesUntilNextDecrease > 0) {
+            samplesUntilNextDecrease--;
+        }
+        if (!failed) {
+            if (latencyNanos < baselineLatencyNanos) {
+                baselineLatencyNanos = latencyNanos;
+            } else {
+                baselineLatencyNanos += (latencyNanos - baselineLatencyNanos) * BASELINE_DRIFT;
+            }
+        }
+        boolean congested = failed || latencyNanos > baselineLatencyNanos * LATENCY_TOLERANCE;
+        if (congested) {
+            if (samplesUntilNextDecrease == 0) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                samplesUntilNextDecrease = (int) Math.ceil(limit);
+            }
+        } else if (wasSaturated) {
+            // limits that are not in use give no evidence that more concurrency would help
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
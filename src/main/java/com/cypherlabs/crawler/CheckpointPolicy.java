@@ -0,0 +1,33 @@
+package com.cypherlabs.crawler;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Where and how often a crawl is checkpointed, see {@link CrawlCheckpoint}.
+ *
+ * @param dir Directory the checkpoint is kept in, cleared once the crawl completes
+ * @param interval Time between two checkpoints
+ */
+public record CheckpointPolicy(Path dir, Duration interval) {
+
+    public CheckpointPolicy {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive: " + interval);
+        }
+    }
+
+    /**
+     * Reads the policy from env variables CHECKPOINT_DIR and CHECKPOINT_INTERVAL_SECONDS (default 300).
+     *
+     * @return Empty, i.e. no checkpoints, unless CHECKPOINT_DIR is set
+     */
+    public static Optional<CheckpointPolicy> fromEnv() {
+        return Optional.ofNullable(System.getenv("CHECKPOINT_DIR"))
+                .filter(s -> !s.isBlank())
+                .map(dir -> new CheckpointPolicy(Paths.get(dir), Duration.ofSeconds(Long.parseLong(
+                        Optional.ofNullable(System.getenv("CHECKPOINT_INTERVAL_SECONDS")).orElse("300")))));
+    }
+}
@@ -0,0 +1,350 @@
+package com.cypherlabs.crawler;
+
+import com.cypherlabs.io.IndexSegmentWriter;
+import com.cypherlabs.io.SegmentReader;
+import com.cypherlabs.storage.CrawlState;
+import com.cypherlabs.storage.FrontierQueue;
+import com.cypherlabs.storage.UrlDocIdDictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Checkpoints of an ongoing crawl, so that a crawl interrupted by a crash can resume where it was rather
+ * than from its seeds.
+ *
+ * Nothing is stopped while a checkpoint is taken. Indexing threads hand each indexed document to the
+ * checkpoint through a lock-free queue, and every checkpoint writes the documents indexed since the previous
+ * one as a small segment of its own, a delta, so the index already covered is never written again. Visited
+ * urls are handed over the same way and appended to a log, as they outgrow the rest of the crawl, which is
+ * small enough to be written in full each time:
+ * - the frontier, urls being fetched or indexed included (see {@link CrawlFrontier#snapshot()})
+ * - the retry counts, and the crawl state of an incremental crawl
+ *
+ * The frontier is copied before the documents are drained, so a document indexed meanwhile is both in a
+ * delta and in flight: resuming fetches it again, which indexes it into the same doc ID. The other way
+ * round, it would be in neither. Resuming gives documents new doc IDs, so nothing in a checkpoint refers
+ * to a document by doc ID but the crawl state, which is rebound by url (see {@link CrawlState#resumeSegment}).
+ *
+ * Stored in the checkpoint directory:
+ * - delta_000001, delta_000002, ...: segments written by {@link IndexSegmentWriter}, plus
+ *   checkpoint_docs.bin: per document, its links (int count, writeUTF each), for the link graph
+ * - checkpoint_visited.bin: the visited urls, writeUTF each, appended to by every checkpoint
+ * - checkpoint.bin: int format version, writeUTF(segment name or ""), int number of deltas, boolean whether
+ *   a crawl state follows, the crawl state (see {@link CrawlState#writeCheckpoint}), then the frontier
+ *   (int count, writeUTF(url) and writeDouble(priority) each), long length of the visited log covered, and
+ *   the retry counts (int count, writeUTF(url) and writeInt(count) each)
+ *
+ * checkpoint.bin is written to a temporary file and moved in place, after the delta and the visited urls it
+ * counts, so a crash while checkpointing leaves the previous checkpoint intact: the visited log is cut back
+ * to the length it covers before being appended to or read.
+ */
+public class CrawlCheckpoint {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlCheckpoint.class);
+
+    static final String FILE_NAME = "checkpoint.bin";
+    static final String DOCS_FILE_NAME = "checkpoint_docs.bin";
+    static final String VISITED_FILE_NAME = "checkpoint_visited.bin";
+    private static final int FORMAT_VERSION = 2;
+    private static final Pattern DELTA_NAME = Pattern.compile("delta_\\d{6}");
+
+    public record IndexedDoc(Url url, List<Token> tokens, List<Url> links) {
+    }
+
+    /**
+     * A checkpoint read back.
+     *
+     * @param segmentName Name of the segment the crawl was writing, null for a one-off crawl
+     * @param crawlState Crawl state of an incremental crawl, null for a one-off crawl
+     * @param frontier Urls still owed work, in the order they were to be taken
+     * @param deltas Directories of the deltas, in the order they were written
+     */
+    public record Restored(String segmentName, CrawlState crawlState, List<FrontierQueue.Entry> frontier,
+                           Set<Url> visited, Map<Url, Integer> retryCounts, List<Path> deltas) {
+    }
+
+    /**
+     * A delta read back, with the links of each of its documents.
+     */
+    public record Delta(SegmentReader segment, List<List<Url>> links) {
+    }
+
+    private final Path dir;
+    private final String analyzerSpec;
+    private final Queue<IndexedDoc> indexed = new ConcurrentLinkedQueue<>();
+    private final Queue<Url> newlyVisited = new ConcurrentLinkedQueue<>();
+    // only the checkpointing thread writes deltas and the visited log
+    private int deltaCount;
+    private long visitedLength;
+
+    public CrawlCheckpoint(Path dir, String analyzerSpec) {
+        this.dir = dir;
+        this.analyzerSpec = analyzerSpec;
+    }
+
+    /**
+     * Queues an indexed document for the next checkpoint. Never blocks.
+     */
+    public void recordIndexed(Url url, List<Token> tokens, List<Url> links) {
+        indexed.add(new IndexedDoc(url, tokens, links));
+    }
+
+    /**
+     * Queues a visited url for the next checkpoint. Never blocks.
+     */
+    public void recordVisited(Url url) {
+        newlyVisited.add(url);
+    }
+
+    /**
+     * Writes a checkpoint: the documents indexed since the previous one as a delta, the urls visited since
+     * appended to the visited log, then the rest in full.
+     *
+     * @param frontier Snapshot of the frontier, taken before the indexed documents are drained
+     * @param segmentName Name of the segment the crawl writes, null for a one-off crawl
+     * @param crawlState Crawl state of an incremental crawl, null otherwise
+     */
+    public void write(Supplier<List<FrontierQueue.Entry>> frontier, Map<Url, Integer> retryCounts,
+                      String segmentName, CrawlState crawlState) throws IOException {
+        long startNanos = System.nanoTime();
+        List<FrontierQueue.Entry> entries = frontier.get();
+        List<IndexedDoc> docs = new ArrayList<>();
+        IndexedDoc doc;
+        while ((doc = indexed.poll()) != null) {
+            docs.add(doc);
+        }
+        List<Url> visited = new ArrayList<>();
+        Url url;
+        while ((url = newlyVisited.poll()) != null) {
+            visited.add(url);
+        }
+        try {
+            Files.createDirectories(dir);
+            int deltas = deltaCount;
+            if (!docs.isEmpty()) {
+                writeDelta(dir.resolve(deltaName(deltas + 1)), docs);
+                deltas++;
+            }
+            long visitedLengthAfter = appendVisited(visited);
+            Path tmp = dir.resolve(FILE_NAME + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp.toFile())))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(Objects.toString(segmentName, ""));
+                out.writeInt(deltas);
+                out.writeBoolean(crawlState != null);
+                if (crawlState != null) {
+                    crawlState.writeCheckpoint(out);
+                }
+                out.writeInt(entries.size());
+                for (FrontierQueue.Entry entry : entries) {
+                    out.writeUTF(entry.url().address());
+                    out.writeDouble(entry.priority());
+                }
+                out.writeLong(visitedLengthAfter);
+                List<Map.Entry<Url, Integer>> retries = new ArrayList<>(retryCounts.entrySet());
+                out.writeInt(retries.size());
+                for (Map.Entry<Url, Integer> retry : retries) {
+                    out.writeUTF(retry.getKey().address());
+                    out.writeInt(retry.getValue());
+                }
+            }
+            Files.move(tmp, dir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            deltaCount = deltas;
+            visitedLength = visitedLengthAfter;
+        } catch (IOException e) {
+            // kept for the next checkpoint, whose delta will overwrite the one left unreferenced, and whose
+            // visited urls will overwrite the ones appended past the log's length
+            indexed.addAll(docs);
+            newlyVisited.addAll(visited);
+            throw e;
+        }
+        LOGGER.info("Checkpointed crawl to {} in {} ms: {} new documents, {} urls in frontier, {} newly visited",
+                dir, (System.nanoTime() - startNanos) / 1_000_000, docs.size(), entries.size(), visited.size());
+    }
+
+    /**
+     * Appends urls to the visited log, past the length covered by the last checkpoint.
+     *
+     * @return Length of the log covering the urls
+     */
+    private long appendVisited(List<Url> urls) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir.resolve(VISITED_FILE_NAME), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            channel.truncate(visitedLength);
+            channel.position(visitedLength);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            for (Url url : urls) {
+                out.writeUTF(url.address());
+            }
+            out.flush();
+            return channel.position();
+        }
+    }
+
+    private void writeDelta(Path deltaDir, List<IndexedDoc> docs) throws IOException {
+        if (Files.exists(deltaDir)) {
+            deleteRecursively(deltaDir);
+        }
+        UrlDocIdDictionary urlDict = new UrlDocIdDictionary();
+        Map<Token, Set<Integer>> tokenByDocs = new HashMap<>();
+        // a url indexed twice, as when fetched again after resuming, goes into the same doc
+        List<IndexedDoc> unique = new ArrayList<>(docs.size());
+        for (IndexedDoc doc : docs) {
+            int localDocId = urlDict.addIfAbsent(doc.url());
+            if (localDocId == unique.size()) {
+                unique.add(doc);
+            }
+            doc.tokens().forEach(token -> tokenByDocs.computeIfAbsent(token, _ -> new HashSet<>()).add(localDocId));
+        }
+        IndexSegmentWriter.writeSegment(tokenByDocs, urlDict, deltaDir, true, analyzerSpec);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(deltaDir.resolve(DOCS_FILE_NAME).toFile())))) {
+            for (IndexedDoc doc : unique) {
+                out.writeInt(doc.links().size());
+                for (Url link : doc.links()) {
+                    out.writeUTF(link.address());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the checkpoint back, if the directory has one; later checkpoints add deltas after its own.
+     */
+    public Optional<Restored> restore() throws IOException {
+        Path file = dir.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version);
+            }
+            String segmentName = in.readUTF();
+            deltaCount = in.readInt();
+            CrawlState crawlState = in.readBoolean() ? CrawlState.readCheckpoint(in) : null;
+            int frontierSize = in.readInt();
+            List<FrontierQueue.Entry> frontier = new ArrayList<>(frontierSize);
+            for (int i = 0; i < frontierSize; i++) {
+                frontier.add(new FrontierQueue.Entry(new Url(in.readUTF()), in.readDouble()));
+            }
+            visitedLength = in.readLong();
+            Set<Url> visited = readVisited();
+            int retrySize = in.readInt();
+            Map<Url, Integer> retryCounts = new HashMap<>(retrySize * 2);
+            for (int i = 0; i < retrySize; i++) {
+                retryCounts.put(new Url(in.readUTF()), in.readInt());
+            }
+            List<Path> deltas = new ArrayList<>(deltaCount);
+            for (int i = 1; i <= deltaCount; i++) {
+                deltas.add(dir.resolve(deltaName(i)));
+            }
+            LOGGER.info("Read checkpoint from {}: {} deltas, {} urls in frontier, {} visited", dir, deltaCount,
+                    frontierSize, visited.size());
+            return Optional.of(new Restored(segmentName.isEmpty() ? null : segmentName, crawlState, frontier,
+                    visited, retryCounts, deltas));
+        }
+    }
+
+    /**
+     * Reads the visited log, cut back first to the length the checkpoint covers.
+     */
+    private Set<Url> readVisited() throws IOException {
+        Set<Url> visited = new HashSet<>();
+        if (visitedLength == 0) {
+            return visited;
+        }
+        try (FileChannel channel = FileChannel.open(dir.resolve(VISITED_FILE_NAME), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            if (channel.size() < visitedLength) {
+                throw new IOException("Visited log of checkpoint in " + dir + " is shorter than " + visitedLength);
+            }
+            channel.truncate(visitedLength);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (true) {
+                try {
+                    visited.add(new Url(in.readUTF()));
+                } catch (EOFException eof) {
+                    return visited;
+                }
+            }
+        }
+    }
+
+    public static Delta readDelta(Path deltaDir) throws IOException {
+        SegmentReader segment = SegmentReader.open(deltaDir);
+        List<List<Url>> links = new ArrayList<>(segment.docCount());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(deltaDir.resolve(DOCS_FILE_NAME).toFile())))) {
+            for (int i = 0; i < segment.docCount(); i++) {
+                int linkCount = in.readInt();
+                List<Url> docLinks = new ArrayList<>(linkCount);
+                for (int j = 0; j < linkCount; j++) {
+                    docLinks.add(new Url(in.readUTF()));
+                }
+                links.add(docLinks);
+            }
+        }
+        return new Delta(segment, links);
+    }
+
+    /**
+     * Deletes the checkpoint, e.g. once the crawl it was taken of completed. Only the checkpoint's own files
+     * and deltas are deleted, other files of the directory are left alone, and so is the directory unless it
+     * is left empty.
+     */
+    public void clear() throws IOException {
+        indexed.clear();
+        newlyVisited.clear();
+        deltaCount = 0;
+        visitedLength = 0;
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> entries;
+        try (Stream<Path> files = Files.list(dir)) {
+            entries = files.toList();
+        }
+        for (Path entry : entries) {
+            String name = entry.getFileName().toString();
+            if (name.equals(FILE_NAME) || name.equals(FILE_NAME + ".tmp") || name.equals(VISITED_FILE_NAME)) {
+                Files.deleteIfExists(entry);
+            } else if (DELTA_NAME.matcher(name).matches() && Files.isDirectory(entry)) {
+                deleteRecursively(entry);
+            }
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            if (files.findAny().isEmpty()) {
+                Files.delete(dir);
+            }
+        }
+    }
+
+    private static String deltaName(int generation) {
+        return String.format("delta_%06d", generation);
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.cypherlabs.crawler;
+
+import com.cypherlabs.storage.FrontierQueue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Urls waiting to be fetched, served by priority from an off-heap {@link FrontierQueue}. Offering a url
+ * that is already queued merges priorities per the {@link CrawlPriority} instead of queueing it twice.
+ *
+ * Unbounded: a url takes some 50 to 100 bytes off heap, so the frontier doesn't push back on the
+ * processing threads finding links.
+ *
+ * A url taken stays in flight until it is {@link #done(Url) done} with or {@link #requeue requeued}, so that
+ * a {@link #snapshot()} holds every url still owed work, whether queued or being fetched and indexed.
+ *
+ * A url whose host is at its fetch limit is {@link #hold held}: set aside, off heap too, in a small queue of
+ * its host, and the host's other urls join it as they come up, until the host frees a permit and is
+ * {@link #releaseHost released}. Its urls then compete again by priority with the rest. Urls of a busy host
+ * thus neither hold up other hosts nor wait for a permit on threads of their own.
+ */
+public class CrawlFrontier {
+
+    // offers come from processing threads and virtual threads, so no synchronized
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final FrontierQueue queue = new FrontierQueue();
+    private final CrawlPriority priority;
+    // urls taken and not yet done with, by the priority they were taken at
+    private final Map<Url, Double> inFlight = new HashMap<>();
+    // urls set aside, by host, whether the host is still held or was released since
+    private final Map<String, FrontierQueue> heldByHost = new HashMap<>();
+    // hosts whose urls are set aside when they come up
+    private final Set<String> heldHosts = new HashSet<>();
+    // set aside urls of released hosts, taken by priority along with the queue
+    private final Map<String, FrontierQueue> releasedByHost = new HashMap<>();
+
+    public CrawlFrontier(CrawlPriority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return Whether the url was newly queued, rather than merged into its queued entry
+     */
+    public boolean offer(Url url, double urlPriority) {
+        lock.lock();
+        try {
+            boolean added = queueOf(url).offer(url, urlPriority, priority::merge);
+            if (added) {
+                notEmpty.signal();
+            }
+            return added;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Queue holding the url if any, so that it is never queued twice, else the queue of its host's
+     * set aside urls if the host has some, else the queue
+     */
+    private FrontierQueue queueOf(Url url) {
+        if (heldByHost.isEmpty()) {
+            return queue;
+        }
+        FrontierQueue held = heldByHost.get(Utils.host(url));
+        return held == null || queue.priorityOf(url).isPresent() ? queue : held;
+    }
+
+    /**
+     * Offers the urls found in a page under a single acquisition of the lock.
+     *
+     * @return How many urls were newly queued, rather than merged into their queued entry
+     */
+    public int offerAll(List<Url> urls, double urlPriority) {
+        lock.lock();
+        try {
+            int added = 0;
+            for (Url url : urls) {
+                if (queueOf(url).offer(url, urlPriority, priority::merge)) {
+                    added++;
+                }
+            }
+            if (added > 0) {
+                notEmpty.signalAll();
+            }
+            return added;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a url of a host not held and removes the one of highest priority. Urls of held hosts coming
+     * up meanwhile are set aside.
+     */
+    public FrontierQueue.Entry take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                FrontierQueue source = nextSource();
+                if (source == null) {
+                    notEmpty.await();
+                    continue;
+                }
+                FrontierQueue.Entry entry = source.poll().orElseThrow();
+                String host = Utils.host(entry.url());
+                if (source == queue && heldHosts.contains(host)) {
+                    heldByHost.computeIfAbsent(host, _ -> newHostQueue())
+                            .offer(entry.url(), entry.priority(), priority::merge);
+                    continue;
+                }
+                if (source != queue && source.isEmpty()) {
+                    heldByHost.remove(host);
+                    releasedByHost.remove(host);
+                }
+                inFlight.put(entry.url(), entry.priority());
+                return entry;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Queue whose next url has the highest priority, among the queue and the urls of released
+     * hosts, null if all are empty
+     */
+    private FrontierQueue nextSource() {
+        FrontierQueue best = queue.isEmpty() ? null : queue;
+        for (FrontierQueue released : releasedByHost.values()) {
+            if (best == null || released.peekPriority().orElseThrow() > best.peekPriority().orElseThrow()) {
+                best = released;
+            }
+        }
+        return best;
+    }
+
+    private static FrontierQueue newHostQueue() {
+        return new FrontierQueue(16, 1024);
+    }
+
+    /**
+     * Sets a taken url aside, no longer in flight, until its host is released; until then the host's other
+     * urls are set aside as well when they come up.
+     *
+     * @return Whether the url was newly set aside, rather than merged into its set aside entry
+     */
+    public boolean hold(Url url, double urlPriority) {
+        lock.lock();
+        try {
+            inFlight.remove(url);
+            String host = Utils.host(url);
+            heldHosts.add(host);
+            releasedByHost.remove(host);
+            if (queue.priorityOf(url).isPresent()) {
+                // offered again since taken, it is set aside once it comes up
+                return queue.offer(url, urlPriority, priority::merge);
+            }
+            return heldByHost.computeIfAbsent(host, _ -> newHostQueue()).offer(url, urlPriority, priority::merge);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lets the urls of the url's host be taken again, e.g. once the host freed a fetch permit.
+     */
+    public void releaseHost(Url url) {
+        lock.lock();
+        try {
+            String host = Utils.host(url);
+            if (heldHosts.remove(host)) {
+                FrontierQueue held = heldByHost.get(host);
+                if (held != null) {
+                    releasedByHost.put(host, held);
+                    notEmpty.signal();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks a taken url as done with, whether it was indexed, skipped or given up.
+     */
+    public void done(Url url) {
+        lock.lock();
+        try {
+            inFlight.remove(url);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts a taken url back in the queue, e.g. to retry it, at once with no longer being in flight.
+     *
+     * @return Whether the url was newly queued, rather than merged into its queued entry
+     */
+    public boolean requeue(Url url, double urlPriority) {
+        lock.lock();
+        try {
+            inFlight.remove(url);
+            return offer(url, urlPriority);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies the queues in bulk under the lock, and decodes their urls once it is released, so offers and
+     * takes are held up for a memory copy only.
+     *
+     * @return Urls in flight, then queued ones in the order they would be taken, then set aside ones by host
+     */
+    public List<FrontierQueue.Entry> snapshot() {
+        List<FrontierQueue.Entry> entries;
+        FrontierQueue queued;
+        List<FrontierQueue> held;
+        lock.lock();
+        try {
+            entries = new ArrayList<>(inFlight.size() + queue.size());
+            inFlight.forEach((url, urlPriority) -> entries.add(new FrontierQueue.Entry(url, urlPriority)));
+            queued = queue.copy();
+            held = heldByHost.values().stream().map(FrontierQueue::copy).toList();
+        } finally {
+            lock.unlock();
+        }
+        queued.drain(entries::add);
+        held.forEach(heldQueue -> heldQueue.drain(entries::add));
+        return entries;
+    }
+
+    /**
+     * @return Urls queued or set aside
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return queue.size() + heldByHost.values().stream().mapToInt(FrontierQueue::size).sum();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.cypherlabs.crawler;
+
+import com.cypherlabs.analysis.Analyzer;
+import com.cypherlabs.graph.LinkGraphBuilder;
+import com.cypherlabs.io.DocIdReorderer;
+import com.cypherlabs.io.RefreshPolicy;
+import com.cypherlabs.storage.NearDuplicateIndex;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * Options of a crawl, beyond its seed urls.
+ *
+ * @param indexDir Directory of an incrementally maintained index, or null for a one-off crawl whose index
+ *                 is written to the output directory. When set, the crawl resumes from the crawl state found there,
+ *                 refetches known urls conditionally and adds a new segment holding only new or changed pages.
+ * @param pageStoreDir Directory of the page store the raw bytes of indexed pages are appended to, or null to
+ *                     not keep them. The index can be rebuilt from it, see {@link Crawler#reindexFromStore()}.
+ * @param analyzerSpec Analyzer chain documents are indexed with, see {@link Analyzer}
+ * @param priority Order urls are fetched in, see {@link CrawlPriority}
+ * @param refreshPolicy When indexed documents become searchable during the crawl, see
+ *                      {@link Crawler#getSearcherManager()}, or null to search only the written index
+ * @param docOrder Order documents are renumbered in when a segment is written, see {@link DocIdReorderer}
+ * @param checkpoint Where and how often the crawl is checkpointed, see {@link CrawlCheckpoint}, or null to
+ *                   not checkpoint it
+ * @param outputDir Directory the index of a one-off crawl, or the segment of a cluster node, is written to
+ * @param nearDuplicateDetection Whether pages nearly identical to one already indexed are skipped, see
+ *                               {@link NearDuplicateIndex}
+ * @param linkGraphMemoryBytes Memory the link graph for static scores may buffer before spilling a run, see
+ *                             {@link LinkGraphBuilder}, or 0 to record no links
+ */
+public record CrawlOptions(Path indexDir, Path pageStoreDir, String analyzerSpec, CrawlPriority priority,
+                           RefreshPolicy refreshPolicy, DocIdReorderer.Order docOrder, CheckpointPolicy checkpoint,
+                           Path outputDir, boolean nearDuplicateDetection, long linkGraphMemoryBytes) {
+
+    public static final Path DEFAULT_OUTPUT_DIR = Paths.get("program_output");
+
+    public CrawlOptions {
+        // fail fast on a bad spec rather than in every processing thread
+        Analyzer.fromSpec(analyzerSpec);
+    }
+
+    public static CrawlOptions defaults() {
+        return new CrawlOptions(null, null, Analyzer.DEFAULT_SPEC, CrawlPriority.Standard.OPIC, null,
+                DocIdReorderer.Order.NONE, null, DEFAULT_OUTPUT_DIR, true, 64L << 20);
+    }
+
+    /**
+     * Reads options from env variables: INDEX_DIR, PAGE_STORE_DIR, ANALYZER, FRONTIER_PRIORITY,
+     * NRT_REFRESH_SECONDS and NRT_REFRESH_DOCS (see {@link RefreshPolicy#fromEnv()}), DOC_ID_ORDER,
+     * CHECKPOINT_DIR and CHECKPOINT_INTERVAL_SECONDS (see {@link CheckpointPolicy#fromEnv()}), OUTPUT_DIR
+     * (default program_output), NEAR_DUPLICATE_DETECTION (default true), LINK_GRAPH (default true) and
+     * LINK_GRAPH_MEMORY_MB (default 64).
+     */
+    public static CrawlOptions fromEnv() {
+        return new CrawlOptions(pathFromEnv("INDEX_DIR"), pathFromEnv("PAGE_STORE_DIR"),
+                Optional.ofNullable(System.getenv("ANALYZER")).filter(s -> !s.isBlank()).orElse(Analyzer.DEFAULT_SPEC),
+                CrawlPriority.fromName(Optional.ofNullable(System.getenv("FRONTIER_PRIORITY")).orElse("opic")),
+                RefreshPolicy.fromEnv().orElse(null),
+                DocIdReorderer.Order.fromName(Optional.ofNullable(System.getenv("DOC_ID_ORDER")).orElse("none")),
+                CheckpointPolicy.fromEnv().orElse(null),
+                Optional.ofNullable(pathFromEnv("OUTPUT_DIR")).orElse(DEFAULT_OUTPUT_DIR),
+                Boolean.parseBoolean(Optional.ofNullable(System.getenv("NEAR_DUPLICATE_DETECTION")).orElse("true")),
+                Boolean.parseBoolean(Optional.ofNullable(System.getenv("LINK_GRAPH")).orElse("true"))
+                        ? Long.parseLong(Optional.ofNullable(System.getenv("LINK_GRAPH_MEMORY_MB")).orElse("64")) << 20
+                        : 0);
+    }
+
+    private static Path pathFromEnv(String name) {
+        return Optional.ofNullable(System.getenv(name))
+                .filter(s -> !s.isBlank())
+                .map(Paths::get)
+                .orElse(null);
+    }
+
+    public CrawlOptions withIndexDir(Path indexDir) {
+        return new CrawlOptions(indexDir, pageStoreDir, analyzerSpec, priority, refreshPolicy, docOrder, checkpoint,
+                outputDir, nearDuplicateDetection, linkGraphMemoryBytes);
+    }
+
+    public CrawlOptions withPageStoreDir(Path pageStoreDir) {
+        return new CrawlOptions(indexDir, pageStoreDir, analyzerSpec, priority, refreshPolicy, docOrder, checkpoint,
+                outputDir, nearDuplicateDetection, linkGraphMemoryBytes);
+    }
+
+    public CrawlOptions withAnalyzerSpec(String analyzerSpec) {
+        return new CrawlOptions(indexDir, pageStoreDir, analyzerSpec, priority, refreshPolicy, docOrder, checkpoint,
+                outputDir, nearDuplicateDetection, linkGraphMemoryBytes);
+    }
+
+    public CrawlOptions withPriority(CrawlPriority priority) {
+        return new CrawlOptions(indexDir, pageStoreDir, analyzerSpec, priority, refreshPolicy, docOrder, checkpoint,
+                outputDir, nearDuplicateDetection, linkGraphMemoryBytes);
+    }
+
+    public CrawlOptions withRefreshPolicy(RefreshPolicy refreshPolicy) {
+        return new CrawlOptions(indexDir, pageStoreDir, analyzerSpec, priority, refreshPolicy, docOrder, checkpoint,
+                outputDir, nearDuplicateDetection, linkGraphMemoryBytes);
+    }
+
+    public CrawlOptions withDocOrder(DocIdReorderer.Order docOrder) {
+        return new CrawlOptions(indexDir, pageStoreDir, analyzerSpec, priority, refreshPolicy, docOrder, checkpoint,
+                outputDir, nearDuplicateDetection, linkGraphMemoryBytes);
+    }
+
+    public CrawlOptions withCheckpoint(CheckpointPolicy checkpoint) {
+        return new CrawlOptions(indexDir, pageStoreDir, analyzerSpec, priority, refreshPolicy, docOrder, checkpoint,
+                outputDir, nearDuplicateDetection, linkGraphMemoryBytes);
+    }
+
+    public CrawlOptions withOutputDir(Path outputDir) {
+        return new CrawlOptions(indexDir, pageStoreDir, analyzerSpec, priority, refreshPolicy, docOrder, checkpoint,
+                outputDir, nearDuplicateDetection, linkGraphMemoryBytes);
+    }
+
+    public CrawlOptions withNearDuplicateDetection(boolean nearDuplicateDetection) {
+        return new CrawlOptions(indexDir, pageStoreDir, analyzerSpec, priority, refreshPolicy, docOrder, checkpoint,
+                outputDir, nearDuplicateDetection, linkGraphMemoryBytes);
+    }
+
+    public CrawlOptions withLinkGraphMemoryBytes(long linkGraphMemoryBytes) {
+        return new CrawlOptions(indexDir, pageStoreDir, analyzerSpec, priority, refreshPolicy, docOrder, checkpoint,
+                outputDir, nearDuplicateDetection, linkGraphMemoryBytes);
+    }
+
+    public boolean isIncremental() {
+        return indexDir != null;
+    }
+}
@@ -0,0 +1,121 @@
+package com.cypherlabs.crawler;
+
+import java.util.Locale;
+
+/**
+ * How urls of the frontier are prioritized. A url's priority is computed from the page linking to it,
+ * and merged with its queued priority each time another page is found linking to it, so that urls gaining
+ * inlinks while waiting move up the frontier. Higher priorities are fetched first, in order of discovery
+ * among equal ones.
+ */
+public interface CrawlPriority {
+
+    /**
+     * @return Priority of a seed url, or of a url known from an earlier crawl
+     */
+    double seed();
+
+    /**
+     * @param sourcePriority Priority the linking page was fetched at
+     * @param outLinkCount Number of distinct urls the linking page links to
+     * @return Priority a link contributes to the url it points to
+     */
+    double link(double sourcePriority, int outLinkCount);
+
+    /**
+     * @return Priority of a queued url once another link to it is found
+     */
+    double merge(double queued, double added);
+
+    /**
+     * @param name fifo, depth, inlinks or opic, see {@link Standard}
+     */
+    static CrawlPriority fromName(String name) {
+        try {
+            return Standard.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("Unknown frontier priority: " + name, iae);
+        }
+    }
+
+    enum Standard implements CrawlPriority {
+        /**
+         * Order of discovery, i.e. breadth first with duplicates collapsed.
+         */
+        FIFO {
+            @Override
+            public double seed() {
+                return 0;
+            }
+
+            @Override
+            public double link(double sourcePriority, int outLinkCount) {
+                return 0;
+            }
+
+            @Override
+            public double merge(double queued, double added) {
+                return queued;
+            }
+        },
+        /**
+         * Shallowest first: a url is as deep as the shortest known path from a seed.
+         */
+        DEPTH {
+            @Override
+            public double seed() {
+                return 0;
+            }
+
+            @Override
+            public double link(double sourcePriority, int outLinkCount) {
+                return sourcePriority - 1;
+            }
+
+            @Override
+            public double merge(double queued, double added) {
+                return Math.max(queued, added);
+            }
+        },
+        /**
+         * Most linked to first, counting the inlinks found so far. Seeds come before everything else.
+         */
+        INLINKS {
+            @Override
+            public double seed() {
+                return Double.POSITIVE_INFINITY;
+            }
+
+            @Override
+            public double link(double sourcePriority, int outLinkCount) {
+                return 1;
+            }
+
+            @Override
+            public double merge(double queued, double added) {
+                return queued + added;
+            }
+        },
+        /**
+         * OPIC (On-line Page Importance Computation): every seed starts with one unit of cash, and a fetched
+         * page hands its cash out evenly over its links. Urls are fetched richest first, which approximates
+         * PageRank order as the crawl goes on.
+         */
+        OPIC {
+            @Override
+            public double seed() {
+                return 1;
+            }
+
+            @Override
+            public double link(double sourcePriority, int outLinkCount) {
+                return sourcePriority / outLinkCount;
+            }
+
+            @Override
+            public double merge(double queued, double added) {
+                return queued + added;
+            }
+        }
+    }
+}
@@ -1,19 +1,43 @@
 package com.cypherlabs.crawler;
 
 
+import com.cypherlabs.analysis.Analyzer;
+import com.cypherlabs.distributed.ClusterConfig;
+import com.cypherlabs.distributed.ClusterNode;
+import com.cypherlabs.graph.LinkGraph;
+import com.cypherlabs.graph.LinkGraphBuilder;
+import com.cypherlabs.graph.PageRank;
+import com.cypherlabs.io.IndexSearcher;
+import com.cypherlabs.io.IndexSegmentWriter;
+import com.cypherlabs.io.LiveDocsUtils;
+import com.cypherlabs.io.NearRealTimeIndex;
+import com.cypherlabs.io.SearcherManager;
+import com.cypherlabs.io.SegmentMetaUtils;
+import com.cypherlabs.io.SegmentReader;
+import com.cypherlabs.io.StaticScoreUtils;
+import com.cypherlabs.storage.CrawlState;
+import com.cypherlabs.storage.FrontierQueue;
+import com.cypherlabs.storage.NearDuplicateIndex;
+import com.cypherlabs.storage.PageStore;
+import com.cypherlabs.storage.PageStoreReader;
 import com.cypherlabs.storage.UrlDocIdDictionary;
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
 import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.cypherlabs.crawler.LinkExtractor.extractLinks;
 import static com.cypherlabs.crawler.Utils.*;
 
 public class Crawler {
@@ -24,112 +48,529 @@ public class Crawler {
     private final Map<Token, Set<Integer>> tokenByDocs = new ConcurrentHashMap<>();
     private final UrlDocIdDictionary urlDocIdDict = new UrlDocIdDictionary();
     private final Set<Url> alreadyVisited = ConcurrentHashMap.newKeySet();
-    private final Map<Url, Integer> urlByRetryCount = new HashMap<>();
+    private final Map<Url, Integer> urlByRetryCount = new ConcurrentHashMap<>();
     static final int RETRY_ATTEMPTS = 3;
-    private final BlockingQueue<Url> crawlFrontier = new LinkedBlockingQueue<>(10000);
+    private final CrawlFrontier crawlFrontier;
     private final BlockingQueue<DocumentWithUrl> docAndUrlPairs = new LinkedBlockingQueue<>(1000);
-    private final AtomicInteger activeDocumentFetchingCounter = new AtomicInteger();
-    private final AtomicInteger activeDocumentProcessingCounter = new AtomicInteger();
+    // Urls put in crawl frontier and not yet done with, plus documents put in processing queue and not yet indexed.
+    // Work is counted before it is handed over and uncounted only once its results are handed on (urls found
+    // in a document, the document of a url), so the counter can't read zero while anything is still in transit.
+    private final AtomicInteger unfinishedWorkCounter = new AtomicInteger();
+    private final ClusterNode clusterNode; // null when crawling standalone
+    private final FetchLimiter fetchLimiter = new FetchLimiter();
+    private final HostCache hostCache = new HostCache();
+    // null when near-duplicate detection is disabled, see CrawlOptions.nearDuplicateDetection
+    private final NearDuplicateIndex nearDuplicateIndex;
+    private final Map<Url, Url> nearDuplicateOf = new ConcurrentHashMap<>();
+    static final int MIN_TOKENS_FOR_NEAR_DUPLICATE_DETECTION = 10;
+    private final CrawlOptions options;
+    // analyzers keep per-term state, so each processing thread gets its own
+    private final ThreadLocal<Analyzer> analyzer;
+    // set when crawling incrementally, see CrawlOptions.indexDir
+    private CrawlState crawlState;
+    private String segmentName;
+    // null when raw pages are not kept, see CrawlOptions.pageStoreDir
+    private PageStore pageStore;
+    // links between indexed documents, recorded only when the crawl writes segments; null otherwise
+    private LinkGraphBuilder linkGraphBuilder;
+    // indexed documents made searchable during the crawl, see CrawlOptions.refreshPolicy; null when disabled
+    private volatile NearRealTimeIndex nearRealTimeIndex;
+    // null unless the crawl is checkpointed, see CrawlOptions.checkpoint
+    private CrawlCheckpoint checkpoint;
+    // fetch results of documents waiting to be indexed, kept only when the crawl state or page store needs them
+    private final Map<Url, FetchResult> fetchResultByUrl = new ConcurrentHashMap<>();
 
     public static void main(String[] args) {
-        Crawler crawler = new Crawler(Utils.seedUrls());
-        crawler.crawl();
+        ClusterNode clusterNode = ClusterConfig.fromEnv().map(ClusterNode::new).orElse(null);
+        Crawler crawler = new Crawler(Utils.seedUrls(), clusterNode, CrawlOptions.fromEnv());
+        if (Boolean.parseBoolean(Optional.ofNullable(System.getenv("REINDEX_FROM_STORE")).orElse("false"))) {
+            crawler.reindexFromStore();
+        } else if (Arrays.asList(args).contains("--resume")) {
+            crawler.resume();
+        } else {
+            crawler.crawl();
+        }
     }
 
     public Crawler(List<Url> seedurls) {
+        this(seedurls, null, CrawlOptions.defaults());
+    }
+
+    public Crawler(List<Url> seedurls, ClusterNode clusterNode) {
+        this(seedurls, clusterNode, CrawlOptions.defaults());
+    }
+
+    public Crawler(List<Url> seedurls, ClusterNode clusterNode, CrawlOptions options) {
         this.seedUrls = seedurls;
+        this.clusterNode = clusterNode;
+        this.options = options;
+        this.crawlFrontier = new CrawlFrontier(options.priority());
+        this.nearDuplicateIndex = options.nearDuplicateDetection() ? new NearDuplicateIndex() : null;
+        fetchLimiter.setHostReleaseListener(crawlFrontier::releaseHost);
+        this.analyzer = ThreadLocal.withInitial(() -> Analyzer.fromSpec(options.analyzerSpec()));
     }
 
     public Map<Token, Set<Integer>> getTokenByDocs() {
         return this.tokenByDocs;
     }
 
-    private void waitForUrlAndThenProcess() {
-        Url url = null;
-        Document doc = null;
+    /**
+     * @return Urls skipped as near-duplicates, mapped to the url of the indexed document they duplicate
+     */
+    public Map<Url, Url> getNearDuplicateOf() {
+        return this.nearDuplicateOf;
+    }
+
+    /**
+     * Takes the url of highest priority from the frontier and starts fetching it on its own virtual thread,
+     * as soon as the fetch limiter hands out a permit of its host, then a global permit. A url whose host
+     * is at its limit is held in the frontier, with the host's other urls, until the host frees a permit,
+     * so it neither holds up the dispatcher nor sits on a global permit other hosts could use. Urls of a
+     * host backing off after failures are put back in the frontier once the backoff is over, urls of a given
+     * up host dropped.
+     */
+    private void waitForUrlAndDispatch(ExecutorService ioExecutor) {
+        Url url;
+        double priority;
         try {
             // we wait for url to be available
-            url = crawlFrontier.take();
+            FrontierQueue.Entry entry = crawlFrontier.take();
+            url = entry.url();
+            priority = entry.priority();
             if (alreadyVisited.contains(url)) {
                 LOGGER.info("Already visited url: {}, so skipping it", url);
+                crawlFrontier.done(url);
+                unfinishedWorkCounter.decrementAndGet();
+                return;
+            }
+        } catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while waiting for url in crawl frontier");
+            return;
+        }
+        HostCache.Admission admission = hostCache.admit(url);
+        if (admission.givenUp()) {
+            LOGGER.info("Host of url {} was given up, so skipping it", url.address());
+            markVisited(url);
+            crawlFrontier.done(url);
+            unfinishedWorkCounter.decrementAndGet();
+            return;
+        }
+        if (!admission.fetchNow()) {
+            Url urlToDefer = url;
+            ioExecutor.submit(() -> deferFetch(urlToDefer, priority, admission.delayNanos()));
+            return;
+        }
+        if (!fetchLimiter.tryAcquireHost(url)) {
+            hostCache.cancelFetch(url);
+            if (!crawlFrontier.hold(url, priority)) {
+                // merged into the entry already set aside, which is counted
+                unfinishedWorkCounter.decrementAndGet();
+            }
+            // a permit released before the url was held had nothing to release
+            if (fetchLimiter.hasHostPermit(url)) {
+                crawlFrontier.releaseHost(url);
+            }
+            return;
+        }
+        Url urlToFetch = url;
+        if (acquireGlobal(url)) {
+            ioExecutor.submit(() -> fetchAndEnqueue(urlToFetch, priority));
+        }
+    }
+
+    /**
+     * Marks a url visited, and hands it to the next checkpoint if it was not already.
+     */
+    private void markVisited(Url url) {
+        if (alreadyVisited.add(url) && checkpoint != null) {
+            checkpoint.recordVisited(url);
+        }
+    }
+
+    /**
+     * Takes a global permit for a url whose host permit is held; if interrupted, gives the host permit back
+     * and is done with the url.
+     *
+     * @return Whether the permit was taken
+     */
+    private boolean acquireGlobal(Url url) {
+        try {
+            fetchLimiter.acquireGlobal();
+            return true;
+        } catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            fetchLimiter.releaseHost(url);
+            crawlFrontier.done(url);
+            unfinishedWorkCounter.decrementAndGet();
+            hostCache.cancelFetch(url);
+            LOGGER.warn("Interrupted while waiting for fetch permit for url {}", url);
+            return false;
+        }
+    }
+
+    /**
+     * Waits out the backoff of the url's host on a virtual thread of its own, holding no fetch permit,
+     * then puts the url back in the frontier.
+     */
+    private void deferFetch(Url url, double priority, long delayNanos) {
+        try {
+            LOGGER.debug("Deferring url {} by {} ms while its host backs off", url.address(),
+                    TimeUnit.NANOSECONDS.toMillis(delayNanos));
+            TimeUnit.NANOSECONDS.sleep(delayNanos);
+            requeue(url, priority);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            crawlFrontier.done(url);
+        } finally {
+            unfinishedWorkCounter.decrementAndGet();
+        }
+    }
+
+    /**
+     * Fetches a url, holding both its fetch permits.
+     */
+    private void fetchAndEnqueue(Url url, double priority) {
+        Document doc = null;
+        // once the document is queued or the url requeued, they are the ones to be done with
+        boolean handedOn = false;
+        long startNanos = System.nanoTime();
+        try {
+            hostCache.resolve(url);
+            if (!hostCache.isAllowed(url)) {
+                LOGGER.info("Url {} is disallowed by robots.txt, so skipping it", url.address());
+                fetchLimiter.releaseUnused(url);
+                hostCache.cancelFetch(url);
+                markVisited(url);
                 return;
             }
-            activeDocumentFetchingCounter.incrementAndGet();
-            LOGGER.debug("Number of documents under fetching: {}", activeDocumentFetchingCounter.get());
+            startNanos = System.nanoTime();
             LOGGER.info("Starting to fetch document for url {}", url.address());
-            doc = fetchDocument(url);
+            Optional<CrawlState.DocRecord> previous = crawlState == null ? Optional.empty() : crawlState.get(url);
+            FetchResult result = fetchDocument(url, previous);
             LOGGER.info("Done fetching document for url {}", url.address());
-            activeDocumentFetchingCounter.decrementAndGet();
-            LOGGER.debug("Number of documents under fetching: {}", activeDocumentFetchingCounter.get());
+            fetchLimiter.release(url, System.nanoTime() - startNanos, false);
+            hostCache.recordSuccess(url);
+            if (isUnchanged(result, previous)) {
+                LOGGER.info("Document for url {} unchanged since last crawl, so skipping it", url.address());
+                crawlState.recordUnchanged(url, result.etag(), result.lastModified());
+                markVisited(url);
+                return;
+            }
+            if (crawlState != null || pageStore != null) {
+                fetchResultByUrl.put(url, result);
+            }
+            doc = result.doc();
             // we wait for space to be available
-            docAndUrlPairs.put(new DocumentWithUrl(doc, url));
-            alreadyVisited.add(url);
+            unfinishedWorkCounter.incrementAndGet();
+            docAndUrlPairs.put(new DocumentWithUrl(doc, url, priority));
+            handedOn = true;
+            markVisited(url);
         } catch(IOException ioe) {
-            activeDocumentFetchingCounter.decrementAndGet();
-            LOGGER.debug("Number of documents under fetching: {}", activeDocumentFetchingCounter.get());
+            fetchLimiter.release(url, System.nanoTime() - startNanos, true);
             LOGGER.error("Crawler failed to fetch document for url: {}", url.address());
             LOGGER.error(ioe.getMessage());
-            urlByRetryCount.put(url, urlByRetryCount.getOrDefault(url, 0) + 1);
-            if(urlByRetryCount.get(url) > RETRY_ATTEMPTS) {
-                alreadyVisited.add(url);
+            if (isHostFailure(ioe)) {
+                hostCache.recordFailure(url);
             } else {
-                updateCrawlFrontier(url);
+                // the host answered, only this page is at fault
+                hostCache.recordSuccess(url);
+            }
+            if (isGone(ioe)) {
+                // retrying won't bring the page back, and its indexed version must go
+                markVisited(url);
+                if (crawlState != null) {
+                    hidePreviousVersion(url);
+                    crawlState.recordRemoved(url);
+                }
+                return;
+            }
+            if(urlByRetryCount.merge(url, 1, Integer::sum) > RETRY_ATTEMPTS || hostCache.isGivenUp(url)) {
+                markVisited(url);
+            } else {
+                requeue(url, priority);
+                handedOn = true;
             }
         } catch(InterruptedException ie) {
             Thread.currentThread().interrupt();
+            unfinishedWorkCounter.decrementAndGet();
             LOGGER.warn("Interrupted while putting document {} for url {} in queue", doc, url);
+        } finally {
+            if (!handedOn) {
+                crawlFrontier.done(url);
+            }
+            // decremented only once the document is queued or the url is back in the frontier
+            unfinishedWorkCounter.decrementAndGet();
+            LOGGER.debug("Amount of unfinished work: {}", unfinishedWorkCounter.get());
         }
     }
 
-    private void updateCrawlFrontier(Url url) {
-        try {
-            crawlFrontier.put(url);
+    private static boolean isUnchanged(FetchResult result, Optional<CrawlState.DocRecord> previous) {
+        return result.notModified()
+               || previous.map(record -> record.contentHash() == result.contentHash()).orElse(false);
+    }
+
+    /**
+     * Whether a failure says the host is down or overloaded, rather than something about the page.
+     */
+    private static boolean isHostFailure(IOException ioe) {
+        if (ioe instanceof HttpStatusException hse) {
+            return hse.getStatusCode() >= 500 || hse.getStatusCode() == 429;
+        }
+        return !(ioe instanceof UnsupportedMimeTypeException);
+    }
+
+    private static boolean isGone(IOException ioe) {
+        return ioe instanceof HttpStatusException hse && (hse.getStatusCode() == 404 || hse.getStatusCode() == 410);
+    }
+
+    /**
+     * Queues a url, or raises the priority of its queued entry.
+     */
+    private void updateCrawlFrontier(Url url, double priority) {
+        unfinishedWorkCounter.incrementAndGet();
+        if (crawlFrontier.offer(url, priority)) {
             LOGGER.info("Updated crawl frontier with url {}", url.address());
+        } else {
+            // already counted when first queued
+            unfinishedWorkCounter.decrementAndGet();
+            LOGGER.debug("Merged priority of url {} already in crawl frontier", url.address());
+        }
+    }
+
+    /**
+     * Queues the urls of a page at once, taking the frontier's lock once rather than once per url.
+     */
+    private void updateCrawlFrontier(List<Url> urls, double priority) {
+        if (urls.isEmpty()) {
+            return;
+        }
+        unfinishedWorkCounter.addAndGet(urls.size());
+        int added = crawlFrontier.offerAll(urls, priority);
+        // merged ones were already counted when first queued
+        unfinishedWorkCounter.addAndGet(added - urls.size());
+        LOGGER.info("Updated crawl frontier with {} urls, {} merged into queued ones", added, urls.size() - added);
+    }
+
+    /**
+     * Puts a url taken from the frontier back in it, e.g. to retry it.
+     */
+    private void requeue(Url url, double priority) {
+        unfinishedWorkCounter.incrementAndGet();
+        if (!crawlFrontier.requeue(url, priority)) {
+            unfinishedWorkCounter.decrementAndGet();
+        }
+    }
+
+    private void forwardToOwner(Url url) {
+        try {
+            clusterNode.forward(url);
+            LOGGER.debug("Forwarded url {} to its owning node", url.address());
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
-            LOGGER.warn("Interrupted while putting URL in crawl frontier: {}", url);
+            LOGGER.warn("Interrupted while forwarding URL to its owning node: {}", url);
         }
     }
 
+    private boolean isLocal(Url url) {
+        return clusterNode == null || clusterNode.isLocal(url);
+    }
+
+    private boolean isLocallyIdle() {
+        return unfinishedWorkCounter.get() == 0;
+    }
+
     private void processDocumentIfAvailable() {
         // we don't wait
         Optional<DocumentWithUrl> mayBeDocument = Optional.ofNullable(docAndUrlPairs.poll());
         mayBeDocument.ifPresent(docAndUrlPair -> {
-            activeDocumentProcessingCounter.incrementAndGet();
-            LOGGER.debug("Number of documents under processing: {}", activeDocumentProcessingCounter.get());
             Document doc = docAndUrlPair.doc();
             Url url = docAndUrlPair.url();
             LOGGER.info("Starting to process document for url {}", url.address());
-            Elements links = extractLinks(doc);
+            List<Url> links = extractLinks(doc);
             List<Url> urls = urlsNotAlreadyVisited(alreadyVisited, links);
+            double linkPriority = urls.isEmpty() ? 0 : options.priority().link(docAndUrlPair.priority(), links.size());
+            List<Url> localUrls = new ArrayList<>(urls.size());
             for (Url u : urls) {
-                updateCrawlFrontier(u);
-            }
-            String text = extractText(doc);
-            LOGGER.debug("Extracted text from {} is: {}", url.address(), text);
-            List<Token> tokens = extractTokens(text);
-
-            // stemming
-            List<Token> stemmedTokens = tokens.stream()
-                    .map(token -> new Token(stem(token.key())))
-                    .distinct()
-                    .toList();
-            updateIndex(stemmedTokens, tokenByDocs, urlDocIdDict.addIfAbsent(url));
-            activeDocumentProcessingCounter.decrementAndGet();
-            LOGGER.debug("Number of documents under processing: {}", activeDocumentProcessingCounter.get());
+                if (isLocal(u)) {
+                    localUrls.add(u);
+                } else {
+                    forwardToOwner(u);
+                }
+            }
+            updateCrawlFrontier(localUrls, linkPriority);
+            indexDocument(doc, url, fetchResultByUrl.remove(url), links);
+            crawlFrontier.done(url);
+            unfinishedWorkCounter.decrementAndGet();
+            LOGGER.debug("Amount of unfinished work: {}", unfinishedWorkCounter.get());
         });
     }
 
+    /**
+     * Hides the version of a url indexed by an earlier crawl from near real-time searches, as it is being
+     * replaced or removed.
+     */
+    private void hidePreviousVersion(Url url) {
+        if (nearRealTimeIndex != null) {
+            crawlState.get(url).ifPresent(record -> nearRealTimeIndex.delete(record.segment(), record.docId()));
+        }
+    }
+
+    /**
+     * Analyzes and indexes a document, unless it is a near-duplicate of an already indexed one.
+     *
+     * @param result Fetch result of the document, null when reindexing from the page store
+     * @param links Urls the document links to
+     */
+    private void indexDocument(Document doc, Url url, FetchResult result, List<Url> links) {
+        String text = extractText(doc);
+        LOGGER.debug("Extracted text from {} is: {}", url.address(), text);
+        List<Token> tokens = analyzer.get().analyze(text);
+
+        Optional<Url> original = findNearDuplicate(tokens, url);
+        if (original.isPresent()) {
+            LOGGER.info("Document for url {} is a near-duplicate of {}, so not indexing it", url.address(),
+                    original.get().address());
+            nearDuplicateOf.put(url, original.get());
+            if (crawlState != null) {
+                hidePreviousVersion(url);
+                crawlState.recordRemoved(url);
+            }
+            return;
+        }
+
+        int docId = urlDocIdDict.addIfAbsent(url);
+        List<Token> distinctTokens = tokens.stream().distinct().toList();
+        updateIndex(distinctTokens, tokenByDocs, docId);
+        if (linkGraphBuilder != null) {
+            linkGraphBuilder.addLinks(url, links);
+        }
+        if (nearRealTimeIndex != null) {
+            nearRealTimeIndex.add(url, distinctTokens);
+        }
+        if (crawlState != null) {
+            hidePreviousVersion(url);
+            crawlState.recordIndexed(url, segmentName, docId, result.etag(), result.lastModified(),
+                    result.contentHash());
+        }
+        if (pageStore != null) {
+            try {
+                pageStore.append(url, result.body());
+            } catch (IOException e) {
+                LOGGER.error("Failed to store page for url {}", url.address(), e);
+            }
+        }
+        if (checkpoint != null) {
+            checkpoint.recordIndexed(url, distinctTokens, links);
+        }
+    }
+
+    /**
+     * Looks the document up among already indexed documents by SimHash, and registers it if none is close.
+     * Very short documents are not checked, as their fingerprints say little about their content.
+     */
+    private Optional<Url> findNearDuplicate(List<Token> tokens, Url url) {
+        if (nearDuplicateIndex == null || tokens.size() < MIN_TOKENS_FOR_NEAR_DUPLICATE_DETECTION) {
+            return Optional.empty();
+        }
+        return nearDuplicateIndex.findOrAdd(SimHash.fingerprint(tokens), url);
+    }
+
+    /**
+     * @return Snapshots of the index as it grows during the crawl, the written segments of an incremental
+     *         crawl included; empty unless a refresh policy is set and the crawl has started
+     */
+    public Optional<SearcherManager> getSearcherManager() {
+        return Optional.ofNullable(nearRealTimeIndex).map(NearRealTimeIndex::getSearcherManager);
+    }
+
     public UrlDocIdDictionary getUrlDocIdDict() {
         return this.urlDocIdDict;
     }
 
     void crawl() {
+        crawl(false);
+    }
+
+    /**
+     * Loads the crawl state of an incremental crawl and names the segment it adds.
+     */
+    private void loadCrawlState() {
+        if (options.isIncremental() && clusterNode == null) {
+            try {
+                Files.createDirectories(options.indexDir());
+                crawlState = CrawlState.load(options.indexDir());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            segmentName = crawlState.newSegmentName();
+        }
+    }
+
+    /**
+     * Records links for the static scores of the segment written, unless disabled, see
+     * {@link CrawlOptions#linkGraphMemoryBytes()}.
+     */
+    private void createLinkGraphBuilder() {
+        if ((crawlState != null || clusterNode != null) && options.linkGraphMemoryBytes() > 0) {
+            linkGraphBuilder = new LinkGraphBuilder(options.linkGraphMemoryBytes());
+        }
+    }
+
+    /**
+     * Resumes a crawl from its checkpoint, see {@link CrawlOptions#checkpoint()}, or crawls from the seeds if
+     * there is none.
+     */
+    void resume() {
+        crawl(true);
+    }
+
+    private void crawl(boolean resume) {
         LOGGER.info("Crawler starting to crawl....");
+        loadCrawlState();
+        if (options.pageStoreDir() != null) {
+            try {
+                pageStore = new PageStore(options.pageStoreDir());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        createLinkGraphBuilder();
 
-        Runnable ioTaskToFetchDocument = () -> {
+        // checkpoints don't cover urls forwarded between cluster nodes
+        List<SegmentReader> restoredDeltas = new ArrayList<>();
+        boolean resumed = false;
+        if (options.checkpoint() != null && clusterNode == null) {
+            checkpoint = new CrawlCheckpoint(options.checkpoint().dir(), options.analyzerSpec());
+            try {
+                if (resume) {
+                    resumed = restoreCheckpoint(restoredDeltas);
+                } else {
+                    checkpoint.clear();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        if (options.refreshPolicy() != null) {
+            try {
+                List<SegmentReader> baseSegments = new ArrayList<>(crawlState == null ? List.of()
+                        : IndexSearcher.open(options.indexDir()).getSegments());
+                // documents indexed before resuming are searchable in the checkpoint's deltas
+                baseSegments.addAll(restoredDeltas);
+                nearRealTimeIndex = NearRealTimeIndex.start(baseSegments, options.analyzerSpec(),
+                        options.refreshPolicy());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        // launch virtual threads to fetch documents, one per fetch, their number bounded by the fetch limiter
+        ExecutorService ioExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        Runnable ioTaskToDispatchFetches = () -> {
             while(!Thread.currentThread().isInterrupted()) {
-                waitForUrlAndThenProcess();
+                waitForUrlAndDispatch(ioExecutor);
             }
         };
 
@@ -139,14 +580,36 @@ public class Crawler {
             }
         };
 
-        crawlFrontier.addAll(seedUrls);
+        // in a cluster every node gets the same seeds and keeps the ones of its own hosts
+        List<Url> localSeedUrls = seedUrls.stream().filter(this::isLocal).toList();
+        // an incremental crawl revisits every url known from earlier crawls, they may not be linked anymore
+        List<Url> knownUrls = crawlState == null ? List.of()
+                : byStaticScore(crawlState.knownUrls().stream().filter(url -> !localSeedUrls.contains(url)).toList());
+        double seedPriority = options.priority().seed();
+        if (!resumed) {
+            updateCrawlFrontier(localSeedUrls, seedPriority);
+            // known urls go after seeds, in order of static score among equal priorities
+            updateCrawlFrontier(knownUrls, seedPriority);
+        }
+        if (clusterNode != null) {
+            // the page linking to a forwarded url was fetched on another node, at an unknown priority
+            double forwardedPriority = options.priority().link(seedPriority, 1);
+            try {
+                clusterNode.start(url -> updateCrawlFrontier(url, forwardedPriority), this::isLocallyIdle);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
 
-        // launch virtual threads to fetch documents
-        ExecutorService ioExecutor = Executors.newVirtualThreadPerTaskExecutor();
-        int numFetcherThreads = Integer.parseInt(Optional.ofNullable(System.getenv("NUM_FETCHER_THREADS"))
-                .orElse("10"));
-        for(int i = 0; i < numFetcherThreads; i++) {
-            ioExecutor.submit(ioTaskToFetchDocument);
+        ioExecutor.submit(ioTaskToDispatchFetches);
+
+        ScheduledExecutorService checkpointExecutor = null;
+        if (checkpoint != null) {
+            long intervalMillis = options.checkpoint().interval().toMillis();
+            checkpointExecutor = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().daemon().name("crawl-checkpoint").factory());
+            checkpointExecutor.scheduleWithFixedDelay(this::writeCheckpoint, intervalMillis, intervalMillis,
+                    TimeUnit.MILLISECONDS);
         }
 
         // launch platform threads to process documents
@@ -158,14 +621,17 @@ public class Crawler {
         }
 
         while(true) {
-            boolean done = crawlFrontier.isEmpty()
-                           && docAndUrlPairs.isEmpty()
-                           && activeDocumentFetchingCounter.get() == 0
-                           && activeDocumentProcessingCounter.get() == 0;
+            // a cluster node may be idle and still receive urls from its peers,
+            // so it stops only once the coordinator declares global termination
+            boolean done = isLocallyIdle() && (clusterNode == null || clusterNode.isTerminated());
 
             if (done) break;
         }
         LOGGER.debug("Crawling completed....");
+        if (checkpointExecutor != null) {
+            // lets a checkpoint being written finish, no further one is started
+            checkpointExecutor.close();
+        }
 
         ioExecutor.shutdown();
         cpuExecutor.shutdown();
@@ -185,12 +651,262 @@ public class Crawler {
             ioExecutor.close();
             cpuExecutor.close();
         }
+        if (nearRealTimeIndex != null) {
+            // publishes the last documents, snapshots stay searchable once the crawl is over
+            nearRealTimeIndex.close();
+        }
+        if (pageStore != null) {
+            try {
+                pageStore.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        if (clusterNode != null) {
+            writeNodeSegment();
+            return;
+        }
+        if (crawlState != null) {
+            writeIncrementalSegment();
+        } else {
+            writeProgramOutputIndex();
+        }
+        if (checkpoint != null) {
+            try {
+                // the crawl is complete, there is nothing left to resume
+                checkpoint.clear();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to clear checkpoint of completed crawl", e);
+            }
+        }
+    }
+
+    private void writeCheckpoint() {
+        try {
+            checkpoint.write(crawlFrontier::snapshot, urlByRetryCount, segmentName, crawlState);
+        } catch (IOException | RuntimeException e) {
+            // the previous checkpoint stays, the next attempt comes after the interval
+            LOGGER.error("Failed to checkpoint crawl", e);
+        }
+    }
+
+    /**
+     * Restores the crawl as of its checkpoint: the documents of its deltas are indexed again, into new doc
+     * IDs, without fetching them, and the urls still owed work go back in the frontier.
+     *
+     * @param restoredDeltas Receives the deltas read
+     * @return Whether there was a checkpoint to resume from
+     */
+    private boolean restoreCheckpoint(List<SegmentReader> restoredDeltas) throws IOException {
+        Optional<CrawlCheckpoint.Restored> maybeRestored = checkpoint.restore();
+        if (maybeRestored.isEmpty()) {
+            LOGGER.info("No checkpoint found in {}, crawling from the seeds", options.checkpoint().dir());
+            return false;
+        }
+        long startNanos = System.nanoTime();
+        CrawlCheckpoint.Restored restored = maybeRestored.get();
+        if ((crawlState != null) != (restored.crawlState() != null)) {
+            throw new IllegalStateException("Checkpoint in " + options.checkpoint().dir()
+                    + " was taken by an " + (crawlState != null ? "one-off" : "incremental") + " crawl");
+        }
+        if (crawlState != null) {
+            crawlState = restored.crawlState();
+            segmentName = restored.segmentName();
+        }
+
+        Set<Url> owed = new HashSet<>();
+        restored.frontier().forEach(entry -> owed.add(entry.url()));
+        Map<Url, Integer> restoredDocIdByUrl = new HashMap<>();
+        for (Path deltaDir : restored.deltas()) {
+            CrawlCheckpoint.Delta delta = CrawlCheckpoint.readDelta(deltaDir);
+            SegmentReader segment = delta.segment();
+            restoredDeltas.add(segment);
+            int[] docIdByLocal = new int[segment.docCount()];
+            for (int local = 0; local < docIdByLocal.length; local++) {
+                Url url = new Url(segment.url(local).orElseThrow());
+                int docId = urlDocIdDict.addIfAbsent(url);
+                docIdByLocal[local] = docId;
+                if (crawlState != null) {
+                    restoredDocIdByUrl.put(url, docId);
+                }
+                if (linkGraphBuilder != null) {
+                    linkGraphBuilder.addLinks(url, delta.links().get(local));
+                }
+                if (!owed.contains(url)) {
+                    alreadyVisited.add(url);
+                }
+            }
+            for (String token : segment.tokens()) {
+                Set<Integer> docIds = tokenByDocs.computeIfAbsent(new Token(token), _ -> new HashSet<>());
+                for (int local : segment.postings(token)) {
+                    docIds.add(docIdByLocal[local]);
+                }
+            }
+        }
+        if (crawlState != null) {
+            crawlState.resumeSegment(segmentName, restoredDocIdByUrl);
+        }
+        restored.visited().stream().filter(url -> !owed.contains(url)).forEach(alreadyVisited::add);
+        urlByRetryCount.putAll(restored.retryCounts());
+        restored.frontier().forEach(entry -> updateCrawlFrontier(entry.url(), entry.priority()));
+        LOGGER.info("Resumed crawl from checkpoint in {} ms: {} documents indexed, {} urls in frontier",
+                (System.nanoTime() - startNanos) / 1_000_000, urlDocIdDict.size(), restored.frontier().size());
+        return true;
+    }
+
+    /**
+     * Rebuilds the index from the page store instead of fetching pages again, e.g. after a change to
+     * tokenization or stemming. Blocks of the store are decompressed, parsed and indexed in parallel on all
+     * cores, at disk speed; links are not followed, the stored pages are the crawl.
+     *
+     * With an index directory, the pages its crawl state knows are reindexed into a new segment of it, and
+     * their previous versions deleted, as by an incremental crawl. Stored pages of urls removed since, or
+     * whose indexed version was not the one stored, are skipped. Without, every stored page is indexed and
+     * the index written to the output directory.
+     */
+    void reindexFromStore() {
+        if (options.pageStoreDir() == null) {
+            throw new IllegalStateException("No page store to reindex from, PAGE_STORE_DIR is not set");
+        }
+        LOGGER.info("Crawler starting to reindex from page store {}....", options.pageStoreDir());
+        loadCrawlState();
+        createLinkGraphBuilder();
+        AtomicInteger skipped = new AtomicInteger();
+        ExecutorService cpuExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try (PageStoreReader reader = PageStoreReader.open(options.pageStoreDir())) {
+            List<Future<?>> blockTasks = new ArrayList<>();
+            for (long blockOffset : reader.blockOffsets()) {
+                blockTasks.add(cpuExecutor.submit(() -> {
+                    for (PageStoreReader.StoredPage page : reader.readPages(blockOffset)) {
+                        FetchResult result = null;
+                        if (crawlState != null) {
+                            Optional<CrawlState.DocRecord> record = crawlState.get(page.url());
+                            if (record.isEmpty() || record.get().contentHash() != contentHash(page.body())) {
+                                skipped.incrementAndGet();
+                                continue;
+                            }
+                            result = new FetchResult(null, false, record.get().etag(), record.get().lastModified(),
+                                    record.get().contentHash(), page.body());
+                        }
+                        Document doc = parseStoredPage(page.body(), page.url());
+                        indexDocument(doc, page.url(), result, extractLinks(doc));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> blockTask : blockTasks) {
+                blockTask.get();
+            }
+        } catch (IOException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ie);
+        } finally {
+            cpuExecutor.close();
+        }
+        LOGGER.info("Reindexed {} documents from page store, skipped {} removed or outdated pages",
+                urlDocIdDict.size(), skipped.get());
+        if (crawlState != null) {
+            writeIncrementalSegment();
+        } else {
+            writeProgramOutputIndex();
+        }
+    }
 
+    private void writeProgramOutputIndex() {
         try {
-            Files.createDirectories(Paths.get("program_output"));
-            writeIndex(tokenByDocs, Format.valueOf(Optional.ofNullable(System.getenv("INDEX_FILE_FORMAT")).orElse("TXT")));
+            Files.createDirectories(options.outputDir());
+            writeIndex(tokenByDocs, Format.valueOf(Optional.ofNullable(System.getenv("INDEX_FILE_FORMAT")).orElse("TXT")),
+                    options.outputDir());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * An incremental crawl adds a segment holding the new and changed pages, clears the previous
+     * versions of changed and removed pages from the live docs of their segments, and saves the crawl state.
+     */
+    private void writeIncrementalSegment() {
+        Path indexDir = options.indexDir();
+        try {
+            if (urlDocIdDict.size() > 0) {
+                Optional<int[]> newDocIdByOld = IndexSegmentWriter.writeSegment(tokenByDocs, urlDocIdDict,
+                        indexDir.resolve(segmentName), true, options.analyzerSpec(), options.docOrder());
+                newDocIdByOld.ifPresent(ids -> crawlState.remapDocIds(segmentName, ids));
+                writeStaticScores(indexDir.resolve(segmentName), newDocIdByOld.orElse(null));
+            }
+            for (Map.Entry<String, List<Integer>> entry : crawlState.getDeletedDocsBySegment().entrySet()) {
+                Path segmentDir = indexDir.resolve(entry.getKey());
+                if (!Files.isDirectory(segmentDir)) {
+                    LOGGER.warn("Segment {} not found, cannot delete its outdated docs", segmentDir);
+                    continue;
+                }
+                int docCount = SegmentMetaUtils.readSegmentMeta(segmentDir).docCount();
+                LiveDocsUtils.markDeleted(segmentDir, docCount, entry.getValue());
+            }
+            crawlState.save(indexDir);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        LOGGER.info("Incremental crawl indexed {} new or changed documents into {}", urlDocIdDict.size(), indexDir);
+    }
+
+    /**
+     * Each cluster node writes its own segment, under node-{nodeId} of the output directory.
+     */
+    private void writeNodeSegment() {
+        String timeStamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        Path segmentDir = options.outputDir().resolve(Paths.get("node-" + clusterNode.nodeId(), "segment_" + timeStamp));
+        try (clusterNode) {
+            Optional<int[]> newDocIdByOld = IndexSegmentWriter.writeSegment(tokenByDocs, urlDocIdDict, segmentDir,
+                    true, options.analyzerSpec(), options.docOrder());
+            writeStaticScores(segmentDir, newDocIdByOld.orElse(null));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Builds the link graph of the segment's documents into it, and stores their PageRank as static scores.
+     * Links to documents of other segments or other cluster nodes are not part of the graph.
+     *
+     * @param newDocIdByOld New doc IDs of the segment's documents if it was written renumbered, else null
+     */
+    private void writeStaticScores(Path segmentDir, int[] newDocIdByOld) throws IOException {
+        if (linkGraphBuilder == null) {
+            return;
+        }
+        try (LinkGraphBuilder builder = linkGraphBuilder) {
+            LinkGraph graph = builder.build(urlDocIdDict, newDocIdByOld, segmentDir.resolve(LinkGraph.FILE_NAME));
+            StaticScoreUtils.writeStaticScores(PageRank.staticScores(graph), segmentDir);
+        }
+    }
+
+    /**
+     * Orders urls known from earlier crawls by the static score of their indexed version, best first, so
+     * that the pages that matter most are refreshed first.
+     */
+    private List<Url> byStaticScore(List<Url> urls) {
+        Map<String, float[]> scoresBySegment = new HashMap<>();
+        Map<Url, Float> scoreByUrl = new HashMap<>();
+        for (Url url : urls) {
+            float score = crawlState.get(url).map(record -> {
+                float[] scores = scoresBySegment.computeIfAbsent(record.segment(), segment -> {
+                    try {
+                        return StaticScoreUtils.readStaticScores(options.indexDir().resolve(segment))
+                                .orElse(new float[0]);
+                    } catch (IOException e) {
+                        LOGGER.warn("Failed to read static scores of segment {}", segment, e);
+                        return new float[0];
+                    }
+                });
+                return record.docId() < scores.length ? scores[record.docId()] : 0f;
+            }).orElse(0f);
+            scoreByUrl.put(url, score);
+        }
+        return urls.stream().sorted(Comparator.comparing(scoreByUrl::get, Comparator.reverseOrder())).toList();
+    }
 }
@@ -2,5 +2,8 @@ package com.cypherlabs.crawler;
 
 import org.jsoup.nodes.Document;
 
-public record DocumentWithUrl(Document doc, Url url) {
+/**
+ * @param priority Frontier priority the url was fetched at, see {@link CrawlPriority}
+ */
+public record DocumentWithUrl(Document doc, Url url, double priority) {
 }
@@ -0,0 +1,111 @@
+package com.cypherlabs.crawler;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Bounds in-flight fetches globally and per host, with an {@link AimdLimiter} for each.
+ *
+ * A fetch holds a permit of its host and a global permit, always taken in that order: a fetch waiting
+ * for its host never sits on a global permit other hosts could use. Host permits are only tried, never
+ * waited for: a url whose host is at its limit is set aside until a permit of the host is released, see
+ * {@link #setHostReleaseListener}. Both limiters learn from the fetch
+ * outcome: a slow or failing host shrinks its own limit, while congestion across all hosts shrinks the
+ * global one.
+ *
+ * Configured with env variables:
+ * - NUM_FETCHER_THREADS: initial global limit (default 10)
+ * - MAX_FETCH_CONCURRENCY: upper bound of the global limit (default 1000)
+ * - INITIAL_HOST_CONCURRENCY: initial per host limit (default 2)
+ * - MAX_HOST_CONCURRENCY: upper bound of a per host limit (default 16)
+ */
+public class FetchLimiter {
+
+    private final AimdLimiter globalLimiter;
+    private final Map<String, AimdLimiter> limiterByHost = new ConcurrentHashMap<>();
+    private final int initialHostLimit;
+    private final int maxHostLimit;
+    private volatile Consumer<Url> hostReleaseListener = _ -> { };
+
+    public FetchLimiter() {
+        this(envInt("NUM_FETCHER_THREADS", 10), envInt("MAX_FETCH_CONCURRENCY", 1000),
+                envInt("INITIAL_HOST_CONCURRENCY", 2), envInt("MAX_HOST_CONCURRENCY", 16));
+    }
+
+    public FetchLimiter(int initialLimit, int maxLimit, int initialHostLimit, int maxHostLimit) {
+        this.globalLimiter = new AimdLimiter(initialLimit, 1, maxLimit);
+        this.initialHostLimit = initialHostLimit;
+        this.maxHostLimit = maxHostLimit;
+    }
+
+    public void acquireGlobal() throws InterruptedException {
+        globalLimiter.acquire();
+    }
+
+    /**
+     * @param listener Called with the url of a fetch once its host permit is released
+     */
+    public void setHostReleaseListener(Consumer<Url> listener) {
+        this.hostReleaseListener = listener;
+    }
+
+    /**
+     * @return Whether a permit of the url's host was taken, false if the host is at its limit
+     */
+    public boolean tryAcquireHost(Url url) {
+        return hostLimiter(url).tryAcquire();
+    }
+
+    /**
+     * @return Whether a permit of the url's host could be taken now
+     */
+    public boolean hasHostPermit(Url url) {
+        return hostLimiter(url).hasPermit();
+    }
+
+    /**
+     * Returns a host permit whose fetch never got its global permit.
+     */
+    public void releaseHost(Url url) {
+        hostLimiter(url).release();
+        hostReleaseListener.accept(url);
+    }
+
+    /**
+     * Returns both permits of a fetch that never went out, e.g. disallowed by robots.txt, without
+     * feeding the limiters an outcome.
+     */
+    public void releaseUnused(Url url) {
+        hostLimiter(url).release();
+        globalLimiter.release();
+        hostReleaseListener.accept(url);
+    }
+
+    /**
+     * Returns both permits of a fetch and feeds its outcome to both limiters.
+     */
+    public void release(Url url, long latencyNanos, boolean failed) {
+        hostLimiter(url).release(latencyNanos, failed);
+        globalLimiter.release(latencyNanos, failed);
+        hostReleaseListener.accept(url);
+    }
+
+    public int getGlobalLimit() {
+        return globalLimiter.getLimit();
+    }
+
+    public Optional<Integer> getHostLimit(String host) {
+        return Optional.ofNullable(limiterByHost.get(host)).map(AimdLimiter::getLimit);
+    }
+
+    private AimdLimiter hostLimiter(Url url) {
+        return limiterByHost.computeIfAbsent(Utils.host(url),
+                _ -> new AimdLimiter(initialHostLimit, 1, maxHostLimit));
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        return Integer.parseInt(Optional.ofNullable(System.getenv(name)).orElse(String.valueOf(defaultValue)));
+    }
+}
@@ -0,0 +1,17 @@
+package com.cypherlabs.crawler;
+
+import org.jsoup.nodes.Document;
+
+/**
+ * Outcome of fetching a url.
+ *
+ * @param doc Parsed document, null if the server answered 304 Not Modified
+ * @param notModified Whether the server answered 304 Not Modified to a conditional request
+ * @param etag ETag response header, null if absent
+ * @param lastModified Last-Modified response header, null if absent
+ * @param contentHash Hash of the response body, 0 if not modified
+ * @param body Raw response body, null if not modified
+ */
+public record FetchResult(Document doc, boolean notModified, String etag, String lastModified, long contentHash,
+                          byte[] body) {
+}
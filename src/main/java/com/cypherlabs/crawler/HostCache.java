@@ -0,0 +1,319 @@
+package com.cypherlabs.crawler;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * What the crawler remembers about each host (scheme, name and port) across the fetches of its urls:
+ * its robots.txt rules, its resolved addresses and its recent failures.
+ *
+ * - robots.txt is fetched once per host, on the first fetch of one of its urls, and compiled into
+ *   {@link RobotsRules}; later checks are in-memory path matches. A 4xx robots.txt allows everything,
+ *   a 5xx or unreachable one fails the fetch like the host being down.
+ * - Addresses are resolved ahead of a fetch and cached with a TTL, failed resolutions too, so an unknown
+ *   host fails fast. The fetch itself still resolves through the JVM's own cache, which this warms up.
+ * - Consecutive failures drive a circuit breaker: past a threshold, fetches of the host are deferred for a
+ *   backoff doubling with each failure, then a single probe fetch is let through; a success closes the
+ *   breaker. Past a larger threshold the host is given up and its remaining urls are dropped unfetched.
+ *
+ * Configured with env variables:
+ * - DNS_TTL_SECONDS: how long resolutions are cached (default 300)
+ * - HOST_FAILURE_THRESHOLD: consecutive failures that open the breaker (default 3)
+ * - HOST_BACKOFF_MILLIS: first backoff once open (default 500)
+ * - HOST_MAX_BACKOFF_MILLIS: upper bound of the backoff (default 60000)
+ * - HOST_GIVE_UP_FAILURES: consecutive failures after which the host is given up (default 8)
+ */
+public class HostCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HostCache.class);
+
+    static final int ROBOTS_TIMEOUT_MILLIS = 10_000;
+
+    @FunctionalInterface
+    public interface Resolver {
+        InetAddress[] resolve(String hostName) throws UnknownHostException;
+    }
+
+    /**
+     * Whether a url may be fetched now.
+     *
+     * @param delayNanos How long to wait before trying again, 0 to fetch now
+     * @param givenUp Whether the host was given up, in which case the url should be dropped
+     */
+    public record Admission(long delayNanos, boolean givenUp) {
+        static final Admission NOW = new Admission(0, false);
+        static final Admission GIVE_UP = new Admission(0, true);
+
+        public boolean fetchNow() {
+            return delayNanos == 0 && !givenUp;
+        }
+    }
+
+    private static final class HostState {
+        // guards the breaker and address fields, never held during I/O
+        final ReentrantLock lock = new ReentrantLock();
+        // serializes the robots.txt fetch, so that concurrent first fetches of a host wait for one download
+        final ReentrantLock robotsLock = new ReentrantLock();
+        volatile RobotsRules robots;
+        InetAddress[] addresses;
+        UnknownHostException resolveFailure;
+        long resolvedUntil;
+        int consecutiveFailures;
+        long retryAt;
+        boolean probeInFlight;
+    }
+
+    private final Map<String, HostState> stateByOrigin = new ConcurrentHashMap<>();
+    private final long dnsTtlNanos;
+    private final int failureThreshold;
+    private final long backoffNanos;
+    private final long maxBackoffNanos;
+    private final int giveUpFailures;
+    private final Resolver resolver;
+    private final LongSupplier clock;
+
+    public HostCache() {
+        this(envLong("DNS_TTL_SECONDS", 300), envLong("HOST_FAILURE_THRESHOLD", 3),
+                envLong("HOST_BACKOFF_MILLIS", 500), envLong("HOST_MAX_BACKOFF_MILLIS", 60_000),
+                envLong("HOST_GIVE_UP_FAILURES", 8), InetAddress::getAllByName, System::nanoTime);
+    }
+
+    HostCache(long dnsTtlSeconds, long failureThreshold, long backoffMillis, long maxBackoffMillis,
+              long giveUpFailures, Resolver resolver, LongSupplier clock) {
+        this.dnsTtlNanos = TimeUnit.SECONDS.toNanos(dnsTtlSeconds);
+        this.failureThreshold = (int) failureThreshold;
+        this.backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis);
+        this.giveUpFailures = (int) giveUpFailures;
+        this.resolver = resolver;
+        this.clock = clock;
+    }
+
+    /**
+     * Decides whether a url of the host may be fetched now. When the breaker is half open this reserves
+     * the single probe fetch, which must be followed by {@link #recordSuccess}, {@link #recordFailure}
+     * or {@link #cancelFetch}.
+     */
+    public Admission admit(Url url) {
+        HostState state = state(url);
+        state.lock.lock();
+        try {
+            if (state.consecutiveFailures >= giveUpFailures) {
+                return Admission.GIVE_UP;
+            }
+            if (state.consecutiveFailures < failureThreshold) {
+                return Admission.NOW;
+            }
+            long now = clock.getAsLong();
+            if (now < state.retryAt) {
+                return new Admission(state.retryAt - now, false);
+            }
+            if (state.probeInFlight) {
+                return new Admission(backoff(state.consecutiveFailures), false);
+            }
+            state.probeInFlight = true;
+            return Admission.NOW;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    public void recordSuccess(Url url) {
+        HostState state = state(url);
+        state.lock.lock();
+        try {
+            if (state.consecutiveFailures >= failureThreshold) {
+                LOGGER.info("Host of {} recovered after {} failures", url.address(), state.consecutiveFailures);
+            }
+            state.consecutiveFailures = 0;
+            state.probeInFlight = false;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    public void recordFailure(Url url) {
+        HostState state = state(url);
+        state.lock.lock();
+        try {
+            state.consecutiveFailures++;
+            state.probeInFlight = false;
+            if (state.consecutiveFailures >= giveUpFailures) {
+                LOGGER.warn("Giving up host of {} after {} consecutive failures", url.address(),
+                        state.consecutiveFailures);
+            } else if (state.consecutiveFailures >= failureThreshold) {
+                state.retryAt = clock.getAsLong() + backoff(state.consecutiveFailures);
+            }
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a probe reserved by {@link #admit} whose fetch did not reach the host.
+     */
+    public void cancelFetch(Url url) {
+        HostState state = state(url);
+        state.lock.lock();
+        try {
+            state.probeInFlight = false;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    public boolean isGivenUp(Url url) {
+        HostState state = state(url);
+        state.lock.lock();
+        try {
+            return state.consecutiveFailures >= giveUpFailures;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    /**
+     * @return Addresses of the url's host, from cache while its TTL lasts
+     * @throws UnknownHostException If the host does not resolve, also cached for the TTL
+     */
+    public InetAddress[] resolve(Url url) throws UnknownHostException {
+        HostState state = state(url);
+        long now = clock.getAsLong();
+        state.lock.lock();
+        try {
+            if (now < state.resolvedUntil) {
+                if (state.resolveFailure != null) {
+                    throw state.resolveFailure;
+                }
+                return state.addresses;
+            }
+        } finally {
+            state.lock.unlock();
+        }
+
+        InetAddress[] addresses = null;
+        UnknownHostException failure = null;
+        try {
+            addresses = resolver.resolve(Utils.host(url));
+        } catch (UnknownHostException uhe) {
+            failure = uhe;
+        }
+        state.lock.lock();
+        try {
+            state.addresses = addresses;
+            state.resolveFailure = failure;
+            state.resolvedUntil = now + dnsTtlNanos;
+        } finally {
+            state.lock.unlock();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return addresses;
+    }
+
+    /**
+     * Checks the url against its host's robots.txt, downloading the latter on first use.
+     *
+     * @throws IOException If robots.txt could not be fetched, or was answered with a 5xx
+     */
+    public boolean isAllowed(Url url) throws IOException {
+        HostState state = state(url);
+        RobotsRules robots = state.robots;
+        if (robots == null) {
+            state.robotsLock.lock();
+            try {
+                robots = state.robots;
+                if (robots == null) {
+                    robots = fetchRobots(origin(url));
+                    state.robots = robots;
+                }
+            } finally {
+                state.robotsLock.unlock();
+            }
+        }
+        return robots.isAllowed(pathAndQuery(url));
+    }
+
+    private RobotsRules fetchRobots(String origin) throws IOException {
+        Connection.Response response = Jsoup.connect(origin + "/robots.txt")
+                .userAgent(RobotsRules.USER_AGENT)
+                .ignoreHttpErrors(true)
+                .ignoreContentType(true)
+                .timeout(ROBOTS_TIMEOUT_MILLIS)
+                .execute();
+        int status = response.statusCode();
+        if (status >= 500) {
+            throw new IOException("robots.txt of " + origin + " answered " + status);
+        }
+        if (status >= 400) {
+            LOGGER.info("No robots.txt for {} ({}), allowing all", origin, status);
+            return RobotsRules.ALLOW_ALL;
+        }
+        LOGGER.info("Loaded robots.txt for {}", origin);
+        return RobotsRules.parse(response.body());
+    }
+
+    Optional<Integer> getConsecutiveFailures(Url url) {
+        return Optional.ofNullable(stateByOrigin.get(origin(url))).map(s -> {
+            s.lock.lock();
+            try {
+                return s.consecutiveFailures;
+            } finally {
+                s.lock.unlock();
+            }
+        });
+    }
+
+    private long backoff(int consecutiveFailures) {
+        int doublings = Math.min(consecutiveFailures - failureThreshold, 30);
+        return Math.min(maxBackoffNanos, backoffNanos << doublings);
+    }
+
+    private HostState state(Url url) {
+        return stateByOrigin.computeIfAbsent(origin(url), _ -> new HostState());
+    }
+
+    /**
+     * @return scheme://host[:port] of the url, the scope of a robots.txt
+     */
+    static String origin(Url url) {
+        try {
+            URI uri = URI.create(url.address());
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return url.address();
+            }
+            String origin = uri.getScheme().toLowerCase() + "://" + uri.getHost().toLowerCase();
+            return uri.getPort() == -1 ? origin : origin + ":" + uri.getPort();
+        } catch (IllegalArgumentException iae) {
+            return url.address();
+        }
+    }
+
+    private static String pathAndQuery(Url url) {
+        try {
+            URI uri = URI.create(url.address());
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            return uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+        } catch (IllegalArgumentException iae) {
+            return "/";
+        }
+    }
+
+    private static long envLong(String name, long defaultValue) {
+        return Long.parseLong(Optional.ofNullable(System.getenv(name)).orElse(String.valueOf(defaultValue)));
+    }
+}
@@ -0,0 +1,36 @@
+package com.cypherlabs.crawler;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Extracts the crawlable links of a page in a single walk of its DOM, with no selector matching and no
+ * intermediate collection of elements. Each href is resolved against the page's base url and canonicalized
+ * by {@link UrlCanonicalizer}, so the links of a page come out once each, whatever their spelling.
+ */
+public class LinkExtractor {
+
+    /**
+     * @return Canonical urls of the page's anchors, without repetitions, in document order
+     */
+    static List<Url> extractLinks(Document doc) {
+        // a <base href> is already applied to the document's base uri by the parser
+        String base = UrlCanonicalizer.canonicalize(doc.baseUri());
+        Set<String> seen = new HashSet<>();
+        List<Url> links = new ArrayList<>();
+        doc.traverse((node, _) -> {
+            if (node instanceof Element element && element.normalName().equals("a") && element.hasAttr("href")) {
+                String url = UrlCanonicalizer.resolve(base, element.attr("href"));
+                if (url != null && seen.add(url)) {
+                    links.add(new Url(url));
+                }
+            }
+        });
+        return links;
+    }
+}
@@ -0,0 +1,127 @@
+package com.cypherlabs.crawler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Allow/Disallow rules of a robots.txt that apply to this crawler, compiled for fast path checks.
+ *
+ * The group naming {@link #USER_AGENT} is used if there is one, the "*" group otherwise. As in RFC 9309,
+ * the most specific (longest) matching rule decides, Allow winning ties, and a path matched by no rule is
+ * allowed. Rules are sorted by length once, so a check stops at the first match. Plain rules are prefix
+ * compared in place; only rules with '*' or a trailing '$' fall back to a compiled pattern.
+ */
+public class RobotsRules {
+
+    // sent with every request, robots.txt and pages alike, so sites see the agent whose rules are obeyed
+    public static final String USER_AGENT = "CypherCrawler";
+
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(List.of());
+    public static final RobotsRules DISALLOW_ALL = new RobotsRules(List.of(new Rule("/", false)));
+
+    private record Rule(String path, boolean allow, Pattern pattern) {
+
+        Rule(String path, boolean allow) {
+            this(path, allow, path.indexOf('*') >= 0 || path.endsWith("$") ? compile(path) : null);
+        }
+
+        boolean matches(String target) {
+            return pattern == null ? target.startsWith(path) : pattern.matcher(target).lookingAt();
+        }
+
+        private static Pattern compile(String path) {
+            StringBuilder regex = new StringBuilder();
+            boolean anchored = path.endsWith("$");
+            String body = anchored ? path.substring(0, path.length() - 1) : path;
+            for (String literal : body.split("\\*", -1)) {
+                if (!regex.isEmpty()) {
+                    regex.append(".*");
+                }
+                regex.append(Pattern.quote(literal));
+            }
+            if (anchored) {
+                regex.append("$");
+            }
+            return Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+    }
+
+    private final List<Rule> rules;
+
+    private RobotsRules(List<Rule> rules) {
+        this.rules = rules.stream()
+                .sorted(Comparator.comparingInt((Rule r) -> r.path().length()).reversed()
+                        .thenComparing(r -> !r.allow()))
+                .toList();
+    }
+
+    /**
+     * Parses a robots.txt, keeping only the rules for this crawler.
+     */
+    public static RobotsRules parse(String robotsTxt) {
+        List<Rule> ownRules = new ArrayList<>();
+        List<Rule> wildcardRules = new ArrayList<>();
+        boolean ownGroupFound = false;
+
+        // a group is one or more user-agent lines followed by rules
+        boolean inOwnGroup = false;
+        boolean inWildcardGroup = false;
+        boolean previousWasUserAgent = false;
+        for (String rawLine : robotsTxt.split("\\R")) {
+            int comment = rawLine.indexOf('#');
+            String line = (comment >= 0 ? rawLine.substring(0, comment) : rawLine).trim();
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            switch (field) {
+                case "user-agent" -> {
+                    if (!previousWasUserAgent) {
+                        inOwnGroup = false;
+                        inWildcardGroup = false;
+                    }
+                    if (value.equals("*")) {
+                        inWildcardGroup = true;
+                    } else if (value.equalsIgnoreCase(USER_AGENT)) {
+                        inOwnGroup = true;
+                        ownGroupFound = true;
+                    }
+                    previousWasUserAgent = true;
+                }
+                case "allow", "disallow" -> {
+                    previousWasUserAgent = false;
+                    // an empty Disallow allows everything, i.e. is no rule
+                    if (value.isEmpty()) {
+                        continue;
+                    }
+                    Rule rule = new Rule(value, field.equals("allow"));
+                    if (inOwnGroup) {
+                        ownRules.add(rule);
+                    }
+                    if (inWildcardGroup) {
+                        wildcardRules.add(rule);
+                    }
+                }
+                default -> previousWasUserAgent = false;
+            }
+        }
+        return new RobotsRules(ownGroupFound ? ownRules : wildcardRules);
+    }
+
+    /**
+     * @param pathAndQuery Path of a url, with its query string if any, e.g. "/search?q=x"
+     */
+    public boolean isAllowed(String pathAndQuery) {
+        for (Rule rule : rules) {
+            if (rule.matches(pathAndQuery)) {
+                return rule.allow();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+package com.cypherlabs.crawler;
+
+import java.util.List;
+
+/**
+ * 64-bit SimHash fingerprints of documents, for near-duplicate detection.
+ *
+ * Each shingle (SHINGLE_SIZE consecutive tokens) is hashed to 64 bits and votes +1 or -1 on every bit
+ * position; the fingerprint keeps the bits with a positive total. Documents sharing most of their
+ * shingles get fingerprints differing in only a few bits, so near-duplicates are found by Hamming distance.
+ */
+public class SimHash {
+
+    static final int SHINGLE_SIZE = 3;
+
+    /**
+     * Computes the fingerprint of a token sequence. Sequences shorter than a shingle form one shingle.
+     *
+     * @param tokens Tokens in document order
+     * @return 64-bit fingerprint
+     */
+    public static long fingerprint(List<Token> tokens) {
+        int numTokens = tokens.size();
+        long[] tokenHashes = new long[numTokens];
+        for (int i = 0; i < numTokens; i++) {
+            tokenHashes[i] = hash64(tokens.get(i).key());
+        }
+
+        int[] votes = new int[Long.SIZE];
+        int shingleSize = Math.min(SHINGLE_SIZE, numTokens);
+        for (int start = 0; start + shingleSize <= numTokens; start++) {
+            long shingleHash = tokenHashes[start];
+            for (int i = 1; i < shingleSize; i++) {
+                shingleHash = mix64(shingleHash * 31 + tokenHashes[start + i]);
+            }
+            for (int bit = 0; bit < Long.SIZE; bit++) {
+                votes[bit] += ((shingleHash >>> bit) & 1L) == 1L ? 1 : -1;
+            }
+        }
+
+        long fingerprint = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return Number of bits in which the two fingerprints differ
+     */
+    public static int distance(long fingerprint, long other) {
+        return Long.bitCount(fingerprint ^ other);
+    }
+
+    /**
+     * FNV-1a over the chars of the string, finished with a bit mixer so that all 64 bits are usable.
+     */
+    static long hash64(String s) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return mix64(hash);
+    }
+
+    /**
+     * Finalizer of MurmurHash3 (fmix64).
+     */
+    static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
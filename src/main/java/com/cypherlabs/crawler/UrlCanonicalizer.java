@@ -0,0 +1,309 @@
+package com.cypherlabs.crawler;
+
+import java.util.Set;
+
+/**
+ * Resolves hrefs and rewrites urls to one canonical form, so that the spellings of a page's url that lead
+ * to the same content are fetched once:
+ * - scheme and host are lower cased, a trailing dot of the host and the default port are dropped
+ * - percent escapes of unreserved characters are decoded, the other escapes upper cased
+ * - dot segments of the path are removed (RFC 3986 5.2.4), escaped dots included as they decode to dots,
+ *   an empty path becomes "/"
+ * - tracking parameters (utm_*, gclid, fbclid, ...) are removed from the query, an empty query dropped
+ * - the fragment is dropped, as it never reaches the server
+ *
+ * Only http and https urls are crawlable, others (mailto:, javascript:, data:, ...) canonicalize to null.
+ *
+ * Links are canonicalized by the million, so a url is scanned once into a single builder, without
+ * parsing it into a URI, and a url already canonical is returned as is.
+ */
+public class UrlCanonicalizer {
+
+    private static final Set<String> TRACKING_PARAMETERS = Set.of("gclid", "dclid", "fbclid", "msclkid",
+            "yclid", "igshid", "mc_cid", "mc_eid", "_ga", "_gl");
+
+    /**
+     * @param base Canonical url of the page the href was found in, null if unknown
+     * @param href Value of a link's href attribute
+     * @return Canonical absolute url the href points to, null if it is not crawlable or cannot be resolved
+     */
+    public static String resolve(String base, String href) {
+        String trimmed = strip(href);
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        if (schemeEnd(trimmed) > 0) {
+            return canonicalize(trimmed);
+        }
+        if (base == null) {
+            return null;
+        }
+        int authorityStart = base.indexOf("//") + 2;
+        int pathStart = indexOf(base, '/', authorityStart, base.length());
+        int queryStart = indexOf(base, '?', pathStart, base.length());
+        String absolute;
+        if (trimmed.startsWith("//")) {
+            absolute = base.substring(0, authorityStart - 2) + trimmed;
+        } else if (trimmed.charAt(0) == '/') {
+            absolute = base.substring(0, pathStart) + trimmed;
+        } else if (trimmed.charAt(0) == '?') {
+            absolute = base.substring(0, queryStart) + trimmed;
+        } else if (trimmed.charAt(0) == '#') {
+            // a fragment of the page itself
+            return base;
+        } else {
+            absolute = base.substring(0, base.lastIndexOf('/', queryStart - 1) + 1) + trimmed;
+        }
+        return canonicalize(absolute);
+    }
+
+    /**
+     * @param url Absolute url
+     * @return Canonical form of the url, null if it is not an http or https url
+     */
+    public static String canonicalize(String url) {
+        int schemeEnd = schemeEnd(url);
+        if (schemeEnd <= 0 || !url.startsWith("//", schemeEnd + 1)) {
+            return null;
+        }
+        boolean https;
+        if (schemeEnd == 4 && url.regionMatches(true, 0, "http", 0, 4)) {
+            https = false;
+        } else if (schemeEnd == 5 && url.regionMatches(true, 0, "https", 0, 5)) {
+            https = true;
+        } else {
+            return null;
+        }
+        int length = url.length();
+        int authorityStart = schemeEnd + 3;
+        int authorityEnd = authorityStart;
+        while (authorityEnd < length && "/?#".indexOf(url.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+        int fragmentStart = indexOf(url, '#', authorityEnd, length);
+        int queryStart = indexOf(url, '?', authorityEnd, fragmentStart);
+
+        StringBuilder canonical = new StringBuilder(length);
+        canonical.append(https ? "https://" : "http://");
+        if (!appendAuthority(canonical, url, authorityStart, authorityEnd, https)) {
+            return null;
+        }
+        appendPath(canonical, url, authorityEnd, queryStart);
+        if (queryStart < fragmentStart) {
+            appendQuery(canonical, url, queryStart + 1, fragmentStart);
+        }
+        return url.contentEquals(canonical) ? url : canonical.toString();
+    }
+
+    /**
+     * @return Index of the ':' ending the url's scheme, -1 if it has none
+     */
+    private static int schemeEnd(String url) {
+        if (url.isEmpty() || !isAlpha(url.charAt(0))) {
+            return -1;
+        }
+        for (int i = 1; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == ':') {
+                return i;
+            }
+            if (!isAlpha(c) && !isDigit(c) && c != '+' && c != '-' && c != '.') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean appendAuthority(StringBuilder canonical, String url, int from, int to, boolean https) {
+        int hostStart = url.lastIndexOf('@', to - 1) + 1;
+        if (hostStart > from) {
+            canonical.append(url, from, hostStart);
+        } else {
+            hostStart = from;
+        }
+        // the port colon comes after the brackets of an IPv6 host
+        int bracket = url.lastIndexOf(']', to - 1);
+        int portStart = url.lastIndexOf(':', to - 1);
+        if (portStart < hostStart || portStart < bracket) {
+            portStart = to;
+        }
+        int hostEnd = portStart;
+        if (hostEnd > hostStart && url.charAt(hostEnd - 1) == '.') {
+            hostEnd--;
+        }
+        if (hostEnd == hostStart) {
+            return false;
+        }
+        for (int i = hostStart; i < hostEnd; i++) {
+            canonical.append(Character.toLowerCase(url.charAt(i)));
+        }
+        if (portStart + 1 < to) {
+            int port = 0;
+            for (int i = portStart + 1; i < to; i++) {
+                char c = url.charAt(i);
+                if (!isDigit(c)) {
+                    return false;
+                }
+                port = port * 10 + (c - '0');
+                if (port > 65535) {
+                    return false;
+                }
+            }
+            if (port != (https ? 443 : 80)) {
+                canonical.append(':').append(port);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the path, dot segments removed: "." segments are skipped, ".." ones remove the previous segment.
+     * A segment is a dot one once its escapes are decoded, as they are in the canonical url, so that
+     * canonicalizing it again changes nothing.
+     */
+    private static void appendPath(StringBuilder canonical, String url, int from, int to) {
+        int pathStart = canonical.length();
+        int segmentStart = from;
+        while (segmentStart < to) {
+            int segmentEnd = indexOf(url, '/', segmentStart + 1, to);
+            boolean last = segmentEnd == to;
+            int dots = dotSegment(url, segmentStart + 1, segmentEnd);
+            if (dots == 1) {
+                if (last) {
+                    canonical.append('/');
+                }
+            } else if (dots == 2) {
+                int previous = canonical.lastIndexOf("/");
+                canonical.setLength(Math.max(previous, pathStart));
+                if (last) {
+                    canonical.append('/');
+                }
+            } else {
+                canonical.append('/');
+                appendEscaped(canonical, url, segmentStart + 1, segmentEnd);
+            }
+            segmentStart = segmentEnd;
+        }
+        if (canonical.length() == pathStart) {
+            canonical.append('/');
+        }
+    }
+
+    /**
+     * @return 1 for a "." segment, 2 for a ".." one, their dots possibly escaped as %2E, else 0
+     */
+    private static int dotSegment(String url, int from, int to) {
+        int dots = 0;
+        int i = from;
+        while (i < to) {
+            if (url.charAt(i) == '.') {
+                i++;
+            } else if (i + 3 <= to && url.regionMatches(true, i, "%2e", 0, 3)) {
+                i += 3;
+            } else {
+                return 0;
+            }
+            dots++;
+        }
+        return dots <= 2 ? dots : 0;
+    }
+
+    /**
+     * Appends the query without its tracking parameters, and nothing if none is left.
+     */
+    private static void appendQuery(StringBuilder canonical, String url, int from, int to) {
+        int queryStart = canonical.length();
+        int parameterStart = from;
+        while (parameterStart < to) {
+            int parameterEnd = indexOf(url, '&', parameterStart, to);
+            if (parameterEnd > parameterStart && !isTracking(url, parameterStart, parameterEnd)) {
+                canonical.append(canonical.length() == queryStart ? '?' : '&');
+                appendEscaped(canonical, url, parameterStart, parameterEnd);
+            }
+            parameterStart = parameterEnd + 1;
+        }
+    }
+
+    private static boolean isTracking(String url, int from, int to) {
+        if (url.startsWith("utm_", from)) {
+            return true;
+        }
+        int nameEnd = indexOf(url, '=', from, to);
+        // only names as short as the known ones are looked up, to spare the substring
+        return nameEnd - from <= 7 && TRACKING_PARAMETERS.contains(url.substring(from, nameEnd));
+    }
+
+    /**
+     * Appends characters, decoding escaped unreserved characters and upper casing other escapes.
+     */
+    private static void appendEscaped(StringBuilder canonical, String url, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = url.charAt(i);
+            if (c == '%' && i + 2 < to && hexValue(url.charAt(i + 1)) >= 0 && hexValue(url.charAt(i + 2)) >= 0) {
+                char decoded = (char) (hexValue(url.charAt(i + 1)) * 16 + hexValue(url.charAt(i + 2)));
+                if (isUnreserved(decoded)) {
+                    canonical.append(decoded);
+                } else {
+                    canonical.append('%')
+                            .append(Character.toUpperCase(url.charAt(i + 1)))
+                            .append(Character.toUpperCase(url.charAt(i + 2)));
+                }
+                i += 2;
+            } else {
+                canonical.append(c);
+            }
+        }
+    }
+
+    /**
+     * @return The href without surrounding whitespace, nor the tabs and line breaks browsers ignore within
+     */
+    private static String strip(String href) {
+        String stripped = href.strip();
+        if (stripped.indexOf('\n') < 0 && stripped.indexOf('\r') < 0 && stripped.indexOf('\t') < 0) {
+            return stripped;
+        }
+        StringBuilder builder = new StringBuilder(stripped.length());
+        for (int i = 0; i < stripped.length(); i++) {
+            char c = stripped.charAt(i);
+            if (c != '\n' && c != '\r' && c != '\t') {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static int indexOf(String url, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (url.charAt(i) == c) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int hexValue(char c) {
+        if (isDigit(c)) {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static boolean isUnreserved(char c) {
+        return isAlpha(c) || isDigit(c) || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -1,15 +1,17 @@
 package com.cypherlabs.crawler;
 
 import com.cypherlabs.io.IndexWriter;
+import com.cypherlabs.storage.CrawlState;
+import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.tartarus.snowball.ext.EnglishStemmer;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.file.Paths;
+import java.net.URI;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -27,59 +29,84 @@ public class Utils {
         return Arrays.stream(seedEnv.trim().split(","))
                 .map(String::trim)
                 .filter(s -> !s.isBlank())
-                .map(Url::new)
+                .map(s -> new Url(Optional.ofNullable(UrlCanonicalizer.canonicalize(s)).orElse(s)))
                 .toList();
     }
 
-    static Document fetchDocument(Url url) throws IOException {
-        return Jsoup.connect(url.address())
-                .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/122.0.0.0 Safari/537.36")
-                .get();
+    /**
+     * Fetches a url. If a previous version is known, the request is conditional on its validators
+     * (If-None-Match, If-Modified-Since), so an unchanged page costs a 304 without a body.
+     */
+    static FetchResult fetchDocument(Url url, Optional<CrawlState.DocRecord> previous) throws IOException {
+        Connection connection = Jsoup.connect(url.address())
+                .userAgent(RobotsRules.USER_AGENT);
+        previous.ifPresent(record -> {
+            if (record.etag() != null) {
+                connection.header("If-None-Match", record.etag());
+            }
+            if (record.lastModified() != null) {
+                connection.header("If-Modified-Since", record.lastModified());
+            }
+        });
+        Connection.Response response = connection.execute();
+        if (response.statusCode() == 304) {
+            return new FetchResult(null, true, response.header("ETag"), response.header("Last-Modified"), 0, null);
+        }
+        byte[] body = response.bodyAsBytes();
+        return new FetchResult(response.parse(), false, response.header("ETag"), response.header("Last-Modified"),
+                contentHash(body), body);
     }
 
-    static Elements extractLinks(Document doc) {
-        return doc.select("a");
+    /**
+     * Parses a page kept in the page store, detecting its charset the way a fetch does.
+     */
+    static Document parseStoredPage(byte[] body, Url url) throws IOException {
+        return Jsoup.parse(new ByteArrayInputStream(body), null, url.address());
     }
 
-    static List<Url> urlsNotAlreadyVisited(Set<Url> alreadyVisited, Elements links) {
-        return links.asList().stream()
-                .map(link -> link.absUrl("href"))
-                .filter(href -> !href.isBlank())
-                .map(Url::new)
-                .filter(u -> !alreadyVisited.contains(u))
-                .toList();
+    /**
+     * FNV-1a over the bytes, finished with a bit mixer. Used to tell whether a page changed, not for security.
+     */
+    static long contentHash(byte[] bytes) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : bytes) {
+            hash ^= (b & 0xFF);
+            hash *= 0x100000001B3L;
+        }
+        return SimHash.mix64(hash);
     }
 
-    static String extractText(Document doc) {
-        return doc.body().text().toLowerCase().replaceAll("[^a-z0-9 ]", " ");
+    /**
+     * @return Lower cased host of the URL, or the whole address if it has no parsable host
+     */
+    public static String host(Url url) {
+        try {
+            String host = URI.create(url.address()).getHost();
+            return host == null ? url.address() : host.toLowerCase();
+        } catch (IllegalArgumentException iae) {
+            return url.address();
+        }
     }
 
-    static List<Token> extractTokens(String text) {
-        return Arrays.stream(text.split("\\s+"))
-                .filter(t -> t.length() > 1)
-                .map(Token::new)
+    static List<Url> urlsNotAlreadyVisited(Set<Url> alreadyVisited, List<Url> urls) {
+        return urls.stream()
+                .filter(u -> !alreadyVisited.contains(u))
                 .toList();
     }
 
+    static String extractText(Document doc) {
+        return doc.body().text();
+    }
+
     static void updateIndex(List<Token> tokens, Map<Token, Set<Integer>> tokenByDocs
             , int docId) {
         tokens.forEach(token -> tokenByDocs.computeIfAbsent(token, _ -> new HashSet<>()).add(docId));
     }
 
-    public static String stem(String word) {
-        EnglishStemmer stemmer = new EnglishStemmer();
-        stemmer.setCurrent(word);
-        if (stemmer.stem()) {
-            return stemmer.getCurrent();
-        }
-
-        return word;
-    }
-
-    public static void writeIndex(Map<Token, Set<Integer>> tokenByDocs, Format format) throws IOException {
+    public static void writeIndex(Map<Token, Set<Integer>> tokenByDocs, Format format, Path outputDir) throws IOException {
         switch(format) {
-            case TXT -> IndexWriter.writeIndexToTextFile(tokenByDocs, Paths.get("program_output", indexOutputFileName()+".txt"));
-            case BINARY -> IndexWriter.writeIndexToBinaryFile(tokenByDocs, Paths.get("program_output", indexOutputFileName()+".index"));
+            case TXT -> IndexWriter.writeIndexToTextFile(tokenByDocs, outputDir.resolve(indexOutputFileName()+".txt"));
+            case BINARY -> IndexWriter.writeIndexToBinaryFile(tokenByDocs, outputDir.resolve(indexOutputFileName()+".index"));
             default ->  LOGGER.error("Unsupported index file format");
         }
     }
@@ -0,0 +1,59 @@
+package com.cypherlabs.distributed;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Cluster membership of a crawler node.
+ *
+ * @param nodeId Index of this node in nodes
+ * @param nodes Address every node listens on for peer traffic, indexed by node ID
+ */
+public record ClusterConfig(int nodeId, List<InetSocketAddress> nodes) {
+
+    public ClusterConfig {
+        if (nodeId < 0 || nodeId >= nodes.size()) {
+            throw new IllegalArgumentException("Node ID " + nodeId + " outside cluster of size " + nodes.size());
+        }
+        nodes = List.copyOf(nodes);
+    }
+
+    /**
+     * Reads cluster config from CLUSTER_NODES (comma separated host:port list) and NODE_ID env variables.
+     *
+     * @return Cluster config, or empty if CLUSTER_NODES is not set, i.e. crawler runs standalone
+     */
+    public static Optional<ClusterConfig> fromEnv() {
+        String nodesEnv = System.getenv("CLUSTER_NODES");
+        if (nodesEnv == null || nodesEnv.isBlank()) {
+            return Optional.empty();
+        }
+        String nodeIdEnv = System.getenv("NODE_ID");
+        if (nodeIdEnv == null || nodeIdEnv.isBlank()) {
+            throw new IllegalStateException("NODE_ID env variable is needed when CLUSTER_NODES is set.");
+        }
+
+        return Optional.of(new ClusterConfig(Integer.parseInt(nodeIdEnv.trim()), parseNodes(nodesEnv)));
+    }
+
+    static List<InetSocketAddress> parseNodes(String nodes) {
+        return Arrays.stream(nodes.trim().split(","))
+                .map(String::trim)
+                .filter(s -> !s.isBlank())
+                .map(s -> {
+                    int colon = s.lastIndexOf(':');
+                    return new InetSocketAddress(s.substring(0, colon), Integer.parseInt(s.substring(colon + 1)));
+                })
+                .toList();
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public boolean isCoordinator() {
+        return nodeId == 0;
+    }
+}
@@ -0,0 +1,165 @@
+package com.cypherlabs.distributed;
+
+import com.cypherlabs.crawler.Url;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Membership of one crawler process in a cluster whose nodes each own a hash partition of hosts.
+ *
+ * - URLs of hosts owned by other nodes are batched and forwarded to their owner
+ * - URLs received from peers go straight into the local crawl frontier
+ * - Node 0 coordinates global termination: it polls every node's {@link NodeStatus} and
+ *   broadcasts TERMINATE once two consecutive rounds see every node idle, with total sent equal
+ *   to total received and unchanged between the rounds. Equal counters rule out URLs in flight,
+ *   and the second round rules out a node becoming busy after it was polled.
+ */
+public class ClusterNode implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterNode.class);
+
+    static final long POLL_INTERVAL_MILLIS = 200;
+
+    private final ClusterConfig config;
+    private final HostPartitioner partitioner;
+    private final List<PeerClient> clients = new ArrayList<>();
+    private final List<UrlForwarder> forwarders = new ArrayList<>();
+    private final Set<Url> alreadyForwarded = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private PeerServer server;
+    private BooleanSupplier locallyIdle;
+    private volatile boolean terminated;
+
+    public ClusterNode(ClusterConfig config) {
+        this.config = config;
+        this.partitioner = new HostPartitioner(config.size());
+        int outboxCapacity = Integer.parseInt(Optional.ofNullable(System.getenv("CLUSTER_OUTBOX_CAPACITY"))
+                .orElse("10000"));
+        for (int node = 0; node < config.size(); node++) {
+            PeerClient client = node == config.nodeId() ? null : new PeerClient(config.nodes().get(node));
+            clients.add(client);
+            forwarders.add(client == null ? null : new UrlForwarder(client, config.nodeId(), outboxCapacity));
+        }
+    }
+
+    public int nodeId() {
+        return config.nodeId();
+    }
+
+    public boolean isLocal(Url url) {
+        return partitioner.partitionOf(url) == config.nodeId();
+    }
+
+    /**
+     * Queues a URL for its owning node. Blocks while that node's outbox is full.
+     * URLs already forwarded once are dropped, the owner keeps track of what it visited.
+     */
+    public void forward(Url url) throws InterruptedException {
+        if (alreadyForwarded.add(url)) {
+            forwarders.get(partitioner.partitionOf(url)).forward(url);
+        }
+    }
+
+    /**
+     * Starts serving peers and forwarding URLs.
+     *
+     * @param urlSink Receives URLs forwarded by peers, e.g. into the crawl frontier, which is unbounded, so
+     *                peers get no backpressure from this node
+     * @param locallyIdle Tells whether the local crawler has no work left
+     * @throws IOException If the peer port cannot be bound
+     */
+    public void start(Consumer<Url> urlSink, BooleanSupplier locallyIdle) throws IOException {
+        this.locallyIdle = locallyIdle;
+        this.server = new PeerServer(config.nodes().get(config.nodeId()).getPort(), urlSink, this::status,
+                () -> terminated = true);
+        server.start();
+        forwarders.stream()
+                .filter(f -> f != null)
+                .forEach(f -> executor.submit(f::sendLoop));
+        if (config.isCoordinator()) {
+            executor.submit(this::detectTermination);
+        }
+        LOGGER.info("Cluster node {} of {} started", config.nodeId(), config.size());
+    }
+
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    NodeStatus status() {
+        boolean idle = locallyIdle.getAsBoolean() && !server.isReceiving();
+        long sent = 0;
+        for (UrlForwarder forwarder : forwarders) {
+            if (forwarder != null) {
+                idle &= forwarder.pending() == 0;
+                sent += forwarder.sent();
+            }
+        }
+        return new NodeStatus(idle, sent, server.received());
+    }
+
+    private void detectTermination() {
+        long previousTotal = -1;
+        while (!terminated && !Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+                boolean allIdle = true;
+                long sent = 0;
+                long received = 0;
+                for (int node = 0; node < config.size(); node++) {
+                    NodeStatus status = node == config.nodeId() ? status() : clients.get(node).status();
+                    allIdle &= status.idle();
+                    sent += status.sent();
+                    received += status.received();
+                }
+                LOGGER.debug("Cluster status: allIdle={}, sent={}, received={}", allIdle, sent, received);
+                boolean quiet = allIdle && sent == received;
+                if (quiet && sent == previousTotal) {
+                    LOGGER.info("All {} nodes idle after exchanging {} urls, terminating", config.size(), sent);
+                    broadcastTerminate();
+                    terminated = true;
+                }
+                previousTotal = quiet ? sent : -1;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (IOException ioe) {
+                LOGGER.error("Failed to poll cluster status: {}", ioe.getMessage());
+                previousTotal = -1;
+                clients.stream().filter(c -> c != null).forEach(PeerClient::reset);
+            }
+        }
+    }
+
+    private void broadcastTerminate() {
+        for (PeerClient client : clients) {
+            if (client != null) {
+                try {
+                    client.terminate();
+                } catch (IOException ioe) {
+                    LOGGER.error("Failed to send termination to peer: {}", ioe.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        clients.stream().filter(c -> c != null).forEach(PeerClient::close);
+        if (server != null) {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.cypherlabs.distributed;
+
+/**
+ * Wire protocol between crawler nodes. Every request is a single type byte followed by its payload,
+ * and is answered before the next request is sent on the same connection.
+ *
+ * URL_BATCH: int sender node, long batch id, int count, then count URLs (writeUTF). Answered with ACK
+ *            once all URLs are in the receiver's crawl frontier. A sender retries a batch with the same
+ *            id until it is acknowledged and numbers its batches in increasing order, so the receiver
+ *            drops batches whose id it has already seen.
+ * STATUS:    no payload. Answered with boolean idle, long sent, long received.
+ * TERMINATE: no payload. Answered with ACK, after which the receiver finishes its crawl.
+ */
+final class ClusterProtocol {
+
+    static final byte URL_BATCH = 1;
+    static final byte STATUS = 2;
+    static final byte TERMINATE = 3;
+    static final byte ACK = 42;
+
+    private ClusterProtocol() {
+    }
+}
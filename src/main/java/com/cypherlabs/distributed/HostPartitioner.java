@@ -0,0 +1,31 @@
+package com.cypherlabs.distributed;
+
+import com.cypherlabs.crawler.Url;
+import com.cypherlabs.crawler.Utils;
+
+/**
+ * Assigns each URL to a cluster node by hashing its host.
+ *
+ * All URLs of a host land on the same node, so per host politeness and state stay local
+ * to one crawler process.
+ */
+public class HostPartitioner {
+
+    private final int numNodes;
+
+    public HostPartitioner(int numNodes) {
+        if (numNodes <= 0) {
+            throw new IllegalArgumentException("Number of nodes must be positive: " + numNodes);
+        }
+        this.numNodes = numNodes;
+    }
+
+    public int partitionOf(Url url) {
+        int h = Utils.host(url).hashCode();
+        // spread bits, as String hash codes of similar hosts differ only in low bits
+        h ^= (h >>> 16);
+        h *= 0x85EBCA6B;
+        h ^= (h >>> 13);
+        return Math.floorMod(h, numNodes);
+    }
+}
@@ -0,0 +1,11 @@
+package com.cypherlabs.distributed;
+
+/**
+ * Snapshot of a node used for global termination detection.
+ *
+ * @param idle No local work and nothing waiting to be forwarded
+ * @param sent Number of URLs forwarded to and acknowledged by other nodes
+ * @param received Number of URLs received from other nodes
+ */
+public record NodeStatus(boolean idle, long sent, long received) {
+}
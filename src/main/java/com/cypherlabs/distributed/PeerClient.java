@@ -0,0 +1,140 @@
+package com.cypherlabs.distributed;
+
+import com.cypherlabs.crawler.Url;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connection to one peer node. Requests are serialized, as the protocol is strictly request/response.
+ *
+ * Callers are virtual threads, so requests are guarded by a ReentrantLock rather than synchronized:
+ * blocking on a socket inside a monitor would pin the carrier thread.
+ */
+class PeerClient implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PeerClient.class);
+
+    static final long CONNECT_TIMEOUT_MILLIS = 30_000;
+
+    private final InetSocketAddress address;
+    private final ReentrantLock lock = new ReentrantLock();
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    PeerClient(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    void sendBatch(int sender, long batchId, List<Url> urls) throws IOException {
+        lock.lock();
+        try {
+            ensureConnected();
+            out.writeByte(ClusterProtocol.URL_BATCH);
+            out.writeInt(sender);
+            out.writeLong(batchId);
+            out.writeInt(urls.size());
+            for (Url url : urls) {
+                out.writeUTF(url.address());
+            }
+            out.flush();
+            expectAck();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    NodeStatus status() throws IOException {
+        lock.lock();
+        try {
+            ensureConnected();
+            out.writeByte(ClusterProtocol.STATUS);
+            out.flush();
+            return new NodeStatus(in.readBoolean(), in.readLong(), in.readLong());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void terminate() throws IOException {
+        lock.lock();
+        try {
+            ensureConnected();
+            out.writeByte(ClusterProtocol.TERMINATE);
+            out.flush();
+            expectAck();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void expectAck() throws IOException {
+        byte reply = in.readByte();
+        if (reply != ClusterProtocol.ACK) {
+            throw new IOException("Unexpected reply " + reply + " from peer " + address);
+        }
+    }
+
+    /**
+     * Peers start independently, so connecting retries until the peer is up or the timeout expires.
+     */
+    private void ensureConnected() throws IOException {
+        if (socket != null && !socket.isClosed()) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                Socket s = new Socket();
+                s.connect(address, 1000);
+                s.setTcpNoDelay(true);
+                socket = s;
+                in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                LOGGER.info("Connected to peer {}", address);
+                return;
+            } catch (IOException ioe) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw ioe;
+                }
+                LOGGER.debug("Peer {} not reachable yet, retrying", address);
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while connecting to " + address);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the connection after a failure, so that the next request reconnects.
+     */
+    void reset() {
+        close();
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ioe) {
+                    LOGGER.debug("Error while closing connection to {}", address, ioe);
+                }
+                socket = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
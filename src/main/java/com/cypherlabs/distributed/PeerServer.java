@@ -0,0 +1,158 @@
+package com.cypherlabs.distributed;
+
+import com.cypherlabs.crawler.Url;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Accepts connections from peer nodes and serves their requests, one virtual thread per connection.
+ *
+ * A URL batch is read in full before any of it reaches the URL sink, and a batch id already applied
+ * for its sender is acknowledged without being applied again. A sender retries a batch whose ACK got
+ * lost, so this keeps the received counter equal to what senders count as sent.
+ */
+class PeerServer implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PeerServer.class);
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Consumer<Url> urlSink;
+    private final Supplier<NodeStatus> statusSupplier;
+    private final Runnable onTerminate;
+    private final AtomicLong receivedCounter = new AtomicLong();
+    private final AtomicInteger batchesInFlight = new AtomicInteger();
+    private final Map<Integer, SenderState> senders = new ConcurrentHashMap<>();
+
+    PeerServer(int port, Consumer<Url> urlSink, Supplier<NodeStatus> statusSupplier, Runnable onTerminate)
+            throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.urlSink = urlSink;
+        this.statusSupplier = statusSupplier;
+        this.onTerminate = onTerminate;
+    }
+
+    void start() {
+        executor.submit(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    executor.submit(() -> serve(socket));
+                } catch (SocketException se) {
+                    LOGGER.debug("Peer server socket closed");
+                } catch (IOException ioe) {
+                    LOGGER.error("Error while accepting peer connection", ioe);
+                }
+            }
+        });
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    long received() {
+        return receivedCounter.get();
+    }
+
+    boolean isReceiving() {
+        return batchesInFlight.get() > 0;
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException eof) {
+                    return;
+                }
+                switch (type) {
+                    case ClusterProtocol.URL_BATCH -> receiveBatch(in, out);
+                    case ClusterProtocol.STATUS -> {
+                        NodeStatus status = statusSupplier.get();
+                        out.writeBoolean(status.idle());
+                        out.writeLong(status.sent());
+                        out.writeLong(status.received());
+                        out.flush();
+                    }
+                    case ClusterProtocol.TERMINATE -> {
+                        onTerminate.run();
+                        out.writeByte(ClusterProtocol.ACK);
+                        out.flush();
+                    }
+                    default -> throw new IOException("Unknown request type " + type);
+                }
+            }
+        } catch (IOException ioe) {
+            if (!serverSocket.isClosed()) {
+                LOGGER.error("Error while serving peer {}", socket.getRemoteSocketAddress(), ioe);
+            }
+        }
+    }
+
+    private void receiveBatch(DataInputStream in, DataOutputStream out) throws IOException {
+        batchesInFlight.incrementAndGet();
+        try {
+            int sender = in.readInt();
+            long batchId = in.readLong();
+            int count = in.readInt();
+            List<Url> urls = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                urls.add(new Url(in.readUTF()));
+            }
+            SenderState state = senders.computeIfAbsent(sender, s -> new SenderState());
+            state.lock.lock();
+            try {
+                if (batchId > state.lastBatchId) {
+                    urls.forEach(urlSink);
+                    receivedCounter.addAndGet(count);
+                    state.lastBatchId = batchId;
+                    LOGGER.debug("Received batch {} of {} urls from node {}", batchId, count, sender);
+                } else {
+                    LOGGER.debug("Dropped batch {} from node {}, already received", batchId, sender);
+                }
+            } finally {
+                state.lock.unlock();
+            }
+            out.writeByte(ClusterProtocol.ACK);
+            out.flush();
+        } finally {
+            batchesInFlight.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Last batch applied for one sender. The lock keeps a retried batch on a fresh connection from
+     * being applied while the stale connection is still applying it.
+     */
+    private static final class SenderState {
+        private final ReentrantLock lock = new ReentrantLock();
+        private long lastBatchId = -1;
+    }
+}
@@ -0,0 +1,94 @@
+package com.cypherlabs.distributed;
+
+import com.cypherlabs.crawler.Url;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Batches URLs owned by one peer node and ships them over a {@link PeerClient}.
+ *
+ * The outbox is bounded: when the peer is down or unreachable, batches are retried, the outbox fills up
+ * and {@link #forward(Url)} blocks the processing threads that discovered the URLs. A peer that is merely
+ * slow does not push back, it acknowledges batches as soon as they are in its unbounded frontier.
+ */
+class UrlForwarder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UrlForwarder.class);
+
+    static final int BATCH_SIZE = 256;
+    static final long LINGER_MILLIS = 20;
+
+    private final PeerClient client;
+    private final int sender;
+    private final BlockingQueue<Url> outbox;
+    private final AtomicLong pendingCounter = new AtomicLong();
+    private final AtomicLong sentCounter = new AtomicLong();
+    // seeded from the clock, so a restarted node does not reuse ids its peers already saw
+    private long nextBatchId = System.currentTimeMillis() * 1000;
+
+    /**
+     * @param sender Id of the local node, lets the peer recognize batches it already received
+     */
+    UrlForwarder(PeerClient client, int sender, int outboxCapacity) {
+        this.client = client;
+        this.sender = sender;
+        this.outbox = new LinkedBlockingQueue<>(outboxCapacity);
+    }
+
+    void forward(Url url) throws InterruptedException {
+        pendingCounter.incrementAndGet();
+        outbox.put(url);
+    }
+
+    /**
+     * @return Number of URLs handed to this forwarder but not yet acknowledged by the peer
+     */
+    long pending() {
+        return pendingCounter.get();
+    }
+
+    long sent() {
+        return sentCounter.get();
+    }
+
+    /**
+     * Sender loop, runs until interrupted. A batch is sent once it is full or LINGER_MILLIS passed
+     * since its first URL. Failed batches are retried under the same id, so no URL is lost while the
+     * peer restarts, and a batch the peer applied before its ACK got lost is not counted twice.
+     */
+    void sendLoop() {
+        List<Url> batch = new ArrayList<>(BATCH_SIZE);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (batch.isEmpty()) {
+                    batch.add(outbox.take());
+                    Thread.sleep(LINGER_MILLIS);
+                    outbox.drainTo(batch, BATCH_SIZE - 1);
+                }
+                client.sendBatch(sender, nextBatchId, batch);
+                sentCounter.addAndGet(batch.size());
+                pendingCounter.addAndGet(-batch.size());
+                nextBatchId++;
+                batch.clear();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (IOException ioe) {
+                LOGGER.error("Failed to forward batch of {} urls, retrying: {}", batch.size(), ioe.getMessage());
+                client.reset();
+                try {
+                    TimeUnit.MILLISECONDS.sleep(500);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.cypherlabs.graph;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Link graph over the doc IDs of a segment, in compressed sparse row form, stored by in-links: the row of
+ * a document lists the documents linking to it, which is what a pull-style {@link PageRank} iterates over.
+ *
+ * Stored as link_graph.bin:
+ * - int number of documents (N), long number of links
+ * - int[N] out-degree of each document
+ * - long[N + 1] offset of each document's row in the adjacency section, the last one being its length
+ * - adjacency section: per document, the doc IDs linking to it, sorted, as varint gaps
+ *
+ * Degrees and offsets are loaded on heap (12 bytes per document), the adjacency section, typically one to
+ * two bytes per link, is memory-mapped. Reads use absolute positions, so a graph is safe to share between
+ * threads.
+ */
+public class LinkGraph {
+
+    public static final String FILE_NAME = "link_graph.bin";
+
+    private final int nodeCount;
+    private final long edgeCount;
+    private final int[] outDegree;
+    private final long[] offsets;
+    private final MappedByteBuffer adjacency;
+
+    private LinkGraph(int nodeCount, long edgeCount, int[] outDegree, long[] offsets, MappedByteBuffer adjacency) {
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        this.outDegree = outDegree;
+        this.offsets = offsets;
+        this.adjacency = adjacency;
+    }
+
+    static long headerBytes(int nodeCount) {
+        return Integer.BYTES + Long.BYTES + (long) Integer.BYTES * nodeCount + (long) Long.BYTES * (nodeCount + 1);
+    }
+
+    static void writeHeader(DataOutputStream out, int nodeCount, long edgeCount, int[] outDegree, long[] offsets)
+            throws IOException {
+        out.writeInt(nodeCount);
+        out.writeLong(edgeCount);
+        for (int degree : outDegree) {
+            out.writeInt(degree);
+        }
+        for (long offset : offsets) {
+            out.writeLong(offset);
+        }
+    }
+
+    public static LinkGraph open(Path graphFile) throws IOException {
+        int nodeCount;
+        long edgeCount;
+        int[] outDegree;
+        long[] offsets;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(graphFile.toFile())))) {
+            nodeCount = in.readInt();
+            edgeCount = in.readLong();
+            outDegree = new int[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                outDegree[i] = in.readInt();
+            }
+            offsets = new long[nodeCount + 1];
+            for (int i = 0; i <= nodeCount; i++) {
+                offsets[i] = in.readLong();
+            }
+        }
+        if (offsets[nodeCount] > Integer.MAX_VALUE) {
+            throw new IOException("Adjacency of " + graphFile + " exceeds 2 GB and cannot be mapped");
+        }
+        MappedByteBuffer adjacency;
+        try (FileChannel channel = FileChannel.open(graphFile, StandardOpenOption.READ)) {
+            adjacency = channel.map(FileChannel.MapMode.READ_ONLY, headerBytes(nodeCount), offsets[nodeCount]);
+        }
+        return new LinkGraph(nodeCount, edgeCount, outDegree, offsets, adjacency);
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public long edgeCount() {
+        return edgeCount;
+    }
+
+    public int outDegree(int docId) {
+        return outDegree[docId];
+    }
+
+    /**
+     * @return Doc IDs of the documents linking to the document, sorted
+     */
+    public int[] inLinks(int docId) {
+        int[] sources = new int[16];
+        int count = 0;
+        int position = (int) offsets[docId];
+        int end = (int) offsets[docId + 1];
+        int source = 0;
+        while (position < end) {
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = adjacency.get(position++);
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            source += gap;
+            if (count == sources.length) {
+                sources = Arrays.copyOf(sources, count * 2);
+            }
+            sources[count++] = source;
+        }
+        return Arrays.copyOf(sources, count);
+    }
+
+    /**
+     * Sums a per-document value over the documents linking to a document, decoding its row in place.
+     */
+    double sumOverInLinks(int docId, double[] values) {
+        double sum = 0;
+        int position = (int) offsets[docId];
+        int end = (int) offsets[docId + 1];
+        int source = 0;
+        while (position < end) {
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = adjacency.get(position++);
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            source += gap;
+            sum += values[source];
+        }
+        return sum;
+    }
+}
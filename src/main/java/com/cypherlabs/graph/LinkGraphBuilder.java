@@ -0,0 +1,352 @@
+package com.cypherlabs.graph;
+
+import com.cypherlabs.crawler.Url;
+import com.cypherlabs.storage.UrlDocIdDictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Collects the links of crawled documents and turns them into a {@link LinkGraph} over doc IDs.
+ *
+ * Link targets are mostly not indexed yet when a document links to them, so links are recorded by url and
+ * only resolved to doc IDs when the graph is built, and nothing is kept on heap per url. Each document's
+ * links are appended as one row: the source url, varint number of targets, then the distinct target urls,
+ * each url as its varint length and UTF-8 bytes. Rows are buffered in memory and spilled to a temporary run
+ * file past a threshold, so heap use grows neither with the number of links nor with the number of urls. A full
+ * buffer is swapped for an empty one under the lock and written out after it, so other threads keep adding
+ * rows while a run is written.
+ *
+ * Building first resolves the rows into a temporary file of doc ID rows, dropping links from or to urls
+ * without a doc ID: varint source, varint number of targets, then the sorted targets as varint gaps. It then
+ * transposes them into in-link rows (see {@link LinkGraph}) a range of targets at a time: each pass re-reads
+ * the doc ID rows and keeps only the edges of its range, with ranges sized to a memory budget.
+ */
+public class LinkGraphBuilder implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LinkGraphBuilder.class);
+
+    private final long memoryBudgetBytes;
+    // rows come from all processing threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition spillsDone = lock.newCondition();
+    private ByteArrayOutputStream rows = new ByteArrayOutputStream();
+    private final List<Path> runs = new ArrayList<>();
+    private Path spillDir;
+    private long rowCount;
+    // runs named so far, whether written yet or not
+    private int runCount;
+    private int spillsInProgress;
+
+    /**
+     * @param memoryBudgetBytes Bound of the row buffer before spilling, and of the edges held by a
+     *                          transposition pass
+     */
+    public LinkGraphBuilder(long memoryBudgetBytes) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    /**
+     * Records the links of a document. Self links and repeated targets are ignored.
+     */
+    public void addLinks(Url source, Collection<Url> targets) {
+        List<String> targetAddresses = targets.stream()
+                .map(Url::address)
+                .filter(address -> !address.equals(source.address()))
+                .distinct()
+                .toList();
+
+        // encoded before taking the lock, so threads only contend on the copy
+        ByteArrayOutputStream row = new ByteArrayOutputStream(64 * (1 + targetAddresses.size()));
+        writeUrl(source.address(), row);
+        VarInt.write(targetAddresses.size(), row);
+        for (String address : targetAddresses) {
+            writeUrl(address, row);
+        }
+
+        ByteArrayOutputStream full = null;
+        Path run = null;
+        lock.lock();
+        try {
+            row.writeTo(rows);
+            rowCount++;
+            if (rows.size() >= memoryBudgetBytes) {
+                full = rows;
+                rows = new ByteArrayOutputStream();
+                run = spillDir().resolve("run_" + runCount++ + ".bin");
+                spillsInProgress++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) {
+            spill(full, run);
+        }
+    }
+
+    private static void writeUrl(String address, ByteArrayOutputStream out) {
+        byte[] bytes = address.getBytes(StandardCharsets.UTF_8);
+        VarInt.write(bytes.length, out);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @return The url read, or null if the stream ended before it
+     */
+    private static String readUrlOrEof(InputStream in) throws IOException {
+        int length = VarInt.readOrEof(in);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException("Truncated url");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Path spillDir() throws IOException {
+        if (spillDir == null) {
+            spillDir = Files.createTempDirectory("link-graph");
+        }
+        return spillDir;
+    }
+
+    /**
+     * Writes rows swapped out of the buffer to a run, without holding the lock. Rows that could not be
+     * written go back in the buffer.
+     */
+    private void spill(ByteArrayOutputStream full, Path run) {
+        boolean written = false;
+        try (OutputStream out = Files.newOutputStream(run)) {
+            full.writeTo(out);
+            written = true;
+            LOGGER.debug("Spilled {} KB of link rows to {}", full.size() >> 10, run);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.lock();
+            try {
+                if (written) {
+                    runs.add(run);
+                } else {
+                    full.writeTo(rows);
+                }
+                spillsInProgress--;
+                spillsDone.signalAll();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Waits for the runs being written, holding the lock.
+     */
+    private void awaitSpills() {
+        while (spillsInProgress > 0) {
+            spillsDone.awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * Builds the in-link graph of the indexed documents into a file and opens it. Links from or to urls
+     * without a doc ID (not indexed, e.g. failed, disallowed or duplicates) are dropped.
+     *
+     * @param docIds Doc IDs of the indexed documents
+     * @param graphFile File to write the graph to, see {@link LinkGraph} for its format
+     */
+    public LinkGraph build(UrlDocIdDictionary docIds, Path graphFile) throws IOException {
+        return build(docIds, null, graphFile);
+    }
+
+    /**
+     * Like {@link #build(UrlDocIdDictionary, Path)}, for a segment whose documents were renumbered.
+     *
+     * @param newDocIdByOld New doc ID of each doc ID of the dictionary, or null if they were kept
+     */
+    public LinkGraph build(UrlDocIdDictionary docIds, int[] newDocIdByOld, Path graphFile) throws IOException {
+        lock.lock();
+        try {
+            awaitSpills();
+            int nodeCount = docIds.size();
+
+            // first pass: doc ID rows and degrees
+            int[] outDegree = new int[nodeCount];
+            int[] inDegree = new int[nodeCount];
+            Path docIdRows = spillDir().resolve("doc_id_rows.bin");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(docIdRows))) {
+                for (Path run : runs) {
+                    try (InputStream in = new BufferedInputStream(Files.newInputStream(run))) {
+                        resolveRows(in, docIds, newDocIdByOld, out, outDegree, inDegree);
+                    }
+                }
+                resolveRows(new ByteArrayInputStream(rows.toByteArray()), docIds, newDocIdByOld, out, outDegree,
+                        inDegree);
+            }
+            long edgeCount = 0;
+            for (int degree : inDegree) {
+                edgeCount += degree;
+            }
+
+            // further passes: in-link rows of a range of targets at a time, 8 bytes per edge held
+            long headerBytes = LinkGraph.headerBytes(nodeCount);
+            long[] offsets = new long[nodeCount + 1];
+            int passes = 0;
+            try (RandomAccessFile file = new RandomAccessFile(graphFile.toFile(), "rw")) {
+                file.setLength(0);
+                file.seek(headerBytes);
+                DataOutputStream adjacency = new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(file.getChannel())));
+                long position = 0;
+                int rangeStart = 0;
+                while (rangeStart < nodeCount) {
+                    int rangeEnd = rangeStart;
+                    long rangeEdges = 0;
+                    do {
+                        rangeEdges += inDegree[rangeEnd++];
+                    } while (rangeEnd < nodeCount && (rangeEdges + inDegree[rangeEnd]) * Long.BYTES <= memoryBudgetBytes);
+
+                    long[] edges = new long[(int) rangeEdges];
+                    int[] count = {0};
+                    int start = rangeStart;
+                    int end = rangeEnd;
+                    forEachEdge(docIdRows, (source, target) -> {
+                        if (target >= start && target < end) {
+                            edges[count[0]++] = ((long) target << 32) | source;
+                        }
+                    });
+                    Arrays.sort(edges);
+
+                    int e = 0;
+                    for (int target = rangeStart; target < rangeEnd; target++) {
+                        offsets[target] = position;
+                        int previous = 0;
+                        for (int i = 0; i < inDegree[target]; i++, e++) {
+                            int source = (int) edges[e];
+                            position += VarInt.write(source - previous, adjacency);
+                            previous = source;
+                        }
+                    }
+                    rangeStart = rangeEnd;
+                    passes++;
+                }
+                offsets[nodeCount] = position;
+                adjacency.flush();
+
+                file.seek(0);
+                DataOutputStream header = new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(file.getChannel())));
+                LinkGraph.writeHeader(header, nodeCount, edgeCount, outDegree, offsets);
+                header.flush();
+            }
+            Files.deleteIfExists(docIdRows);
+            LOGGER.info("Built link graph of {} documents and {} links in {} passes over {} rows", nodeCount,
+                    edgeCount, passes, rowCount);
+            return LinkGraph.open(graphFile);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads back url rows and writes the links between indexed documents as doc ID rows, counting degrees.
+     */
+    private static void resolveRows(InputStream in, UrlDocIdDictionary docIds, int[] newDocIdByOld, OutputStream out,
+                                    int[] outDegree, int[] inDegree) throws IOException {
+        String sourceAddress;
+        while ((sourceAddress = readUrlOrEof(in)) != null) {
+            int source = docId(docIds, newDocIdByOld, sourceAddress);
+            int targetCount = VarInt.read(in);
+            int[] targets = new int[targetCount];
+            int count = 0;
+            for (int i = 0; i < targetCount; i++) {
+                String targetAddress = readUrlOrEof(in);
+                if (targetAddress == null) {
+                    throw new EOFException("Truncated link row");
+                }
+                int target = docId(docIds, newDocIdByOld, targetAddress);
+                if (source >= 0 && target >= 0 && target != source) {
+                    targets[count++] = target;
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            Arrays.sort(targets, 0, count);
+            VarInt.write(source, out);
+            VarInt.write(count, out);
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                VarInt.write(targets[i] - previous, out);
+                previous = targets[i];
+                outDegree[source]++;
+                inDegree[targets[i]]++;
+            }
+        }
+    }
+
+    private static int docId(UrlDocIdDictionary docIds, int[] newDocIdByOld, String address) {
+        return docIds.getDocId(new Url(address))
+                .map(docId -> newDocIdByOld == null ? docId : newDocIdByOld[docId])
+                .orElse(-1);
+    }
+
+    @FunctionalInterface
+    private interface EdgeConsumer {
+        void accept(int sourceDocId, int targetDocId);
+    }
+
+    /**
+     * Reads back the doc ID rows and hands on their edges.
+     */
+    private static void forEachEdge(Path docIdRows, EdgeConsumer consumer) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(docIdRows))) {
+            int source;
+            while ((source = VarInt.readOrEof(in)) >= 0) {
+                int targetCount = VarInt.read(in);
+                int target = 0;
+                for (int i = 0; i < targetCount; i++) {
+                    target += VarInt.read(in);
+                    consumer.accept(source, target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes spilled runs.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            awaitSpills();
+            if (spillDir != null) {
+                try (Stream<Path> files = Files.walk(spillDir)) {
+                    for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+                spillDir = null;
+            }
+            runs.clear();
+            rows.reset();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
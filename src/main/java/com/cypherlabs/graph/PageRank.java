@@ -0,0 +1,166 @@
+package com.cypherlabs.graph;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * PageRank of the documents of a {@link LinkGraph}, by power iteration over primitive arrays.
+ *
+ * Each iteration first spreads every document's rank over its out-links, then pulls, for every document,
+ * the shares of the documents linking to it. Both steps split the doc ID range with fork/join, and as a
+ * document only writes its own slot, no synchronization is needed. The rank of documents without
+ * out-links (dangling) is spread evenly over all documents, so ranks always sum to 1.
+ */
+public class PageRank {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PageRank.class);
+
+    public static final double DEFAULT_DAMPING = 0.85;
+    public static final int DEFAULT_MAX_ITERATIONS = 50;
+    public static final double DEFAULT_TOLERANCE = 1e-6;
+    // documents per fork/join leaf task
+    static final int LEAF_SIZE = 4096;
+
+    public static double[] compute(LinkGraph graph) {
+        return compute(graph, DEFAULT_DAMPING, DEFAULT_MAX_ITERATIONS, DEFAULT_TOLERANCE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Static scores of the documents of a segment: their PageRank times the number of documents. Ranks sum
+     * to 1 over a segment, so a document of a small segment would outrank a well linked one of a large
+     * segment; scaled, an average document scores 1 whatever the size of its segment, and scores of
+     * different segments compare.
+     *
+     * @return Score of each doc ID
+     */
+    public static double[] staticScores(LinkGraph graph) {
+        double[] rank = compute(graph);
+        for (int v = 0; v < rank.length; v++) {
+            rank[v] *= rank.length;
+        }
+        return rank;
+    }
+
+    /**
+     * @param damping Probability of following a link rather than jumping to a random document
+     * @param maxIterations Bound on the number of iterations
+     * @param tolerance Iterations stop once ranks change by less than this in total (L1 norm)
+     * @param pool Pool to run the iterations on
+     * @return Rank of each doc ID
+     */
+    public static double[] compute(LinkGraph graph, double damping, int maxIterations, double tolerance,
+                                   ForkJoinPool pool) {
+        int n = graph.nodeCount();
+        if (n == 0) {
+            return new double[0];
+        }
+        double[] rank = new double[n];
+        double[] next = new double[n];
+        double[] share = new double[n];
+        Arrays.fill(rank, 1.0 / n);
+
+        int iteration = 0;
+        double delta = Double.MAX_VALUE;
+        while (iteration < maxIterations && delta >= tolerance) {
+            double dangling = pool.invoke(new SpreadTask(graph, rank, share, 0, n));
+            double base = (1 - damping) / n + damping * dangling / n;
+            delta = pool.invoke(new PullTask(graph, rank, next, share, damping, base, 0, n));
+            double[] swap = rank;
+            rank = next;
+            next = swap;
+            iteration++;
+        }
+        LOGGER.info("PageRank of {} documents converged to {} in {} iterations", n, delta, iteration);
+        return rank;
+    }
+
+    /**
+     * Computes each document's share per out-link, and returns the total rank of dangling documents.
+     */
+    @SuppressWarnings("serial")
+    private static final class SpreadTask extends RecursiveTask<Double> {
+        private final LinkGraph graph;
+        private final double[] rank;
+        private final double[] share;
+        private final int from;
+        private final int to;
+
+        SpreadTask(LinkGraph graph, double[] rank, double[] share, int from, int to) {
+            this.graph = graph;
+            this.rank = rank;
+            this.share = share;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from <= LEAF_SIZE) {
+                double dangling = 0;
+                for (int v = from; v < to; v++) {
+                    int degree = graph.outDegree(v);
+                    if (degree == 0) {
+                        share[v] = 0;
+                        dangling += rank[v];
+                    } else {
+                        share[v] = rank[v] / degree;
+                    }
+                }
+                return dangling;
+            }
+            int mid = (from + to) >>> 1;
+            SpreadTask left = new SpreadTask(graph, rank, share, from, mid);
+            left.fork();
+            double right = new SpreadTask(graph, rank, share, mid, to).compute();
+            return left.join() + right;
+        }
+    }
+
+    /**
+     * Computes each document's next rank from its in-links, and returns the total change of rank.
+     */
+    @SuppressWarnings("serial")
+    private static final class PullTask extends RecursiveTask<Double> {
+        private final LinkGraph graph;
+        private final double[] rank;
+        private final double[] next;
+        private final double[] share;
+        private final double damping;
+        private final double base;
+        private final int from;
+        private final int to;
+
+        PullTask(LinkGraph graph, double[] rank, double[] next, double[] share, double damping, double base,
+                 int from, int to) {
+            this.graph = graph;
+            this.rank = rank;
+            this.next = next;
+            this.share = share;
+            this.damping = damping;
+            this.base = base;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from <= LEAF_SIZE) {
+                double delta = 0;
+                for (int v = from; v < to; v++) {
+                    next[v] = base + damping * graph.sumOverInLinks(v, share);
+                    delta += Math.abs(next[v] - rank[v]);
+                }
+                return delta;
+            }
+            int mid = (from + to) >>> 1;
+            PullTask left = new PullTask(graph, rank, next, share, damping, base, from, mid);
+            left.fork();
+            double right = new PullTask(graph, rank, next, share, damping, base, mid, to).compute();
+            return left.join() + right;
+        }
+    }
+}
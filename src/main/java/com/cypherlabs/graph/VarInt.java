@@ -0,0 +1,61 @@
+package com.cypherlabs.graph;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Variable length encoding of non-negative ints, 7 bits per byte, high bit set on all but the last byte,
+ * as used for postings.
+ */
+class VarInt {
+
+    /**
+     * @return Number of bytes written
+     */
+    static int write(int value, OutputStream out) {
+        try {
+            int bytes = 1;
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+                bytes++;
+            }
+            out.write(value);
+            return bytes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static int read(InputStream in) throws IOException {
+        int value = readOrEof(in);
+        if (value < 0) {
+            throw new EOFException("Truncated varint");
+        }
+        return value;
+    }
+
+    /**
+     * @return The value read, or -1 if the stream ended before its first byte
+     */
+    static int readOrEof(InputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return -1;
+                }
+                throw new EOFException("Truncated varint");
+            }
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
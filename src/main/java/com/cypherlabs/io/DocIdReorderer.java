@@ -0,0 +1,374 @@
+package com.cypherlabs.io;
+
+import com.cypherlabs.crawler.Token;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renumbers the documents of a segment before it is written, so that documents sharing many tokens get
+ * close doc IDs. Doc IDs are otherwise handed out in fetch completion order, which scatters related pages;
+ * with related pages next to each other the gaps of postings lists shrink, and so do their varints.
+ *
+ * Two orders are available:
+ * - URL: by host, then path and query. Pages of a site, and of a section of it, mostly share their
+ *   vocabulary, so this gets much of the benefit for the cost of a sort
+ * - BISECTION: recursive graph bisection over the document-token graph, starting from the URL order. Each
+ *   range of documents is split in two halves, and documents are swapped between the halves as long as that
+ *   lowers the estimated cost of encoding the gaps, log(n / (d + 1)) bits per posting for a token found in
+ *   d of the n documents of a half. Halves are then split in turn, in parallel with fork/join
+ */
+public class DocIdReorderer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DocIdReorderer.class);
+
+    public enum Order {
+        NONE, URL, BISECTION;
+
+        public static Order fromName(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException iae) {
+                throw new IllegalArgumentException("Unknown doc ID order: " + name, iae);
+            }
+        }
+    }
+
+    /**
+     * Size of the compact postings of a segment, before and after reordering.
+     */
+    public record Report(Order order, long postingCount, long bytesBefore, long bytesAfter) {
+
+        /**
+         * @return How many times smaller the postings got
+         */
+        public double ratio() {
+            return bytesAfter == 0 ? 1 : (double) bytesBefore / bytesAfter;
+        }
+
+        public double bitsPerPostingBefore() {
+            return postingCount == 0 ? 0 : 8.0 * bytesBefore / postingCount;
+        }
+
+        public double bitsPerPostingAfter() {
+            return postingCount == 0 ? 0 : 8.0 * bytesAfter / postingCount;
+        }
+    }
+
+    // ranges at most this large are not split further
+    static final int LEAF_SIZE = 16;
+    static final int MAX_DEPTH = 24;
+    static final int ITERATIONS = 20;
+
+    /**
+     * @param urls Url of each doc ID
+     * @param tokenByDocs Doc IDs of each token
+     * @return New doc ID of each doc ID
+     */
+    public static int[] reorder(Order order, List<String> urls, Map<Token, Set<Integer>> tokenByDocs) {
+        return switch (order) {
+            case NONE -> identity(urls.size());
+            case URL -> inverse(byUrl(urls));
+            case BISECTION -> inverse(byBisection(urls, tokenByDocs));
+        };
+    }
+
+    private static int[] identity(int n) {
+        int[] ids = new int[n];
+        Arrays.setAll(ids, i -> i);
+        return ids;
+    }
+
+    /**
+     * @param docs Old doc ID at each new position
+     * @return New position of each old doc ID
+     */
+    private static int[] inverse(int[] docs) {
+        int[] newDocIdByOld = new int[docs.length];
+        for (int i = 0; i < docs.length; i++) {
+            newDocIdByOld[docs[i]] = i;
+        }
+        return newDocIdByOld;
+    }
+
+    /**
+     * @return Old doc IDs sorted by host, then path and query
+     */
+    static int[] byUrl(List<String> urls) {
+        String[] keys = new String[urls.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = urlKey(urls.get(i));
+        }
+        return Arrays.stream(identity(keys.length)).boxed()
+                .sorted(Comparator.comparing((Integer docId) -> keys[docId]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private static String urlKey(String url) {
+        try {
+            URI uri = new URI(url);
+            if (uri.getHost() == null) {
+                return url;
+            }
+            // '\0' sorts a host before the hosts it is a prefix of, e.g. a.com before a.com.au
+            return uri.getHost().toLowerCase(Locale.ROOT) + '\0' + uri.getPort() + '\0'
+                   + Objects.toString(uri.getRawPath(), "") + '?' + Objects.toString(uri.getRawQuery(), "");
+        } catch (Exception e) {
+            return url;
+        }
+    }
+
+    static int[] byBisection(List<String> urls, Map<Token, Set<Integer>> tokenByDocs) {
+        int n = urls.size();
+        // forward index of the tokens found in at least two documents, the others cost the same anywhere
+        int[] termCount = new int[n];
+        List<Set<Integer>> postings = tokenByDocs.values().stream().filter(docIds -> docIds.size() > 1).toList();
+        for (Set<Integer> docIds : postings) {
+            for (int docId : docIds) {
+                termCount[docId]++;
+            }
+        }
+        int[] termStart = new int[n + 1];
+        for (int docId = 0; docId < n; docId++) {
+            termStart[docId + 1] = termStart[docId] + termCount[docId];
+        }
+        int[] terms = new int[termStart[n]];
+        int[] fill = Arrays.copyOf(termStart, n);
+        for (int term = 0; term < postings.size(); term++) {
+            for (int docId : postings.get(term)) {
+                terms[fill[docId]++] = term;
+            }
+        }
+
+        int[] docs = byUrl(urls);
+        // the pool and its arrays are dropped once the ordering is done, the worker threads keep nothing
+        LocalIdPool localIds = new LocalIdPool(postings.size());
+        ForkJoinPool.commonPool().invoke(new BisectTask(docs, termStart, terms, localIds, 0, n, 0));
+        return docs;
+    }
+
+    /**
+     * Arrays giving the local ID of each term, all -1 when free. A partition takes one for its duration, so
+     * there are at most as many as partitions running at once.
+     */
+    private static final class LocalIdPool {
+        private final int distinctTerms;
+        private final Queue<int[]> free = new ConcurrentLinkedQueue<>();
+
+        LocalIdPool(int distinctTerms) {
+            this.distinctTerms = distinctTerms;
+        }
+
+        int[] acquire() {
+            int[] ids = free.poll();
+            if (ids == null) {
+                ids = new int[distinctTerms];
+                Arrays.fill(ids, -1);
+            }
+            return ids;
+        }
+
+        void release(int[] ids) {
+            free.offer(ids);
+        }
+    }
+
+    /**
+     * Splits a range of documents in two halves of equal size, minimizing the cost of their tokens' gaps.
+     *
+     * The degrees of a partition are only kept for the terms found in its range, renumbered from 0, so the
+     * deeper, smaller ranges get smaller arrays. Terms are renumbered through an array indexed by term, one
+     * taken from a pool for the partition and reset before it is given back.
+     */
+    private static final class BisectTask extends RecursiveAction {
+        private final int[] docs;
+        private final int[] termStart;
+        private final int[] terms;
+        private final LocalIdPool localIds;
+        private final int from;
+        private final int to;
+        private final int depth;
+
+        BisectTask(int[] docs, int[] termStart, int[] terms, LocalIdPool localIds, int from, int to, int depth) {
+            this.docs = docs;
+            this.termStart = termStart;
+            this.terms = terms;
+            this.localIds = localIds;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE || depth >= MAX_DEPTH) {
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            partition(mid);
+            invokeAll(new BisectTask(docs, termStart, terms, localIds, from, mid, depth + 1),
+                    new BisectTask(docs, termStart, terms, localIds, mid, to, depth + 1));
+        }
+
+        private void partition(int mid) {
+            // local ID of each term of the range being partitioned, -1 for the others
+            int[] localId = localIds.acquire();
+            try {
+                partition(mid, localId, renumberTerms(localId));
+            } finally {
+                for (int i = from; i < to; i++) {
+                    for (int t = termStart[docs[i]]; t < termStart[docs[i] + 1]; t++) {
+                        localId[terms[t]] = -1;
+                    }
+                }
+                localIds.release(localId);
+            }
+        }
+
+        /**
+         * @return Number of distinct terms in the range, each given a local ID
+         */
+        private int renumberTerms(int[] localId) {
+            int localCount = 0;
+            for (int i = from; i < to; i++) {
+                for (int t = termStart[docs[i]]; t < termStart[docs[i] + 1]; t++) {
+                    if (localId[terms[t]] < 0) {
+                        localId[terms[t]] = localCount++;
+                    }
+                }
+            }
+            return localCount;
+        }
+
+        private void partition(int mid, int[] localId, int localCount) {
+            int leftSize = mid - from;
+            int rightSize = to - mid;
+            int[] leftDegree = new int[localCount];
+            int[] rightDegree = new int[localCount];
+            for (int i = from; i < to; i++) {
+                int[] degree = i < mid ? leftDegree : rightDegree;
+                for (int t = termStart[docs[i]]; t < termStart[docs[i] + 1]; t++) {
+                    degree[localId[terms[t]]]++;
+                }
+            }
+            double[] gain = new double[to - from];
+            Integer[] left = new Integer[leftSize];
+            Integer[] right = new Integer[rightSize];
+            for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                for (int i = from; i < to; i++) {
+                    boolean inLeft = i < mid;
+                    gain[i - from] = moveGain(docs[i], localId, inLeft ? leftDegree : rightDegree,
+                            inLeft ? rightDegree : leftDegree, inLeft ? leftSize : rightSize,
+                            inLeft ? rightSize : leftSize);
+                }
+                for (int i = 0; i < leftSize; i++) {
+                    left[i] = from + i;
+                }
+                for (int i = 0; i < rightSize; i++) {
+                    right[i] = mid + i;
+                }
+                Comparator<Integer> byGain = Comparator.comparingDouble((Integer i) -> gain[i - from]).reversed();
+                Arrays.sort(left, byGain);
+                Arrays.sort(right, byGain);
+                int swaps = 0;
+                for (int k = 0; k < Math.min(leftSize, rightSize); k++) {
+                    int l = left[k];
+                    int r = right[k];
+                    if (gain[l - from] + gain[r - from] <= 0) {
+                        break;
+                    }
+                    move(docs[l], localId, leftDegree, rightDegree);
+                    move(docs[r], localId, rightDegree, leftDegree);
+                    int swap = docs[l];
+                    docs[l] = docs[r];
+                    docs[r] = swap;
+                    swaps++;
+                }
+                if (swaps == 0) {
+                    break;
+                }
+            }
+        }
+
+        private void move(int doc, int[] localId, int[] fromDegree, int[] toDegree) {
+            for (int t = termStart[doc]; t < termStart[doc + 1]; t++) {
+                fromDegree[localId[terms[t]]]--;
+                toDegree[localId[terms[t]]]++;
+            }
+        }
+
+        /**
+         * @return Decrease of the estimated cost if the document moved from its half to the other
+         */
+        private double moveGain(int doc, int[] localId, int[] ownDegree, int[] otherDegree, int ownSize,
+                                int otherSize) {
+            double gain = 0;
+            for (int t = termStart[doc]; t < termStart[doc + 1]; t++) {
+                int own = ownDegree[localId[terms[t]]];
+                int other = otherDegree[localId[terms[t]]];
+                gain += cost(own, ownSize) + cost(other, otherSize)
+                        - cost(own - 1, ownSize) - cost(other + 1, otherSize);
+            }
+            return gain;
+        }
+
+        private static double cost(int degree, int size) {
+            return degree * Math.log((double) size / (degree + 1));
+        }
+    }
+
+    /**
+     * @return Postings with each doc ID replaced by its new one
+     */
+    public static Map<Token, Set<Integer>> remap(Map<Token, Set<Integer>> tokenByDocs, int[] newDocIdByOld) {
+        Map<Token, Set<Integer>> remapped = new HashMap<>(tokenByDocs.size() * 2);
+        tokenByDocs.forEach((token, docIds) -> {
+            Set<Integer> newDocIds = new HashSet<>(docIds.size() * 2);
+            docIds.forEach(docId -> newDocIds.add(newDocIdByOld[docId]));
+            remapped.put(token, newDocIds);
+        });
+        return remapped;
+    }
+
+    public static Report report(Order order, Map<Token, Set<Integer>> before, Map<Token, Set<Integer>> after) {
+        long postingCount = before.values().stream().mapToLong(Set::size).sum();
+        Report report = new Report(order, postingCount, compactBytes(before), compactBytes(after));
+        LOGGER.info("Reordered doc IDs by {}: {} postings take {} bytes instead of {} ({} instead of {} bits " +
+                        "per posting), {}x smaller", order, postingCount, report.bytesAfter(), report.bytesBefore(),
+                String.format("%.2f", report.bitsPerPostingAfter()),
+                String.format("%.2f", report.bitsPerPostingBefore()), String.format("%.2f", report.ratio()));
+        return report;
+    }
+
+    /**
+     * @return Size of the postings written compactly, see {@link PostingsUtils}
+     */
+    static long compactBytes(Map<Token, Set<Integer>> tokenByDocs) {
+        long bytes = 0;
+        for (Set<Integer> docIds : tokenByDocs.values()) {
+            int[] sorted = docIds.stream().mapToInt(Integer::intValue).sorted().toArray();
+            bytes += varIntBytes(sorted.length);
+            int previous = 0;
+            for (int docId : sorted) {
+                bytes += varIntBytes(docId - previous);
+                previous = docId;
+            }
+        }
+        return bytes;
+    }
+
+    private static int varIntBytes(int value) {
+        int bytes = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+}
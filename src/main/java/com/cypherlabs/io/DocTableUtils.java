@@ -1,8 +1,8 @@
 package com.cypherlabs.io;
 
-import com.cypherlabs.crawler.Url;
 import com.cypherlabs.storage.UrlDocIdDictionary;
 
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -16,7 +16,7 @@ public class DocTableUtils {
      *
      * Format:
      * - First writes the number of documents
-     * - Then writes each document URL using writeUTF
+     * - Then writes each document URL as by writeUTF, streamed from the dictionary's arena
      *
      * URLs are written in the order of their document IDs to allow
      * direct lookup by doc ID index.
@@ -27,11 +27,23 @@ public class DocTableUtils {
      */
     public static void writeDocTable(UrlDocIdDictionary urlDict, Path segmentDir) throws IOException {
         try(DataOutputStream opStr =
-                    new DataOutputStream(new FileOutputStream(segmentDir.resolve("doc_table.bin").toFile()))) {
-            List<Url> urls = urlDict.getAllUrlsInOrder();
+                    new DataOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(segmentDir.resolve("doc_table.bin").toFile())))) {
             opStr.writeInt(urlDict.size());
-            for(Url url : urls) {
-                opStr.writeUTF(url.address());
+            urlDict.writeRecords(opStr);
+        }
+    }
+
+    /**
+     * Writes the document table of urls listed in doc ID order, in the same format.
+     */
+    public static void writeDocTable(List<String> urls, Path segmentDir) throws IOException {
+        try(DataOutputStream opStr =
+                    new DataOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(segmentDir.resolve("doc_table.bin").toFile())))) {
+            opStr.writeInt(urls.size());
+            for (String url : urls) {
+                opStr.writeUTF(url);
             }
         }
     }
@@ -0,0 +1,397 @@
+package com.cypherlabs.io;
+
+import com.cypherlabs.analysis.Analyzer;
+import com.cypherlabs.query.LevenshteinAutomaton;
+import com.cypherlabs.query.WildcardAutomaton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Searches all segments of an index directory, i.e. every sub directory named segment_*.
+ * Deleted documents, as recorded in each segment's live docs, are never returned.
+ *
+ * A query is a single term, or a multi-term query expanded against each segment's trie dictionary:
+ * - prefix and wildcard: "craw*", "c?aw*", '?' standing for one character and '*' for any number
+ * - fuzzy: "crawler~1" or "crawler~2" (the default for "crawler~"), tokens within that many edits
+ * Each multi-term query expands to at most maxExpansions tokens per segment, the most frequent ones.
+ */
+public class IndexSearcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexSearcher.class);
+
+    public static final int DEFAULT_MAX_EXPANSIONS = 50;
+    private static final Pattern FUZZY = Pattern.compile("(.+)~(\\d?)");
+
+    private final List<SegmentReader> segments;
+    private final int maxExpansions;
+    // searcher of the first segments, whose merged suggester is shared, null if none
+    private final IndexSearcher base;
+    // segments after those of the base, all if none
+    private final List<SegmentReader> ownSegments;
+    // suggester of the own segments, merged on first use
+    private volatile Suggester mergedSuggester;
+    private final ReentrantLock suggesterLock = new ReentrantLock();
+
+    /**
+     * @param url Url of a matching document
+     * @param staticScore Query independent score of the document, see {@link SegmentReader#staticScore(int)}
+     */
+    public record Hit(String url, float staticScore) {
+    }
+
+    public IndexSearcher(List<SegmentReader> segments) {
+        this(segments, DEFAULT_MAX_EXPANSIONS);
+    }
+
+    public IndexSearcher(List<SegmentReader> segments, int maxExpansions) {
+        this.segments = List.copyOf(segments);
+        this.maxExpansions = maxExpansions;
+        this.base = null;
+        this.ownSegments = this.segments;
+    }
+
+    /**
+     * Searches the segments of a base searcher followed by more segments, sharing the base's merged
+     * suggester: only the more segments' suggesters are merged, and combined with it at query time. Meant for
+     * successive snapshots adding a few small segments to the same large ones, see {@link NearRealTimeIndex}.
+     */
+    public IndexSearcher(IndexSearcher base, List<SegmentReader> moreSegments) {
+        this(base, base.segments, moreSegments);
+    }
+
+    /**
+     * Like {@link #IndexSearcher(IndexSearcher, List)}, searching the base's segments with more of their
+     * documents deleted; the shared suggester still counts those.
+     *
+     * @param liveBaseSegments The base's segments, in the same order, possibly with more deleted documents
+     */
+    public IndexSearcher(IndexSearcher base, List<SegmentReader> liveBaseSegments, List<SegmentReader> moreSegments) {
+        if (liveBaseSegments.size() != base.segments.size()) {
+            throw new IllegalArgumentException("Expected the " + base.segments.size() + " segments of the base, got "
+                    + liveBaseSegments.size());
+        }
+        List<SegmentReader> all = new ArrayList<>(liveBaseSegments);
+        all.addAll(moreSegments);
+        this.segments = List.copyOf(all);
+        this.maxExpansions = base.maxExpansions;
+        this.base = base;
+        this.ownSegments = List.copyOf(moreSegments);
+    }
+
+    public static IndexSearcher open(Path indexDir) throws IOException {
+        List<SegmentReader> segments = new ArrayList<>();
+        try (Stream<Path> dirs = Files.list(indexDir)) {
+            for (Path dir : dirs.filter(Files::isDirectory)
+                    .filter(d -> d.getFileName().toString().startsWith("segment_"))
+                    .sorted()
+                    .toList()) {
+                segments.add(SegmentReader.open(dir));
+            }
+        }
+        LOGGER.info("Opened {} segments from {}", segments.size(), indexDir);
+        return new IndexSearcher(segments);
+    }
+
+    public List<SegmentReader> getSegments() {
+        return segments;
+    }
+
+    /**
+     * Finds the URLs of live documents matching a query. In each segment a term is analyzed with the
+     * analyzer chain recorded in the segment's metadata, the way its documents were analyzed. Wildcard
+     * patterns are only lowercased, as stemming a fragment makes little sense; the target of a fuzzy query
+     * is analyzed like a term.
+     *
+     * @param query Query term, wildcard pattern or fuzzy term
+     * @return URLs of matching documents, in segment order then doc ID order
+     */
+    public List<String> search(String query) {
+        return hits(query).stream().map(Hit::url).toList();
+    }
+
+    /**
+     * Like {@link #search(String)}, with documents boosted by their static score: the best scored first.
+     */
+    public List<Hit> searchRanked(String term) {
+        List<Hit> hits = new ArrayList<>(hits(term));
+        hits.sort(Comparator.comparingDouble(Hit::staticScore).reversed());
+        return hits;
+    }
+
+    private List<Hit> hits(String query) {
+        ParsedQuery parsed = ParsedQuery.parse(query);
+        // segments mostly share a chain, analyze the term once per distinct chain
+        Map<String, Optional<String>> tokenByAnalyzer = new HashMap<>();
+        List<Hit> hits = new ArrayList<>();
+        for (SegmentReader segment : segments) {
+            for (int docId : matchingDocIds(segment, parsed, tokenByAnalyzer, () -> false)) {
+                segment.url(docId).ifPresent(url -> hits.add(new Hit(url, segment.staticScore(docId))));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * The k best scored live documents matching a query, as {@link #searchRanked(String)} would rank them.
+     * Segments are searched in parallel on a fork/join pool, each keeping only its own k best documents in
+     * a bounded heap, and the per-segment results are merged pairwise on the way back up, so urls are only
+     * looked up for the k documents returned.
+     *
+     * The caller waits for the query at most the timeout, however busy the pool is. Once it is over, the
+     * query's tasks are cancelled and those already running stop within a few postings or terms, whether
+     * expanding, decoding or scoring.
+     *
+     * @param timeout Time after which the query is given up
+     * @throws TimeoutException If the timeout was over before every segment was searched
+     * @throws IllegalArgumentException If the query is invalid, e.g. too many edits or too long a wildcard
+     */
+    public List<Hit> searchTopK(String query, int k, ForkJoinPool pool, Duration timeout)
+            throws TimeoutException, InterruptedException {
+        ParsedQuery parsed = ParsedQuery.parse(query);
+        if (k <= 0 || segments.isEmpty()) {
+            return List.of();
+        }
+        long timeoutNanos = timeout.toNanos();
+        if (timeoutNanos <= 0) {
+            throw new TimeoutException("Query " + query + " timed out before it started");
+        }
+        TopKTask task = new TopKTask(parsed, k, System.nanoTime() + timeoutNanos, new ConcurrentHashMap<>(), 0,
+                segments.size());
+        List<ScoredDoc> top;
+        try {
+            top = pool.submit(task).get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | InterruptedException e) {
+            task.timedOut.set(true);
+            task.cancel(true);
+            throw e;
+        } catch (ExecutionException ee) {
+            throw ee.getCause() instanceof RuntimeException re ? re : new RuntimeException(ee.getCause());
+        }
+        if (task.timedOut.get()) {
+            throw new TimeoutException("Query " + query + " timed out after " + timeout.toMillis() + " ms");
+        }
+        List<Hit> hits = new ArrayList<>(top.size());
+        for (ScoredDoc doc : top) {
+            segments.get(doc.segment()).url(doc.docId()).ifPresent(url -> hits.add(new Hit(url, doc.score())));
+        }
+        return hits;
+    }
+
+    /**
+     * Autocompletes a prefix with the tokens found in most documents, over all segments: a token's weight is
+     * the sum of its document frequencies. The segments' suggesters are merged once per searcher, on the first
+     * call; a searcher built on a base one only merges its more segments' suggesters, and combines them with
+     * the base's at query time, see {@link Suggester#suggest(Suggester, Suggester, String, int)}.
+     *
+     * @param prefix Prefix of a token as typed, only lowercased as tokens are stemmed
+     * @return The k heaviest tokens starting with the prefix, heaviest first
+     */
+    public List<Suggester.Suggestion> suggest(String prefix, int k) {
+        if (segments.isEmpty()) {
+            return List.of();
+        }
+        String lowercased = prefix.toLowerCase(Locale.ROOT);
+        if (base == null || base.segments.isEmpty()) {
+            return suggester().suggest(lowercased, k);
+        }
+        if (ownSegments.isEmpty()) {
+            return base.suggest(lowercased, k);
+        }
+        return Suggester.suggest(base.suggester(), suggester(), lowercased, k);
+    }
+
+    /**
+     * @return Suggester of the own segments, of which there is at least one
+     */
+    private Suggester suggester() {
+        if (ownSegments.size() == 1) {
+            return ownSegments.getFirst().suggester();
+        }
+        Suggester merged = mergedSuggester;
+        if (merged == null) {
+            suggesterLock.lock();
+            try {
+                merged = mergedSuggester;
+                if (merged == null) {
+                    merged = Suggester.merge(ownSegments.stream().map(SegmentReader::suggester).toList());
+                    mergedSuggester = merged;
+                    LOGGER.info("Merged the suggesters of {} segments: {} nodes, {} bytes", ownSegments.size(),
+                            merged.nodeCount(), merged.sizeInBytes());
+                }
+            } finally {
+                suggesterLock.unlock();
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * A query split into its kind and term, the same for every segment.
+     */
+    private record ParsedQuery(String term, boolean fuzzy, int maxEdits, WildcardAutomaton wildcard) {
+
+        static ParsedQuery parse(String query) {
+            Matcher fuzzy = FUZZY.matcher(query);
+            String term = fuzzy.matches() ? fuzzy.group(1) : query;
+            int maxEdits = fuzzy.matches() && !fuzzy.group(2).isEmpty() ? Integer.parseInt(fuzzy.group(2))
+                    : LevenshteinAutomaton.MAX_EDITS;
+            WildcardAutomaton wildcard = !fuzzy.matches() && WildcardAutomaton.isWildcard(query)
+                    ? new WildcardAutomaton(query.toLowerCase(Locale.ROOT)) : null;
+            if (maxEdits > LevenshteinAutomaton.MAX_EDITS) {
+                throw new IllegalArgumentException("Edit distance must be within [0, "
+                        + LevenshteinAutomaton.MAX_EDITS + "]: " + maxEdits);
+            }
+            return new ParsedQuery(term, fuzzy.matches(), maxEdits, wildcard);
+        }
+    }
+
+    /**
+     * @param stop Asked while terms are expanded and postings decoded, gives up once it answers true; the doc
+     *             IDs returned are then incomplete
+     */
+    private int[] matchingDocIds(SegmentReader segment, ParsedQuery query,
+                                 Map<String, Optional<String>> tokenByAnalyzer, BooleanSupplier stop) {
+        if (query.wildcard() != null) {
+            return segment.livePostings(query.wildcard(), maxExpansions, stop);
+        }
+        Optional<String> token = tokenByAnalyzer.computeIfAbsent(segment.getMeta().analyzer(),
+                spec -> Analyzer.fromSpec(spec).analyzeTerm(query.term()));
+        if (query.fuzzy()) {
+            // a misspelling may be dropped by the chain, e.g. as too short, look for it as typed then
+            String target = token.orElse(query.term().toLowerCase(Locale.ROOT));
+            return segment.livePostings(new LevenshteinAutomaton(target, query.maxEdits()), maxExpansions, stop);
+        }
+        return token.map(t -> segment.livePostings(t, stop)).orElse(new int[0]);
+    }
+
+    private record ScoredDoc(int segment, int docId, float score) {
+    }
+
+    // best first: highest score, then segment and doc ID order as in searchRanked
+    private static final Comparator<ScoredDoc> BEST_FIRST = Comparator.comparingDouble((ScoredDoc d) -> d.score())
+            .reversed()
+            .thenComparingInt(ScoredDoc::segment)
+            .thenComparingInt(ScoredDoc::docId);
+
+    /**
+     * Searches a range of segments, splitting it in halves down to one segment per task.
+     */
+    private final class TopKTask extends RecursiveTask<List<ScoredDoc>> {
+        // the deadline is checked every 1024 postings of a segment, as they are decoded and as they are scored
+        private static final int DEADLINE_CHECK_MASK = 1023;
+
+        private final ParsedQuery query;
+        private final int k;
+        private final long deadlineNanos;
+        private final Map<String, Optional<String>> tokenByAnalyzer;
+        private final int from;
+        private final int to;
+        // shared by all the tasks of a query, set once its deadline is over or its caller gave up
+        private final AtomicBoolean timedOut;
+
+        TopKTask(ParsedQuery query, int k, long deadlineNanos, Map<String, Optional<String>> tokenByAnalyzer,
+                 int from, int to) {
+            this(query, k, deadlineNanos, tokenByAnalyzer, from, to, new AtomicBoolean());
+        }
+
+        private TopKTask(ParsedQuery query, int k, long deadlineNanos, Map<String, Optional<String>> tokenByAnalyzer,
+                         int from, int to, AtomicBoolean timedOut) {
+            this.query = query;
+            this.k = k;
+            this.deadlineNanos = deadlineNanos;
+            this.tokenByAnalyzer = tokenByAnalyzer;
+            this.from = from;
+            this.to = to;
+            this.timedOut = timedOut;
+        }
+
+        @Override
+        protected List<ScoredDoc> compute() {
+            if (to - from == 1) {
+                return searchSegment();
+            }
+            int mid = (from + to) >>> 1;
+            TopKTask left = new TopKTask(query, k, deadlineNanos, tokenByAnalyzer, from, mid, timedOut);
+            left.fork();
+            List<ScoredDoc> right = new TopKTask(query, k, deadlineNanos, tokenByAnalyzer, mid, to, timedOut).compute();
+            return merge(left.join(), right);
+        }
+
+        private boolean isOver() {
+            if (timedOut.get() || System.nanoTime() - deadlineNanos > 0) {
+                timedOut.set(true);
+                return true;
+            }
+            return false;
+        }
+
+        private List<ScoredDoc> searchSegment() {
+            if (isOver()) {
+                return List.of();
+            }
+            SegmentReader segment = segments.get(from);
+            int[] docIds = matchingDocIds(segment, query, tokenByAnalyzer, this::isOver);
+            if (isOver()) {
+                // expanding or decoding was given up, the doc IDs are incomplete
+                return List.of();
+            }
+            // worst of the k best at the head
+            PriorityQueue<ScoredDoc> best = new PriorityQueue<>(k + 1, BEST_FIRST.reversed());
+            for (int i = 0; i < docIds.length; i++) {
+                if ((i & DEADLINE_CHECK_MASK) == DEADLINE_CHECK_MASK && isOver()) {
+                    return List.of();
+                }
+                int docId = docIds[i];
+                ScoredDoc doc = new ScoredDoc(from, docId, segment.staticScore(docId));
+                if (best.size() < k) {
+                    best.add(doc);
+                } else if (BEST_FIRST.compare(doc, best.peek()) < 0) {
+                    best.poll();
+                    best.add(doc);
+                }
+            }
+            List<ScoredDoc> top = new ArrayList<>(best);
+            top.sort(BEST_FIRST);
+            return top;
+        }
+
+        private List<ScoredDoc> merge(List<ScoredDoc> left, List<ScoredDoc> right) {
+            List<ScoredDoc> merged = new ArrayList<>(Math.min(k, left.size() + right.size()));
+            int l = 0;
+            int r = 0;
+            while (merged.size() < k && (l < left.size() || r < right.size())) {
+                if (r == right.size() || (l < left.size() && BEST_FIRST.compare(left.get(l), right.get(r)) <= 0)) {
+                    merged.add(left.get(l++));
+                } else {
+                    merged.add(right.get(r++));
+                }
+            }
+            return merged;
+        }
+    }
+}
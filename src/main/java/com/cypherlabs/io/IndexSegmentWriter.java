@@ -1,5 +1,6 @@
 package com.cypherlabs.io;
 
+import com.cypherlabs.analysis.Analyzer;
 import com.cypherlabs.crawler.Token;
 import com.cypherlabs.crawler.Url;
 import com.cypherlabs.storage.UrlDocIdDictionary;
@@ -11,6 +12,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 
 public class IndexSegmentWriter {
@@ -22,18 +25,66 @@ public class IndexSegmentWriter {
      * This includes:
      * - Writing the postings list (postings.bin)
      * - Writing the token dictionary (both sorted and fixed-width)
+     * - Writing the autocompletion suggester (suggest.bin)
      * - Writing the document table (doc_table.bin)
+     * - Writing the segment metadata (segment.meta)
      *
      * @param tokenByDocs Map of tokens to the set of document IDs they appear in
      * @param urlDict Mapping between document IDs and their corresponding URLs
      * @param segmentDir Directory where all segment files will be written
      * @param compact Flag for writing compactly using (delta+var int) or with fixed byte length
+     * @param analyzerSpec Spec of the analyzer chain the tokens were produced by, recorded in segment.meta
      * @throws IOException If any I/O error occurs during writing
      */
-    public static void writeSegment(Map<Token, Set<Integer>> tokenByDocs, UrlDocIdDictionary urlDict, Path segmentDir, boolean compact) throws IOException {
+    public static void writeSegment(Map<Token, Set<Integer>> tokenByDocs, UrlDocIdDictionary urlDict, Path segmentDir,
+                                    boolean compact, String analyzerSpec) throws IOException {
+        writeSegment(tokenByDocs, urlDict, segmentDir, compact, analyzerSpec, DocIdReorderer.Order.NONE);
+    }
+
+    /**
+     * Writes a segment whose documents are renumbered first, see {@link DocIdReorderer}. Doc IDs kept
+     * elsewhere, e.g. in the crawl state, must be mapped to the new ones.
+     *
+     * @param order Order to renumber documents in, NONE to keep the dictionary's doc IDs
+     * @return New doc ID of each doc ID of the dictionary, empty if documents were not renumbered
+     */
+    public static Optional<int[]> writeSegment(Map<Token, Set<Integer>> tokenByDocs, UrlDocIdDictionary urlDict,
+                                               Path segmentDir, boolean compact, String analyzerSpec,
+                                               DocIdReorderer.Order order) throws IOException {
         Files.createDirectories(segmentDir);
-        Map<Token, Long> tokenByOffSet =  PostingsUtils.writePostings(tokenByDocs, segmentDir, compact);
+        int[] newDocIdByOld = null;
+        Map<Token, Set<Integer>> postings = tokenByDocs;
+        if (order != DocIdReorderer.Order.NONE) {
+            List<String> urls = urlDict.getAllUrlsInOrder().stream().map(Url::address).toList();
+            newDocIdByOld = DocIdReorderer.reorder(order, urls, tokenByDocs);
+            postings = DocIdReorderer.remap(tokenByDocs, newDocIdByOld);
+            DocIdReorderer.report(order, tokenByDocs, postings);
+            String[] urlByNewDocId = new String[urls.size()];
+            for (int docId = 0; docId < urls.size(); docId++) {
+                urlByNewDocId[newDocIdByOld[docId]] = urls.get(docId);
+            }
+            DocTableUtils.writeDocTable(Arrays.asList(urlByNewDocId), segmentDir);
+        } else {
+            DocTableUtils.writeDocTable(urlDict, segmentDir);
+        }
+        Map<Token, Long> tokenByOffSet =  PostingsUtils.writePostings(postings, segmentDir, compact);
         TokenDictUtils.writeTokenDictionary(tokenByOffSet, segmentDir);
-        DocTableUtils.writeDocTable(urlDict, segmentDir);
+        SortedMap<String, Set<Integer>> docIdsByToken = new TreeMap<>();
+        postings.forEach((token, docIds) -> docIdsByToken.put(token.key(), docIds));
+        Suggester.build(docIdsByToken).write(segmentDir);
+        SegmentMetaUtils.writeSegmentMeta(new SegmentMeta(segmentDir.getFileName().toString(), tokenByDocs.size(),
+                urlDict.size(), Instant.now().truncatedTo(ChronoUnit.SECONDS).toString(), compact, analyzerSpec),
+                segmentDir);
+        return Optional.ofNullable(newDocIdByOld);
+    }
+
+    /**
+     * Writes a segment whose tokens were produced by the default analyzer chain.
+     *
+     * @see #writeSegment(Map, UrlDocIdDictionary, Path, boolean, String)
+     */
+    public static void writeSegment(Map<Token, Set<Integer>> tokenByDocs, UrlDocIdDictionary urlDict, Path segmentDir,
+                                    boolean compact) throws IOException {
+        writeSegment(tokenByDocs, urlDict, segmentDir, compact, Analyzer.DEFAULT_SPEC);
     }
 }
@@ -0,0 +1,70 @@
+package com.cypherlabs.io;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.Collection;
+
+public class LiveDocsUtils {
+
+    static final String FILE_NAME = "live_docs.bin";
+
+    /**
+     * Reads the live docs bitset (live_docs.bin) of a segment.
+     *
+     * Format:
+     * - int number of documents in the segment
+     * - int number of 64-bit words, then the words of the bitset (bit set = document is live)
+     *
+     * A segment without deletions has no live_docs.bin, and all its documents are live.
+     *
+     * @param segmentDir Path to the segment directory
+     * @param docCount Number of documents in the segment
+     * @return Bitset with a set bit for every live doc ID
+     * @throws IOException If an I/O error occurs
+     */
+    public static BitSet readLiveDocs(Path segmentDir, int docCount) throws IOException {
+        Path file = segmentDir.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            BitSet allLive = new BitSet(docCount);
+            allLive.set(0, docCount);
+            return allLive;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+            in.readInt();
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            return BitSet.valueOf(words);
+        }
+    }
+
+    /**
+     * Clears the given doc IDs from a segment's live docs and rewrites live_docs.bin.
+     * The file is replaced atomically, so a reader sees either the old or the new bitset.
+     *
+     * @param segmentDir Path to the segment directory
+     * @param docCount Number of documents in the segment
+     * @param deletedDocIds Doc IDs to mark as deleted
+     * @throws IOException If an I/O error occurs
+     */
+    public static void markDeleted(Path segmentDir, int docCount, Collection<Integer> deletedDocIds) throws IOException {
+        BitSet liveDocs = readLiveDocs(segmentDir, docCount);
+        for (int docId : deletedDocIds) {
+            liveDocs.clear(docId);
+        }
+        Path tmp = segmentDir.resolve(FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp.toFile())))) {
+            long[] words = liveDocs.toLongArray();
+            out.writeInt(docCount);
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+        Files.move(tmp, segmentDir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
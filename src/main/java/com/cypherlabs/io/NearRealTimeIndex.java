@@ -0,0 +1,272 @@
+package com.cypherlabs.io;
+
+import com.cypherlabs.crawler.Token;
+import com.cypherlabs.crawler.Url;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Makes documents searchable while a crawl is still going, without waiting for its segment to be written.
+ *
+ * Indexing threads only append documents to a lock-free queue. A refresher thread drains the queue every
+ * {@link RefreshPolicy#interval()}, or as soon as {@link RefreshPolicy#maxDocs()} documents are pending,
+ * turns the documents into a small in-memory segment (see {@link SegmentReader#inMemory}) and publishes
+ * it, next to the segments already on disk, through a {@link SearcherManager}.
+ *
+ * Refreshing often gives many small segments, so they are merged by tiers: a segment's level is
+ * log base MERGE_FACTOR of its document count, and as soon as the newest MERGE_FACTOR segments share a
+ * level they are merged into one of the next level. Every document is thus merged about log(N) times,
+ * and the number of in-memory segments stays logarithmic in the number of documents.
+ *
+ * Every snapshot is searched by a searcher built on the one of the segments on disk, so their suggesters are
+ * merged once for all snapshots, and only those of the in-memory segments per refresh.
+ *
+ * A document of the segments on disk replaced or removed during the crawl, see {@link #delete}, is hidden from
+ * the snapshots from the next refresh on, so a changed page is not found twice. Suggestion weights still count
+ * it until its segment is rewritten.
+ *
+ * <pre>
+ * try (NearRealTimeIndex index = NearRealTimeIndex.start(baseSegments, analyzerSpec, policy)) {
+ *     index.add(url, tokens);
+ * }
+ * </pre>
+ */
+public class NearRealTimeIndex implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NearRealTimeIndex.class);
+
+    static final int MERGE_FACTOR = 8;
+
+    private record PendingDoc(Url url, List<Token> tokens) {
+    }
+
+    private record DeletedDoc(String segmentId, int docId) {
+    }
+
+    private final RefreshPolicy policy;
+    private final String analyzerSpec;
+    private final IndexSearcher baseSearcher;
+    // deleted doc IDs of each segment on disk, by segment ID, applied at refresh
+    private final Map<String, BitSet> deletedDocsBySegment = new HashMap<>();
+    private final Queue<DeletedDoc> pendingDeletes = new ConcurrentLinkedQueue<>();
+    private final SearcherManager searcherManager;
+    private final Queue<PendingDoc> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // released once maxDocs documents are pending, to refresh before the interval is over
+    private final Semaphore refreshRequest = new Semaphore(0);
+    // refreshes come from the refresher thread and from close, indexing threads never take it
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final List<SegmentReader> ramSegments = new ArrayList<>();
+    private Thread refresher;
+    private int refreshCount;
+    private volatile boolean closed;
+
+    private NearRealTimeIndex(List<SegmentReader> baseSegments, String analyzerSpec, RefreshPolicy policy) {
+        this.policy = policy;
+        this.analyzerSpec = analyzerSpec;
+        this.baseSearcher = new IndexSearcher(baseSegments);
+        this.searcherManager = new SearcherManager(baseSearcher);
+    }
+
+    /**
+     * Creates the index and starts its refresher thread, once the index is fully constructed.
+     *
+     * @param baseSegments Segments already on disk, searched before the in-memory ones
+     * @param analyzerSpec Analyzer chain the added documents were analyzed with
+     */
+    public static NearRealTimeIndex start(List<SegmentReader> baseSegments, String analyzerSpec,
+                                          RefreshPolicy policy) {
+        NearRealTimeIndex index = new NearRealTimeIndex(baseSegments, analyzerSpec, policy);
+        index.refresher = Thread.ofPlatform().daemon().name("nrt-refresher").start(index::refreshLoop);
+        return index;
+    }
+
+    public SearcherManager getSearcherManager() {
+        return searcherManager;
+    }
+
+    /**
+     * Queues an indexed document, to be searchable after the next refresh. Never blocks.
+     *
+     * @param tokens Kept as is until the refresh, not copied, e.g. the distinct tokens the crawler also adds
+     *               to its index
+     */
+    public void add(Url url, List<Token> tokens) {
+        pending.add(new PendingDoc(url, tokens));
+        if (pendingCount.incrementAndGet() >= policy.maxDocs()) {
+            refreshRequest.release();
+        }
+    }
+
+    /**
+     * Hides a document of the segments on disk from the next refresh on, e.g. the version of a page indexed by
+     * an earlier crawl which was fetched again or removed. Never blocks.
+     *
+     * @param segmentId ID of the segment, documents of other segments are left alone
+     */
+    public void delete(String segmentId, int docId) {
+        pendingDeletes.add(new DeletedDoc(segmentId, docId));
+    }
+
+    private void refreshLoop() {
+        while (!closed) {
+            try {
+                refreshRequest.tryAcquire(policy.interval().toNanos(), TimeUnit.NANOSECONDS);
+                refreshRequest.drainPermits();
+            } catch (InterruptedException ie) {
+                // interrupted by close, which refreshes one last time itself
+                return;
+            }
+            refresh();
+        }
+    }
+
+    /**
+     * Publishes the documents added and deleted since the last refresh, if any.
+     *
+     * @return Whether a new snapshot was published
+     */
+    public boolean refresh() {
+        refreshLock.lock();
+        try {
+            List<PendingDoc> docs = new ArrayList<>();
+            PendingDoc doc;
+            while ((doc = pending.poll()) != null) {
+                docs.add(doc);
+            }
+            boolean deleted = applyDeletes();
+            if (docs.isEmpty() && !deleted) {
+                return false;
+            }
+            pendingCount.addAndGet(-docs.size());
+
+            SortedMap<String, List<Integer>> docIdsByToken = new TreeMap<>();
+            List<String> docTable = new ArrayList<>(docs.size());
+            for (PendingDoc added : docs) {
+                int docId = docTable.size();
+                docTable.add(added.url().address());
+                // doc IDs are added in order, so each list stays sorted
+                added.tokens().stream().map(Token::key).distinct()
+                        .forEach(token -> docIdsByToken.computeIfAbsent(token, _ -> new ArrayList<>()).add(docId));
+            }
+            SortedMap<String, int[]> postingsByToken = new TreeMap<>();
+            docIdsByToken.forEach((token, docIds) ->
+                    postingsByToken.put(token, docIds.stream().mapToInt(Integer::intValue).toArray()));
+            if (!docTable.isEmpty()) {
+                ramSegments.add(SegmentReader.inMemory(nextSegmentName(), analyzerSpec, postingsByToken, docTable));
+                mergeTiers();
+            }
+
+            List<SegmentReader> liveBaseSegments = baseSearcher.getSegments().stream()
+                    .map(segment -> Optional.ofNullable(deletedDocsBySegment.get(segment.getMeta().segmentId()))
+                            .map(segment::withDeleted).orElse(segment))
+                    .toList();
+            searcherManager.publish(new IndexSearcher(baseSearcher, liveBaseSegments, ramSegments));
+            LOGGER.debug("Refreshed {} documents, {} in-memory segments", docs.size(), ramSegments.size());
+            return true;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * @return Whether a document of the segments on disk was deleted
+     */
+    private boolean applyDeletes() {
+        Set<String> baseSegmentIds = new HashSet<>();
+        baseSearcher.getSegments().forEach(segment -> baseSegmentIds.add(segment.getMeta().segmentId()));
+        boolean deleted = false;
+        DeletedDoc doc;
+        while ((doc = pendingDeletes.poll()) != null) {
+            if (baseSegmentIds.contains(doc.segmentId())) {
+                deletedDocsBySegment.computeIfAbsent(doc.segmentId(), _ -> new BitSet()).set(doc.docId());
+                deleted = true;
+            }
+        }
+        return deleted;
+    }
+
+    private void mergeTiers() {
+        while (ramSegments.size() >= MERGE_FACTOR) {
+            List<SegmentReader> newest = ramSegments.subList(ramSegments.size() - MERGE_FACTOR, ramSegments.size());
+            int level = level(newest.getFirst());
+            if (newest.stream().anyMatch(segment -> level(segment) != level)) {
+                return;
+            }
+            SegmentReader merged = merge(newest);
+            newest.clear();
+            ramSegments.add(merged);
+        }
+    }
+
+    static int level(SegmentReader segment) {
+        int level = 0;
+        for (long docs = segment.docCount(); docs >= MERGE_FACTOR; docs /= MERGE_FACTOR) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Concatenates segments, shifting each one's doc IDs by the number of documents before it.
+     */
+    private SegmentReader merge(List<SegmentReader> segments) {
+        SortedMap<String, int[]> postingsByToken = new TreeMap<>();
+        List<String> docTable = new ArrayList<>();
+        for (SegmentReader segment : segments) {
+            int docBase = docTable.size();
+            for (String token : segment.tokens()) {
+                int[] docIds = segment.postings(token);
+                int[] previous = postingsByToken.getOrDefault(token, new int[0]);
+                int[] concatenated = Arrays.copyOf(previous, previous.length + docIds.length);
+                for (int i = 0; i < docIds.length; i++) {
+                    concatenated[previous.length + i] = docBase + docIds[i];
+                }
+                postingsByToken.put(token, concatenated);
+            }
+            for (int docId = 0; docId < segment.docCount(); docId++) {
+                docTable.add(segment.url(docId).orElseThrow());
+            }
+        }
+        return SegmentReader.inMemory(nextSegmentName(), analyzerSpec, postingsByToken, docTable);
+    }
+
+    private String nextSegmentName() {
+        return String.format("nrt_%06d", ++refreshCount);
+    }
+
+    /**
+     * @return Number of in-memory segments of the current snapshot
+     */
+    public int ramSegmentCount() {
+        refreshLock.lock();
+        try {
+            return ramSegments.size();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the refresher and publishes the documents still pending. Snapshots stay searchable.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        refresher.interrupt();
+        try {
+            refresher.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        refresh();
+    }
+}
@@ -77,7 +77,7 @@ public class PostingsUtils {
         return tokenByOffSet;
     }
 
-    private static void writeVarInt(int value, DataOutputStream out) throws IOException {
+    static void writeVarInt(int value, DataOutputStream out) throws IOException {
         while ((value & ~0x7F) != 0) {
             out.writeByte((value & 0x7F) | 0x80);
             value >>>= 7;
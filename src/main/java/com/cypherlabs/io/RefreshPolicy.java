@@ -0,0 +1,34 @@
+package com.cypherlabs.io;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * When documents indexed during a crawl are made searchable, see {@link NearRealTimeIndex}.
+ *
+ * @param interval Longest time between refreshes
+ * @param maxDocs Number of pending documents that triggers a refresh before the interval is over
+ */
+public record RefreshPolicy(Duration interval, int maxDocs) {
+
+    public RefreshPolicy {
+        if (interval.isNegative() || interval.isZero() || maxDocs < 1) {
+            throw new IllegalArgumentException("Refresh interval and docs must be positive: " + interval + ", " + maxDocs);
+        }
+    }
+
+    /**
+     * Reads the policy from env variables NRT_REFRESH_SECONDS (default 1) and NRT_REFRESH_DOCS (default 1000).
+     *
+     * @return Empty, i.e. no search during the crawl, unless one of them is set
+     */
+    public static Optional<RefreshPolicy> fromEnv() {
+        Optional<String> seconds = Optional.ofNullable(System.getenv("NRT_REFRESH_SECONDS")).filter(s -> !s.isBlank());
+        Optional<String> docs = Optional.ofNullable(System.getenv("NRT_REFRESH_DOCS")).filter(s -> !s.isBlank());
+        if (seconds.isEmpty() && docs.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new RefreshPolicy(Duration.ofSeconds(Long.parseLong(seconds.orElse("1"))),
+                Integer.parseInt(docs.orElse("1000"))));
+    }
+}
@@ -0,0 +1,84 @@
+package com.cypherlabs.io;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out point-in-time snapshots of a changing list of segments. A snapshot is immutable and keeps
+ * answering the same way however many refreshes happen after it was taken.
+ *
+ * Snapshots are not released: an in-memory segment is heap only and shared by the snapshots published after
+ * it, so it is garbage collected once the last snapshot referencing it is no longer used. Taking a snapshot
+ * never blocks, not even while one is being published.
+ *
+ * <pre>
+ * SearcherManager.Snapshot snapshot = manager.current();
+ * List&lt;String&gt; urls = snapshot.searcher().search("crawler");
+ * </pre>
+ */
+public class SearcherManager implements Closeable {
+
+    public record Snapshot(long generation, IndexSearcher searcher) {
+    }
+
+    private final AtomicReference<Snapshot> current;
+    // publishers are serialized, readers never take it
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private volatile boolean closed;
+
+    public SearcherManager(List<SegmentReader> segments) {
+        this(new IndexSearcher(segments));
+    }
+
+    public SearcherManager(IndexSearcher searcher) {
+        this.current = new AtomicReference<>(new Snapshot(0, searcher));
+    }
+
+    /**
+     * @return The current snapshot
+     */
+    public Snapshot current() {
+        if (closed) {
+            throw new IllegalStateException("Searcher manager is closed");
+        }
+        return current.get();
+    }
+
+    /**
+     * Makes the segments the current snapshot, for every later {@link #current()}.
+     */
+    public void publish(List<SegmentReader> segments) {
+        publish(new IndexSearcher(segments));
+    }
+
+    /**
+     * Makes the searcher the current snapshot, e.g. one sharing the merged suggester of the previous one's
+     * segments, see {@link IndexSearcher#IndexSearcher(IndexSearcher, List)}.
+     */
+    public void publish(IndexSearcher searcher) {
+        publishLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Searcher manager is closed");
+            }
+            current.set(new Snapshot(current.get().generation() + 1, searcher));
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    /**
+     * Stops handing out snapshots; snapshots already taken stay usable.
+     */
+    @Override
+    public void close() {
+        publishLock.lock();
+        try {
+            closed = true;
+        } finally {
+            publishLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.cypherlabs.io;
+
+/**
+ * Metadata of an index segment, stored in segment.meta.
+ *
+ * @param segmentId Name of the segment directory
+ * @param tokenCount Number of distinct tokens
+ * @param docCount Number of documents, i.e. entries in doc_table.bin
+ * @param createdAt ISO-8601 creation time
+ * @param compact Whether postings are delta+varint encoded rather than fixed width
+ * @param analyzer Spec of the analyzer chain the segment's tokens were produced by, see
+ *                 {@link com.cypherlabs.analysis.Analyzer}
+ */
+public record SegmentMeta(String segmentId, int tokenCount, int docCount, String createdAt, boolean compact,
+                          String analyzer) {
+}
@@ -0,0 +1,76 @@
+package com.cypherlabs.io;
+
+import com.cypherlabs.analysis.Analyzer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class SegmentMetaUtils {
+
+    static final String FILE_NAME = "segment.meta";
+
+    /**
+     * Writes segment metadata (segment.meta) as a flat JSON object.
+     *
+     * Example:
+     * {
+     *   "segment_id": "segment_000001",
+     *   "token_count": 12045,
+     *   "doc_count": 1200,
+     *   "created_at": "2025-06-23T10:30:00Z",
+     *   "compact": true,
+     *   "analyzer": "lowercase,stop,length:2:255,stem"
+     * }
+     *
+     * @param meta Segment metadata
+     * @param segmentDir Path to the segment directory
+     * @throws IOException If an I/O error occurs
+     */
+    public static void writeSegmentMeta(SegmentMeta meta, Path segmentDir) throws IOException {
+        String json = "{\n"
+                + "  \"segment_id\": \"" + meta.segmentId() + "\",\n"
+                + "  \"token_count\": " + meta.tokenCount() + ",\n"
+                + "  \"doc_count\": " + meta.docCount() + ",\n"
+                + "  \"created_at\": \"" + meta.createdAt() + "\",\n"
+                + "  \"compact\": " + meta.compact() + ",\n"
+                + "  \"analyzer\": \"" + meta.analyzer() + "\"\n"
+                + "}\n";
+        Files.writeString(segmentDir.resolve(FILE_NAME), json);
+    }
+
+    /**
+     * Reads segment.meta written by {@link #writeSegmentMeta}. Only the flat key/value layout
+     * produced by the writer is supported. Segments written before the analyzer was recorded
+     * get {@link Analyzer#LEGACY_SPEC}.
+     *
+     * @param segmentDir Path to the segment directory
+     * @return Segment metadata
+     * @throws IOException If an I/O error occurs or a field is missing
+     */
+    public static SegmentMeta readSegmentMeta(Path segmentDir) throws IOException {
+        String json = Files.readString(segmentDir.resolve(FILE_NAME));
+        return new SegmentMeta(
+                field(json, "segment_id"),
+                Integer.parseInt(field(json, "token_count")),
+                Integer.parseInt(field(json, "doc_count")),
+                field(json, "created_at"),
+                Boolean.parseBoolean(field(json, "compact")),
+                optionalField(json, "analyzer").orElse(Analyzer.LEGACY_SPEC));
+    }
+
+    private static String field(String json, String key) throws IOException {
+        return optionalField(json, key).orElseThrow(() -> new IOException("Field " + key + " missing in " + FILE_NAME));
+    }
+
+    private static Optional<String> optionalField(String json, String key) {
+        Matcher matcher = Pattern.compile("\"" + key + "\"\\s*:\\s*(\"([^\"]*)\"|[^,}\\s]+)").matcher(json);
+        if (!matcher.find()) {
+            return Optional.empty();
+        }
+        return Optional.of(matcher.group(2) != null ? matcher.group(2) : matcher.group(1));
+    }
+}
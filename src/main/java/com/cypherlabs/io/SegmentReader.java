@@ -0,0 +1,350 @@
+package com.cypherlabs.io;
+
+import com.cypherlabs.query.TermAutomaton;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Read access to one index segment written by {@link IndexSegmentWriter}.
+ *
+ * - token_dict.bin is loaded fully into sorted arrays and searched by binary search
+ * - token_dict_trie.bin is loaded into a {@link TrieDictionary} to expand prefix, wildcard and fuzzy terms
+ * - postings.bin is memory-mapped and decoded on demand
+ * - doc_table.bin is loaded fully, docId == index in the list
+ * - live_docs.bin, if present, hides deleted documents from {@link #livePostings(String)}
+ * - static_scores.bin, if present, gives each document a query independent score (its PageRank)
+ * - suggest.bin, if present, is memory-mapped into a {@link Suggester} for autocompletion; segments written
+ *   before it get one built from their token dictionary on first use
+ *
+ * A segment may also live only in memory, see {@link #inMemory}: its postings are then encoded into a heap
+ * buffer the same compact way, and it has no directory.
+ */
+public class SegmentReader {
+
+    // a stop condition is asked every 1024 postings decoded or tokens visited
+    static final int STOP_CHECK_MASK = 1023;
+
+    private final Path segmentDir;
+    private final SegmentMeta meta;
+    private final String[] tokens;
+    private final long[] offsets;
+    private final List<String> docTable;
+    private final BitSet liveDocs;
+    private final ByteBuffer postings;
+    private final float[] staticScores; // null if the segment has none
+    private final TrieDictionary trie; // null if the segment has none
+    private volatile Suggester suggester; // built on first use if the segment has none
+
+    private SegmentReader(Path segmentDir, SegmentMeta meta, String[] tokens, long[] offsets, List<String> docTable,
+                          BitSet liveDocs, ByteBuffer postings, float[] staticScores, TrieDictionary trie,
+                          Suggester suggester) {
+        this.segmentDir = segmentDir;
+        this.meta = meta;
+        this.tokens = tokens;
+        this.offsets = offsets;
+        this.docTable = docTable;
+        this.liveDocs = liveDocs;
+        this.postings = postings;
+        this.staticScores = staticScores;
+        this.trie = trie;
+        this.suggester = suggester;
+    }
+
+    public static SegmentReader open(Path segmentDir) throws IOException {
+        SegmentMeta meta = SegmentMetaUtils.readSegmentMeta(segmentDir);
+
+        List<String> tokenList = new ArrayList<>();
+        List<Long> offsetList = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(segmentDir.resolve("token_dict.bin").toFile())))) {
+            while (in.available() > 0) {
+                tokenList.add(in.readUTF());
+                offsetList.add(in.readLong());
+            }
+        }
+
+        List<String> docTable = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(segmentDir.resolve("doc_table.bin").toFile())))) {
+            int docCount = in.readInt();
+            for (int i = 0; i < docCount; i++) {
+                docTable.add(in.readUTF());
+            }
+        }
+
+        MappedByteBuffer postings;
+        try (FileChannel channel = FileChannel.open(segmentDir.resolve("postings.bin"), StandardOpenOption.READ)) {
+            postings = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        return new SegmentReader(segmentDir, meta, tokenList.toArray(String[]::new),
+                offsetList.stream().mapToLong(Long::longValue).toArray(), docTable,
+                LiveDocsUtils.readLiveDocs(segmentDir, docTable.size()), postings,
+                StaticScoreUtils.readStaticScores(segmentDir).orElse(null),
+                Files.exists(segmentDir.resolve(TrieDictionary.FILE_NAME)) ? TrieDictionary.read(segmentDir) : null,
+                Files.exists(segmentDir.resolve(Suggester.FILE_NAME)) ? Suggester.open(segmentDir) : null);
+    }
+
+    /**
+     * Builds a searchable segment in memory, e.g. of the documents indexed since the last refresh of a
+     * {@link NearRealTimeIndex}.
+     *
+     * @param postingsByToken Sorted doc IDs of each token
+     * @param docTable Url of each doc ID
+     */
+    static SegmentReader inMemory(String name, String analyzerSpec, SortedMap<String, int[]> postingsByToken,
+                                  List<String> docTable) {
+        String[] tokens = postingsByToken.keySet().toArray(String[]::new);
+        long[] offsets = new long[tokens.length];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            int i = 0;
+            for (int[] docIds : postingsByToken.values()) {
+                offsets[i++] = out.size();
+                PostingsUtils.writeVarInt(docIds.length, out);
+                int previous = 0;
+                for (int docId : docIds) {
+                    PostingsUtils.writeVarInt(docId - previous, out);
+                    previous = docId;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        BitSet liveDocs = new BitSet(docTable.size());
+        liveDocs.set(0, docTable.size());
+        SegmentMeta meta = new SegmentMeta(name, tokens.length, docTable.size(), Instant.now().toString(), true,
+                analyzerSpec);
+        int[] weights = postingsByToken.values().stream().mapToInt(docIds -> docIds.length).toArray();
+        return new SegmentReader(null, meta, tokens, offsets, List.copyOf(docTable), liveDocs,
+                ByteBuffer.wrap(bytes.toByteArray()).asReadOnlyBuffer(), null,
+                TrieDictionary.fromSortedTokens(tokens, offsets), Suggester.build(tokens, weights));
+    }
+
+    /**
+     * @return A view of the segment where the documents are deleted as well, sharing everything else
+     */
+    SegmentReader withDeleted(BitSet deletedDocs) {
+        BitSet live = (BitSet) liveDocs.clone();
+        live.andNot(deletedDocs);
+        return new SegmentReader(segmentDir, meta, tokens, offsets, docTable, live, postings, staticScores, trie,
+                suggester);
+    }
+
+    /**
+     * @return Directory of the segment, null for an in-memory segment
+     */
+    public Path getSegmentDir() {
+        return segmentDir;
+    }
+
+    public SegmentMeta getMeta() {
+        return meta;
+    }
+
+    public int docCount() {
+        return docTable.size();
+    }
+
+    public int liveDocCount() {
+        return liveDocs.cardinality();
+    }
+
+    public boolean isLive(int docId) {
+        return liveDocs.get(docId);
+    }
+
+    /**
+     * @return Tokens of this segment in lexicographic order
+     */
+    public List<String> tokens() {
+        return Collections.unmodifiableList(Arrays.asList(tokens));
+    }
+
+    /**
+     * @return Sorted doc IDs of all documents containing the token, deleted ones included
+     */
+    public int[] postings(String token) {
+        return postings(token, () -> false);
+    }
+
+    private int[] postings(String token, BooleanSupplier stop) {
+        int idx = Arrays.binarySearch(tokens, token);
+        if (idx < 0) {
+            return new int[0];
+        }
+        return readPostings(offsets[idx], stop);
+    }
+
+    /**
+     * @return Sorted doc IDs of the live documents containing the token
+     */
+    public int[] livePostings(String token) {
+        return livePostings(token, () -> false);
+    }
+
+    /**
+     * Like {@link #livePostings(String)}, giving up decoding once stop answers true, e.g. as a query's
+     * deadline is over; the doc IDs returned are then incomplete, and meant to be discarded.
+     */
+    public int[] livePostings(String token, BooleanSupplier stop) {
+        return Arrays.stream(postings(token, stop)).filter(liveDocs::get).toArray();
+    }
+
+    /**
+     * Expands a multi-term query into the tokens of this segment it matches, by intersecting its automaton
+     * with the trie dictionary. Past maxExpansions matches, only the tokens found in most documents are kept.
+     *
+     * @return Matching tokens, by decreasing document frequency
+     */
+    public <S> List<TrieDictionary.TermMatch> expand(TermAutomaton<S> automaton, int maxExpansions) {
+        return expand(automaton, maxExpansions, () -> false);
+    }
+
+    private <S> List<TrieDictionary.TermMatch> expand(TermAutomaton<S> automaton, int maxExpansions,
+                                                      BooleanSupplier stop) {
+        // min-heap of the best matches so far: least frequent on top, then last in lexicographic order
+        Comparator<TrieDictionary.TermMatch> byFrequency = Comparator
+                .comparingInt((TrieDictionary.TermMatch match) -> docFreq(match.offset()))
+                .thenComparing(TrieDictionary.TermMatch::token, Comparator.reverseOrder());
+        PriorityQueue<TrieDictionary.TermMatch> best = new PriorityQueue<>(byFrequency);
+        Consumer<TrieDictionary.TermMatch> collector = match -> {
+            best.add(match);
+            if (best.size() > maxExpansions) {
+                best.poll();
+            }
+        };
+        if (trie != null) {
+            trie.intersect(automaton, collector, stop);
+        } else {
+            // segments written before the trie dictionary: run the automaton over every token
+            for (int i = 0; i < tokens.length; i++) {
+                if ((i & STOP_CHECK_MASK) == STOP_CHECK_MASK && stop.getAsBoolean()) {
+                    break;
+                }
+                if (accepts(automaton, tokens[i])) {
+                    collector.accept(new TrieDictionary.TermMatch(tokens[i], offsets[i]));
+                }
+            }
+        }
+        List<TrieDictionary.TermMatch> matches = new ArrayList<>(best);
+        matches.sort(byFrequency.reversed());
+        return matches;
+    }
+
+    /**
+     * @return Autocompletion of the segment's tokens, weighted by document frequency, deleted documents included
+     */
+    public Suggester suggester() {
+        Suggester built = suggester;
+        if (built == null) {
+            // racing threads build the same suggester, one of them is kept
+            int[] weights = new int[tokens.length];
+            for (int i = 0; i < tokens.length; i++) {
+                weights[i] = docFreq(offsets[i]);
+            }
+            built = Suggester.build(tokens, weights);
+            suggester = built;
+        }
+        return built;
+    }
+
+    /**
+     * @return Sorted doc IDs of the live documents containing any token the query expands to
+     */
+    public <S> int[] livePostings(TermAutomaton<S> automaton, int maxExpansions) {
+        return livePostings(automaton, maxExpansions, () -> false);
+    }
+
+    /**
+     * Like {@link #livePostings(TermAutomaton, int)}, giving up expanding and decoding once stop answers
+     * true, e.g. as a query's deadline is over; the doc IDs returned are then incomplete, and meant to be
+     * discarded.
+     */
+    public <S> int[] livePostings(TermAutomaton<S> automaton, int maxExpansions, BooleanSupplier stop) {
+        BitSet docIds = new BitSet(docCount());
+        for (TrieDictionary.TermMatch match : expand(automaton, maxExpansions, stop)) {
+            if (stop.getAsBoolean()) {
+                break;
+            }
+            for (int docId : readPostings(match.offset(), stop)) {
+                docIds.set(docId);
+            }
+        }
+        docIds.and(liveDocs);
+        return docIds.stream().toArray();
+    }
+
+    private static <S> boolean accepts(TermAutomaton<S> automaton, String token) {
+        S state = automaton.start();
+        for (int i = 0; i < token.length() && state != null; i++) {
+            state = automaton.step(state, token.charAt(i));
+        }
+        return state != null && automaton.isAccepting(state);
+    }
+
+    /**
+     * @return Number of documents in the postings list at the offset, deleted ones included
+     */
+    private int docFreq(long offset) {
+        ByteBuffer buffer = postings.duplicate();
+        buffer.position(Math.toIntExact(offset));
+        return meta.compact() ? readVarInt(buffer) : buffer.getInt();
+    }
+
+    /**
+     * @return Query independent score of the document, 0 if the segment has no static scores
+     */
+    public float staticScore(int docId) {
+        return staticScores != null && docId < staticScores.length ? staticScores[docId] : 0f;
+    }
+
+    public Optional<String> url(int docId) {
+        return docId >= 0 && docId < docTable.size() ? Optional.of(docTable.get(docId)) : Optional.empty();
+    }
+
+    /**
+     * @return Doc IDs of the postings list at the offset, only the ones decoded before stop answered true
+     */
+    private int[] readPostings(long offset, BooleanSupplier stop) {
+        ByteBuffer buffer = postings.duplicate();
+        buffer.position(Math.toIntExact(offset));
+        boolean compact = meta.compact();
+        int[] docIds = new int[compact ? readVarInt(buffer) : buffer.getInt()];
+        int docId = 0;
+        for (int i = 0; i < docIds.length; i++) {
+            if ((i & STOP_CHECK_MASK) == STOP_CHECK_MASK && stop.getAsBoolean()) {
+                return Arrays.copyOf(docIds, i);
+            }
+            if (compact) {
+                docId += readVarInt(buffer);
+            } else {
+                docId = buffer.getInt();
+            }
+            docIds[i] = docId;
+        }
+        return docIds;
+    }
+
+    static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
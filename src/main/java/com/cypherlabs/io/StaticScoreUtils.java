@@ -0,0 +1,53 @@
+package com.cypherlabs.io;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+public class StaticScoreUtils {
+
+    static final String FILE_NAME = "static_scores.bin";
+
+    /**
+     * Writes query independent scores of the documents of a segment (static_scores.bin), e.g. their PageRank.
+     *
+     * Format:
+     * - int number of documents
+     * - float score of each doc ID
+     *
+     * @param scores Score of each doc ID
+     * @param segmentDir Path to the segment directory
+     * @throws IOException If an I/O error occurs
+     */
+    public static void writeStaticScores(double[] scores, Path segmentDir) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(segmentDir.resolve(FILE_NAME).toFile())))) {
+            out.writeInt(scores.length);
+            for (double score : scores) {
+                out.writeFloat((float) score);
+            }
+        }
+    }
+
+    /**
+     * Reads static_scores.bin written by {@link #writeStaticScores}.
+     *
+     * @param segmentDir Path to the segment directory
+     * @return Score of each doc ID, empty if the segment has no static scores
+     * @throws IOException If an I/O error occurs
+     */
+    public static Optional<float[]> readStaticScores(Path segmentDir) throws IOException {
+        Path file = segmentDir.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+            float[] scores = new float[in.readInt()];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = in.readFloat();
+            }
+            return Optional.of(scores);
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package com.cypherlabs.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Weighted autocompletion over the tokens of a segment: the k tokens found in most documents that start
+ * with a prefix.
+ *
+ * The tokens are kept in a trie whose every node records, next to the weight (document frequency) of the
+ * token ending there, the largest weight found in its subtree. Completions are found best-first: a priority
+ * queue holds subtrees by their largest weight and tokens by their weight, so a subtree is only opened once
+ * nothing outside it can beat it, and the search stops after k tokens. Whatever the prefix, it opens in the
+ * order of k times the depth of the trie nodes, where enumerating the subtree of "a" would visit a good part
+ * of the dictionary. Equal weights come out in lexicographic order.
+ *
+ * suggest.bin is a flat image of the trie, memory-mapped and read in place:
+ * - int magic, int node count, int edge count
+ * - per node, in pre-order with children sorted by character, 16 bytes: char character, char child count,
+ *   int index of its first child in the edges, int weight (0 unless a token ends there), int largest weight
+ *   of its subtree
+ * - per edge, int index of the child node; the children of a node are contiguous
+ * As nodes are in pre-order, the index of a node is the lexicographic rank of its token.
+ */
+public class Suggester {
+
+    public static final String FILE_NAME = "suggest.bin";
+
+    private static final int MAGIC = 0x53554731; // "SUG1"
+    private static final int HEADER_BYTES = 12;
+    private static final int NODE_BYTES = 16;
+
+    public record Suggestion(String token, int weight) {
+    }
+
+    private final ByteBuffer buffer;
+    private final int nodeCount;
+    private final int edgesStart;
+
+    private Suggester(ByteBuffer buffer) {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a suggester image");
+        }
+        this.buffer = buffer;
+        this.nodeCount = buffer.getInt(4);
+        this.edgesStart = HEADER_BYTES + nodeCount * NODE_BYTES;
+    }
+
+    /**
+     * @param tokens Tokens in lexicographic order, without repetitions
+     * @param weights Weight of each token, its document frequency
+     */
+    public static Suggester build(String[] tokens, int[] weights) {
+        Builder builder = new Builder(tokens.length);
+        builder.addNode((char) 0, tokens, weights, 0, tokens.length, 0);
+        return new Suggester(builder.toBuffer());
+    }
+
+    /**
+     * @param docIdsByToken Doc IDs of each token
+     */
+    public static Suggester build(SortedMap<String, ? extends Collection<?>> docIdsByToken) {
+        String[] tokens = docIdsByToken.keySet().toArray(String[]::new);
+        int[] weights = docIdsByToken.values().stream().mapToInt(Collection::size).toArray();
+        return build(tokens, weights);
+    }
+
+    /**
+     * Memory-maps suggest.bin of a segment.
+     */
+    public static Suggester open(Path segmentDir) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentDir.resolve(FILE_NAME), StandardOpenOption.READ)) {
+            return new Suggester(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes suggest.bin to the segment directory, through a temporary file.
+     */
+    public void write(Path segmentDir) throws IOException {
+        Path tmp = segmentDir.resolve(FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer image = buffer.duplicate().position(0);
+            while (image.hasRemaining()) {
+                channel.write(image);
+            }
+        }
+        Files.move(tmp, segmentDir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Builds the suggester of several segments, a token's weight being the sum of its weights in each.
+     */
+    public static Suggester merge(List<Suggester> suggesters) {
+        SortedMap<String, Integer> weightByToken = new TreeMap<>();
+        for (Suggester suggester : suggesters) {
+            suggester.forEach((token, weight) -> weightByToken.merge(token, weight, Integer::sum));
+        }
+        return build(weightByToken.keySet().toArray(String[]::new),
+                weightByToken.values().stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Like {@link #suggest(String, int)} over the tokens of two suggesters, a token's weight being the sum of
+     * its weights in both, without merging them.
+     *
+     * Both suggesters' completions are pulled best-first, from whichever may hold the heavier token next, and
+     * each token pulled is weighed in the other one. The next completion of a suggester bounds the weight of
+     * every token it has not returned yet, so no token left unseen by both can outweigh the sum of the two
+     * bounds: the search stops once the k heaviest tokens seen are heavier than that.
+     *
+     * @param large Suggester of many tokens, e.g. of the segments on disk
+     * @param small Suggester of few tokens, e.g. of the segments still in memory
+     */
+    public static List<Suggestion> suggest(Suggester large, Suggester small, String prefix, int k) {
+        if (k <= 0) {
+            return List.of();
+        }
+        Completions fromLarge = large.new Completions(prefix);
+        Completions fromSmall = small.new Completions(prefix);
+        Set<String> seen = new HashSet<>();
+        // heaviest first, then in lexicographic order
+        TreeSet<Suggestion> best = new TreeSet<>(Comparator.comparingInt(Suggestion::weight).reversed()
+                .thenComparing(Suggestion::token));
+        while (fromLarge.hasNext() || fromSmall.hasNext()) {
+            int unseenBound = fromLarge.bound() + fromSmall.bound();
+            if (best.size() == k && best.last().weight() > unseenBound) {
+                break;
+            }
+            Suggestion next = fromLarge.bound() >= fromSmall.bound() ? fromLarge.next() : fromSmall.next();
+            if (seen.add(next.token())) {
+                best.add(new Suggestion(next.token(), large.weightOf(next.token()) + small.weightOf(next.token())));
+                if (best.size() > k) {
+                    best.pollLast();
+                }
+            }
+        }
+        return List.copyOf(best);
+    }
+
+    /**
+     * @return Weight of the token, 0 if absent
+     */
+    public int weightOf(String token) {
+        int node = node(token);
+        return node < 0 ? 0 : weight(node);
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public long sizeInBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @return The k heaviest tokens starting with the prefix, heaviest first
+     */
+    public List<Suggestion> suggest(String prefix, int k) {
+        if (k <= 0) {
+            return List.of();
+        }
+        List<Suggestion> suggestions = new ArrayList<>(k);
+        Completions completions = new Completions(prefix);
+        while (completions.hasNext() && suggestions.size() < k) {
+            suggestions.add(completions.next());
+        }
+        return suggestions;
+    }
+
+    /**
+     * Tokens starting with a prefix, heaviest first, found one at a time by the best-first search.
+     */
+    private final class Completions implements Iterator<Suggestion> {
+        private final String prefix;
+        private final int from;
+        private final PriorityQueue<Candidate> queue = new PriorityQueue<>();
+
+        Completions(String prefix) {
+            this.prefix = prefix;
+            this.from = node(prefix);
+            if (from >= 0 && maxWeight(from) > 0) {
+                queue.add(new Candidate(from, maxWeight(from), false, null));
+            }
+        }
+
+        /**
+         * @return Largest weight of the tokens not returned yet, 0 if none is left
+         */
+        int bound() {
+            return queue.isEmpty() ? 0 : queue.peek().weight();
+        }
+
+        @Override
+        public boolean hasNext() {
+            // subtrees without any token are never queued
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Suggestion next() {
+            while (!queue.isEmpty()) {
+                Candidate candidate = queue.poll();
+                if (candidate.token()) {
+                    return new Suggestion(candidate.spell(Suggester.this, prefix, from), candidate.weight());
+                }
+                int current = candidate.node();
+                if (weight(current) > 0) {
+                    queue.add(new Candidate(current, weight(current), true, candidate.parent()));
+                }
+                int first = firstChild(current);
+                for (int i = 0; i < childCount(current); i++) {
+                    int child = edge(first + i);
+                    if (maxWeight(child) > 0) {
+                        queue.add(new Candidate(child, maxWeight(child), false, candidate));
+                    }
+                }
+            }
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * A subtree to open, or a token to return, linked to the subtree it was found in to spell it.
+     * Heaviest first; on equal weights the lowest node, i.e. the first token in lexicographic order, and
+     * a token before the subtree of the same node, whose other tokens it precedes.
+     */
+    private record Candidate(int node, int weight, boolean token, Candidate parent)
+            implements Comparable<Candidate> {
+
+        @Override
+        public int compareTo(Candidate other) {
+            if (weight != other.weight) {
+                return Integer.compare(other.weight, weight);
+            }
+            if (node != other.node) {
+                return Integer.compare(node, other.node);
+            }
+            return Boolean.compare(other.token, token);
+        }
+
+        /**
+         * @param from Node of the prefix, where the search started
+         */
+        String spell(Suggester suggester, String prefix, int from) {
+            if (node == from) {
+                return prefix;
+            }
+            StringBuilder suffix = new StringBuilder();
+            for (Candidate c = this; c != null && c.node != from; c = c.parent) {
+                suffix.append(suggester.character(c.node));
+            }
+            return prefix + suffix.reverse();
+        }
+    }
+
+    /**
+     * Visits every token with its weight, in lexicographic order.
+     */
+    public void forEach(ObjIntConsumer<String> consumer) {
+        visit(0, new StringBuilder(), consumer);
+    }
+
+    /**
+     * Visits every token starting with the prefix with its weight, in lexicographic order.
+     */
+    public void forEach(String prefix, ObjIntConsumer<String> consumer) {
+        int node = node(prefix);
+        if (node >= 0) {
+            visit(node, new StringBuilder(prefix), consumer);
+        }
+    }
+
+    private void visit(int node, StringBuilder token, ObjIntConsumer<String> consumer) {
+        if (weight(node) > 0) {
+            consumer.accept(token.toString(), weight(node));
+        }
+        int first = firstChild(node);
+        for (int i = 0; i < childCount(node); i++) {
+            int child = edge(first + i);
+            token.append(character(child));
+            visit(child, token, consumer);
+            token.setLength(token.length() - 1);
+        }
+    }
+
+    /**
+     * @return Node reached by spelling the prefix from the root, -1 if none
+     */
+    private int node(String prefix) {
+        int node = 0;
+        for (int i = 0; i < prefix.length() && node >= 0; i++) {
+            node = child(node, prefix.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * @return Child of the node for the character, -1 if none; children are sorted, so binary searched
+     */
+    private int child(int node, char c) {
+        int low = firstChild(node);
+        int high = low + childCount(node) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = character(edge(mid));
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return edge(mid);
+            }
+        }
+        return -1;
+    }
+
+    private char character(int node) {
+        return buffer.getChar(HEADER_BYTES + node * NODE_BYTES);
+    }
+
+    private int childCount(int node) {
+        return buffer.getChar(HEADER_BYTES + node * NODE_BYTES + 2);
+    }
+
+    private int firstChild(int node) {
+        return buffer.getInt(HEADER_BYTES + node * NODE_BYTES + 4);
+    }
+
+    private int weight(int node) {
+        return buffer.getInt(HEADER_BYTES + node * NODE_BYTES + 8);
+    }
+
+    private int maxWeight(int node) {
+        return buffer.getInt(HEADER_BYTES + node * NODE_BYTES + 12);
+    }
+
+    private int edge(int index) {
+        return buffer.getInt(edgesStart + index * 4);
+    }
+
+    /**
+     * Lays the trie out in pre-order, reserving the children's edge range of a node before adding them.
+     */
+    private static final class Builder {
+        private char[] chars;
+        private int[] childCounts;
+        private int[] firstChild;
+        private int[] weights;
+        private int[] maxWeights;
+        private int[] edges;
+        private int nodeCount;
+        private int edgeCount;
+
+        Builder(int tokenCount) {
+            int capacity = Math.max(16, tokenCount * 2);
+            chars = new char[capacity];
+            childCounts = new int[capacity];
+            firstChild = new int[capacity];
+            weights = new int[capacity];
+            maxWeights = new int[capacity];
+            edges = new int[capacity];
+        }
+
+        private int newNode() {
+            int node = nodeCount++;
+            if (node == chars.length) {
+                int capacity = chars.length * 2;
+                chars = Arrays.copyOf(chars, capacity);
+                childCounts = Arrays.copyOf(childCounts, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+                maxWeights = Arrays.copyOf(maxWeights, capacity);
+            }
+            return node;
+        }
+
+        /**
+         * Adds the node of the tokens in [from, to), which share their first depth characters, and below it
+         * one child per distinct next character.
+         *
+         * @return Index of the node
+         */
+        int addNode(char c, String[] tokens, int[] tokenWeights, int from, int to, int depth) {
+            int node = newNode();
+            chars[node] = c;
+            if (from < to && tokens[from].length() == depth) {
+                weights[node] = depth == 0 ? 0 : tokenWeights[from];
+                from++;
+            }
+            int count = 0;
+            for (int i = from; i < to; count++) {
+                i = nextGroup(tokens, i, to, depth);
+            }
+            if (count > Character.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many children for a suggester node: " + count);
+            }
+            childCounts[node] = count;
+            firstChild[node] = edgeCount;
+            edgeCount += count;
+            if (edgeCount > edges.length) {
+                edges = Arrays.copyOf(edges, Math.max(edges.length * 2, edgeCount));
+            }
+            int maxWeight = weights[node];
+            int slot = firstChild[node];
+            for (int i = from; i < to; ) {
+                int end = nextGroup(tokens, i, to, depth);
+                int child = addNode(tokens[i].charAt(depth), tokens, tokenWeights, i, end, depth + 1);
+                edges[slot++] = child;
+                maxWeight = Math.max(maxWeight, maxWeights[child]);
+                i = end;
+            }
+            maxWeights[node] = maxWeight;
+            return node;
+        }
+
+        private static int nextGroup(String[] tokens, int from, int to, int depth) {
+            char c = tokens[from].charAt(depth);
+            int end = from + 1;
+            while (end < to && tokens[end].charAt(depth) == c) {
+                end++;
+            }
+            return end;
+        }
+
+        ByteBuffer toBuffer() {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + nodeCount * NODE_BYTES + edgeCount * 4);
+            buffer.putInt(MAGIC).putInt(nodeCount).putInt(edgeCount);
+            for (int node = 0; node < nodeCount; node++) {
+                buffer.putChar(chars[node])
+                        .putChar((char) childCounts[node])
+                        .putInt(firstChild[node])
+                        .putInt(weights[node])
+                        .putInt(maxWeights[node]);
+            }
+            for (int i = 0; i < edgeCount; i++) {
+                buffer.putInt(edges[i]);
+            }
+            return buffer.flip().asReadOnlyBuffer();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.cypherlabs.io;
+
+import com.cypherlabs.query.TermAutomaton;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Read-only token dictionary of a segment, loaded from token_dict_trie.bin (see {@link TokenDictUtils})
+ * into flat arrays rather than node objects: per node its character, postings offset (-1 unless terminal)
+ * and the range of its children in a child index array, sorted by character.
+ *
+ * Term expansion intersects a {@link TermAutomaton} with the trie, depth first: an edge is followed only
+ * while the automaton has a state for it, so a prefix query walks one path and then the subtree below it,
+ * and a fuzzy query only the few branches within its edit distance.
+ */
+public class TrieDictionary {
+
+    public static final String FILE_NAME = "token_dict_trie.bin";
+
+    /**
+     * @param offset Offset of the token's postings in postings.bin
+     */
+    public record TermMatch(String token, long offset) {
+    }
+
+    private final char[] chars;
+    private final long[] offsets;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] children;
+
+    private TrieDictionary(char[] chars, long[] offsets, int[] firstChild, int[] childCount, int[] children) {
+        this.chars = chars;
+        this.offsets = offsets;
+        this.firstChild = firstChild;
+        this.childCount = childCount;
+        this.children = children;
+    }
+
+    public static TrieDictionary read(Path segmentDir) throws IOException {
+        Builder builder = new Builder();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(segmentDir.resolve(FILE_NAME).toFile())))) {
+            builder.readNode(in, true);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds the dictionary of an in-memory segment directly, without going through a file.
+     *
+     * @param tokens Tokens in lexicographic order
+     * @param offsets Offset of each token's postings
+     */
+    static TrieDictionary fromSortedTokens(String[] tokens, long[] offsets) {
+        Builder builder = new Builder();
+        builder.addNode((char) 0, tokens, offsets, 0, tokens.length, 0);
+        return builder.build();
+    }
+
+    public int nodeCount() {
+        return chars.length;
+    }
+
+    /**
+     * Visits the tokens accepted by the automaton, in lexicographic order.
+     */
+    public <S> void intersect(TermAutomaton<S> automaton, Consumer<TermMatch> consumer) {
+        intersect(automaton, consumer, () -> false);
+    }
+
+    /**
+     * Like {@link #intersect(TermAutomaton, Consumer)}, giving up once stop answers true, which is asked
+     * every {@link SegmentReader#STOP_CHECK_MASK} + 1 nodes visited.
+     *
+     * @return Whether every accepted token was visited
+     */
+    public <S> boolean intersect(TermAutomaton<S> automaton, Consumer<TermMatch> consumer, BooleanSupplier stop) {
+        S start = automaton.start();
+        return start == null || new Intersection<>(automaton, consumer, stop).visit(0, start, new StringBuilder());
+    }
+
+    private final class Intersection<S> {
+        private final TermAutomaton<S> automaton;
+        private final Consumer<TermMatch> consumer;
+        private final BooleanSupplier stop;
+        private int visited;
+
+        Intersection(TermAutomaton<S> automaton, Consumer<TermMatch> consumer, BooleanSupplier stop) {
+            this.automaton = automaton;
+            this.consumer = consumer;
+            this.stop = stop;
+        }
+
+        /**
+         * @return Whether the subtree was visited in full, rather than given up
+         */
+        boolean visit(int node, S state, StringBuilder prefix) {
+            if ((++visited & SegmentReader.STOP_CHECK_MASK) == 0 && stop.getAsBoolean()) {
+                return false;
+            }
+            if (node != 0 && offsets[node] >= 0 && automaton.isAccepting(state)) {
+                consumer.accept(new TermMatch(prefix.toString(), offsets[node]));
+            }
+            for (int i = firstChild[node]; i < firstChild[node] + childCount[node]; i++) {
+                int child = children[i];
+                S next = automaton.step(state, chars[child]);
+                if (next != null) {
+                    prefix.append(chars[child]);
+                    boolean complete = visit(child, next, prefix);
+                    prefix.setLength(prefix.length() - 1);
+                    if (!complete) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads the pre-order serialization, reserving each node's range in the child index before reading
+     * its children, so that the children of a node end up contiguous.
+     */
+    private static final class Builder {
+        private char[] chars = new char[1024];
+        private long[] offsets = new long[1024];
+        private int[] firstChild = new int[1024];
+        private int[] childCount = new int[1024];
+        private int[] children = new int[1024];
+        private int nodeCount;
+        private int childSlots;
+
+        private int newNode() {
+            int node = nodeCount++;
+            if (node == chars.length) {
+                int capacity = chars.length * 2;
+                chars = Arrays.copyOf(chars, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                childCount = Arrays.copyOf(childCount, capacity);
+            }
+            return node;
+        }
+
+        private int reserveChildren(int node, int count) {
+            int first = childSlots;
+            childSlots += count;
+            if (childSlots > children.length) {
+                children = Arrays.copyOf(children, Math.max(children.length * 2, childSlots));
+            }
+            firstChild[node] = first;
+            childCount[node] = count;
+            return first;
+        }
+
+        int readNode(DataInputStream in, boolean root) throws IOException {
+            int node = newNode();
+            chars[node] = (char) in.readUnsignedByte();
+            boolean terminal = in.readBoolean();
+            long offset = terminal ? in.readLong() : -1;
+            // an empty dictionary is written as a terminal root without a token
+            offsets[node] = root ? -1 : offset;
+            int count = in.readInt();
+            int first = reserveChildren(node, count);
+            for (int i = 0; i < count; i++) {
+                // read first: reading the child may grow, and so replace, the children array
+                int child = readNode(in, false);
+                children[first + i] = child;
+            }
+            // trie children are written in hash order, sort them by character for lexicographic visits
+            for (int i = first + 1; i < first + count; i++) {
+                int child = children[i];
+                int j = i - 1;
+                while (j >= first && chars[children[j]] > chars[child]) {
+                    children[j + 1] = children[j];
+                    j--;
+                }
+                children[j + 1] = child;
+            }
+            return node;
+        }
+
+        /**
+         * Adds the node of the tokens in [from, to), which share their first depth characters, and below
+         * it one child per distinct next character. Sorted tokens give sorted children.
+         */
+        int addNode(char c, String[] tokens, long[] tokenOffsets, int from, int to, int depth) {
+            int node = newNode();
+            chars[node] = c;
+            offsets[node] = -1;
+            if (from < to && tokens[from].length() == depth) {
+                offsets[node] = depth == 0 ? -1 : tokenOffsets[from];
+                from++;
+            }
+            int count = 0;
+            for (int i = from; i < to; count++) {
+                i = nextGroup(tokens, i, to, depth);
+            }
+            int slot = reserveChildren(node, count);
+            for (int i = from; i < to; ) {
+                int end = nextGroup(tokens, i, to, depth);
+                int child = addNode(tokens[i].charAt(depth), tokens, tokenOffsets, i, end, depth + 1);
+                children[slot++] = child;
+                i = end;
+            }
+            return node;
+        }
+
+        private static int nextGroup(String[] tokens, int from, int to, int depth) {
+            char c = tokens[from].charAt(depth);
+            int end = from + 1;
+            while (end < to && tokens[end].charAt(depth) == c) {
+                end++;
+            }
+            return end;
+        }
+
+        TrieDictionary build() {
+            return new TrieDictionary(Arrays.copyOf(chars, nodeCount), Arrays.copyOf(offsets, nodeCount),
+                    Arrays.copyOf(firstChild, nodeCount), Arrays.copyOf(childCount, nodeCount),
+                    Arrays.copyOf(children, childSlots));
+        }
+    }
+}
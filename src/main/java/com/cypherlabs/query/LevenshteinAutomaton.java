@@ -0,0 +1,63 @@
+package com.cypherlabs.query;
+
+/**
+ * Matches the terms within a number of edits (insertions, deletions, substitutions) of a target term.
+ *
+ * A state is the row of the edit distance table between the target and the characters read so far, with
+ * distances capped at maxEdits + 1; capped rows are finitely many, so this is the Levenshtein DFA built
+ * lazily, one row of O(|target|) per trie edge. A row whose smallest distance exceeds maxEdits can only
+ * grow, so its branch is left.
+ */
+public class LevenshteinAutomaton implements TermAutomaton<int[]> {
+
+    public static final int MAX_EDITS = 2;
+
+    private final String target;
+    private final int maxEdits;
+
+    public LevenshteinAutomaton(String target, int maxEdits) {
+        if (maxEdits < 0 || maxEdits > MAX_EDITS) {
+            throw new IllegalArgumentException("Edit distance must be within [0, " + MAX_EDITS + "]: " + maxEdits);
+        }
+        this.target = target;
+        this.maxEdits = maxEdits;
+    }
+
+    @Override
+    public int[] start() {
+        int[] row = new int[target.length() + 1];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = Math.min(j, maxEdits + 1);
+        }
+        return row;
+    }
+
+    @Override
+    public int[] step(int[] row, char c) {
+        int[] next = new int[row.length];
+        next[0] = Math.min(row[0] + 1, maxEdits + 1);
+        int min = next[0];
+        for (int j = 1; j < row.length; j++) {
+            int substitution = row[j - 1] + (target.charAt(j - 1) == c ? 0 : 1);
+            next[j] = Math.min(Math.min(row[j] + 1, next[j - 1] + 1), Math.min(substitution, maxEdits + 1));
+            min = Math.min(min, next[j]);
+        }
+        return min > maxEdits ? null : next;
+    }
+
+    @Override
+    public boolean isAccepting(int[] row) {
+        return row[row.length - 1] <= maxEdits;
+    }
+
+    /**
+     * @return Edit distance between the target and a term, capped at maxEdits + 1
+     */
+    public int distance(String term) {
+        int[] row = start();
+        for (int i = 0; i < term.length() && row != null; i++) {
+            row = step(row, term.charAt(i));
+        }
+        return row == null ? maxEdits + 1 : row[row.length - 1];
+    }
+}
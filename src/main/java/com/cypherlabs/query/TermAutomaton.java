@@ -0,0 +1,20 @@
+package com.cypherlabs.query;
+
+/**
+ * Deterministic automaton over the characters of a term, run in lockstep with a walk of the dictionary
+ * trie: each trie edge steps the automaton, and a branch is left as soon as its state can no longer reach
+ * an accepting one, so only the parts of the dictionary that may match are visited.
+ *
+ * @param <S> State type, treated as immutable
+ */
+public interface TermAutomaton<S> {
+
+    S start();
+
+    /**
+     * @return State after reading the character, or null if no term continuing this way can match
+     */
+    S step(S state, char c);
+
+    boolean isAccepting(S state);
+}
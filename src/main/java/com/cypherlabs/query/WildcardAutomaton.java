@@ -0,0 +1,64 @@
+package com.cypherlabs.query;
+
+/**
+ * Matches a wildcard pattern: '?' stands for exactly one character, '*' for any number of them, e.g.
+ * "craw*" (prefix) or "c?aw*". Run as the subset construction of the pattern's position automaton, a state
+ * being the bit set of pattern positions reachable so far.
+ */
+public class WildcardAutomaton implements TermAutomaton<Long> {
+
+    static final int MAX_PATTERN_LENGTH = Long.SIZE - 1;
+
+    private final String pattern;
+
+    public WildcardAutomaton(String pattern) {
+        if (pattern.length() > MAX_PATTERN_LENGTH) {
+            throw new IllegalArgumentException("Wildcard pattern longer than " + MAX_PATTERN_LENGTH + " characters");
+        }
+        this.pattern = pattern;
+    }
+
+    public static boolean isWildcard(String query) {
+        return query.indexOf('*') >= 0 || query.indexOf('?') >= 0;
+    }
+
+    @Override
+    public Long start() {
+        return closure(1L);
+    }
+
+    @Override
+    public Long step(Long state, char c) {
+        long positions = state;
+        long next = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            if ((positions & (1L << i)) == 0) {
+                continue;
+            }
+            char p = pattern.charAt(i);
+            if (p == '*') {
+                next |= 1L << i;
+            } else if (p == '?' || p == c) {
+                next |= 1L << (i + 1);
+            }
+        }
+        return next == 0 ? null : closure(next);
+    }
+
+    @Override
+    public boolean isAccepting(Long state) {
+        return (state & (1L << pattern.length())) != 0;
+    }
+
+    /**
+     * Adds the positions past each '*' reachable without reading a character.
+     */
+    private long closure(long positions) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if ((positions & (1L << i)) != 0 && pattern.charAt(i) == '*') {
+                positions |= 1L << (i + 1);
+            }
+        }
+        return positions;
+    }
+}
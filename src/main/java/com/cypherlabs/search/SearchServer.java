@@ -0,0 +1,297 @@
+package com.cypherlabs.search;
+
+import com.cypherlabs.io.IndexSearcher;
+import com.cypherlabs.io.SearcherManager;
+import com.cypherlabs.io.Suggester;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded HTTP search service over the snapshots of a {@link SearcherManager}, so it serves a static
+ * index as well as one being crawled, see {@link com.cypherlabs.io.NearRealTimeIndex}.
+ *
+ * GET /search?q=craw*&amp;k=10 answers the k best scored live documents matching the query as JSON:
+ * {"query":"craw*","hits":[{"url":"...","score":0.12}],"tookMicros":512}
+ *
+ * GET /suggest?q=cra&amp;k=5 autocompletes a prefix with the tokens found in most documents, see
+ * {@link IndexSearcher#suggest}: {"prefix":"cra","suggestions":[{"token":"crawl","weight":42}],"tookMicros":35}
+ * Once the suggesters of a snapshot are merged, a suggestion takes well under a millisecond, so suggestions
+ * run on the request's thread and skip admission control.
+ *
+ * Every request is handled on a virtual thread of its own, which blocks on the query while the segments
+ * are searched in parallel on a fork/join pool of {@link SearchServerConfig#parallelism()} threads, see
+ * {@link IndexSearcher#searchTopK}. Under overload requests are not queued without bound: at most
+ * {@link SearchServerConfig#maxConcurrentQueries()} run at once, a request waiting longer than the admission
+ * timeout for a slot is rejected with 503 and Retry-After, and one not answered within the request timeout,
+ * admission wait included, is abandoned with 504. An invalid query, e.g. with more edits than supported,
+ * is answered with 400.
+ */
+public class SearchServer implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchServer.class);
+
+    private final SearcherManager searcherManager;
+    private final SearchServerConfig config;
+    private final HttpServer httpServer;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ForkJoinPool pool;
+    // fair, so that waiting requests are admitted in order of arrival
+    private final Semaphore admission;
+    private final AtomicLong servedCounter = new AtomicLong();
+    private final AtomicLong rejectedCounter = new AtomicLong();
+    private final AtomicLong timedOutCounter = new AtomicLong();
+
+    public SearchServer(SearcherManager searcherManager, SearchServerConfig config) throws IOException {
+        this(searcherManager, config, new ForkJoinPool(config.parallelism()));
+    }
+
+    /**
+     * @param pool Pool segments are searched on, shut down with the server
+     */
+    SearchServer(SearcherManager searcherManager, SearchServerConfig config, ForkJoinPool pool) throws IOException {
+        this.searcherManager = searcherManager;
+        this.config = config;
+        this.pool = pool;
+        this.admission = new Semaphore(config.maxConcurrentQueries(), true);
+        this.httpServer = HttpServer.create(new InetSocketAddress(config.port()), 0);
+        this.httpServer.setExecutor(executor);
+        this.httpServer.createContext("/search", this::handleSearch);
+        this.httpServer.createContext("/suggest", this::handleSuggest);
+    }
+
+    /**
+     * Serves an index directory, set with env variable INDEX_DIR, see {@link SearchServerConfig#fromEnv()}.
+     */
+    public static void main(String[] args) throws IOException {
+        Path indexDir = Optional.ofNullable(System.getenv("INDEX_DIR")).filter(s -> !s.isBlank()).map(Path::of)
+                .orElseThrow(() -> new IllegalStateException("INDEX_DIR env variable is needed, but not available."));
+        SearchServer server = new SearchServer(new SearcherManager(IndexSearcher.open(indexDir).getSegments()),
+                SearchServerConfig.fromEnv());
+        server.start();
+    }
+
+    public void start() {
+        httpServer.start();
+        LOGGER.info("Search server listening on port {}, {} search threads, at most {} concurrent queries",
+                getPort(), config.parallelism(), config.maxConcurrentQueries());
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    public long getServed() {
+        return servedCounter.get();
+    }
+
+    public long getRejected() {
+        return rejectedCounter.get();
+    }
+
+    public long getTimedOut() {
+        return timedOutCounter.get();
+    }
+
+    /**
+     * Answers a request, with a 500 if it failed or a 503 if the server is stopping. The exchange stays open
+     * until then: try-with-resources would close it before its catch clauses run.
+     */
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                search(exchange);
+            } catch (InterruptedException ie) {
+                LOGGER.warn("Interrupted while answering {}", exchange.getRequestURI());
+                try {
+                    // responds before restoring the interrupt, which would close the connection's channel
+                    respond(exchange, 503, "{\"error\":\"server stopping\"}");
+                } finally {
+                    Thread.currentThread().interrupt();
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to answer {}", exchange.getRequestURI(), e);
+                respond(exchange, 500, "{\"error\":\"internal error\"}");
+            }
+        }
+    }
+
+    private void search(HttpExchange exchange) throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+        if (!exchange.getRequestMethod().equals("GET")) {
+            respond(exchange, 405, "{\"error\":\"only GET is supported\"}");
+            return;
+        }
+        Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+        String query = parameters.getOrDefault("q", "").trim();
+        int k = k(parameters);
+        if (query.isEmpty() || k < 1) {
+            respondBadRequest(exchange);
+            return;
+        }
+
+        if (!admission.tryAcquire(config.admissionTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+            rejectedCounter.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, "{\"error\":\"overloaded\"}");
+            return;
+        }
+        List<IndexSearcher.Hit> hits;
+        try {
+            Duration remaining = config.requestTimeout().minusNanos(System.nanoTime() - startNanos);
+            hits = searcherManager.current().searcher().searchTopK(query, k, pool, remaining);
+        } catch (TimeoutException te) {
+            timedOutCounter.incrementAndGet();
+            respond(exchange, 504, "{\"error\":\"timed out\"}");
+            return;
+        } catch (IllegalArgumentException iae) {
+            respond(exchange, 400, "{\"error\":" + quote(iae.getMessage()) + "}");
+            return;
+        } finally {
+            admission.release();
+        }
+
+        long tookMicros = (System.nanoTime() - startNanos) / 1000;
+        StringBuilder json = new StringBuilder("{\"query\":").append(quote(query)).append(",\"hits\":[");
+        for (int i = 0; i < hits.size(); i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"url\":").append(quote(hits.get(i).url()))
+                    .append(",\"score\":").append(hits.get(i).staticScore()).append('}');
+        }
+        json.append("],\"tookMicros\":").append(tookMicros).append('}');
+        respond(exchange, 200, json.toString());
+        servedCounter.incrementAndGet();
+        LOGGER.debug("Answered query {} with {} hits in {} us", query, hits.size(), tookMicros);
+    }
+
+    private void handleSuggest(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                suggest(exchange);
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to answer {}", exchange.getRequestURI(), e);
+                respond(exchange, 500, "{\"error\":\"internal error\"}");
+            }
+        }
+    }
+
+    private void suggest(HttpExchange exchange) throws IOException {
+        long startNanos = System.nanoTime();
+        if (!exchange.getRequestMethod().equals("GET")) {
+            respond(exchange, 405, "{\"error\":\"only GET is supported\"}");
+            return;
+        }
+        Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+        String prefix = parameters.getOrDefault("q", "").trim();
+        int k = k(parameters);
+        if (prefix.isEmpty() || k < 1) {
+            respondBadRequest(exchange);
+            return;
+        }
+        List<Suggester.Suggestion> suggestions = searcherManager.current().searcher().suggest(prefix, k);
+        long tookMicros = (System.nanoTime() - startNanos) / 1000;
+        StringBuilder json = new StringBuilder("{\"prefix\":").append(quote(prefix)).append(",\"suggestions\":[");
+        for (int i = 0; i < suggestions.size(); i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"token\":").append(quote(suggestions.get(i).token()))
+                    .append(",\"weight\":").append(suggestions.get(i).weight()).append('}');
+        }
+        json.append("],\"tookMicros\":").append(tookMicros).append('}');
+        respond(exchange, 200, json.toString());
+        servedCounter.incrementAndGet();
+    }
+
+    /**
+     * @return The k asked for, the default if none, -1 if invalid
+     */
+    private int k(Map<String, String> parameters) {
+        try {
+            int k = Integer.parseInt(parameters.getOrDefault("k", String.valueOf(SearchServerConfig.DEFAULT_K)));
+            return k <= config.maxK() ? k : -1;
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    private void respondBadRequest(HttpExchange exchange) throws IOException {
+        respond(exchange, 400, "{\"error\":\"q is required and k must be between 1 and " + config.maxK() + "\"}");
+    }
+
+    private static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Stops accepting requests, waiting up to a second for those being answered. The searcher manager is
+     * left open, it belongs to the caller.
+     */
+    @Override
+    public void close() {
+        httpServer.stop(1);
+        executor.close();
+        pool.shutdown();
+    }
+}
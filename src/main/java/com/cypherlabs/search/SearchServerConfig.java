@@ -0,0 +1,45 @@
+package com.cypherlabs.search;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Settings of a {@link SearchServer}.
+ *
+ * @param port Port to listen on, 0 for any free port
+ * @param parallelism Threads of the fork/join pool segments are searched on
+ * @param maxConcurrentQueries Queries executed at once; more wait for a slot, up to admissionTimeout
+ * @param admissionTimeout Longest wait for a slot before a request is rejected with 503
+ * @param requestTimeout Time a query may take before it is abandoned with 504
+ * @param maxK Largest number of hits a request may ask for
+ */
+public record SearchServerConfig(int port, int parallelism, int maxConcurrentQueries, Duration admissionTimeout,
+                                 Duration requestTimeout, int maxK) {
+
+    public static final int DEFAULT_K = 10;
+
+    public SearchServerConfig {
+        if (port < 0 || parallelism < 1 || maxConcurrentQueries < 1 || maxK < 1) {
+            throw new IllegalArgumentException("Invalid search server config: port " + port + ", parallelism "
+                    + parallelism + ", max concurrent queries " + maxConcurrentQueries + ", max k " + maxK);
+        }
+    }
+
+    /**
+     * Reads the config from env variables SEARCH_PORT (default 8090), SEARCH_PARALLELISM (default the number
+     * of cores), SEARCH_MAX_CONCURRENT_QUERIES (default twice the parallelism), SEARCH_ADMISSION_TIMEOUT_MILLIS
+     * (default 100), SEARCH_REQUEST_TIMEOUT_MILLIS (default 1000) and SEARCH_MAX_K (default 1000).
+     */
+    public static SearchServerConfig fromEnv() {
+        int parallelism = envInt("SEARCH_PARALLELISM", Runtime.getRuntime().availableProcessors());
+        return new SearchServerConfig(envInt("SEARCH_PORT", 8090), parallelism,
+                envInt("SEARCH_MAX_CONCURRENT_QUERIES", 2 * parallelism),
+                Duration.ofMillis(envInt("SEARCH_ADMISSION_TIMEOUT_MILLIS", 100)),
+                Duration.ofMillis(envInt("SEARCH_REQUEST_TIMEOUT_MILLIS", 1000)),
+                envInt("SEARCH_MAX_K", 1000));
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        return Integer.parseInt(Optional.ofNullable(System.getenv(name)).orElse(String.valueOf(defaultValue)));
+    }
+}
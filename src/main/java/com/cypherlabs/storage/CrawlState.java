@@ -0,0 +1,235 @@
+package com.cypherlabs.storage;
+
+import com.cypherlabs.crawler.Url;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * State carried from one crawl to the next for incremental recrawls.
+ *
+ * For every indexed URL it keeps the segment and doc ID holding its current version, plus the HTTP
+ * validators (ETag, Last-Modified) and content hash of that version. When a URL is reindexed or removed,
+ * its previous (segment, doc ID) is collected as deleted, to be cleared from that segment's live docs.
+ *
+ * Stored as crawl_state.bin in the index directory:
+ * - int format version
+ * - int next segment generation
+ * - int number of entries, then per entry: writeUTF(url), writeUTF(segment), writeInt(docId),
+ *   writeUTF(etag), writeUTF(lastModified), writeLong(contentHash). Missing validators are written as ""
+ */
+public class CrawlState {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlState.class);
+
+    static final String FILE_NAME = "crawl_state.bin";
+    private static final int FORMAT_VERSION = 1;
+
+    public record DocRecord(String segment, int docId, String etag, String lastModified, long contentHash) {
+    }
+
+    private final Map<Url, DocRecord> recordByUrl = new ConcurrentHashMap<>();
+    private final Map<String, List<Integer>> deletedDocsBySegment = new ConcurrentHashMap<>();
+    private int nextSegmentGeneration = 1;
+
+    public Optional<DocRecord> get(Url url) {
+        return Optional.ofNullable(recordByUrl.get(url));
+    }
+
+    public Set<Url> knownUrls() {
+        return Collections.unmodifiableSet(recordByUrl.keySet());
+    }
+
+    /**
+     * @return Name of a segment not used by any earlier crawl
+     */
+    public synchronized String newSegmentName() {
+        return String.format("segment_%06d", nextSegmentGeneration++);
+    }
+
+    /**
+     * Records a newly indexed version of the URL, deleting its previous version if any.
+     */
+    public void recordIndexed(Url url, String segment, int docId, String etag, String lastModified, long contentHash) {
+        DocRecord previous = recordByUrl.put(url, new DocRecord(segment, docId, etag, lastModified, contentHash));
+        // a url indexed again into the same doc, as when a crawl resumes, replaces nothing
+        if (previous != null && !(previous.segment().equals(segment) && previous.docId() == docId)) {
+            markDeleted(previous);
+        }
+    }
+
+    /**
+     * Refreshes the validators of a URL whose content did not change, keeping its indexed version.
+     */
+    public void recordUnchanged(Url url, String etag, String lastModified) {
+        recordByUrl.computeIfPresent(url, (_, r) -> new DocRecord(r.segment(), r.docId(),
+                etag != null ? etag : r.etag(), lastModified != null ? lastModified : r.lastModified(), r.contentHash()));
+    }
+
+    /**
+     * Forgets a URL that no longer exists or should no longer be indexed, deleting its indexed version.
+     */
+    public void recordRemoved(Url url) {
+        DocRecord previous = recordByUrl.remove(url);
+        if (previous != null) {
+            markDeleted(previous);
+        }
+    }
+
+    /**
+     * Maps the doc IDs recorded for a segment to the ones its documents got when it was written renumbered.
+     *
+     * @param newDocIdByOld New doc ID of each recorded doc ID
+     */
+    public void remapDocIds(String segment, int[] newDocIdByOld) {
+        recordByUrl.replaceAll((_, r) -> r.segment().equals(segment) ? new DocRecord(segment,
+                newDocIdByOld[r.docId()], r.etag(), r.lastModified(), r.contentHash()) : r);
+        deletedDocsBySegment.computeIfPresent(segment, (_, docIds) -> Collections.synchronizedList(
+                docIds.stream().map(docId -> newDocIdByOld[docId]).collect(Collectors.toCollection(ArrayList::new))));
+    }
+
+    /**
+     * Rebinds the records of the segment a resumed crawl goes on writing to the doc IDs its documents got
+     * when restored from the checkpoint. Records of urls not restored are forgotten, their documents were
+     * still being indexed and will be fetched again. Restored urls without a record of the segment were
+     * removed after being indexed, so their restored documents are deleted again.
+     *
+     * @param restoredDocIdByUrl Doc ID of each restored url
+     */
+    public void resumeSegment(String segment, Map<Url, Integer> restoredDocIdByUrl) {
+        // recorded with the doc IDs of the interrupted crawl
+        deletedDocsBySegment.remove(segment);
+        recordByUrl.entrySet().removeIf(entry -> entry.getValue().segment().equals(segment)
+                && !restoredDocIdByUrl.containsKey(entry.getKey()));
+        restoredDocIdByUrl.forEach((url, docId) -> {
+            DocRecord record = recordByUrl.get(url);
+            if (record != null && record.segment().equals(segment)) {
+                recordByUrl.put(url, new DocRecord(segment, docId, record.etag(), record.lastModified(),
+                        record.contentHash()));
+            } else {
+                markDeleted(new DocRecord(segment, docId, null, null, 0));
+            }
+        });
+    }
+
+    /**
+     * @return Doc IDs deleted during this crawl, by segment name
+     */
+    public Map<String, List<Integer>> getDeletedDocsBySegment() {
+        return Collections.unmodifiableMap(deletedDocsBySegment);
+    }
+
+    private void markDeleted(DocRecord record) {
+        deletedDocsBySegment.computeIfAbsent(record.segment(), _ -> Collections.synchronizedList(new ArrayList<>()))
+                .add(record.docId());
+    }
+
+    /**
+     * Loads the state of the previous crawl, or returns an empty state if the index directory has none.
+     */
+    public static CrawlState load(Path indexDir) throws IOException {
+        CrawlState state = new CrawlState();
+        Path file = indexDir.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            LOGGER.info("No crawl state found in {}, starting a full crawl", indexDir);
+            return state;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+            state.readRecords(in);
+        }
+        LOGGER.info("Loaded crawl state with {} urls from {}", state.recordByUrl.size(), indexDir);
+        return state;
+    }
+
+    /**
+     * Writes the state to a temporary file first and then moves it in place, so that a crash while
+     * saving leaves the previous state intact.
+     */
+    public void save(Path indexDir) throws IOException {
+        Path tmp = indexDir.resolve(FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp.toFile())))) {
+            writeRecords(out);
+        }
+        Files.move(tmp, indexDir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void readRecords(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported crawl state version " + version);
+        }
+        nextSegmentGeneration = in.readInt();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Url url = new Url(in.readUTF());
+            String segment = in.readUTF();
+            int docId = in.readInt();
+            String etag = emptyToNull(in.readUTF());
+            String lastModified = emptyToNull(in.readUTF());
+            long contentHash = in.readLong();
+            recordByUrl.put(url, new DocRecord(segment, docId, etag, lastModified, contentHash));
+        }
+    }
+
+    private void writeRecords(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(nextSegmentGeneration);
+        // entries are counted as written, the map may change meanwhile during a checkpoint
+        List<Map.Entry<Url, DocRecord>> entries = new ArrayList<>(recordByUrl.entrySet());
+        out.writeInt(entries.size());
+        for (Map.Entry<Url, DocRecord> entry : entries) {
+            DocRecord record = entry.getValue();
+            out.writeUTF(entry.getKey().address());
+            out.writeUTF(record.segment());
+            out.writeInt(record.docId());
+            out.writeUTF(Objects.toString(record.etag(), ""));
+            out.writeUTF(Objects.toString(record.lastModified(), ""));
+            out.writeLong(record.contentHash());
+        }
+    }
+
+    /**
+     * Writes the state as of an ongoing crawl, its deleted doc IDs included, see {@link CrawlCheckpoint}.
+     */
+    public void writeCheckpoint(DataOutputStream out) throws IOException {
+        writeRecords(out);
+        Map<String, List<Integer>> deleted = new HashMap<>();
+        // copying a synchronized list locks it
+        deletedDocsBySegment.forEach((segment, docIds) -> deleted.put(segment, new ArrayList<>(docIds)));
+        out.writeInt(deleted.size());
+        for (Map.Entry<String, List<Integer>> entry : deleted.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (int docId : entry.getValue()) {
+                out.writeInt(docId);
+            }
+        }
+    }
+
+    public static CrawlState readCheckpoint(DataInputStream in) throws IOException {
+        CrawlState state = new CrawlState();
+        state.readRecords(in);
+        int segments = in.readInt();
+        for (int i = 0; i < segments; i++) {
+            String segment = in.readUTF();
+            int count = in.readInt();
+            List<Integer> docIds = Collections.synchronizedList(new ArrayList<>(count));
+            for (int j = 0; j < count; j++) {
+                docIds.add(in.readInt());
+            }
+            state.deletedDocsBySegment.put(segment, docIds);
+        }
+        return state;
+    }
+
+    private static String emptyToNull(String s) {
+        return s.isEmpty() ? null : s;
+    }
+}
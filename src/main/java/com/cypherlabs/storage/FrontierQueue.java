@@ -0,0 +1,436 @@
+package com.cypherlabs.storage;
+
+import com.cypherlabs.crawler.Url;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.function.Consumer;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Priority queue of urls, highest priority first and oldest first among equal priorities, held off heap
+ * so that a frontier of millions of urls neither fills the heap nor burdens the garbage collector.
+ *
+ * Everything lives in direct buffers, growing by doubling:
+ * - slots: per queued url its priority, insertion sequence, hash, offset and length in the arena, and
+ *   position in the heap (36 bytes); freed slots are chained through their heap position field
+ * - heap: binary max-heap of slot numbers (4 bytes per url)
+ * - table: open addressing hash table of slot numbers by url, with linear probing and at most half full
+ *   (8 bytes or more per url), so that a queued url is found, and its priority raised, without a scan
+ * - arena: UTF-8 bytes of the urls; space of polled urls is reclaimed by compacting when the arena fills up
+ *
+ * Raising or lowering the priority of a queued url is a sift along the heap, O(log n). Not thread-safe.
+ */
+public class FrontierQueue {
+
+    public record Entry(Url url, double priority) {
+    }
+
+    private static final int PRIORITY = 0;
+    private static final int SEQUENCE = 8;
+    private static final int HASH = 16;
+    private static final int URL_OFFSET = 24;
+    private static final int URL_LENGTH = 28;
+    private static final int HEAP_POSITION = 32;
+    private static final int SLOT_BYTES = 36;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int INITIAL_ARENA_BYTES = 64 * 1024;
+
+    private ByteBuffer slots;
+    private int slotCapacity;
+    private int slotsUsed;
+    private int freeSlot = -1;
+
+    private ByteBuffer heap;
+    private int size;
+
+    private ByteBuffer table;
+    private int tableMask;
+
+    private ByteBuffer arena;
+    private int arenaUsed;
+    private int arenaGarbage;
+
+    private long nextSequence;
+
+    public FrontierQueue() {
+        this(INITIAL_CAPACITY, INITIAL_ARENA_BYTES);
+    }
+
+    /**
+     * @param initialCapacity Urls held before growing, a power of two, e.g. small for one of many queues
+     * @param initialArenaBytes Url bytes held before growing
+     */
+    public FrontierQueue(int initialCapacity, int initialArenaBytes) {
+        if (Integer.bitCount(initialCapacity) != 1 || initialArenaBytes < 1) {
+            throw new IllegalArgumentException("Invalid initial capacity " + initialCapacity + " or arena bytes "
+                    + initialArenaBytes);
+        }
+        slots = ByteBuffer.allocateDirect(initialCapacity * SLOT_BYTES);
+        slotCapacity = initialCapacity;
+        heap = ByteBuffer.allocateDirect(initialCapacity * Integer.BYTES);
+        table = ByteBuffer.allocateDirect(2 * initialCapacity * Integer.BYTES);
+        tableMask = 2 * initialCapacity - 1;
+        arena = ByteBuffer.allocateDirect(initialArenaBytes);
+    }
+
+    private FrontierQueue(FrontierQueue other) {
+        slots = copyOf(other.slots, other.slotsUsed * SLOT_BYTES);
+        slotCapacity = other.slotCapacity;
+        slotsUsed = other.slotsUsed;
+        freeSlot = other.freeSlot;
+        heap = copyOf(other.heap, other.size * Integer.BYTES);
+        size = other.size;
+        table = copyOf(other.table, other.table.capacity());
+        tableMask = other.tableMask;
+        arena = copyOf(other.arena, other.arenaUsed);
+        arenaUsed = other.arenaUsed;
+        arenaGarbage = other.arenaGarbage;
+        nextSequence = other.nextSequence;
+    }
+
+    /**
+     * @return Queue of the same urls, copied buffer by buffer without decoding a single url, e.g. to be
+     * read outside the lock guarding this one
+     */
+    public FrontierQueue copy() {
+        return new FrontierQueue(this);
+    }
+
+    /**
+     * Queues a url, or merges the priority of an already queued one.
+     *
+     * @param merge Combines the queued priority with the offered one, e.g. Math::max or Double::sum
+     * @return Whether the url was newly queued
+     */
+    public boolean offer(Url url, double priority, DoubleBinaryOperator merge) {
+        byte[] bytes = url.address().getBytes(StandardCharsets.UTF_8);
+        long hash = hash(bytes);
+        int bucket = find(bytes, hash);
+        int slot = table.getInt(bucket * Integer.BYTES) - 1;
+        if (slot >= 0) {
+            double queued = priority(slot);
+            double merged = merge.applyAsDouble(queued, priority);
+            if (merged != queued) {
+                slots.putDouble(slot * SLOT_BYTES + PRIORITY, merged);
+                int position = heapPosition(slot);
+                if (merged > queued) {
+                    siftUp(position);
+                } else {
+                    siftDown(position);
+                }
+            }
+            return false;
+        }
+
+        if (2 * (size + 1) > tableMask + 1) {
+            rehash(2 * (tableMask + 1));
+            bucket = find(bytes, hash);
+        }
+        slot = allocateSlot();
+        int offset = appendToArena(bytes);
+        int base = slot * SLOT_BYTES;
+        slots.putDouble(base + PRIORITY, priority);
+        slots.putLong(base + SEQUENCE, nextSequence++);
+        slots.putLong(base + HASH, hash);
+        slots.putInt(base + URL_OFFSET, offset);
+        slots.putInt(base + URL_LENGTH, bytes.length);
+        table.putInt(bucket * Integer.BYTES, slot + 1);
+        setHeap(size, slot);
+        size++;
+        siftUp(size - 1);
+        return true;
+    }
+
+    /**
+     * Removes the url of highest priority.
+     */
+    public Optional<Entry> poll() {
+        if (size == 0) {
+            return Optional.empty();
+        }
+        int slot = heap.getInt(0);
+        Entry entry = new Entry(new Url(readUrl(slot)), priority(slot));
+        size--;
+        if (size > 0) {
+            setHeap(0, heap.getInt(size * Integer.BYTES));
+            siftDown(0);
+        }
+        removeFromTable(slot);
+        arenaGarbage += slots.getInt(slot * SLOT_BYTES + URL_LENGTH);
+        slots.putInt(slot * SLOT_BYTES + HEAP_POSITION, freeSlot);
+        freeSlot = slot;
+        return Optional.of(entry);
+    }
+
+    /**
+     * @return Priority of the url that would be polled next, if any
+     */
+    public OptionalDouble peekPriority() {
+        return size == 0 ? OptionalDouble.empty() : OptionalDouble.of(priority(heap.getInt(0)));
+    }
+
+    /**
+     * @return Priority of the url if it is queued
+     */
+    public OptionalDouble priorityOf(Url url) {
+        byte[] bytes = url.address().getBytes(StandardCharsets.UTF_8);
+        int slot = table.getInt(find(bytes, hash(bytes)) * Integer.BYTES) - 1;
+        return slot < 0 ? OptionalDouble.empty() : OptionalDouble.of(priority(slot));
+    }
+
+    /**
+     * Visits the queued urls in the order they would be polled, leaving them queued.
+     */
+    public void forEach(Consumer<Entry> consumer) {
+        copy().drain(consumer);
+    }
+
+    /**
+     * Polls every url, handing them over in the order they come.
+     */
+    public void drain(Consumer<Entry> consumer) {
+        Optional<Entry> entry;
+        while ((entry = poll()).isPresent()) {
+            consumer.accept(entry.get());
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return Bytes held off heap, whether in use or not
+     */
+    public long offHeapBytes() {
+        return (long) slots.capacity() + heap.capacity() + table.capacity() + arena.capacity();
+    }
+
+    private double priority(int slot) {
+        return slots.getDouble(slot * SLOT_BYTES + PRIORITY);
+    }
+
+    private int heapPosition(int slot) {
+        return slots.getInt(slot * SLOT_BYTES + HEAP_POSITION);
+    }
+
+    private void setHeap(int position, int slot) {
+        heap.putInt(position * Integer.BYTES, slot);
+        slots.putInt(slot * SLOT_BYTES + HEAP_POSITION, position);
+    }
+
+    /**
+     * Whether a slot is served before another: higher priority first, then lower sequence.
+     */
+    private boolean before(int slot, int other) {
+        double priority = priority(slot);
+        double otherPriority = priority(other);
+        if (priority != otherPriority) {
+            return priority > otherPriority;
+        }
+        return slots.getLong(slot * SLOT_BYTES + SEQUENCE) < slots.getLong(other * SLOT_BYTES + SEQUENCE);
+    }
+
+    private void siftUp(int position) {
+        int slot = heap.getInt(position * Integer.BYTES);
+        while (position > 0) {
+            int parentPosition = (position - 1) >>> 1;
+            int parent = heap.getInt(parentPosition * Integer.BYTES);
+            if (!before(slot, parent)) {
+                break;
+            }
+            setHeap(position, parent);
+            position = parentPosition;
+        }
+        setHeap(position, slot);
+    }
+
+    private void siftDown(int position) {
+        int slot = heap.getInt(position * Integer.BYTES);
+        int half = size >>> 1;
+        while (position < half) {
+            int childPosition = 2 * position + 1;
+            int child = heap.getInt(childPosition * Integer.BYTES);
+            int rightPosition = childPosition + 1;
+            if (rightPosition < size) {
+                int right = heap.getInt(rightPosition * Integer.BYTES);
+                if (before(right, child)) {
+                    childPosition = rightPosition;
+                    child = right;
+                }
+            }
+            if (!before(child, slot)) {
+                break;
+            }
+            setHeap(position, child);
+            position = childPosition;
+        }
+        setHeap(position, slot);
+    }
+
+    private int allocateSlot() {
+        if (freeSlot >= 0) {
+            int slot = freeSlot;
+            freeSlot = heapPosition(slot);
+            return slot;
+        }
+        if (slotsUsed == slotCapacity) {
+            slotCapacity *= 2;
+            slots = grow(slots, slotCapacity * SLOT_BYTES);
+            heap = grow(heap, slotCapacity * Integer.BYTES);
+        }
+        return slotsUsed++;
+    }
+
+    /**
+     * @return Bucket holding the url, or the empty bucket where it would go
+     */
+    private int find(byte[] bytes, long hash) {
+        int bucket = bucketOf(hash);
+        int slot;
+        while ((slot = table.getInt(bucket * Integer.BYTES) - 1) >= 0) {
+            int base = slot * SLOT_BYTES;
+            if (slots.getLong(base + HASH) == hash && slots.getInt(base + URL_LENGTH) == bytes.length
+                    && arenaEquals(slots.getInt(base + URL_OFFSET), bytes)) {
+                return bucket;
+            }
+            bucket = (bucket + 1) & tableMask;
+        }
+        return bucket;
+    }
+
+    /**
+     * Empties the slot's bucket, shifting back the entries after it that would no longer be found.
+     */
+    private void removeFromTable(int slot) {
+        int empty = bucketOf(slots.getLong(slot * SLOT_BYTES + HASH));
+        while (table.getInt(empty * Integer.BYTES) != slot + 1) {
+            empty = (empty + 1) & tableMask;
+        }
+        int bucket = empty;
+        while (true) {
+            bucket = (bucket + 1) & tableMask;
+            int value = table.getInt(bucket * Integer.BYTES);
+            if (value == 0) {
+                break;
+            }
+            int home = bucketOf(slots.getLong((value - 1) * SLOT_BYTES + HASH));
+            // the entry stays if its home lies cyclically within (empty, bucket]
+            boolean reachable = empty <= bucket ? empty < home && home <= bucket : empty < home || home <= bucket;
+            if (!reachable) {
+                table.putInt(empty * Integer.BYTES, value);
+                empty = bucket;
+            }
+        }
+        table.putInt(empty * Integer.BYTES, 0);
+    }
+
+    private void rehash(int buckets) {
+        ByteBuffer old = table;
+        table = ByteBuffer.allocateDirect(buckets * Integer.BYTES);
+        tableMask = buckets - 1;
+        for (int i = 0; i < old.capacity() / Integer.BYTES; i++) {
+            int value = old.getInt(i * Integer.BYTES);
+            if (value != 0) {
+                int bucket = bucketOf(slots.getLong((value - 1) * SLOT_BYTES + HASH));
+                while (table.getInt(bucket * Integer.BYTES) != 0) {
+                    bucket = (bucket + 1) & tableMask;
+                }
+                table.putInt(bucket * Integer.BYTES, value);
+            }
+        }
+    }
+
+    private int bucketOf(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & tableMask;
+    }
+
+    private int appendToArena(byte[] bytes) {
+        if (arena.capacity() - arenaUsed < bytes.length) {
+            // polled urls leave holes behind, reclaim them before growing
+            long live = (long) arenaUsed - arenaGarbage;
+            long capacity = arena.capacity();
+            while (capacity - live < bytes.length || live > capacity / 2) {
+                capacity *= 2;
+            }
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Frontier url arena exceeds 2 GB");
+            }
+            compactArena((int) capacity);
+        }
+        int offset = arenaUsed;
+        arena.put(offset, bytes);
+        arenaUsed += bytes.length;
+        return offset;
+    }
+
+    /**
+     * Copies the urls still queued into a new arena, in heap order.
+     */
+    private void compactArena(int capacity) {
+        ByteBuffer compacted = ByteBuffer.allocateDirect(capacity);
+        int used = 0;
+        for (int position = 0; position < size; position++) {
+            int base = heap.getInt(position * Integer.BYTES) * SLOT_BYTES;
+            int offset = slots.getInt(base + URL_OFFSET);
+            int length = slots.getInt(base + URL_LENGTH);
+            compacted.put(used, arena, offset, length);
+            slots.putInt(base + URL_OFFSET, used);
+            used += length;
+        }
+        arena = compacted;
+        arenaUsed = used;
+        arenaGarbage = 0;
+    }
+
+    private boolean arenaEquals(int offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (arena.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readUrl(int slot) {
+        int base = slot * SLOT_BYTES;
+        byte[] bytes = new byte[slots.getInt(base + URL_LENGTH)];
+        arena.get(slots.getInt(base + URL_OFFSET), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer copyOf(ByteBuffer buffer, int used) {
+        ByteBuffer copy = ByteBuffer.allocateDirect(buffer.capacity());
+        copy.put(0, buffer, 0, used);
+        return copy;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+        grown.put(0, buffer, 0, buffer.capacity());
+        return grown;
+    }
+
+    /**
+     * FNV-1a over the url bytes, finished with a 64-bit mix so that low bits spread over the table.
+     */
+    private static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
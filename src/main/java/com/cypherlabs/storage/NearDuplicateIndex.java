@@ -0,0 +1,97 @@
+package com.cypherlabs.storage;
+
+import com.cypherlabs.crawler.Url;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Index of SimHash fingerprints answering "is there a fingerprint within maxDistance bits of this one".
+ *
+ * The 64 bits are split into maxDistance + 1 bands. Two fingerprints differing in at most maxDistance
+ * bits can't differ in every band (pigeonhole), so they share at least one band exactly. Each band gets
+ * its own table keyed by that band's bits, i.e. a table over a permutation of the fingerprint that
+ * brings the band to the front. A lookup only checks fingerprints colliding on some band, instead of
+ * scanning all of them.
+ *
+ * Lookups and inserts from concurrent threads are safe. Two near-duplicates inserted at the same time
+ * may both be accepted as originals; this only costs indexing a duplicate.
+ */
+public class NearDuplicateIndex {
+
+    public static final int DEFAULT_MAX_DISTANCE = 3;
+
+    record Entry(long fingerprint, Url url) {
+    }
+
+    private final int maxDistance;
+    private final int numBands;
+    private final int bandWidth;
+    private final List<Map<Long, Queue<Entry>>> tables = new ArrayList<>();
+
+    public NearDuplicateIndex() {
+        this(DEFAULT_MAX_DISTANCE);
+    }
+
+    public NearDuplicateIndex(int maxDistance) {
+        if (maxDistance < 0 || maxDistance > 15) {
+            throw new IllegalArgumentException("Max distance must be within [0, 15]: " + maxDistance);
+        }
+        this.maxDistance = maxDistance;
+        this.numBands = maxDistance + 1;
+        this.bandWidth = (Long.SIZE + numBands - 1) / numBands;
+        for (int band = 0; band < numBands; band++) {
+            tables.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Returns the URL of an indexed near-duplicate of the fingerprint, or indexes the fingerprint
+     * for the given URL if there is none.
+     *
+     * @param fingerprint SimHash of the document
+     * @param url URL of the document
+     * @return URL of the near-duplicate, empty if the document was indexed as an original
+     */
+    public Optional<Url> findOrAdd(long fingerprint, Url url) {
+        Optional<Url> nearDuplicate = find(fingerprint);
+        if (nearDuplicate.isEmpty()) {
+            Entry entry = new Entry(fingerprint, url);
+            for (int band = 0; band < numBands; band++) {
+                tables.get(band).computeIfAbsent(bandKey(fingerprint, band), _ -> new ConcurrentLinkedQueue<>())
+                        .add(entry);
+            }
+        }
+        return nearDuplicate;
+    }
+
+    /**
+     * @return URL of an indexed fingerprint within maxDistance bits, if any
+     */
+    public Optional<Url> find(long fingerprint) {
+        for (int band = 0; band < numBands; band++) {
+            Queue<Entry> candidates = tables.get(band).get(bandKey(fingerprint, band));
+            if (candidates == null) {
+                continue;
+            }
+            for (Entry candidate : candidates) {
+                if (Long.bitCount(candidate.fingerprint() ^ fingerprint) <= maxDistance) {
+                    return Optional.of(candidate.url());
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private long bandKey(long fingerprint, int band) {
+        int shift = band * bandWidth;
+        int width = Math.min(bandWidth, Long.SIZE - shift);
+        long mask = width == Long.SIZE ? -1L : (1L << width) - 1;
+        return (fingerprint >>> shift) & mask;
+    }
+}
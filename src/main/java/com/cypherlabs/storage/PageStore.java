@@ -0,0 +1,158 @@
+package com.cypherlabs.storage;
+
+import com.cypherlabs.crawler.Url;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+
+/**
+ * Append-only store of raw fetched pages, so that the index can be rebuilt without fetching again.
+ *
+ * Pages are gathered into blocks which are compressed as a whole, as neighbouring pages of a crawl share
+ * most of their markup. Two files are kept in the store directory:
+ *
+ * pages.dat
+ * - Sequence of blocks, each: int uncompressed length, int compressed length, Deflater compressed bytes
+ * - Uncompressed block: sequence of pages, each: int length, raw bytes as fetched
+ *
+ * pages.idx
+ * - Sequence of entries, one per page: writeUTF(url), long block offset in pages.dat, int page offset
+ *   within the uncompressed block, int page length
+ * - Pages are keyed by url, not doc ID: doc IDs are only unique within a segment, and change when a
+ *   segment is written renumbered (see {@link com.cypherlabs.io.DocIdReorderer})
+ * - Entries of a block are written only once the block itself is, so the index never points past pages.dat
+ *
+ * Reopening a store appends to it. See {@link PageStoreReader} for reading it back.
+ */
+public class PageStore implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PageStore.class);
+
+    static final String DATA_FILE_NAME = "pages.dat";
+    static final String INDEX_FILE_NAME = "pages.idx";
+    static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    private record PendingEntry(String url, int offsetInBlock, int length) {
+    }
+
+    private final int blockSize;
+    private final DataOutputStream data;
+    private final DataOutputStream index;
+    private final ByteArrayOutputStream block;
+    private final DataOutputStream blockOut;
+    private final List<PendingEntry> pendingEntries = new ArrayList<>();
+    private final Deflater deflater = new Deflater();
+    private final byte[] deflateBuffer = new byte[64 * 1024];
+    // appends come from all processing threads, and a block flush must not interleave with them
+    private final ReentrantLock lock = new ReentrantLock();
+    private long dataOffset;
+    private long blocksWritten;
+    private long uncompressedBytes;
+    private long compressedBytes;
+
+    public PageStore(Path storeDir) throws IOException {
+        this(storeDir, DEFAULT_BLOCK_SIZE);
+    }
+
+    public PageStore(Path storeDir, int blockSize) throws IOException {
+        this.blockSize = blockSize;
+        Files.createDirectories(storeDir);
+        Path dataFile = storeDir.resolve(DATA_FILE_NAME);
+        this.dataOffset = Files.exists(dataFile) ? Files.size(dataFile) : 0;
+        this.data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile.toFile(), true)));
+        this.index = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(storeDir.resolve(INDEX_FILE_NAME).toFile(), true)));
+        this.block = new ByteArrayOutputStream(blockSize + blockSize / 4);
+        this.blockOut = new DataOutputStream(block);
+    }
+
+    /**
+     * Adds a page to the current block, flushing the block once it reaches the block size.
+     *
+     * @param url Url of the page
+     * @param body Raw bytes of the page, as fetched
+     */
+    public void append(Url url, byte[] body) throws IOException {
+        lock.lock();
+        try {
+            pendingEntries.add(new PendingEntry(url.address(), block.size() + Integer.BYTES, body.length));
+            blockOut.writeInt(body.length);
+            blockOut.write(body);
+            if (block.size() >= blockSize) {
+                flushBlock();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (pendingEntries.isEmpty()) {
+            return;
+        }
+        byte[] uncompressed = block.toByteArray();
+        deflater.reset();
+        deflater.setInput(uncompressed);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(uncompressed.length / 4);
+        while (!deflater.finished()) {
+            int n = deflater.deflate(deflateBuffer);
+            compressed.write(deflateBuffer, 0, n);
+        }
+
+        long blockOffset = dataOffset;
+        data.writeInt(uncompressed.length);
+        data.writeInt(compressed.size());
+        compressed.writeTo(data);
+        data.flush();
+        dataOffset += 2 * Integer.BYTES + compressed.size();
+
+        for (PendingEntry entry : pendingEntries) {
+            index.writeUTF(entry.url());
+            index.writeLong(blockOffset);
+            index.writeInt(entry.offsetInBlock());
+            index.writeInt(entry.length());
+        }
+        index.flush();
+
+        blocksWritten++;
+        uncompressedBytes += uncompressed.length;
+        compressedBytes += compressed.size();
+        pendingEntries.clear();
+        block.reset();
+    }
+
+    /**
+     * Writes out the last, partially filled block.
+     */
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            flushBlock();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            flushBlock();
+            LOGGER.info("Page store wrote {} blocks, {} KB compressed to {} KB", blocksWritten,
+                    uncompressedBytes >> 10, compressedBytes >> 10);
+        } finally {
+            deflater.end();
+            data.close();
+            index.close();
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.cypherlabs.storage;
+
+import com.cypherlabs.crawler.Url;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads pages back from a {@link PageStore}.
+ *
+ * The whole offset index is loaded in memory, along with the entries grouped by block. When a url was stored more than once, e.g. by successive
+ * crawls appending to the same store, its last stored version wins. Blocks are read with positional reads,
+ * so a reader can be shared by threads decompressing different blocks in parallel.
+ */
+public class PageStoreReader implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PageStoreReader.class);
+
+    public record StoredPage(Url url, byte[] body) {
+    }
+
+    private record Entry(String url, long blockOffset, int offsetInBlock, int length) {
+    }
+
+    private final FileChannel data;
+    private final Map<String, Entry> entryByUrl = new LinkedHashMap<>();
+    private final NavigableMap<Long, List<Entry>> entriesByBlock = new TreeMap<>();
+
+    private PageStoreReader(FileChannel data) {
+        this.data = data;
+    }
+
+    public static PageStoreReader open(Path storeDir) throws IOException {
+        PageStoreReader reader = new PageStoreReader(
+                FileChannel.open(storeDir.resolve(PageStore.DATA_FILE_NAME), StandardOpenOption.READ));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(storeDir.resolve(PageStore.INDEX_FILE_NAME).toFile())))) {
+            while (true) {
+                Entry entry;
+                try {
+                    entry = new Entry(in.readUTF(), in.readLong(), in.readInt(), in.readInt());
+                } catch (EOFException eof) {
+                    // end of index, or an entry torn by a crash while it was written
+                    break;
+                }
+                reader.entryByUrl.remove(entry.url());
+                reader.entryByUrl.put(entry.url(), entry);
+            }
+        }
+        for (Entry entry : reader.entryByUrl.values()) {
+            reader.entriesByBlock.computeIfAbsent(entry.blockOffset(), offset -> new ArrayList<>()).add(entry);
+        }
+        LOGGER.info("Opened page store {} with {} pages", storeDir, reader.entryByUrl.size());
+        return reader;
+    }
+
+    /**
+     * @return Number of distinct urls stored
+     */
+    public int size() {
+        return entryByUrl.size();
+    }
+
+    /**
+     * @return Raw bytes of the page last stored for the url, if any
+     */
+    public Optional<byte[]> read(Url url) throws IOException {
+        Entry entry = entryByUrl.get(url.address());
+        if (entry == null) {
+            return Optional.empty();
+        }
+        byte[] block = readBlock(entry.blockOffset());
+        return Optional.of(Arrays.copyOfRange(block, entry.offsetInBlock(), entry.offsetInBlock() + entry.length()));
+    }
+
+    /**
+     * @return Offsets of the blocks holding the last stored version of at least one url, in file order
+     */
+    public List<Long> blockOffsets() {
+        return List.copyOf(entriesByBlock.keySet());
+    }
+
+    /**
+     * Decompresses a block and returns the pages in it which are the last stored version of their url.
+     *
+     * @param blockOffset One of {@link #blockOffsets()}
+     */
+    public List<StoredPage> readPages(long blockOffset) throws IOException {
+        List<Entry> entries = entriesByBlock.getOrDefault(blockOffset, List.of());
+        if (entries.isEmpty()) {
+            return List.of();
+        }
+        byte[] block = readBlock(blockOffset);
+        List<StoredPage> pages = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            pages.add(new StoredPage(new Url(entry.url()),
+                    Arrays.copyOfRange(block, entry.offsetInBlock(), entry.offsetInBlock() + entry.length())));
+        }
+        return pages;
+    }
+
+    private byte[] readBlock(long blockOffset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+        readFully(header, blockOffset);
+        int uncompressedLength = header.getInt(0);
+        int compressedLength = header.getInt(Integer.BYTES);
+        ByteBuffer compressed = ByteBuffer.allocate(compressedLength);
+        readFully(compressed, blockOffset + header.capacity());
+
+        byte[] block = new byte[uncompressedLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array());
+            int n = 0;
+            while (n < uncompressedLength && !inflater.finished()) {
+                n += inflater.inflate(block, n, uncompressedLength - n);
+            }
+            if (n != uncompressedLength) {
+                throw new IOException("Truncated page store block at offset " + blockOffset);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt page store block at offset " + blockOffset, e);
+        } finally {
+            inflater.end();
+        }
+        return block;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = data.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new EOFException("Page store ends before offset " + (position + buffer.capacity()));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        data.close();
+    }
+}
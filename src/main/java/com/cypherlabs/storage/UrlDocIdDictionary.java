@@ -4,41 +4,353 @@ import com.cypherlabs.crawler.Url;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Assigns dense doc IDs to urls, from all processing threads at once, without locks.
+ *
+ * Each url is stored once, as a doc_table.bin record (unsigned short length, then modified UTF-8 as with
+ * writeUTF), in an append-only arena of off-heap chunks; doc IDs map to arena offsets through on-heap
+ * long arrays. Urls map to doc IDs through open addressing tables of longs, each entry packing a 32-bit
+ * fingerprint of the url with its doc ID, so that a probe only compares url bytes on a fingerprint match.
+ * About 30 bytes per url on top of its bytes, against some 150 for a map and a list of Url records.
+ *
+ * Adding a url reserves an empty table entry by CAS, takes the next doc ID from an atomic counter, appends
+ * the url to the arena and publishes the doc ID in the entry. A thread probing the same url meanwhile waits
+ * for the entry to be published, which takes a few hundred nanoseconds. Tables don't move: when the newest
+ * is half full, a table four times larger is added and the empty entries of the previous one are frozen,
+ * so a probe ending on a frozen entry carries on in the next table.
+ */
 public class UrlDocIdDictionary {
 
     private static final Logger LOGGER  = LoggerFactory.getLogger(UrlDocIdDictionary.class);
 
-    private final Map<Url, Integer> urlByDocIdDict = new HashMap<>();
-    private final List<Url> docIdToUrlList = new ArrayList<>(); // list index is docid itself
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 16;
+    private static final long EMPTY = 0;
+    // doc IDs stay below 2^31, so no reserved or published entry is all ones
+    private static final long FROZEN = -1;
+    private static final int ARENA_CHUNK_BYTES = 1 << 20;
+    private static final int MAX_ARENA_CHUNKS = 1 << 16;
+    private static final int OFFSET_CHUNK_SHIFT = 14;
+    private static final int OFFSET_CHUNK_MASK = (1 << OFFSET_CHUNK_SHIFT) - 1;
+    private static final int MAX_RECORD_BYTES = 2 + 0xFFFF;
 
-    public synchronized int addIfAbsent(Url url) {
-        return urlByDocIdDict.computeIfAbsent(url, u -> {
-            int docId = docIdToUrlList.size();
-            docIdToUrlList.add(u);
-            return docId;
-        });
+    /**
+     * @param docIdLimit Doc ID count past which the next table is added
+     */
+    private record Table(AtomicLongArray entries, int mask, int docIdLimit) {
+    }
+
+    private final AtomicReference<Table[]> tables;
+    private final AtomicInteger nextDocId = new AtomicInteger();
+    private final AtomicReferenceArray<long[]> offsetChunks =
+            new AtomicReferenceArray<>((Integer.MAX_VALUE >> OFFSET_CHUNK_SHIFT) + 1);
+    private final AtomicReferenceArray<ByteBuffer> arenaChunks = new AtomicReferenceArray<>(MAX_ARENA_CHUNKS);
+    private final AtomicLong arenaEnd = new AtomicLong();
+
+    public UrlDocIdDictionary() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity Entries of the first table, a power of two
+     */
+    UrlDocIdDictionary(int initialCapacity) {
+        if (Integer.bitCount(initialCapacity) != 1) {
+            throw new IllegalArgumentException("Initial capacity must be a power of two: " + initialCapacity);
+        }
+        this.tables = new AtomicReference<>(new Table[]{
+                new Table(new AtomicLongArray(initialCapacity), initialCapacity - 1, initialCapacity / 2)});
+    }
+
+    public int addIfAbsent(Url url) {
+        byte[] record = encode(url.address());
+        long hash = hash(record);
+        long fingerprint = fingerprint(hash);
+        Table[] snapshot = tables.get();
+        for (int t = 0; ; t++) {
+            if (t == snapshot.length) {
+                snapshot = tables.get();
+            }
+            Table table = snapshot[t];
+            AtomicLongArray entries = table.entries();
+            int slot = (int) hash & table.mask();
+            while (true) {
+                long entry = entries.get(slot);
+                if (entry == EMPTY) {
+                    if (!entries.compareAndSet(slot, EMPTY, fingerprint)) {
+                        // lost the entry to another url, or to freezing, look again
+                        continue;
+                    }
+                    int docId = nextDocId.getAndIncrement();
+                    setOffset(docId, append(record));
+                    entries.set(slot, fingerprint | (docId + 1L));
+                    Table[] current = tables.get();
+                    if (docId + 1 >= current[current.length - 1].docIdLimit()) {
+                        grow(current);
+                    }
+                    return docId;
+                }
+                if (entry == FROZEN) {
+                    break;
+                }
+                if ((entry & 0xFFFFFFFF00000000L) == fingerprint) {
+                    int docId = awaitDocId(entries, slot);
+                    if (recordEquals(docId, record)) {
+                        return docId;
+                    }
+                }
+                slot = (slot + 1) & table.mask();
+            }
+        }
     }
 
     public Optional<Integer> getDocId(Url url) {
-        return Optional.ofNullable(urlByDocIdDict.get(url));
+        byte[] record = encode(url.address());
+        long hash = hash(record);
+        long fingerprint = fingerprint(hash);
+        Table[] snapshot = tables.get();
+        for (int t = 0; ; t++) {
+            if (t == snapshot.length) {
+                snapshot = tables.get();
+                if (t == snapshot.length) {
+                    return Optional.empty();
+                }
+            }
+            Table table = snapshot[t];
+            AtomicLongArray entries = table.entries();
+            int slot = (int) hash & table.mask();
+            while (true) {
+                long entry = entries.get(slot);
+                if (entry == EMPTY) {
+                    return Optional.empty();
+                }
+                if (entry == FROZEN) {
+                    break;
+                }
+                if ((entry & 0xFFFFFFFF00000000L) == fingerprint) {
+                    int docId = awaitDocId(entries, slot);
+                    if (recordEquals(docId, record)) {
+                        return Optional.of(docId);
+                    }
+                }
+                slot = (slot + 1) & table.mask();
+            }
+        }
     }
 
-    public synchronized Optional<Url> getUrl(int docId) {
-        if (docId >= 0 && docId < docIdToUrlList.size()) {
-            return Optional.of(docIdToUrlList.get(docId));
+    public Optional<Url> getUrl(int docId) {
+        if (docId >= 0 && docId < size()) {
+            return Optional.of(new Url(decode(readRecord(docId))));
         } else {
             LOGGER.info("No corresponding URL found for doc ID: {}", docId);
             return Optional.empty();
         }
     }
 
+    /**
+     * @return Urls by doc ID, materialized; prefer {@link #writeRecords} to serialize them
+     */
     public List<Url> getAllUrlsInOrder() {
-        return Collections.unmodifiableList(docIdToUrlList);
+        int size = size();
+        List<Url> urls = new ArrayList<>(size);
+        for (int docId = 0; docId < size; docId++) {
+            urls.add(new Url(decode(readRecord(docId))));
+        }
+        return Collections.unmodifiableList(urls);
+    }
+
+    /**
+     * Streams the urls in doc ID order, in the format of writeUTF, straight from the arena.
+     */
+    public void writeRecords(DataOutput out) throws IOException {
+        byte[] buffer = new byte[MAX_RECORD_BYTES];
+        int size = size();
+        for (int docId = 0; docId < size; docId++) {
+            long offset = offset(docId);
+            ByteBuffer chunk = arenaChunks.get((int) (offset / ARENA_CHUNK_BYTES));
+            int position = (int) (offset % ARENA_CHUNK_BYTES);
+            int length = 2 + Short.toUnsignedInt(chunk.getShort(position));
+            chunk.get(position, buffer, 0, length);
+            out.write(buffer, 0, length);
+        }
     }
 
     public int size() {
-        return docIdToUrlList.size();
+        return nextDocId.get();
+    }
+
+    /**
+     * Adds a table four times larger than the newest, unless another thread already did, and freezes the
+     * empty entries of the newest so that later insertions go to the new one.
+     */
+    private void grow(Table[] snapshot) {
+        Table newest = snapshot[snapshot.length - 1];
+        int capacity = newest.entries().length() * 4;
+        if (capacity <= 0) {
+            throw new IllegalStateException("Url dictionary cannot grow past " + newest.entries().length());
+        }
+        Table[] grown = Arrays.copyOf(snapshot, snapshot.length + 1);
+        grown[snapshot.length] = new Table(new AtomicLongArray(capacity), capacity - 1,
+                newest.docIdLimit() + capacity / 2);
+        if (!tables.compareAndSet(snapshot, grown)) {
+            return;
+        }
+        AtomicLongArray entries = newest.entries();
+        for (int slot = 0; slot < entries.length(); slot++) {
+            entries.compareAndSet(slot, EMPTY, FROZEN);
+        }
+        LOGGER.debug("Url dictionary grew to {} tables, the newest of {} entries", grown.length, capacity);
+    }
+
+    /**
+     * Waits for the doc ID of an entry reserved by another thread to be published.
+     */
+    private static int awaitDocId(AtomicLongArray entries, int slot) {
+        long entry;
+        int spins = 0;
+        while ((int) (entry = entries.get(slot)) == 0) {
+            if (++spins % 64 == 0) {
+                Thread.yield();
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        return (int) entry - 1;
+    }
+
+    private long append(byte[] record) {
+        long current;
+        long offset;
+        do {
+            current = arenaEnd.get();
+            offset = current;
+            // records don't straddle chunks
+            if (offset % ARENA_CHUNK_BYTES + record.length > ARENA_CHUNK_BYTES) {
+                offset += ARENA_CHUNK_BYTES - offset % ARENA_CHUNK_BYTES;
+            }
+        } while (!arenaEnd.compareAndSet(current, offset + record.length));
+        int chunkIndex = (int) (offset / ARENA_CHUNK_BYTES);
+        if (chunkIndex >= MAX_ARENA_CHUNKS) {
+            throw new IllegalStateException("Url dictionary arena is full");
+        }
+        ByteBuffer chunk = arenaChunks.get(chunkIndex);
+        if (chunk == null) {
+            arenaChunks.compareAndSet(chunkIndex, null, ByteBuffer.allocateDirect(ARENA_CHUNK_BYTES));
+            chunk = arenaChunks.get(chunkIndex);
+        }
+        chunk.put((int) (offset % ARENA_CHUNK_BYTES), record);
+        return offset;
+    }
+
+    private void setOffset(int docId, long offset) {
+        int chunkIndex = docId >>> OFFSET_CHUNK_SHIFT;
+        long[] chunk = offsetChunks.get(chunkIndex);
+        if (chunk == null) {
+            offsetChunks.compareAndSet(chunkIndex, null, new long[OFFSET_CHUNK_MASK + 1]);
+            chunk = offsetChunks.get(chunkIndex);
+        }
+        chunk[docId & OFFSET_CHUNK_MASK] = offset;
+    }
+
+    private long offset(int docId) {
+        return offsetChunks.get(docId >>> OFFSET_CHUNK_SHIFT)[docId & OFFSET_CHUNK_MASK];
+    }
+
+    private boolean recordEquals(int docId, byte[] record) {
+        long offset = offset(docId);
+        ByteBuffer chunk = arenaChunks.get((int) (offset / ARENA_CHUNK_BYTES));
+        int position = (int) (offset % ARENA_CHUNK_BYTES);
+        if (Short.toUnsignedInt(chunk.getShort(position)) != record.length - 2) {
+            return false;
+        }
+        for (int i = 2; i < record.length; i++) {
+            if (chunk.get(position + i) != record[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] readRecord(int docId) {
+        long offset = offset(docId);
+        ByteBuffer chunk = arenaChunks.get((int) (offset / ARENA_CHUNK_BYTES));
+        int position = (int) (offset % ARENA_CHUNK_BYTES);
+        byte[] record = new byte[2 + Short.toUnsignedInt(chunk.getShort(position))];
+        chunk.get(position, record);
+        return record;
+    }
+
+    /**
+     * @return The url as written by writeUTF: unsigned short length, then modified UTF-8
+     */
+    static byte[] encode(String address) {
+        int length = 0;
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            length += c >= 1 && c <= 0x7F ? 1 : c <= 0x7FF ? 2 : 3;
+        }
+        if (length > 0xFFFF) {
+            throw new IllegalArgumentException("Url too long for the doc table: " + length + " bytes");
+        }
+        byte[] record = new byte[2 + length];
+        record[0] = (byte) (length >>> 8);
+        record[1] = (byte) length;
+        int position = 2;
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c >= 1 && c <= 0x7F) {
+                record[position++] = (byte) c;
+            } else if (c <= 0x7FF) {
+                record[position++] = (byte) (0xC0 | (c >> 6));
+                record[position++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                record[position++] = (byte) (0xE0 | (c >> 12));
+                record[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                record[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return record;
+    }
+
+    private static String decode(byte[] record) {
+        try {
+            return new DataInputStream(new ByteArrayInputStream(record)).readUTF();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * FNV-1a over the record, finished with a 64-bit mix: low bits pick the bucket, high bits the fingerprint.
+     */
+    private static long hash(byte[] record) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : record) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * @return High 32 bits of the hash, made odd so that a reserved entry is never empty
+     */
+    private static long fingerprint(long hash) {
+        return (hash | 0x100000000L) & 0xFFFFFFFF00000000L;
     }
 }
@@ -0,0 +1,65 @@
+package com.cypherlabs.analysis;
+
+import com.cypherlabs.crawler.Token;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnalyzerTest {
+
+    private static List<String> keys(List<Token> tokens) {
+        return tokens.stream().map(Token::key).toList();
+    }
+
+    @Test
+    void testStandardChain() {
+        Analyzer analyzer = Analyzer.standard();
+        assertEquals(List.of("crawler", "run", "page", "42", "fetch"),
+                keys(analyzer.analyze("The Crawler is running to page 42, and a-fetching!")));
+    }
+
+    @Test
+    void testFiltersApplyInOrder() {
+        // stop words are matched before lower casing, so capitalised ones survive
+        assertEquals(List.of("the", "end"), keys(Analyzer.fromSpec("stop,lowercase").analyze("The end")));
+        assertEquals(List.of("end"), keys(Analyzer.fromSpec("lowercase,stop").analyze("The end")));
+        // length applies to the stem when it comes after stemming
+        assertEquals(List.of("go"), keys(Analyzer.fromSpec("lowercase,length:3,stem").analyze("going go")));
+        assertEquals(List.of("go", "go"), keys(Analyzer.fromSpec("lowercase,stem,length:2").analyze("going go")));
+        assertEquals(List.of("abc"), keys(Analyzer.fromSpec("length:2:3").analyze("a abc abcd")));
+    }
+
+    @Test
+    void testSpecRoundTrips() {
+        for (String spec : List.of(Analyzer.DEFAULT_SPEC, Analyzer.LEGACY_SPEC, "stem", "length:1:10,lowercase")) {
+            assertEquals(spec, Analyzer.fromSpec(spec).spec());
+        }
+        assertThrows(IllegalArgumentException.class, () -> Analyzer.fromSpec("lowercase,unknown"));
+        assertThrows(IllegalArgumentException.class, () -> Analyzer.fromSpec("length"));
+        assertThrows(IllegalArgumentException.class, () -> Analyzer.fromSpec("length:5:2"));
+    }
+
+    @Test
+    void testQueryTerms() {
+        Analyzer analyzer = Analyzer.standard();
+        assertEquals(Optional.of("run"), analyzer.analyzeTerm("Running"));
+        assertEquals(Optional.empty(), analyzer.analyzeTerm("the"), "Stop words match nothing");
+    }
+
+    @Test
+    void testBufferIsReusedAcrossTerms() {
+        Analyzer analyzer = Analyzer.fromSpec("lowercase");
+        List<TermBuffer> buffers = new ArrayList<>();
+        List<String> terms = new ArrayList<>();
+        analyzer.analyze("one two " + "x".repeat(100), term -> {
+            buffers.add(term);
+            terms.add(term.toString());
+        });
+        assertEquals(List.of("one", "two", "x".repeat(100)), terms);
+        assertTrue(buffers.stream().allMatch(b -> b == buffers.getFirst()), "Analysis should reuse one term buffer");
+    }
+}
@@ -0,0 +1,100 @@
+package com.cypherlabs.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AimdLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void testLimitGrowsWhileSaturatedAndFast() throws InterruptedException {
+        AimdLimiter limiter = new AimdLimiter(4, 1, 100);
+        for (int round = 0; round < 50; round++) {
+            int limit = limiter.getLimit();
+            for (int i = 0; i < limit; i++) {
+                limiter.acquire();
+            }
+            for (int i = 0; i < limit; i++) {
+                limiter.release(FAST, false);
+            }
+        }
+        assertTrue(limiter.getLimit() > 20, "Limit should grow steadily, was " + limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testLimitDoesNotGrowWhenUnused() throws InterruptedException {
+        AimdLimiter limiter = new AimdLimiter(10, 1, 100);
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire();
+            limiter.release(FAST, false);
+        }
+        assertEquals(10, limiter.getLimit(), "A limit that is not in use should not grow");
+    }
+
+    @Test
+    void testLimitShrinksOnErrorsAndLatency() throws InterruptedException {
+        AimdLimiter limiter = new AimdLimiter(64, 1, 100);
+        limiter.acquire();
+        limiter.release(FAST, false);
+        limiter.acquire();
+        limiter.release(FAST, true);
+        assertEquals(48, limiter.getLimit(), "A failure should shrink the limit by the backoff ratio");
+
+        // decreases are applied once per window
+        for (int i = 0; i < 47; i++) {
+            limiter.acquire();
+            limiter.release(SLOW, false);
+        }
+        assertEquals(48, limiter.getLimit(), "Only one decrease per window");
+        limiter.acquire();
+        limiter.release(SLOW, false);
+        assertEquals(36, limiter.getLimit(), "Latency above tolerance should shrink the limit");
+
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire();
+            limiter.release(SLOW * 10, true);
+        }
+        assertEquals(1, limiter.getLimit(), "Limit should never drop below the minimum");
+    }
+
+    @Test
+    void testAcquireBlocksAtLimit() throws InterruptedException {
+        AimdLimiter limiter = new AimdLimiter(2, 1, 2);
+        limiter.acquire();
+        limiter.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = Thread.ofVirtual().start(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS), "Third permit should not be handed out");
+        limiter.release();
+        assertTrue(acquired.await(1, TimeUnit.SECONDS), "Released permit should be handed to the waiter");
+        waiter.join();
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void testTryAcquireDoesNotWaitAtLimit() throws InterruptedException {
+        AimdLimiter limiter = new AimdLimiter(2, 1, 2);
+        assertTrue(limiter.tryAcquire());
+        limiter.acquire();
+        assertFalse(limiter.tryAcquire(), "Third permit should not be handed out");
+        assertFalse(limiter.hasPermit());
+        limiter.release();
+        assertTrue(limiter.hasPermit());
+        assertTrue(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,158 @@
+package com.cypherlabs.crawler;
+
+import com.cypherlabs.storage.CrawlState;
+import com.cypherlabs.storage.FrontierQueue;
+import fi.iki.elonen.NanoHTTPD;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CrawlCheckpointTest {
+
+    private IncrementalCrawlTest.MutableSiteServer server;
+    private Path checkpointDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new IncrementalCrawlTest.MutableSiteServer();
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+        checkpointDir = Files.createTempDirectory("checkpoint");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private static List<Token> tokens(String... keys) {
+        return Arrays.stream(keys).map(Token::new).toList();
+    }
+
+    @Test
+    void testFrontierSnapshotHoldsUrlsInFlight() {
+        CrawlFrontier frontier = new CrawlFrontier(CrawlPriority.Standard.INLINKS);
+        Url a = new Url("http://a.com/a");
+        Url b = new Url("http://a.com/b");
+        frontier.offer(a, 1);
+        frontier.offer(b, 2);
+        assertEquals(b, assertDoesNotThrow(frontier::take).url());
+        assertEquals(List.of(new FrontierQueue.Entry(b, 2), new FrontierQueue.Entry(a, 1)), frontier.snapshot());
+
+        frontier.done(b);
+        assertEquals(List.of(new FrontierQueue.Entry(a, 1)), frontier.snapshot());
+        assertEquals(a, assertDoesNotThrow(frontier::take).url());
+        assertTrue(frontier.requeue(a, 3));
+        assertEquals(List.of(new FrontierQueue.Entry(a, 3)), frontier.snapshot(), "Requeued url is no longer in flight");
+    }
+
+    @Test
+    void testCheckpointRoundTrip() throws IOException {
+        Url a = new Url("http://a.com/a");
+        Url b = new Url("http://a.com/b");
+        Url c = new Url("http://a.com/c");
+        CrawlState crawlState = new CrawlState();
+        crawlState.recordIndexed(a, "segment_000001", 0, "\"etag\"", null, 42);
+        crawlState.recordIndexed(a, "segment_000002", 0, null, null, 43);
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(checkpointDir, "lowercase");
+        checkpoint.recordIndexed(a, tokens("alpha", "apple"), List.of(b));
+        checkpoint.recordVisited(a);
+        checkpoint.write(() -> List.of(new FrontierQueue.Entry(b, 0.5)), Map.of(b, 2), "segment_000002", crawlState);
+        checkpoint.recordVisited(b);
+        checkpoint.write(() -> List.of(new FrontierQueue.Entry(b, 0.5)), Map.of(b, 2), "segment_000002", crawlState);
+        // as if a crash interrupted appending to the visited log
+        Files.write(checkpointDir.resolve(CrawlCheckpoint.VISITED_FILE_NAME), new byte[]{0, 42, 'h'},
+                StandardOpenOption.APPEND);
+
+        CrawlCheckpoint reopened = new CrawlCheckpoint(checkpointDir, "lowercase");
+        CrawlCheckpoint.Restored restored = reopened.restore().orElseThrow();
+        assertEquals("segment_000002", restored.segmentName());
+        assertEquals(List.of(new FrontierQueue.Entry(b, 0.5)), restored.frontier());
+        assertEquals(Set.of(a, b), restored.visited(), "Visited urls of both checkpoints, without the torn tail");
+        assertEquals(Map.of(b, 2), restored.retryCounts());
+        assertEquals(43, restored.crawlState().get(a).orElseThrow().contentHash());
+        assertEquals(Map.of("segment_000001", List.of(0)), restored.crawlState().getDeletedDocsBySegment());
+        assertEquals(1, restored.deltas().size());
+        CrawlCheckpoint.Delta delta = CrawlCheckpoint.readDelta(restored.deltas().getFirst());
+        assertEquals(List.of("alpha", "apple"), delta.segment().tokens());
+        assertEquals(List.of(List.of(b)), delta.links());
+
+        // deltas of a resumed crawl go on from the restored ones
+        reopened.recordIndexed(b, tokens("bravo"), List.of());
+        reopened.recordVisited(c);
+        reopened.write(List::of, Map.of(), "segment_000002", restored.crawlState());
+        assertEquals(2, reopened.restore().orElseThrow().deltas().size());
+        assertEquals(Set.of(a, b, c), reopened.restore().orElseThrow().visited());
+
+        // a was not in any delta restored, so its document has to be fetched again
+        restored.crawlState().resumeSegment("segment_000002", Map.of(b, 7));
+        assertTrue(restored.crawlState().get(a).isEmpty());
+        assertEquals(Map.of("segment_000001", List.of(0), "segment_000002", List.of(7)),
+                restored.crawlState().getDeletedDocsBySegment(), "Restored b has no record, so it was removed");
+
+        reopened.clear();
+        assertTrue(reopened.restore().isEmpty());
+        assertFalse(Files.exists(checkpointDir), "Directory left empty should be deleted");
+    }
+
+    @Test
+    void testClearDeletesOnlyCheckpointFiles() throws IOException {
+        Files.createDirectories(checkpointDir.resolve("segment_000001"));
+        Files.writeString(checkpointDir.resolve("notes.txt"), "not a checkpoint");
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(checkpointDir, "lowercase");
+        checkpoint.recordIndexed(new Url("http://a.com/a"), tokens("alpha"), List.of());
+        checkpoint.recordVisited(new Url("http://a.com/a"));
+        checkpoint.write(List::of, Map.of(), null, null);
+        assertTrue(Files.isDirectory(checkpointDir.resolve("delta_000001")));
+
+        checkpoint.clear();
+        try (Stream<Path> files = Files.list(checkpointDir)) {
+            assertEquals(Set.of("notes.txt", "segment_000001"),
+                    files.map(f -> f.getFileName().toString()).collect(Collectors.toSet()));
+        }
+    }
+
+    @Test
+    void testResumeIndexesCheckpointedPagesWithoutFetchingThem() throws IOException {
+        Url a = server.url("/a.html");
+        Url b = server.url("/b.html");
+        Url c = server.url("/c.html");
+        server.pageByPath.put("/a.html", "<html><body>alpha avocado <a href=\"/b.html\"></a></body></html>");
+        server.pageByPath.put("/b.html", "<html><body>bravo banana</body></html>");
+        server.pageByPath.put("/c.html", "<html><body>charlie cherry <a href=\"/d.html\"></a></body></html>");
+        server.pageByPath.put("/d.html", "<html><body>delta date</body></html>");
+        // as if the crawl died after indexing a and b, with c queued; a changed since
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(checkpointDir, "lowercase");
+        checkpoint.recordIndexed(a, tokens("alpha", "apple"), List.of(b, c));
+        checkpoint.recordIndexed(b, tokens("bravo", "banana"), List.of());
+        List.of(a, b, c).forEach(checkpoint::recordVisited);
+        checkpoint.write(() -> List.of(new FrontierQueue.Entry(c, 1)), Map.of(), null, null);
+
+        Crawler crawler = new Crawler(List.of(a), null, CrawlOptions.defaults().withAnalyzerSpec("lowercase")
+                .withOutputDir(Files.createTempDirectory("crawl-output"))
+                .withCheckpoint(new CheckpointPolicy(checkpointDir, Duration.ofMillis(100))));
+        crawler.resume();
+
+        assertEquals(2, server.okServed.get(), "Only the queued page and the page it links to should be fetched");
+        Map<Token, Set<Integer>> tokenByDocs = crawler.getTokenByDocs();
+        int docIdOfA = crawler.getUrlDocIdDict().getDocId(a).orElseThrow();
+        assertEquals(Set.of(docIdOfA), tokenByDocs.get(new Token("apple")));
+        assertFalse(tokenByDocs.containsKey(new Token("avocado")), "Checkpointed page should not be fetched again");
+        assertEquals(Set.of(crawler.getUrlDocIdDict().getDocId(b).orElseThrow()), tokenByDocs.get(new Token("banana")));
+        assertEquals(Set.of(crawler.getUrlDocIdDict().getDocId(c).orElseThrow()), tokenByDocs.get(new Token("cherry")));
+        assertEquals(Set.of(crawler.getUrlDocIdDict().getDocId(server.url("/d.html")).orElseThrow()),
+                tokenByDocs.get(new Token("date")));
+        assertFalse(Files.exists(checkpointDir.resolve(CrawlCheckpoint.FILE_NAME)),
+                "Checkpoint of a completed crawl should be cleared");
+    }
+}
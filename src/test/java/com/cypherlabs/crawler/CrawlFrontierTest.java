@@ -0,0 +1,43 @@
+package com.cypherlabs.crawler;
+
+import com.cypherlabs.storage.FrontierQueue;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CrawlFrontierTest {
+
+    @Test
+    void testUrlsOfHeldHostAreSetAsideUntilReleased() throws InterruptedException {
+        CrawlFrontier frontier = new CrawlFrontier(CrawlPriority.Standard.INLINKS);
+        Url a1 = new Url("http://a.com/1");
+        Url a2 = new Url("http://a.com/2");
+        Url a3 = new Url("http://a.com/3");
+        Url b1 = new Url("http://b.com/1");
+        frontier.offer(a1, 4);
+        frontier.offer(a2, 3);
+        frontier.offer(b1, 1);
+
+        assertEquals(a1, frontier.take().url());
+        assertTrue(frontier.hold(a1, 4));
+        // a2 comes up first, but its host is held
+        assertEquals(b1, frontier.take().url());
+        frontier.offer(a3, 5);
+        assertFalse(frontier.offer(a2, 1), "Set aside url should not be queued twice, its inlinks are summed");
+        assertEquals(3, frontier.size());
+        assertEquals(List.of(new FrontierQueue.Entry(b1, 1), new FrontierQueue.Entry(a3, 5),
+                new FrontierQueue.Entry(a1, 4), new FrontierQueue.Entry(a2, 4)), frontier.snapshot());
+
+        frontier.releaseHost(a1);
+        assertEquals(a3, frontier.take().url());
+        assertEquals(a1, frontier.take().url());
+        assertTrue(frontier.hold(a1, 4), "A host can be held again");
+        frontier.releaseHost(a1);
+        // set aside after a2, so taken after it
+        assertEquals(a2, frontier.take().url());
+        assertEquals(a1, frontier.take().url());
+        assertEquals(0, frontier.size());
+    }
+}
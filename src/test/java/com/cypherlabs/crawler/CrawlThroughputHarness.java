@@ -0,0 +1,142 @@
+package com.cypherlabs.crawler;
+
+import com.cypherlabs.io.IndexSegmentWriter;
+import fi.iki.elonen.NanoHTTPD;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Runs a full {@link Crawler} against a {@link SyntheticSiteServer} and reports throughput.
+ *
+ * Entirely offline: the site is served from loopback. Configure through env variables
+ * (LOAD_TEST_PAGES, LOAD_TEST_HOSTS, LOAD_TEST_FAN_OUT, LOAD_TEST_WORDS_PER_PAGE,
+ * LOAD_TEST_VOCABULARY, LOAD_TEST_ZIPF_EXPONENT, LOAD_TEST_LATENCY_MILLIS, LOAD_TEST_ERROR_RATE,
+ * LOAD_TEST_SEED). Fetch concurrency is controlled by the crawler's own settings (see {@link FetchLimiter}),
+ * and core count by running the JVM with -XX:ActiveProcessorCount=N, so scaling can be measured
+ * by repeating the run with different values.
+ */
+public class CrawlThroughputHarness {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlThroughputHarness.class);
+
+    public record ThroughputReport(int pagesIndexed, long requestsServed, long errorsServed, double elapsedSeconds,
+                                   double pagesPerSecond, double cpuUtilisation, long peakHeapBytes,
+                                   int tokenCount, long postingsCount, long indexSizeBytes) {
+
+        @Override
+        public String toString() {
+            return String.format("pages=%d requests=%d errors=%d elapsed=%.2fs pages/sec=%.1f cpu=%.1f%% " +
+                            "peakHeap=%dMB tokens=%d postings=%d indexSize=%dKB",
+                    pagesIndexed, requestsServed, errorsServed, elapsedSeconds, pagesPerSecond,
+                    cpuUtilisation * 100, peakHeapBytes >> 20, tokenCount, postingsCount, indexSizeBytes >> 10);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        SyntheticSiteServer.Config config = new SyntheticSiteServer.Config(
+                envInt("LOAD_TEST_PAGES", 100_000),
+                envInt("LOAD_TEST_HOSTS", 64),
+                envInt("LOAD_TEST_FAN_OUT", 10),
+                envInt("LOAD_TEST_WORDS_PER_PAGE", 300),
+                envInt("LOAD_TEST_VOCABULARY", 50_000),
+                Double.parseDouble(env("LOAD_TEST_ZIPF_EXPONENT", "1.0")),
+                envInt("LOAD_TEST_LATENCY_MILLIS", 20),
+                Double.parseDouble(env("LOAD_TEST_ERROR_RATE", "0.01")),
+                envInt("LOAD_TEST_SEED", 42));
+        ThroughputReport report = run(config);
+        LOGGER.info("Cores: {}, initial fetch concurrency: {}", Runtime.getRuntime().availableProcessors(),
+                env("NUM_FETCHER_THREADS", "10"));
+        LOGGER.info("Throughput report: {}", report);
+    }
+
+    /**
+     * Starts a synthetic site for the given config, crawls it from page 0 and measures the crawl.
+     *
+     * @param config Synthetic site configuration
+     * @return Measurements of the crawl
+     * @throws IOException If the server cannot be started or the index cannot be written
+     */
+    public static ThroughputReport run(SyntheticSiteServer.Config config) throws IOException {
+        SyntheticSiteServer server = new SyntheticSiteServer(0, config);
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+        try {
+            Crawler crawler = new Crawler(List.of(server.pageUrl(0)), null,
+                    CrawlOptions.defaults().withOutputDir(Files.createTempDirectory("load-test-output")));
+
+            List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                    .filter(pool -> pool.getType() == MemoryType.HEAP)
+                    .toList();
+            heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+            long cpuStart = processCpuNanos();
+            long wallStart = System.nanoTime();
+
+            crawler.crawl();
+
+            long wallNanos = System.nanoTime() - wallStart;
+            long cpuNanos = processCpuNanos() - cpuStart;
+            long peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+
+            int pagesIndexed = crawler.getUrlDocIdDict().size();
+            long postings = crawler.getTokenByDocs().values().stream().mapToLong(Set::size).sum();
+            double seconds = wallNanos / 1e9;
+            double cpu = cpuStart < 0 ? -1
+                    : (double) cpuNanos / ((double) wallNanos * Runtime.getRuntime().availableProcessors());
+
+            return new ThroughputReport(pagesIndexed, server.getRequestsServed(), server.getErrorsServed(), seconds,
+                    pagesIndexed / seconds, cpu, peakHeap, crawler.getTokenByDocs().size(), postings,
+                    indexSize(crawler));
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static long indexSize(Crawler crawler) throws IOException {
+        Path segmentDir = Files.createTempDirectory("load-test-segment");
+        try {
+            IndexSegmentWriter.writeSegment(crawler.getTokenByDocs(), crawler.getUrlDocIdDict(), segmentDir, true);
+            try (Stream<Path> files = Files.list(segmentDir)) {
+                return files.mapToLong(CrawlThroughputHarness::sizeOf).sum();
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(segmentDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long processCpuNanos() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static String env(String name, String defaultValue) {
+        return Optional.ofNullable(System.getenv(name)).orElse(defaultValue);
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        return Integer.parseInt(env(name, String.valueOf(defaultValue)));
+    }
+}
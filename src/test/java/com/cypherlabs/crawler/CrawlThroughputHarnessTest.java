@@ -0,0 +1,37 @@
+package com.cypherlabs.crawler;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CrawlThroughputHarnessTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlThroughputHarnessTest.class);
+
+    @Test
+    void testSyntheticSiteIsDeterministic() {
+        SyntheticSiteServer.Config config = SyntheticSiteServer.Config.small();
+        SyntheticSiteServer first = new SyntheticSiteServer(0, config);
+        SyntheticSiteServer second = new SyntheticSiteServer(0, config);
+        for (int pageId = 0; pageId < 10; pageId++) {
+            assertEquals(first.renderPage(pageId), second.renderPage(pageId), "Page rendering must be deterministic");
+        }
+        assertNotEquals(first.renderPage(0), first.renderPage(1), "Different pages should differ");
+    }
+
+    @Test
+    void testCrawlOfSyntheticSiteIndexesAllPages() throws IOException {
+        SyntheticSiteServer.Config config = new SyntheticSiteServer.Config(150, 4, 4, 50, 1000, 1.0, 1, 0.05, 7);
+        CrawlThroughputHarness.ThroughputReport report = CrawlThroughputHarness.run(config);
+        LOGGER.info("Throughput report: {}", report);
+
+        assertEquals(150, report.pagesIndexed(), "All synthetic pages should be indexed");
+        assertTrue(report.errorsServed() > 0, "Some flaky pages should have failed once");
+        assertTrue(report.pagesPerSecond() > 0, "Throughput should be reported");
+        assertTrue(report.indexSizeBytes() > 0, "Index size should be reported");
+    }
+}
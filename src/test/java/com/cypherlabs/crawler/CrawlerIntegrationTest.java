@@ -16,6 +16,7 @@ import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -79,10 +80,11 @@ public class CrawlerIntegrationTest {
     }
 
     @Test
-    void testCrawlerCrawlsPagesAndIndexesTokens() {
+    void testCrawlerCrawlsPagesAndIndexesTokens() throws IOException {
         // prepare test data
         List<Url> testSeedUrls = List.of(new Url("http://localhost:8080/page1.html"));
-        Crawler crawler = new Crawler(testSeedUrls);
+        Crawler crawler = new Crawler(testSeedUrls, null,
+                CrawlOptions.defaults().withOutputDir(Files.createTempDirectory("crawl-output")));
 
         // invoke unit
         crawler.crawl();
@@ -121,28 +123,36 @@ public class CrawlerIntegrationTest {
         Url page3 = new Url("http://localhost:8080/page3.html");
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "here", 1, List.of(page2));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "some", 1, List.of(page2));
-        checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "for", 1, List.of(page1));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "back", 1, List.of(page3));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "run", 1, List.of(page3));
-        checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "and", 1, List.of(page3));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "text", 1, List.of(page2));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "has", 1, List.of(page3));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "anoth", 1, List.of(page2));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "test", 3, List.of(page1, page2, page3));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "last", 1, List.of(page3));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "like", 1, List.of(page3));
-        checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "this", 2, List.of(page1, page3));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "go", 2, List.of(page1, page2));
-        checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "is", 1, List.of(page1));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "token", 1, List.of(page2));
-        checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "the", 1, List.of(page1));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "welcom", 1, List.of(page1));
-        checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "with", 1, List.of(page2));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "crawler", 1, List.of(page1));
-        checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "to", 3, List.of(page1, page2, page3));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "page", 3, List.of(page1, page2, page3));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "word", 1, List.of(page3));
         checkTokenToUrlMapping(tokenByDocs, urlDocIdDict, "stem", 1, List.of(page3));
+
+        // 6) Check stop words are not indexed
+        for (String stopWord : List.of("for", "and", "this", "is", "the", "with", "to")) {
+            assertFalse(tokenByDocs.containsKey(new Token(stopWord)), "Stop word '" + stopWord + "' should not be indexed");
+        }
+
+        // 7) Check the print view of page3, served with the same content, is skipped as a near-duplicate
+        Url page3PrintView = new Url("http://localhost:8080/page3.html?view=print");
+        assertEquals(page3, crawler.getNearDuplicateOf().get(page3PrintView), "Print view should duplicate page3");
+        assertTrue(urlDocIdDict.getDocId(page3PrintView).isEmpty(), "Near-duplicate should not be indexed");
+
+        // 8) Check the page disallowed by robots.txt, though linked from page2, is not fetched
+        assertTrue(urlDocIdDict.getDocId(new Url("http://localhost:8080/private.html")).isEmpty(),
+                "Page disallowed by robots.txt should not be indexed");
+        assertFalse(tokenByDocs.containsKey(new Token("secret")), "Token 'secret' should not be indexed");
     }
 
     static private void checkTokenToUrlMapping(Map<Token, Set<Integer>> tokenByDocs, UrlDocIdDictionary urlDocIdDict,
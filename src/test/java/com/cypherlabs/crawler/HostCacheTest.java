@@ -0,0 +1,160 @@
+package com.cypherlabs.crawler;
+
+import fi.iki.elonen.NanoHTTPD;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HostCacheTest {
+
+    /**
+     * Stub host serving a robots.txt, or a status code in place of it, and counting robots.txt requests.
+     */
+    static class RobotsServer extends NanoHTTPD {
+        private final Response.Status status;
+        private final String robotsTxt;
+        private final AtomicInteger robotsRequests = new AtomicInteger();
+
+        RobotsServer(Response.Status status, String robotsTxt) throws IOException {
+            super(0);
+            this.status = status;
+            this.robotsTxt = robotsTxt;
+            start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+        }
+
+        @Override
+        public Response serve(IHTTPSession session) {
+            if (session.getUri().equals("/robots.txt")) {
+                robotsRequests.incrementAndGet();
+                return newFixedLengthResponse(status, "text/plain", robotsTxt);
+            }
+            return newFixedLengthResponse(Response.Status.OK, "text/html", "<html></html>");
+        }
+
+        Url url(String path) {
+            return new Url("http://localhost:" + getListeningPort() + path);
+        }
+    }
+
+    private final AtomicLong now = new AtomicLong();
+
+    private HostCache hostCache(HostCache.Resolver resolver) {
+        return new HostCache(60, 3, 100, 1000, 6, resolver, now::get);
+    }
+
+    @Test
+    void testRobotsFetchedOnceAndApplied() throws Exception {
+        RobotsServer server = new RobotsServer(NanoHTTPD.Response.Status.OK, "User-agent: *\nDisallow: /private\n");
+        try {
+            HostCache cache = hostCache(InetAddress::getAllByName);
+            List<Thread> threads = new ArrayList<>();
+            AtomicInteger allowed = new AtomicInteger();
+            for (int i = 0; i < 50; i++) {
+                String path = i % 2 == 0 ? "/page" + i + ".html" : "/private/page" + i + ".html";
+                threads.add(Thread.ofVirtual().start(() -> {
+                    try {
+                        if (cache.isAllowed(server.url(path))) {
+                            allowed.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(25, allowed.get());
+            assertEquals(1, server.robotsRequests.get(), "robots.txt should be fetched once per host");
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void testMissingRobotsAllowsAllAndFailingRobotsFailsFetch() throws Exception {
+        RobotsServer missing = new RobotsServer(NanoHTTPD.Response.Status.NOT_FOUND, "Not Found");
+        RobotsServer failing = new RobotsServer(NanoHTTPD.Response.Status.INTERNAL_ERROR, "Oops");
+        try {
+            HostCache cache = hostCache(InetAddress::getAllByName);
+            assertTrue(cache.isAllowed(missing.url("/private/page.html")));
+            assertThrows(IOException.class, () -> cache.isAllowed(failing.url("/page.html")));
+            assertThrows(IOException.class, () -> cache.isAllowed(failing.url("/page.html")));
+            assertEquals(2, failing.robotsRequests.get(), "A failed robots.txt should be fetched again");
+        } finally {
+            missing.stop();
+            failing.stop();
+        }
+    }
+
+    @Test
+    void testResolutionsCachedForTtl() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        HostCache cache = hostCache(host -> {
+            lookups.incrementAndGet();
+            if (host.equals("unknown.invalid")) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[]{InetAddress.getByAddress(host, new byte[]{127, 0, 0, 1})};
+        });
+        Url known = new Url("http://known.test/a.html");
+        Url unknown = new Url("http://unknown.invalid/a.html");
+
+        assertEquals("known.test", cache.resolve(known)[0].getHostName());
+        cache.resolve(new Url("http://known.test/b.html"));
+        assertThrows(UnknownHostException.class, () -> cache.resolve(unknown));
+        assertThrows(UnknownHostException.class, () -> cache.resolve(unknown));
+        assertEquals(2, lookups.get(), "Resolutions, failed ones too, should be served from cache");
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        cache.resolve(known);
+        assertEquals(3, lookups.get(), "Expired resolution should be looked up again");
+    }
+
+    @Test
+    void testBreakerBacksOffProbesAndGivesUp() {
+        HostCache cache = hostCache(InetAddress::getAllByName);
+        Url url = new Url("http://down.test/a.html");
+        Url other = new Url("http://down.test/b.html");
+
+        // below the threshold fetches go on
+        cache.recordFailure(url);
+        cache.recordFailure(url);
+        assertTrue(cache.admit(other).fetchNow());
+
+        // third failure opens the breaker for the first backoff
+        cache.recordFailure(url);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), cache.admit(other).delayNanos());
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(cache.admit(other).fetchNow(), "After the backoff one probe should go");
+        assertFalse(cache.admit(url).fetchNow(), "Only one probe at a time");
+
+        // failed probe doubles the backoff
+        cache.recordFailure(other);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), cache.admit(url).delayNanos());
+
+        // successful probe closes the breaker
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(cache.admit(url).fetchNow());
+        cache.recordSuccess(url);
+        assertTrue(cache.admit(other).fetchNow());
+        assertEquals(0, cache.getConsecutiveFailures(url).orElseThrow());
+
+        // failing on and on gives the host up
+        for (int i = 0; i < 6; i++) {
+            cache.recordFailure(url);
+        }
+        assertTrue(cache.isGivenUp(other));
+        assertTrue(cache.admit(other).givenUp());
+        assertTrue(cache.admit(new Url("http://up.test/a.html")).fetchNow(), "Other hosts should not be affected");
+    }
+}
@@ -0,0 +1,156 @@
+package com.cypherlabs.crawler;
+
+import com.cypherlabs.graph.LinkGraph;
+import com.cypherlabs.io.DocIdReorderer;
+import com.cypherlabs.io.IndexSearcher;
+import com.cypherlabs.io.RefreshPolicy;
+import com.cypherlabs.io.SearcherManager;
+import com.cypherlabs.io.SegmentReader;
+import fi.iki.elonen.NanoHTTPD;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IncrementalCrawlTest {
+
+    /**
+     * Serves an in-memory site that tests can change between crawls. Every page gets an ETag derived from
+     * its content, and requests whose If-None-Match matches it are answered with 304.
+     */
+    static class MutableSiteServer extends NanoHTTPD {
+        final Map<String, String> pageByPath = new ConcurrentHashMap<>();
+        final AtomicInteger okServed = new AtomicInteger();
+        private final AtomicInteger notModifiedServed = new AtomicInteger();
+
+        MutableSiteServer() {
+            super(0);
+        }
+
+        @Override
+        public Response serve(IHTTPSession session) {
+            String page = pageByPath.get(session.getUri());
+            if (page == null) {
+                return newFixedLengthResponse(Response.Status.NOT_FOUND, "text/plain", "File Not Found");
+            }
+            String etag = "\"" + Integer.toHexString(page.hashCode()) + "\"";
+            if (etag.equals(session.getHeaders().get("if-none-match"))) {
+                notModifiedServed.incrementAndGet();
+                Response response = newFixedLengthResponse(Response.Status.NOT_MODIFIED, null, "");
+                response.addHeader("ETag", etag);
+                return response;
+            }
+            okServed.incrementAndGet();
+            Response response = newFixedLengthResponse(Response.Status.OK, "text/html", page);
+            response.addHeader("ETag", etag);
+            return response;
+        }
+
+        Url url(String path) {
+            return new Url("http://localhost:" + getListeningPort() + path);
+        }
+
+        void resetCounters() {
+            okServed.set(0);
+            notModifiedServed.set(0);
+        }
+    }
+
+    private MutableSiteServer server;
+    private Path indexDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MutableSiteServer();
+        server.pageByPath.put("/a.html", "<html><body>alpha apple <a href=\"/b.html\"></a><a href=\"/c.html\"></a></body></html>");
+        server.pageByPath.put("/b.html", "<html><body>bravo banana</body></html>");
+        server.pageByPath.put("/c.html", "<html><body>charlie cherry</body></html>");
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+        indexDir = Files.createTempDirectory("incremental-index");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void testRecrawlFetchesOnlyChangedPagesAndDeletesOldVersions() throws IOException {
+        crawl();
+        assertEquals(3, server.okServed.get(), "First crawl should fetch every page");
+        assertTrue(Files.isDirectory(indexDir.resolve("segment_000001")), "First crawl should write a segment");
+        IndexSearcher searcher = IndexSearcher.open(indexDir);
+        assertEquals(List.of(server.url("/b.html").address()), searcher.search("banana"));
+        assertTrue(Files.exists(indexDir.resolve("segment_000001").resolve(LinkGraph.FILE_NAME)));
+        assertTrue(searcher.searchRanked("banana").getFirst().staticScore()
+                        > searcher.searchRanked("apple").getFirst().staticScore(),
+                "Linked-to page should rank above the page linking to it");
+
+        server.pageByPath.put("/b.html", "<html><body>bravo blueberry</body></html>");
+        server.resetCounters();
+        crawl();
+
+        assertEquals(1, server.okServed.get(), "Only the changed page should be refetched in full");
+        assertEquals(2, server.notModifiedServed.get(), "Unchanged pages should be answered with 304");
+        searcher = IndexSearcher.open(indexDir);
+        assertEquals(2, searcher.getSegments().size(), "Second crawl should add a segment");
+        SegmentReader second = searcher.getSegments().get(1);
+        assertEquals(1, second.docCount(), "New segment should hold only the changed page");
+        SegmentReader first = searcher.getSegments().get(0);
+        assertEquals(3, first.docCount());
+        assertEquals(2, first.liveDocCount(), "Old version of the changed page should be deleted");
+
+        assertEquals(List.of(server.url("/b.html").address()), searcher.search("blueberry"));
+        assertTrue(searcher.search("banana").isEmpty(), "Old content should no longer be found");
+        assertEquals(List.of(server.url("/c.html").address()), searcher.search("cherry"));
+        assertEquals(List.of(server.url("/a.html").address()), searcher.search("apple"));
+    }
+
+    @Test
+    void testRecrawlDeletesRemovedPages() throws IOException {
+        crawl();
+        server.pageByPath.remove("/c.html");
+        server.pageByPath.put("/a.html", "<html><body>alpha apple <a href=\"/b.html\"></a></body></html>");
+        crawl();
+
+        IndexSearcher searcher = IndexSearcher.open(indexDir);
+        assertTrue(searcher.search("cherry").isEmpty(), "Removed page should no longer be found");
+        assertEquals(List.of(server.url("/b.html").address()), searcher.search("banana"));
+    }
+
+    @Test
+    void testSearcherManagerSearchesWrittenSegmentsAndCrawledPages() throws IOException {
+        crawl();
+        server.pageByPath.put("/b.html", "<html><body>bravo blueberry</body></html>");
+        Crawler crawler = new Crawler(List.of(server.url("/a.html")), null, CrawlOptions.defaults()
+                .withIndexDir(indexDir).withRefreshPolicy(new RefreshPolicy(Duration.ofMillis(100), 1))
+                .withDocOrder(DocIdReorderer.Order.URL));
+        crawler.crawl();
+        assertTrue(IndexSearcher.open(indexDir).search("banana").isEmpty(),
+                "Old version should be deleted whatever the doc IDs of the new segment");
+
+        SearcherManager manager = crawler.getSearcherManager().orElseThrow();
+        SearcherManager.Snapshot snapshot = manager.current();
+        assertEquals(List.of(server.url("/b.html").address()), snapshot.searcher().search("blueberry"),
+                "Page crawled now should be searchable from memory");
+        assertTrue(snapshot.searcher().search("banana").isEmpty(), "Replaced version should be hidden");
+        assertEquals(List.of(server.url("/b.html").address()), snapshot.searcher().search("bravo"),
+                "Changed page should be found once");
+        assertEquals(List.of(server.url("/c.html").address()), snapshot.searcher().search("cherry"),
+                "Page of the written segment should be searchable");
+    }
+
+    private void crawl() {
+        new Crawler(List.of(server.url("/a.html")), null, CrawlOptions.defaults().withIndexDir(indexDir)).crawl();
+    }
+}
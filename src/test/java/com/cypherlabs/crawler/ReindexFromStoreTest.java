@@ -0,0 +1,85 @@
+package com.cypherlabs.crawler;
+
+import com.cypherlabs.io.DocIdReorderer;
+import com.cypherlabs.io.IndexSearcher;
+import fi.iki.elonen.NanoHTTPD;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReindexFromStoreTest {
+
+    @Test
+    void testReindexFromStoreRebuildsSameIndexWithoutFetching() throws IOException {
+        SyntheticSiteServer server = new SyntheticSiteServer(0, new SyntheticSiteServer.Config(60, 2, 4, 40, 300, 1.0, 0, 0.0, 5));
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+        Path storeDir = Files.createTempDirectory("page-store");
+        CrawlOptions options = CrawlOptions.defaults().withPageStoreDir(storeDir)
+                .withOutputDir(Files.createTempDirectory("crawl-output"));
+        Crawler crawler;
+        try {
+            crawler = new Crawler(List.of(server.pageUrl(0)), null, options);
+            crawler.crawl();
+        } finally {
+            server.stop();
+        }
+        assertEquals(60, crawler.getUrlDocIdDict().size());
+
+        // the site is gone, so everything must come from the store
+        Crawler reindexer = new Crawler(List.of(), null, options);
+        reindexer.reindexFromStore();
+
+        assertEquals(urlsByToken(crawler), urlsByToken(reindexer), "Reindexed index should match the crawled one");
+    }
+
+    @Test
+    void testReindexIntoIndexDirSkipsRemovedAndOutdatedPages() throws IOException {
+        IncrementalCrawlTest.MutableSiteServer server = new IncrementalCrawlTest.MutableSiteServer();
+        server.pageByPath.put("/a.html", "<html><body>alpha apple <a href=\"/b.html\"></a><a href=\"/c.html\"></a></body></html>");
+        server.pageByPath.put("/b.html", "<html><body>bravo banana</body></html>");
+        server.pageByPath.put("/c.html", "<html><body>charlie cherry</body></html>");
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+        Path indexDir = Files.createTempDirectory("reindex-index");
+        Path storeDir = Files.createTempDirectory("page-store");
+        // segments are written renumbered, which the page store must not depend on
+        CrawlOptions options = CrawlOptions.defaults().withIndexDir(indexDir).withPageStoreDir(storeDir)
+                .withDocOrder(DocIdReorderer.Order.URL);
+        try {
+            new Crawler(List.of(server.url("/a.html")), null, options).crawl();
+            // b changes, c is removed, and the second crawl runs without a page store
+            server.pageByPath.put("/b.html", "<html><body>bravo blueberry</body></html>");
+            server.pageByPath.remove("/c.html");
+            new Crawler(List.of(server.url("/a.html")), null, options.withPageStoreDir(null)).crawl();
+            server.resetCounters();
+
+            new Crawler(List.of(), null, options.withAnalyzerSpec("lowercase")).reindexFromStore();
+            assertEquals(0, server.okServed.get(), "Nothing should be fetched");
+        } finally {
+            server.stop();
+        }
+
+        IndexSearcher searcher = IndexSearcher.open(indexDir);
+        assertEquals(List.of(server.url("/a.html").address()), searcher.search("apple"),
+                "Reindexed page should be found once, in the new segment");
+        assertTrue(searcher.search("apples").isEmpty(), "Reindexed page should not be stemmed anymore");
+        assertTrue(searcher.search("cherry").isEmpty(), "Removed page should not be revived");
+        assertTrue(searcher.search("banana").isEmpty(), "Outdated version should not be revived");
+        assertEquals(List.of(server.url("/b.html").address()), searcher.search("blueberry"),
+                "Page whose indexed version is not stored should stay as indexed");
+    }
+
+    private static Map<Token, Set<Url>> urlsByToken(Crawler crawler) {
+        Map<Token, Set<Url>> urlsByToken = new HashMap<>();
+        crawler.getTokenByDocs().forEach((token, docIds) -> {
+            Set<Url> urls = new HashSet<>();
+            docIds.forEach(docId -> urls.add(crawler.getUrlDocIdDict().getUrl(docId).orElseThrow()));
+            urlsByToken.put(token, urls);
+        });
+        return urlsByToken;
+    }
+}
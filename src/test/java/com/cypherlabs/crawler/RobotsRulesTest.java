@@ -0,0 +1,67 @@
+package com.cypherlabs.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RobotsRulesTest {
+
+    @Test
+    void testLongestMatchWinsAndAllowWinsTies() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /private
+                Allow: /private/public
+                Disallow: /tie
+                Allow: /tie
+                """);
+        assertTrue(rules.isAllowed("/"));
+        assertTrue(rules.isAllowed("/page.html"));
+        assertFalse(rules.isAllowed("/private"));
+        assertFalse(rules.isAllowed("/private/secret.html"));
+        assertTrue(rules.isAllowed("/private/public/page.html"));
+        assertTrue(rules.isAllowed("/tie"));
+    }
+
+    @Test
+    void testWildcardsAndEndAnchor() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /*.pdf$
+                Disallow: /search*q=
+                """);
+        assertFalse(rules.isAllowed("/docs/manual.pdf"));
+        assertTrue(rules.isAllowed("/docs/manual.pdf.html"));
+        assertFalse(rules.isAllowed("/search?lang=en&q=crawler"));
+        assertTrue(rules.isAllowed("/search?lang=en"));
+    }
+
+    @Test
+    void testOwnGroupTakesPrecedenceOverWildcardGroup() {
+        String robotsTxt = """
+                # comments and unknown fields are ignored
+                Sitemap: http://a.com/sitemap.xml
+
+                User-agent: *
+                Disallow: /
+
+                User-agent: OtherBot
+                User-agent: cyphercrawler
+                Disallow: /admin   # trailing comment
+                Disallow:
+                """;
+        RobotsRules rules = RobotsRules.parse(robotsTxt);
+        assertTrue(rules.isAllowed("/page.html"), "Own group should replace the wildcard group");
+        assertFalse(rules.isAllowed("/admin/users"));
+
+        RobotsRules wildcardOnly = RobotsRules.parse("User-agent: *\nDisallow: /\n\nUser-agent: OtherBot\nAllow: /\n");
+        assertFalse(wildcardOnly.isAllowed("/page.html"), "Other bots' groups should not apply");
+    }
+
+    @Test
+    void testEmptyRobotsAllowsAll() {
+        assertTrue(RobotsRules.parse("").isAllowed("/anything"));
+        assertTrue(RobotsRules.ALLOW_ALL.isAllowed("/anything"));
+        assertFalse(RobotsRules.DISALLOW_ALL.isAllowed("/anything"));
+    }
+}
@@ -0,0 +1,41 @@
+package com.cypherlabs.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimHashTest {
+
+    private static final String TEXT = "the quick brown fox jumps over the lazy dog while the cat sleeps on the warm "
+            + "mat next to the fire and the rain keeps falling on the old roof of the small house near the river "
+            + "where children play every summer afternoon until the sun goes down behind the hills";
+
+    @Test
+    void testIdenticalTextsHaveIdenticalFingerprints() {
+        assertEquals(SimHash.fingerprint(tokens(TEXT)), SimHash.fingerprint(tokens(TEXT)));
+    }
+
+    @Test
+    void testSlightlyEditedTextIsClose() {
+        long original = SimHash.fingerprint(tokens(TEXT));
+        long edited = SimHash.fingerprint(tokens(TEXT.replace("lazy", "sleepy")));
+        int distance = SimHash.distance(original, edited);
+        assertTrue(distance > 0 && distance < 16, "One edited word should flip few bits, flipped " + distance);
+    }
+
+    @Test
+    void testUnrelatedTextsAreFar() {
+        long first = SimHash.fingerprint(tokens(TEXT));
+        long second = SimHash.fingerprint(tokens("inverted index postings are delta encoded and varint "
+                + "compressed before being written to disk together with a token dictionary and a doc table "
+                + "so that queries can look up each term and merge the document lists"));
+        assertTrue(SimHash.distance(first, second) > 16, "Unrelated texts should be far apart");
+    }
+
+    private static List<Token> tokens(String text) {
+        return Arrays.stream(text.split(" ")).map(Token::new).toList();
+    }
+}
@@ -0,0 +1,180 @@
+package com.cypherlabs.crawler;
+
+import fi.iki.elonen.NanoHTTPD;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP server generating a deterministic synthetic site of arbitrary size.
+ *
+ * Nothing is stored: every page is derived from its page ID and the configured seed, so the
+ * same config always yields the same link graph and text. Pages are spread over virtual hosts
+ * 127.0.0.1 .. 127.0.0.N, which all resolve to loopback on Linux, so a single server bound
+ * to the wildcard address answers for all of them.
+ *
+ * Page layout:
+ * - URL: http://127.0.0.{1 + id % numHosts}:{port}/p/{id}.html
+ * - Body: wordsPerPage terms drawn from a Zipfian distribution over vocabularySize terms
+ * - Links: fanOut pseudo random targets plus a link to page id + 1, so every page is
+ *   reachable from page 0
+ *
+ * A fraction (errorRate) of pages is flaky: the first request for them fails with 500 and
+ * later requests succeed, which exercises the crawler retry path.
+ */
+public class SyntheticSiteServer extends NanoHTTPD {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SyntheticSiteServer.class);
+
+    public record Config(int numPages, int numHosts, int fanOut, int wordsPerPage, int vocabularySize,
+                         double zipfExponent, long latencyMillis, double errorRate, long seed) {
+
+        public static Config small() {
+            return new Config(200, 4, 5, 100, 2000, 1.0, 0, 0.0, 42);
+        }
+    }
+
+    private final Config config;
+    private final double[] zipfCdf;
+    private final Set<Integer> failedOnce = ConcurrentHashMap.newKeySet();
+    private final AtomicLong requestsServed = new AtomicLong();
+    private final AtomicLong errorsServed = new AtomicLong();
+
+    public SyntheticSiteServer(int port, Config config) {
+        super(port);
+        this.config = config;
+        this.zipfCdf = zipfCdf(config.vocabularySize(), config.zipfExponent());
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public long getRequestsServed() {
+        return requestsServed.get();
+    }
+
+    public long getErrorsServed() {
+        return errorsServed.get();
+    }
+
+    /**
+     * @return URL of the page with given ID, on the virtual host owning it
+     */
+    public Url pageUrl(int pageId) {
+        int host = pageId % config.numHosts();
+        return new Url("http://127.0.0." + (host + 1) + ":" + getListeningPort() + "/p/" + pageId + ".html");
+    }
+
+    @Override
+    public Response serve(IHTTPSession session) {
+        requestsServed.incrementAndGet();
+        int pageId = parsePageId(session.getUri());
+        if (pageId < 0 || pageId >= config.numPages()) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, "text/plain", "Page Not Found");
+        }
+        if (config.latencyMillis() > 0) {
+            try {
+                Thread.sleep(config.latencyMillis());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (isFlaky(pageId) && failedOnce.add(pageId)) {
+            errorsServed.incrementAndGet();
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "text/plain", "Try again");
+        }
+        byte[] bytes = renderPage(pageId).getBytes(StandardCharsets.UTF_8);
+        return newFixedLengthResponse(Response.Status.OK, "text/html",
+                new ByteArrayInputStream(bytes), bytes.length);
+    }
+
+    /**
+     * Renders the HTML of a page. Deterministic for a given (config, pageId).
+     */
+    String renderPage(int pageId) {
+        SplittableRandom random = randomFor(pageId);
+        StringBuilder html = new StringBuilder(config.wordsPerPage() * 8 + config.fanOut() * 64);
+        html.append("<!DOCTYPE html><html><head><title>Page ").append(pageId).append("</title></head><body><p>");
+        for (int i = 0; i < config.wordsPerPage(); i++) {
+            html.append(term(sampleTermRank(random))).append(' ');
+        }
+        html.append("</p>");
+        appendLink(html, (pageId + 1) % config.numPages());
+        for (int i = 0; i < config.fanOut(); i++) {
+            appendLink(html, random.nextInt(config.numPages()));
+        }
+        html.append("</body></html>");
+        return html.toString();
+    }
+
+    /**
+     * @return number of pages the crawler is expected to index, i.e. all of them as flaky pages
+     * succeed on retry
+     */
+    public int expectedIndexedPages() {
+        return config.numPages();
+    }
+
+    private void appendLink(StringBuilder html, int targetId) {
+        html.append("<a href=\"").append(pageUrl(targetId).address()).append("\">next</a>");
+    }
+
+    private boolean isFlaky(int pageId) {
+        return config.errorRate() > 0 && new SplittableRandom(config.seed() ^ ~pageId).nextDouble() < config.errorRate();
+    }
+
+    private SplittableRandom randomFor(int pageId) {
+        return new SplittableRandom(config.seed() * 0x9E3779B97F4A7C15L + pageId);
+    }
+
+    private int sampleTermRank(SplittableRandom random) {
+        int idx = Arrays.binarySearch(zipfCdf, random.nextDouble());
+        return idx >= 0 ? idx : Math.min(-idx - 1, zipfCdf.length - 1);
+    }
+
+    /**
+     * Maps a term rank to a letters only word, so that it survives text extraction.
+     * Words are prefixed to keep them longer than one character.
+     */
+    static String term(int rank) {
+        StringBuilder word = new StringBuilder("t");
+        do {
+            word.append((char) ('a' + rank % 26));
+            rank /= 26;
+        } while (rank > 0);
+        return word.toString();
+    }
+
+    private static double[] zipfCdf(int vocabularySize, double exponent) {
+        double[] cdf = new double[vocabularySize];
+        double sum = 0;
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, exponent);
+            cdf[rank] = sum;
+        }
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            cdf[rank] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int parsePageId(String uri) {
+        if (!uri.startsWith("/p/") || !uri.endsWith(".html")) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(uri.substring(3, uri.length() - 5));
+        } catch (NumberFormatException nfe) {
+            LOGGER.debug("Invalid page uri: {}", uri);
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.cypherlabs.crawler;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UrlCanonicalizerTest {
+
+    @Test
+    void testSpellingsOfAPageCanonicalizeTheSame() {
+        String canonical = "http://a.com/docs/page.html?id=7";
+        assertSame(canonical, UrlCanonicalizer.canonicalize(canonical), "A canonical url should be returned as is");
+        for (String spelling : List.of("HTTP://A.com/docs/page.html?id=7",
+                "http://a.com:80/docs/page.html?id=7#section",
+                "http://a.com./docs/./old/../page.html?id=7",
+                "http://a.com/docs/page.html?utm_source=feed&id=7&utm_medium=rss",
+                "http://a.com/docs/page.html?id=7&gclid=abc",
+                "http://a.com/%64ocs/page.html?id=%37",
+                "http://a.com/docs/%2E/old/.%2e/page.html?id=7")) {
+            assertEquals(canonical, UrlCanonicalizer.canonicalize(spelling), spelling);
+        }
+        assertEquals("https://a.com/", UrlCanonicalizer.canonicalize("https://a.com:443"));
+        assertEquals("https://a.com:8443/a%2Fb/", UrlCanonicalizer.canonicalize("https://a.com:8443/a%2fb/c/.."));
+        assertEquals("http://a.com/", UrlCanonicalizer.canonicalize("http://a.com/?utm_campaign=x#top"));
+        assertEquals("http://[::1]:8080/", UrlCanonicalizer.canonicalize("http://[::1]:8080"));
+        assertNull(UrlCanonicalizer.canonicalize("mailto:someone@a.com"));
+        assertNull(UrlCanonicalizer.canonicalize("http://a.com:99999/"));
+        for (String prefixOfHttp : List.of("h://a.com/", "ht://a.com/", "htt://a.com/", "httpss://a.com/")) {
+            assertNull(UrlCanonicalizer.canonicalize(prefixOfHttp), prefixOfHttp);
+        }
+        for (String url : List.of("http://a.com/a/%2E%2E/b", "http://a.com/a/%2e./b/%2E", "http://a.com/a/%2E%2E%2E/b")) {
+            String once = UrlCanonicalizer.canonicalize(url);
+            assertEquals(once, UrlCanonicalizer.canonicalize(once), "Canonicalizing should be idempotent: " + url);
+        }
+        assertEquals("http://a.com/b", UrlCanonicalizer.canonicalize("http://a.com/a/%2E%2E/b"));
+        assertEquals("http://a.com/a/.../b", UrlCanonicalizer.canonicalize("http://a.com/a/%2E%2E%2E/b"));
+    }
+
+    @Test
+    void testHrefsAreResolvedAgainstTheBase() {
+        String base = "http://a.com/docs/guide/index.html?page=2";
+        assertEquals("http://a.com/docs/guide/intro.html", UrlCanonicalizer.resolve(base, "intro.html"));
+        assertEquals("http://a.com/docs/api.html", UrlCanonicalizer.resolve(base, "../api.html"));
+        assertEquals("http://a.com/about", UrlCanonicalizer.resolve(base, " /about\n"));
+        assertEquals("http://a.com/docs/guide/index.html?page=3", UrlCanonicalizer.resolve(base, "?page=3"));
+        assertEquals("https://b.com/", UrlCanonicalizer.resolve("https://a.com/", "//B.com"));
+        assertEquals(base, UrlCanonicalizer.resolve(base, "#contents"));
+        assertNull(UrlCanonicalizer.resolve(base, "javascript:void(0)"));
+        assertNull(UrlCanonicalizer.resolve(null, "intro.html"));
+    }
+
+    @Test
+    void testLinksOfAPageAreExtractedOnceEach() {
+        Document doc = Jsoup.parse("""
+                <html><head><base href="http://a.com/docs/"></head><body>
+                <a href="page.html">page</a>
+                <p><a href="./page.html#details">same page</a> <a href="http://A.COM/docs/page.html?utm_source=x">again</a></p>
+                <a href="mailto:someone@a.com">mail</a> <a>no href</a> <link href="style.css">
+                <div><a href="../index.html">up</a></div>
+                </body></html>""", "http://a.com/other/start.html");
+        assertEquals(List.of(new Url("http://a.com/docs/page.html"), new Url("http://a.com/index.html")),
+                LinkExtractor.extractLinks(doc));
+    }
+}
@@ -0,0 +1,125 @@
+package com.cypherlabs.distributed;
+
+import com.cypherlabs.crawler.Crawler;
+import com.cypherlabs.crawler.SyntheticSiteServer;
+import com.cypherlabs.crawler.Url;
+import fi.iki.elonen.NanoHTTPD;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DistributedCrawlIntegrationTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DistributedCrawlIntegrationTest.class);
+
+    private static final int NUM_NODES = 3;
+
+    private static SyntheticSiteServer server;
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        server = new SyntheticSiteServer(0, new SyntheticSiteServer.Config(120, 8, 4, 30, 500, 1.0, 0, 0.0, 11));
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    void testNodesCrawlDisjointHostPartitionsAndTerminate() throws Exception {
+        // prepare one working directory and peer port per node
+        List<Integer> ports = new ArrayList<>();
+        for (int i = 0; i < NUM_NODES; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                ports.add(socket.getLocalPort());
+            }
+        }
+        String clusterNodes = ports.stream().map(p -> "localhost:" + p).collect(Collectors.joining(","));
+        Path workDir = Files.createTempDirectory("distributed-crawl");
+
+        // launch one crawler process per node
+        List<Process> processes = new ArrayList<>();
+        try {
+            for (int nodeId = 0; nodeId < NUM_NODES; nodeId++) {
+                processes.add(launchNode(nodeId, clusterNodes, workDir));
+            }
+            for (Process process : processes) {
+                assertTrue(process.waitFor(120, TimeUnit.SECONDS), "Node should terminate");
+                assertEquals(0, process.exitValue(), "Node should exit cleanly");
+            }
+        } finally {
+            processes.forEach(Process::destroyForcibly);
+        }
+
+        // validate every page was indexed by exactly one node, the owner of its host
+        HostPartitioner partitioner = new HostPartitioner(NUM_NODES);
+        Set<String> allUrls = new HashSet<>();
+        for (int nodeId = 0; nodeId < NUM_NODES; nodeId++) {
+            List<String> nodeUrls = readDocTable(workDir.resolve(Paths.get("program_output", "node-" + nodeId)));
+            LOGGER.info("Node {} indexed {} documents", nodeId, nodeUrls.size());
+            for (String url : nodeUrls) {
+                assertEquals(nodeId, partitioner.partitionOf(new Url(url)), "Url " + url + " indexed by wrong node");
+                assertTrue(allUrls.add(url), "Url " + url + " indexed by more than one node");
+            }
+        }
+        assertEquals(120, allUrls.size(), "All pages should be indexed across the cluster");
+    }
+
+    private static Process launchNode(int nodeId, String clusterNodes, Path workDir) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        // same JVM flags as this test JVM, minus attached agents
+        ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                .filter(arg -> !arg.startsWith("-javaagent") && !arg.startsWith("-agentlib"))
+                .forEach(command::add);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Crawler.class.getName());
+
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(workDir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(workDir.resolve("node-" + nodeId + ".out").toFile());
+        builder.environment().put("SEED_URLS", server.pageUrl(0).address());
+        builder.environment().put("CLUSTER_NODES", clusterNodes);
+        builder.environment().put("NODE_ID", String.valueOf(nodeId));
+        builder.environment().put("WAIT_TIME_TERMINATION", "1");
+        return builder.start();
+    }
+
+    private static List<String> readDocTable(Path nodeDir) throws IOException {
+        Path segmentDir;
+        try (Stream<Path> segments = Files.list(nodeDir)) {
+            segmentDir = segments.findFirst().orElseThrow();
+        }
+        List<String> urls = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new FileInputStream(segmentDir.resolve("doc_table.bin").toFile()))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                urls.add(in.readUTF());
+            }
+        }
+        return urls;
+    }
+}
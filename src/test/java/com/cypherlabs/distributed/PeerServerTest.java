@@ -0,0 +1,35 @@
+package com.cypherlabs.distributed;
+
+import com.cypherlabs.crawler.Url;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PeerServerTest {
+
+    @Test
+    void testRetriedBatchIsAppliedAndCountedOnce() throws Exception {
+        List<Url> sink = new CopyOnWriteArrayList<>();
+        try (PeerServer server = new PeerServer(0, sink::add, () -> new NodeStatus(true, 0, 0), () -> {
+        })) {
+            server.start();
+            List<Url> first = List.of(new Url("http://a.com/1"), new Url("http://a.com/2"));
+            List<Url> second = List.of(new Url("http://a.com/3"));
+            try (PeerClient client = new PeerClient(new InetSocketAddress("localhost", server.port()))) {
+                client.sendBatch(1, 7, first);
+                // the ACK got lost, so the sender retries the batch on a new connection
+                client.reset();
+                client.sendBatch(1, 7, first);
+                client.sendBatch(1, 8, second);
+                // same batch id from another sender is a different batch
+                client.sendBatch(2, 7, second);
+            }
+            assertEquals(4, server.received());
+            assertEquals(List.of(first.get(0), first.get(1), second.get(0), second.get(0)), sink);
+        }
+    }
+}
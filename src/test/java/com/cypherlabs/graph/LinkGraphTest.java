@@ -0,0 +1,77 @@
+package com.cypherlabs.graph;
+
+import com.cypherlabs.crawler.Url;
+import com.cypherlabs.storage.UrlDocIdDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinkGraphTest {
+
+    private static Url url(int i) {
+        return new Url("http://a.com/" + i + ".html");
+    }
+
+    @Test
+    void testInLinksAndOutDegrees() throws IOException {
+        UrlDocIdDictionary docIds = new UrlDocIdDictionary();
+        for (int i = 0; i < 3; i++) {
+            docIds.addIfAbsent(url(i));
+        }
+        Path graphFile = Files.createTempDirectory("link-graph").resolve(LinkGraph.FILE_NAME);
+        try (LinkGraphBuilder builder = new LinkGraphBuilder(1 << 20)) {
+            // 99 is never indexed, self links and repeated targets are ignored
+            builder.addLinks(url(0), List.of(url(1), url(2), url(2), url(0), url(99)));
+            builder.addLinks(url(1), List.of(url(2)));
+            builder.addLinks(url(2), List.of());
+            builder.addLinks(url(99), List.of(url(0)));
+            LinkGraph graph = builder.build(docIds, graphFile);
+
+            assertEquals(3, graph.nodeCount());
+            assertEquals(3, graph.edgeCount());
+            assertEquals(2, graph.outDegree(0));
+            assertEquals(1, graph.outDegree(1));
+            assertEquals(0, graph.outDegree(2));
+            assertArrayEquals(new int[0], graph.inLinks(0));
+            assertArrayEquals(new int[]{0}, graph.inLinks(1));
+            assertArrayEquals(new int[]{0, 1}, graph.inLinks(2));
+        }
+    }
+
+    @Test
+    void testSpilledRowsAndSeveralPassesGiveTheSameGraph() throws IOException {
+        int n = 500;
+        UrlDocIdDictionary docIds = new UrlDocIdDictionary();
+        for (int i = 0; i < n; i++) {
+            docIds.addIfAbsent(url(i));
+        }
+        Path dir = Files.createTempDirectory("link-graph");
+        LinkGraph inMemory;
+        LinkGraph spilled;
+        try (LinkGraphBuilder large = new LinkGraphBuilder(1 << 20);
+             LinkGraphBuilder small = new LinkGraphBuilder(256)) {
+            for (int i = 0; i < n; i++) {
+                List<Url> targets = List.of(url((i + 1) % n), url((i * 7) % n), url((i * 31 + 3) % n));
+                large.addLinks(url(i), targets);
+                small.addLinks(url(i), targets);
+            }
+            inMemory = large.build(docIds, dir.resolve("large.bin"));
+            spilled = small.build(docIds, dir.resolve("small.bin"));
+        }
+
+        assertEquals(inMemory.edgeCount(), spilled.edgeCount());
+        for (int docId = 0; docId < n; docId++) {
+            assertEquals(inMemory.outDegree(docId), spilled.outDegree(docId));
+            assertArrayEquals(inMemory.inLinks(docId), spilled.inLinks(docId));
+        }
+        // 0 -> 1 by the first target, 143 -> 1 by the second (143 * 7 = 1001)
+        assertEquals(0, spilled.inLinks(1)[0]);
+        assertTrue(Arrays.binarySearch(spilled.inLinks(1), 143) >= 0);
+    }
+}
@@ -0,0 +1,141 @@
+package com.cypherlabs.graph;
+
+import com.cypherlabs.crawler.Token;
+import com.cypherlabs.crawler.Url;
+import com.cypherlabs.io.IndexSearcher;
+import com.cypherlabs.io.IndexSegmentWriter;
+import com.cypherlabs.io.StaticScoreUtils;
+import com.cypherlabs.storage.UrlDocIdDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PageRankTest {
+
+    private static LinkGraph graph(int n, int[][] links) throws IOException {
+        return graph("a.com", n, links, new UrlDocIdDictionary());
+    }
+
+    private static LinkGraph graph(String host, int n, int[][] links, UrlDocIdDictionary docIds) throws IOException {
+        for (int i = 0; i < n; i++) {
+            docIds.addIfAbsent(url(host, i));
+        }
+        try (LinkGraphBuilder builder = new LinkGraphBuilder(1 << 20)) {
+            for (int i = 0; i < n; i++) {
+                List<Url> targets = new ArrayList<>();
+                for (int target : links[i]) {
+                    targets.add(url(host, target));
+                }
+                builder.addLinks(url(host, i), targets);
+            }
+            return builder.build(docIds, Files.createTempDirectory("page-rank").resolve(LinkGraph.FILE_NAME));
+        }
+    }
+
+    private static Url url(String host, int i) {
+        return new Url("http://" + host + "/" + i + ".html");
+    }
+
+    @Test
+    void testCycleHasUniformRanks() throws IOException {
+        double[] rank = PageRank.compute(graph(4, new int[][]{{1}, {2}, {3}, {0}}));
+        for (double r : rank) {
+            assertEquals(0.25, r, 1e-9);
+        }
+    }
+
+    @Test
+    void testLinkedToPagesRankHigherAndRanksSumToOne() throws IOException {
+        // 0 links to 1 and 2, 1 links to 2, 2 is dangling
+        double[] rank = PageRank.compute(graph(3, new int[][]{{1, 2}, {2}, {}}));
+        assertTrue(rank[2] > rank[1] && rank[1] > rank[0]);
+        assertEquals(1.0, rank[0] + rank[1] + rank[2], 1e-9);
+    }
+
+    @Test
+    void testParallelMatchesSequentialReference() throws IOException {
+        int n = 20_000;
+        Random random = new Random(7);
+        int[][] links = new int[n][];
+        for (int i = 0; i < n; i++) {
+            int source = i;
+            links[i] = random.ints(random.nextInt(6), 0, n).filter(t -> t != source).distinct().toArray();
+        }
+        LinkGraph graph = graph(n, links);
+
+        double[] parallel;
+        try (ForkJoinPool pool = new ForkJoinPool(4)) {
+            parallel = PageRank.compute(graph, 0.85, 30, 0, pool);
+        }
+
+        // textbook push-style power iteration
+        double[] rank = new double[n];
+        Arrays.fill(rank, 1.0 / n);
+        for (int iteration = 0; iteration < 30; iteration++) {
+            double[] next = new double[n];
+            double dangling = 0;
+            for (int i = 0; i < n; i++) {
+                if (links[i].length == 0) {
+                    dangling += rank[i];
+                }
+                for (int target : links[i]) {
+                    next[target] += 0.85 * rank[i] / links[i].length;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                next[i] += 0.15 / n + 0.85 * dangling / n;
+            }
+            rank = next;
+        }
+
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            assertEquals(rank[i], parallel[i], 1e-12);
+            sum += parallel[i];
+        }
+        assertEquals(1.0, sum, 1e-9);
+    }
+
+    @Test
+    void testStaticScoresCompareAcrossSegments() throws IOException {
+        Path indexDir = Files.createTempDirectory("page-rank-index");
+        // two pages linking to each other, alone in a small segment
+        writeSegment(indexDir.resolve("segment_000001"), "small.com", new int[][]{{1}, {0}});
+        // a hub linked to by every other page of a large segment
+        int n = 40;
+        int[][] links = new int[n][];
+        links[0] = new int[]{1};
+        for (int i = 1; i < n; i++) {
+            links[i] = new int[]{0};
+        }
+        writeSegment(indexDir.resolve("segment_000002"), "large.com", links);
+
+        List<IndexSearcher.Hit> hits = IndexSearcher.open(indexDir).searchRanked("page");
+        assertEquals(url("large.com", 0).address(), hits.getFirst().url(),
+                "Hub of the large segment should outrank the pages of the small one");
+        assertEquals(1.0, hits.stream().filter(h -> h.url().contains("small.com"))
+                .mapToDouble(IndexSearcher.Hit::staticScore).max().orElseThrow(), 1e-6,
+                "Pages of a cycle are average pages");
+    }
+
+    private static void writeSegment(Path segmentDir, String host, int[][] links) throws IOException {
+        UrlDocIdDictionary docIds = new UrlDocIdDictionary();
+        LinkGraph graph = graph(host, links.length, links, docIds);
+        Set<Integer> all = IntStream.range(0, links.length).boxed().collect(Collectors.toSet());
+        IndexSegmentWriter.writeSegment(Map.of(new Token("page"), all), docIds, segmentDir, true, "lowercase");
+        StaticScoreUtils.writeStaticScores(PageRank.staticScores(graph), segmentDir);
+    }
+}
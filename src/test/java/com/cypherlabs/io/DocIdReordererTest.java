@@ -0,0 +1,114 @@
+package com.cypherlabs.io;
+
+import com.cypherlabs.crawler.Token;
+import com.cypherlabs.crawler.Url;
+import com.cypherlabs.storage.UrlDocIdDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocIdReordererTest {
+
+    @Test
+    void testUrlOrderSortsByHostThenPath() {
+        List<String> urls = List.of("http://b.com/x.html", "http://a.com/z.html", "http://a.com.au/a.html",
+                "http://a.com/a/b.html", "http://a.com/a.html");
+        int[] newDocIdByOld = DocIdReorderer.reorder(DocIdReorderer.Order.URL, urls, Map.of());
+        String[] reordered = new String[urls.size()];
+        for (int docId = 0; docId < urls.size(); docId++) {
+            reordered[newDocIdByOld[docId]] = urls.get(docId);
+        }
+        assertEquals(List.of("http://a.com/a.html", "http://a.com/a/b.html", "http://a.com/z.html",
+                "http://a.com.au/a.html", "http://b.com/x.html"), Arrays.asList(reordered));
+    }
+
+    /**
+     * Two groups of documents with a vocabulary each, shuffled both by doc ID and by url.
+     */
+    @Test
+    void testBisectionGroupsDocumentsSharingTokens() {
+        int docCount = 64;
+        List<String> urls = IntStream.range(0, docCount).mapToObj(i -> "http://a.com/" + (1000 + i)).toList();
+        List<Boolean> even = new ArrayList<>(IntStream.range(0, docCount).mapToObj(i -> i % 2 == 0).toList());
+        Collections.shuffle(even, new Random(42));
+        Map<Token, Set<Integer>> tokenByDocs = new HashMap<>();
+        for (int docId = 0; docId < docCount; docId++) {
+            String group = even.get(docId) ? "even" : "odd";
+            for (int t = 0; t < 20; t++) {
+                tokenByDocs.computeIfAbsent(new Token(group + t), _ -> new HashSet<>()).add(docId);
+            }
+        }
+
+        int[] newDocIdByOld = DocIdReorderer.reorder(DocIdReorderer.Order.BISECTION, urls, tokenByDocs);
+        assertEquals(docCount, Arrays.stream(newDocIdByOld).distinct().count(), "Reordering should be a permutation");
+        int firstEven = even.indexOf(true);
+        for (int docId = 0; docId < docCount; docId++) {
+            assertEquals(even.get(docId) == newDocIdByOld[firstEven] < docCount / 2, newDocIdByOld[docId] < docCount / 2,
+                    "Each group should get one half of the doc IDs");
+        }
+        Map<Token, Set<Integer>> remapped = DocIdReorderer.remap(tokenByDocs, newDocIdByOld);
+        DocIdReorderer.Report report = DocIdReorderer.report(DocIdReorderer.Order.BISECTION, tokenByDocs, remapped);
+        assertEquals(docCount * 20, report.postingCount());
+        // gaps of 64 documents fit one varint byte in any order
+        assertTrue(report.bytesAfter() <= report.bytesBefore());
+        assertEquals(DocIdReorderer.compactBytes(remapped), report.bytesAfter());
+    }
+
+    /**
+     * Pairs of pages of a section share a token, but got doc IDs 128 apart: two bytes per gap.
+     */
+    @Test
+    void testReportShowsSmallerPostings() {
+        int docCount = 256;
+        List<String> urls = IntStream.range(0, docCount)
+                .mapToObj(docId -> "http://a.com/" + (1000 + docId % 128) + "/" + docId).toList();
+        Map<Token, Set<Integer>> tokenByDocs = new HashMap<>();
+        for (int k = 0; k < 128; k++) {
+            tokenByDocs.put(new Token("section" + k), Set.of(k, k + 128));
+        }
+
+        int[] newDocIdByOld = DocIdReorderer.reorder(DocIdReorderer.Order.URL, urls, tokenByDocs);
+        Map<Token, Set<Integer>> remapped = DocIdReorderer.remap(tokenByDocs, newDocIdByOld);
+        remapped.values().forEach(docIds -> {
+            int[] sorted = docIds.stream().mapToInt(Integer::intValue).sorted().toArray();
+            assertEquals(1, sorted[1] - sorted[0], "Pages of a section should be next to each other");
+        });
+        DocIdReorderer.Report report = DocIdReorderer.report(DocIdReorderer.Order.URL, tokenByDocs, remapped);
+        assertEquals(256, report.postingCount());
+        assertEquals(128 * 4, report.bytesBefore());
+        // count, first doc ID (two bytes past 127) and a gap of one
+        assertEquals(64 * 3 + 64 * 4, report.bytesAfter());
+        assertTrue(report.ratio() > 1);
+        assertTrue(report.bitsPerPostingAfter() < report.bitsPerPostingBefore());
+    }
+
+    @Test
+    void testReorderedSegmentFindsTheSameUrls() throws IOException {
+        UrlDocIdDictionary urlDict = new UrlDocIdDictionary();
+        List<String> urls = List.of("http://c.com/1", "http://a.com/2", "http://b.com/3", "http://a.com/1");
+        urls.forEach(url -> urlDict.addIfAbsent(new Url(url)));
+        Map<Token, Set<Integer>> tokenByDocs = new HashMap<>();
+        tokenByDocs.put(new Token("apple"), new HashSet<>(Set.of(1, 3)));
+        tokenByDocs.put(new Token("cherry"), new HashSet<>(Set.of(0)));
+        tokenByDocs.put(new Token("fruit"), new HashSet<>(Set.of(0, 1, 2, 3)));
+        Path segmentDir = Files.createTempDirectory("reordered").resolve("segment_000001");
+
+        int[] newDocIdByOld = IndexSegmentWriter.writeSegment(tokenByDocs, urlDict, segmentDir, true, "lowercase",
+                DocIdReorderer.Order.URL).orElseThrow();
+        assertArrayEquals(new int[]{3, 1, 2, 0}, newDocIdByOld);
+        SegmentReader segment = SegmentReader.open(segmentDir);
+        IndexSearcher searcher = new IndexSearcher(List.of(segment));
+        assertEquals(List.of("http://a.com/1", "http://a.com/2"), searcher.search("apple"));
+        assertEquals(List.of("http://c.com/1"), searcher.search("cherry"));
+        assertEquals(List.of("http://a.com/1", "http://a.com/2", "http://b.com/3", "http://c.com/1"),
+                searcher.search("fruit"));
+        assertTrue(IndexSegmentWriter.writeSegment(tokenByDocs, urlDict, segmentDir, true, "lowercase",
+                DocIdReorderer.Order.NONE).isEmpty());
+    }
+}
@@ -0,0 +1,138 @@
+package com.cypherlabs.io;
+
+import com.cypherlabs.crawler.Token;
+import com.cypherlabs.crawler.Url;
+import com.cypherlabs.storage.UrlDocIdDictionary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NearRealTimeIndexTest {
+
+    private NearRealTimeIndex index;
+
+    @BeforeEach
+    void setUp() {
+        // refreshes only when asked to, unless a test adds a million documents
+        index = NearRealTimeIndex.start(List.of(), "lowercase", new RefreshPolicy(Duration.ofHours(1), 1_000_000));
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.close();
+    }
+
+    private static Url url(int i) {
+        return new Url("http://a.com/" + i + ".html");
+    }
+
+    private static List<Token> tokens(String... keys) {
+        return Arrays.stream(keys).map(Token::new).toList();
+    }
+
+    @Test
+    void testDocumentsAreSearchableAfterRefresh() {
+        index.add(url(0), tokens("alpha", "apple", "apple"));
+        index.add(url(1), tokens("bravo", "apple"));
+        SearcherManager manager = index.getSearcherManager();
+        SearcherManager.Snapshot snapshot = manager.current();
+        assertTrue(snapshot.searcher().search("apple").isEmpty(), "Nothing is searchable before a refresh");
+
+        assertTrue(index.refresh());
+        assertFalse(index.refresh(), "Nothing new to publish");
+        snapshot = manager.current();
+        assertEquals(List.of(url(0).address(), url(1).address()), snapshot.searcher().search("apple"));
+        assertEquals(List.of(url(1).address()), snapshot.searcher().search("bravo"));
+        assertEquals(List.of(url(0).address(), url(1).address()), snapshot.searcher().search("a*"));
+    }
+
+    @Test
+    void testSnapshotIsPointInTime() {
+        index.add(url(0), tokens("alpha"));
+        index.refresh();
+        SearcherManager manager = index.getSearcherManager();
+        SearcherManager.Snapshot old = manager.current();
+
+        index.add(url(1), tokens("alpha"));
+        index.refresh();
+        assertEquals(List.of(url(0).address()), old.searcher().search("alpha"));
+        SearcherManager.Snapshot current = manager.current();
+        assertTrue(current.generation() > old.generation());
+        assertEquals(List.of(url(0).address(), url(1).address()), current.searcher().search("alpha"));
+    }
+
+    @Test
+    void testDeletedDocumentsOfBaseSegmentsAreHidden() throws IOException {
+        Path indexDir = Files.createTempDirectory("nrt");
+        UrlDocIdDictionary urlDict = new UrlDocIdDictionary();
+        urlDict.addIfAbsent(url(0));
+        urlDict.addIfAbsent(url(1));
+        IndexSegmentWriter.writeSegment(Map.of(new Token("alpha"), Set.of(0, 1), new Token("bravo"), Set.of(1)),
+                urlDict, indexDir.resolve("segment_000001"), true, "lowercase");
+        index.close();
+        index = NearRealTimeIndex.start(IndexSearcher.open(indexDir).getSegments(), "lowercase",
+                new RefreshPolicy(Duration.ofHours(1), 1_000_000));
+
+        // a new version of the second document replaces the one on disk
+        index.delete("segment_000001", 1);
+        index.add(url(1), tokens("alpha", "charlie"));
+        index.delete("segment_000002", 0);
+        assertTrue(index.refresh());
+        SearcherManager.Snapshot snapshot = index.getSearcherManager().current();
+        assertEquals(List.of(url(0).address(), url(1).address()), snapshot.searcher().search("alpha"));
+        assertTrue(snapshot.searcher().search("bravo").isEmpty(), "Replaced version should be hidden");
+        assertEquals(List.of(url(1).address()), snapshot.searcher().search("charlie"));
+
+        index.delete("segment_000001", 0);
+        assertTrue(index.refresh(), "A delete alone should be published");
+        snapshot = index.getSearcherManager().current();
+        assertEquals(List.of(url(1).address()), snapshot.searcher().search("alpha"));
+        assertEquals(List.of(url(0).address(), url(1).address()), IndexSearcher.open(indexDir).search("alpha"),
+                "Segment on disk should be left alone");
+    }
+
+    @Test
+    void testRefreshesOnceMaxDocsArePending() throws InterruptedException {
+        index.close();
+        index = NearRealTimeIndex.start(List.of(), "lowercase", new RefreshPolicy(Duration.ofHours(1), 10));
+        for (int i = 0; i < 10; i++) {
+            index.add(url(i), tokens("doc"));
+        }
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        int found = 0;
+        while (found < 10 && System.nanoTime() < deadline) {
+            SearcherManager.Snapshot snapshot = index.getSearcherManager().current();
+            found = snapshot.searcher().search("doc").size();
+            Thread.sleep(10);
+        }
+        assertEquals(10, found, "Documents should be refreshed without waiting for the interval");
+    }
+
+    @Test
+    void testSmallSegmentsAreMergedByTiers() {
+        int docCount = 200;
+        for (int i = 0; i < docCount; i++) {
+            index.add(url(i), tokens("doc", i % 2 == 0 ? "even" : "odd"));
+            index.refresh();
+        }
+        // 200 = 3 * 64 + 1 * 8 + 0 * 1: three level 2 segments, one of level 1
+        assertEquals(4, index.ramSegmentCount());
+        SearcherManager.Snapshot snapshot = index.getSearcherManager().current();
+        assertEquals(IntStream.range(0, docCount).mapToObj(i -> url(i).address()).toList(),
+                snapshot.searcher().search("doc"), "Merges should keep documents in order");
+        assertEquals(IntStream.range(0, docCount).filter(i -> i % 2 == 1).mapToObj(i -> url(i).address())
+                .toList(), snapshot.searcher().search("odd"));
+    }
+}
@@ -0,0 +1,146 @@
+package com.cypherlabs.io;
+
+import com.cypherlabs.crawler.Token;
+import com.cypherlabs.crawler.Url;
+import com.cypherlabs.storage.UrlDocIdDictionary;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SuggesterTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SuggesterTest.class);
+
+    /**
+     * Random tokens over a small alphabet, so that prefixes share many completions, with Zipfian weights.
+     */
+    private static SortedMap<String, Integer> vocabulary(int size, long seed) {
+        Random random = new Random(seed);
+        SortedMap<String, Integer> weightByToken = new TreeMap<>();
+        while (weightByToken.size() < size) {
+            StringBuilder token = new StringBuilder();
+            for (int length = 1 + random.nextInt(10); token.length() < length; ) {
+                token.append((char) ('a' + random.nextInt(6)));
+            }
+            weightByToken.put(token.toString(), 1 + 10_000 / (1 + random.nextInt(size)));
+        }
+        return weightByToken;
+    }
+
+    private static Suggester build(SortedMap<String, Integer> weightByToken) {
+        return Suggester.build(weightByToken.keySet().toArray(String[]::new),
+                weightByToken.values().stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static List<Suggester.Suggestion> bruteForce(SortedMap<String, Integer> weightByToken, String prefix,
+                                                         int k) {
+        return weightByToken.entrySet().stream()
+                .filter(e -> e.getKey().startsWith(prefix))
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(k)
+                .map(e -> new Suggester.Suggestion(e.getKey(), e.getValue()))
+                .toList();
+    }
+
+    @Test
+    void testBestFirstSearchFindsTheHeaviestCompletions() {
+        SortedMap<String, Integer> weightByToken = vocabulary(5_000, 42);
+        Suggester suggester = build(weightByToken);
+        for (String prefix : List.of("", "a", "b", "ab", "fed", "cafe", "aaaaaaaaaa", "g", "abcdefabcdefx")) {
+            for (int k : List.of(1, 5, 20)) {
+                assertEquals(bruteForce(weightByToken, prefix, k), suggester.suggest(prefix, k), prefix + " " + k);
+            }
+        }
+        assertTrue(suggester.suggest("a", 0).isEmpty());
+    }
+
+    @Test
+    void testEqualWeightsComeInLexicographicOrder() {
+        Suggester suggester = Suggester.build(new String[]{"crab", "craft", "crawl", "crawler", "crib"},
+                new int[]{2, 3, 3, 3, 9});
+        assertEquals(List.of(new Suggester.Suggestion("crib", 9), new Suggester.Suggestion("craft", 3),
+                        new Suggester.Suggestion("crawl", 3), new Suggester.Suggestion("crawler", 3)),
+                suggester.suggest("cr", 4));
+        assertEquals(List.of(new Suggester.Suggestion("crawl", 3), new Suggester.Suggestion("crawler", 3)),
+                suggester.suggest("crawl", 5));
+    }
+
+    @Test
+    void testSegmentSuggestersAreMappedAndMerged() throws IOException {
+        Path indexDir = Files.createTempDirectory("suggester");
+        List<Map<Token, Set<Integer>>> segments = List.of(
+                Map.of(new Token("crawl"), Set.of(0, 1, 2), new Token("crawler"), Set.of(0), new Token("index"), Set.of(1)),
+                Map.of(new Token("crawler"), Set.of(0, 1, 2, 3), new Token("craft"), Set.of(2)));
+        for (int i = 0; i < segments.size(); i++) {
+            UrlDocIdDictionary urlDict = new UrlDocIdDictionary();
+            for (int docId = 0; docId < 4; docId++) {
+                urlDict.addIfAbsent(new Url("http://a.com/" + i + "/" + docId + ".html"));
+            }
+            IndexSegmentWriter.writeSegment(segments.get(i), urlDict, indexDir.resolve("segment_00000" + (i + 1)),
+                    true, "lowercase");
+        }
+        IndexSearcher searcher = IndexSearcher.open(indexDir);
+        assertTrue(Files.exists(indexDir.resolve("segment_000001").resolve(Suggester.FILE_NAME)));
+        assertEquals(List.of(new Suggester.Suggestion("crawl", 3), new Suggester.Suggestion("crawler", 1)),
+                searcher.getSegments().getFirst().suggester().suggest("cra", 5));
+        assertEquals(List.of(new Suggester.Suggestion("crawler", 5), new Suggester.Suggestion("crawl", 3),
+                new Suggester.Suggestion("craft", 1)), searcher.suggest("CRA", 5));
+        assertTrue(searcher.suggest("x", 5).isEmpty());
+
+        IndexSearcher layered = new IndexSearcher(new IndexSearcher(searcher.getSegments().subList(0, 1)),
+                searcher.getSegments().subList(1, 2));
+        assertEquals(searcher.suggest("CRA", 5), layered.suggest("CRA", 5));
+        assertEquals(searcher.suggest("c", 1), layered.suggest("c", 1));
+    }
+
+    @Test
+    void testSmallSuggesterIsCombinedAtQueryTime() {
+        SortedMap<String, Integer> large = vocabulary(5_000, 42);
+        SortedMap<String, Integer> small = vocabulary(200, 3);
+        SortedMap<String, Integer> summed = new TreeMap<>(large);
+        small.forEach((token, weight) -> summed.merge(token, weight, Integer::sum));
+        Suggester largeSuggester = build(large);
+        Suggester smallSuggester = build(small);
+        for (String prefix : List.of("", "a", "b", "ab", "fed", "cafe", "g")) {
+            for (int k : List.of(1, 5, 20)) {
+                assertEquals(bruteForce(summed, prefix, k),
+                        Suggester.suggest(largeSuggester, smallSuggester, prefix, k), prefix + " " + k);
+            }
+        }
+        assertTrue(Suggester.suggest(largeSuggester, smallSuggester, "a", 0).isEmpty());
+    }
+
+    @Test
+    void testShortPrefixesAreAnsweredWithinAMillisecond() {
+        SortedMap<String, Integer> weightByToken = vocabulary(100_000, 7);
+        Suggester suggester = build(weightByToken);
+        List<String> prefixes = new ArrayList<>();
+        for (char c = 'a'; c <= 'f'; c++) {
+            prefixes.add(String.valueOf(c));
+            for (char d = 'a'; d <= 'f'; d++) {
+                prefixes.add("" + c + d);
+            }
+        }
+        // warm up, then measure
+        for (int i = 0; i < 2_000; i++) {
+            suggester.suggest(prefixes.get(i % prefixes.size()), 10);
+        }
+        int queries = 5_000;
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            assertEquals(10, suggester.suggest(prefixes.get(i % prefixes.size()), 10).size());
+        }
+        double micros = (System.nanoTime() - startNanos) / 1e3 / queries;
+        LOGGER.info("Suggested 10 completions of 1 and 2 letter prefixes among {} tokens ({} nodes, {} KB) in {} us " +
+                "on average", weightByToken.size(), suggester.nodeCount(), suggester.sizeInBytes() >> 10,
+                String.format("%.1f", micros));
+        assertTrue(micros < 1000, "Suggestions took " + micros + " us on average");
+    }
+}
@@ -0,0 +1,108 @@
+package com.cypherlabs.io;
+
+import com.cypherlabs.crawler.Token;
+import com.cypherlabs.crawler.Url;
+import com.cypherlabs.query.LevenshteinAutomaton;
+import com.cypherlabs.query.WildcardAutomaton;
+import com.cypherlabs.storage.UrlDocIdDictionary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TermExpansionTest {
+
+    private IndexSearcher searcher;
+    private SegmentReader segment;
+
+    private static String url(int docId) {
+        return "http://a.com/" + docId + ".html";
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        UrlDocIdDictionary urlDict = new UrlDocIdDictionary();
+        for (int docId = 0; docId < 6; docId++) {
+            urlDict.addIfAbsent(new Url(url(docId)));
+        }
+        Map<Token, Set<Integer>> tokenByDocs = new HashMap<>();
+        tokenByDocs.put(new Token("crawl"), Set.of(0, 1, 2, 3));
+        tokenByDocs.put(new Token("crawler"), Set.of(1));
+        tokenByDocs.put(new Token("crawling"), Set.of(2, 4));
+        tokenByDocs.put(new Token("craft"), Set.of(5));
+        tokenByDocs.put(new Token("brawl"), Set.of(3));
+        tokenByDocs.put(new Token("index"), Set.of(0));
+        Path indexDir = Files.createTempDirectory("term-expansion");
+        IndexSegmentWriter.writeSegment(tokenByDocs, urlDict, indexDir.resolve("segment_000001"), true, "lowercase");
+        searcher = IndexSearcher.open(indexDir);
+        segment = searcher.getSegments().getFirst();
+    }
+
+    @Test
+    void testPrefixAndWildcardQueries() {
+        assertEquals(List.of(url(0), url(1), url(2), url(3), url(4)), searcher.search("crawl*"));
+        assertEquals(List.of(url(0), url(1), url(2), url(3), url(4), url(5)), searcher.search("CRA*"));
+        assertEquals(List.of(url(0), url(1), url(2), url(3)), searcher.search("?rawl"));
+        assertEquals(List.of(url(2), url(4)), searcher.search("c*ing"));
+        assertTrue(searcher.search("x*").isEmpty());
+    }
+
+    @Test
+    void testFuzzyQueries() {
+        assertEquals(List.of(url(0), url(1), url(2), url(3)), searcher.search("crawl~1"), "crawl and brawl");
+        assertEquals(List.of(url(2), url(4)), searcher.search("crawlinn~1"));
+        assertEquals(List.of(url(0), url(1), url(2), url(3)), searcher.search("crawlr~"), "crawl, crawler, brawl");
+        assertEquals(List.of(url(0)), searcher.search("indx~1"));
+    }
+
+    @Test
+    void testExpansionKeepsMostFrequentTokens() {
+        List<String> tokens = segment.expand(new WildcardAutomaton("*"), 2).stream()
+                .map(TrieDictionary.TermMatch::token).toList();
+        assertEquals(List.of("crawl", "crawling"), tokens);
+
+        IndexSearcher capped = new IndexSearcher(searcher.getSegments(), 1);
+        assertEquals(List.of(url(0), url(1), url(2), url(3)), capped.search("crawl*"));
+        assertEquals(List.of(url(0), url(1), url(2), url(3)),
+                Arrays.stream(segment.livePostings(new LevenshteinAutomaton("crawl", 1), 1)).mapToObj(
+                        TermExpansionTest::url).toList());
+    }
+
+    @Test
+    void testTrieDictionaryVisitsTokensInOrder() throws IOException {
+        TrieDictionary trie = TrieDictionary.read(segment.getSegmentDir());
+        List<String> tokens = new ArrayList<>();
+        trie.intersect(new WildcardAutomaton("*"), match -> tokens.add(match.token()));
+        assertEquals(segment.tokens(), tokens);
+    }
+
+    @Test
+    void testExpansionAndDecodingGiveUpOnceStopped() throws IOException {
+        UrlDocIdDictionary urlDict = new UrlDocIdDictionary();
+        Map<Token, Set<Integer>> tokenByDocs = new HashMap<>();
+        Set<Integer> allDocs = new HashSet<>();
+        for (int docId = 0; docId < 5000; docId++) {
+            urlDict.addIfAbsent(new Url(url(docId)));
+            tokenByDocs.put(new Token(String.format("t%04d", docId)), Set.of(docId));
+            allDocs.add(docId);
+        }
+        tokenByDocs.put(new Token("common"), allDocs);
+        Path segmentDir = Files.createTempDirectory("term-expansion").resolve("segment_000001");
+        IndexSegmentWriter.writeSegment(tokenByDocs, urlDict, segmentDir, true, "lowercase");
+        SegmentReader large = SegmentReader.open(segmentDir);
+
+        assertEquals(5000, large.livePostings("common").length);
+        assertEquals(1023, large.livePostings("common", () -> true).length, "Stopped after the first check");
+        assertEquals(5000, large.livePostings(new WildcardAutomaton("t*"), 10_000).length);
+        assertTrue(large.livePostings(new WildcardAutomaton("t*"), 10_000, () -> true).length < 1024);
+        List<String> visited = new ArrayList<>();
+        assertFalse(TrieDictionary.read(segmentDir).intersect(new WildcardAutomaton("*"),
+                match -> visited.add(match.token()), () -> true));
+        assertTrue(visited.size() < 1024);
+    }
+}
@@ -0,0 +1,81 @@
+package com.cypherlabs.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TermAutomatonTest {
+
+    private static <S> boolean accepts(TermAutomaton<S> automaton, String term) {
+        S state = automaton.start();
+        for (int i = 0; i < term.length() && state != null; i++) {
+            state = automaton.step(state, term.charAt(i));
+        }
+        return state != null && automaton.isAccepting(state);
+    }
+
+    private static int editDistance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                } else {
+                    d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1),
+                            d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1));
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    private static String randomTerm(Random random) {
+        StringBuilder term = new StringBuilder();
+        int length = random.nextInt(7);
+        for (int i = 0; i < length; i++) {
+            term.append((char) ('a' + random.nextInt(3)));
+        }
+        return term.toString();
+    }
+
+    @Test
+    void testLevenshteinMatchesEditDistance() {
+        Random random = new Random(5);
+        for (int round = 0; round < 5000; round++) {
+            String target = randomTerm(random);
+            String term = randomTerm(random);
+            int maxEdits = random.nextInt(3);
+            LevenshteinAutomaton automaton = new LevenshteinAutomaton(target, maxEdits);
+            assertEquals(editDistance(target, term) <= maxEdits, accepts(automaton, term), target + " ~ " + term);
+        }
+        assertEquals(1, new LevenshteinAutomaton("crawler", 2).distance("crawlr"));
+        assertThrows(IllegalArgumentException.class, () -> new LevenshteinAutomaton("crawler", 3));
+    }
+
+    @Test
+    void testLevenshteinLeavesBranchesOutOfReach() {
+        LevenshteinAutomaton automaton = new LevenshteinAutomaton("abc", 1);
+        int[] state = automaton.step(automaton.start(), 'x');
+        assertNotNull(state, "One substitution is still within reach");
+        assertNull(automaton.step(state, 'y'), "Two edits in the first two characters are out of reach");
+    }
+
+    @Test
+    void testWildcardMatchesRegex() {
+        Random random = new Random(3);
+        String[] patterns = {"a*", "*", "a?c", "*b*", "a*b?c*", "??", "ab", "", "**a"};
+        for (String pattern : patterns) {
+            Pattern regex = Pattern.compile(pattern.replace("?", ".").replace("*", ".*"));
+            WildcardAutomaton automaton = new WildcardAutomaton(pattern);
+            for (int round = 0; round < 500; round++) {
+                String term = randomTerm(random);
+                assertEquals(regex.matcher(term).matches(), accepts(automaton, term), pattern + " ~ " + term);
+            }
+        }
+        assertNull(new WildcardAutomaton("ab*").step(new WildcardAutomaton("ab*").start(), 'b'),
+                "A prefix query should leave every branch not starting with its prefix");
+    }
+}
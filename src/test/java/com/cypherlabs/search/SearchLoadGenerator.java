@@ -0,0 +1,131 @@
+package com.cypherlabs.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends queries to a {@link SearchServer} from concurrent closed-loop clients, each sending its next query
+ * as soon as the previous one is answered, and reports throughput and latency percentiles.
+ *
+ * Configure through env variables SEARCH_LOAD_URL (default http://localhost:8090), SEARCH_LOAD_CLIENTS
+ * (default 32), SEARCH_LOAD_SECONDS (default 30) and SEARCH_LOAD_QUERIES (comma separated). Query
+ * throughput scaling is measured by repeating the run against servers with different SEARCH_PARALLELISM,
+ * -XX:ActiveProcessorCount and segment counts.
+ */
+public class SearchLoadGenerator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchLoadGenerator.class);
+
+    public record LoadReport(long requests, long rejected, long errors, double elapsedSeconds, double queriesPerSecond,
+                             double p50Millis, double p90Millis, double p99Millis, double maxMillis) {
+
+        @Override
+        public String toString() {
+            return String.format("requests=%d rejected=%d errors=%d elapsed=%.2fs qps=%.1f p50=%.2fms p90=%.2fms " +
+                            "p99=%.2fms max=%.2fms", requests, rejected, errors, elapsedSeconds, queriesPerSecond,
+                    p50Millis, p90Millis, p99Millis, maxMillis);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        URI server = URI.create(env("SEARCH_LOAD_URL", "http://localhost:8090"));
+        List<String> queries = Arrays.stream(env("SEARCH_LOAD_QUERIES", "crawler,search,index,craw*,serch~1")
+                .split(",")).map(String::trim).filter(q -> !q.isEmpty()).toList();
+        LoadReport report = run(server, queries, Integer.parseInt(env("SEARCH_LOAD_CLIENTS", "32")),
+                Duration.ofSeconds(Long.parseLong(env("SEARCH_LOAD_SECONDS", "30"))));
+        LOGGER.info("Search load report: {}", report);
+    }
+
+    /**
+     * @param server Base url of the search server
+     * @param queries Queries sent in turn by every client, each client starting at another one
+     * @param clients Number of concurrent clients, each on a virtual thread
+     * @return Measurements of the answered queries; rejected (503) and failed ones are counted apart
+     */
+    public static LoadReport run(URI server, List<String> queries, int clients, Duration duration) throws Exception {
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + duration.toNanos();
+        List<long[]> latenciesByClient;
+        try (HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int client = 0; client < clients; client++) {
+                int firstQuery = client;
+                futures.add(executor.submit(() -> runClient(http, server, queries, firstQuery, endNanos,
+                        rejected, errors)));
+            }
+            latenciesByClient = new ArrayList<>();
+            for (Future<long[]> future : futures) {
+                latenciesByClient.add(future.get());
+            }
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long[] latencies = latenciesByClient.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new LoadReport(latencies.length, rejected.get(), errors.get(), seconds, latencies.length / seconds,
+                percentileMillis(latencies, 0.50), percentileMillis(latencies, 0.90),
+                percentileMillis(latencies, 0.99), percentileMillis(latencies, 1.0));
+    }
+
+    private static long[] runClient(HttpClient http, URI server, List<String> queries, int firstQuery, long endNanos,
+                                    AtomicLong rejected, AtomicLong errors) throws InterruptedException {
+        long[] latencies = new long[1024];
+        int count = 0;
+        for (int i = firstQuery; System.nanoTime() - endNanos < 0; i++) {
+            String query = queries.get(i % queries.size());
+            HttpRequest request = HttpRequest.newBuilder(server.resolve("/search?q="
+                    + URLEncoder.encode(query, StandardCharsets.UTF_8))).GET().build();
+            long sentNanos = System.nanoTime();
+            try {
+                HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 503) {
+                    rejected.incrementAndGet();
+                } else if (response.statusCode() != 200) {
+                    errors.incrementAndGet();
+                } else {
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = System.nanoTime() - sentNanos;
+                }
+            } catch (IOException ioe) {
+                errors.incrementAndGet();
+            }
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    /**
+     * @param sorted Latencies in nanoseconds, sorted
+     * @return Nearest rank percentile, in milliseconds
+     */
+    static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    private static String env(String name, String defaultValue) {
+        return Optional.ofNullable(System.getenv(name)).orElse(defaultValue);
+    }
+}
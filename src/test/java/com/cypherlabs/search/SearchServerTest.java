@@ -0,0 +1,213 @@
+package com.cypherlabs.search;
+
+import com.cypherlabs.crawler.Token;
+import com.cypherlabs.crawler.Url;
+import com.cypherlabs.io.IndexSearcher;
+import com.cypherlabs.io.IndexSegmentWriter;
+import com.cypherlabs.io.SearcherManager;
+import com.cypherlabs.io.StaticScoreUtils;
+import com.cypherlabs.storage.UrlDocIdDictionary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchServerTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchServerTest.class);
+
+    private static final int SEGMENTS = 4;
+    private static final int DOCS_PER_SEGMENT = 50;
+
+    private IndexSearcher searcher;
+
+    /**
+     * Segments of documents with distinct static scores, every document holding "crawl" and one in two
+     * "index".
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        Path indexDir = Files.createTempDirectory("search-server");
+        Random random = new Random(42);
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            UrlDocIdDictionary urlDict = new UrlDocIdDictionary();
+            Set<Integer> all = new HashSet<>();
+            Set<Integer> even = new HashSet<>();
+            double[] scores = new double[DOCS_PER_SEGMENT];
+            for (int docId = 0; docId < DOCS_PER_SEGMENT; docId++) {
+                urlDict.addIfAbsent(new Url("http://a.com/" + segment + "/" + docId + ".html"));
+                all.add(docId);
+                if (docId % 2 == 0) {
+                    even.add(docId);
+                }
+                scores[docId] = random.nextDouble();
+            }
+            Map<Token, Set<Integer>> tokenByDocs = Map.of(new Token("crawl"), all, new Token("index"), even);
+            Path segmentDir = indexDir.resolve(String.format("segment_%06d", segment + 1));
+            IndexSegmentWriter.writeSegment(tokenByDocs, urlDict, segmentDir, true, "lowercase");
+            StaticScoreUtils.writeStaticScores(scores, segmentDir);
+        }
+        searcher = IndexSearcher.open(indexDir);
+    }
+
+    @Test
+    void testTopKOfParallelSearchMatchesRankedSearch() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (String query : List.of("crawl", "index", "ind*", "crawk~1")) {
+                List<IndexSearcher.Hit> ranked = searcher.searchRanked(query);
+                assertEquals(ranked.subList(0, 7), searcher.searchTopK(query, 7, pool, Duration.ofSeconds(10)), query);
+                assertEquals(ranked, searcher.searchTopK(query, 1000, pool, Duration.ofSeconds(10)), query);
+            }
+            assertTrue(searcher.searchTopK("missing", 5, pool, Duration.ofSeconds(10)).isEmpty());
+            assertThrows(TimeoutException.class, () -> searcher.searchTopK("crawl", 5, pool, Duration.ZERO));
+            assertThrows(IllegalArgumentException.class, () -> searcher.searchTopK("crawler~3", 5, pool,
+                    Duration.ofSeconds(10)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testTopKTimesOutWhileThePoolIsBusy() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            pool.submit(() -> awaitQuietly(release));
+            long startNanos = System.nanoTime();
+            assertThrows(TimeoutException.class, () -> searcher.searchTopK("crawl", 5, pool, Duration.ofMillis(200)));
+            long waitedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+            assertTrue(waitedMillis >= 200 && waitedMillis < 5_000, "Waited " + waitedMillis + " ms");
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testServerAnswersQueriesAndTimesOut() throws Exception {
+        SearcherManager manager = new SearcherManager(searcher.getSegments());
+        SearchServerConfig config = new SearchServerConfig(0, 2, 4, Duration.ofMillis(100), Duration.ofSeconds(10), 100);
+        try (SearchServer server = new SearchServer(manager, config);
+             HttpClient http = HttpClient.newHttpClient()) {
+            server.start();
+            URI base = URI.create("http://localhost:" + server.getPort());
+
+            HttpResponse<String> response = get(http, base.resolve("/search?q=INDEX&k=3"));
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().startsWith("{\"query\":\"INDEX\",\"hits\":[{\"url\":\"http://a.com/"),
+                    response.body());
+            List<IndexSearcher.Hit> expected = searcher.searchRanked("index").subList(0, 3);
+            for (IndexSearcher.Hit hit : expected) {
+                assertTrue(response.body().contains("\"url\":\"" + hit.url() + "\""), response.body());
+            }
+            assertEquals(400, get(http, base.resolve("/search?k=3")).statusCode());
+            assertEquals(400, get(http, base.resolve("/search?q=crawl&k=1000")).statusCode());
+            assertEquals(400, get(http, base.resolve("/search?q=crawler~3")).statusCode());
+            assertEquals(400, get(http, base.resolve("/search?q=" + "a".repeat(64) + "*")).statusCode());
+            assertEquals(1, server.getServed());
+
+            response = get(http, base.resolve("/suggest?q=cr&k=5"));
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().startsWith("{\"prefix\":\"cr\",\"suggestions\":[{\"token\":\"crawl\",\"weight\":"
+                                                  + SEGMENTS * DOCS_PER_SEGMENT + "}]"), response.body());
+        }
+
+        SearchServerConfig noTime = new SearchServerConfig(0, 2, 4, Duration.ofMillis(100), Duration.ZERO, 100);
+        try (SearchServer server = new SearchServer(manager, noTime);
+             HttpClient http = HttpClient.newHttpClient()) {
+            server.start();
+            assertEquals(504, get(http, URI.create("http://localhost:" + server.getPort() + "/search?q=crawl"))
+                    .statusCode());
+            assertEquals(1, server.getTimedOut());
+        }
+    }
+
+    @Test
+    void testServerRejectsWhenSaturatedAndAbandonsSlowQueries() throws Exception {
+        // the only search thread is held, so an admitted query cannot make progress
+        ForkJoinPool pool = new ForkJoinPool(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pool.submit(() -> awaitQuietly(release));
+        SearchServerConfig config = new SearchServerConfig(0, 1, 1, Duration.ofMillis(50), Duration.ofMillis(500), 100);
+        try (SearchServer server = new SearchServer(new SearcherManager(searcher.getSegments()), config, pool);
+             HttpClient http = HttpClient.newHttpClient()) {
+            server.start();
+            URI uri = URI.create("http://localhost:" + server.getPort() + "/search?q=crawl");
+            try {
+                CompletableFuture<HttpResponse<String>> slow = http.sendAsync(HttpRequest.newBuilder(uri).GET().build(),
+                        HttpResponse.BodyHandlers.ofString());
+                // admitted once its search is queued on the pool
+                while (pool.getQueuedSubmissionCount() == 0 && !slow.isDone()) {
+                    Thread.sleep(5);
+                }
+                HttpResponse<String> rejected = get(http, uri);
+                assertEquals(503, rejected.statusCode());
+                assertEquals("1", rejected.headers().firstValue("Retry-After").orElseThrow());
+                assertEquals(504, slow.get(5, TimeUnit.SECONDS).statusCode());
+            } finally {
+                release.countDown();
+            }
+            assertEquals(1, server.getRejected());
+            assertEquals(1, server.getTimedOut());
+            assertEquals(200, get(http, uri).statusCode(), "Pool released, queries should be answered again");
+        }
+    }
+
+    @Test
+    void testLoadGeneratorReportsThroughputAndPercentiles() throws Exception {
+        SearchServerConfig config = new SearchServerConfig(0, 2, 8, Duration.ofSeconds(1), Duration.ofSeconds(10), 100);
+        try (SearchServer server = new SearchServer(new SearcherManager(searcher.getSegments()), config)) {
+            server.start();
+            SearchLoadGenerator.LoadReport report = SearchLoadGenerator.run(
+                    URI.create("http://localhost:" + server.getPort()), List.of("crawl", "index", "craw*"), 4,
+                    Duration.ofMillis(500));
+            LOGGER.info("Search load report: {}", report);
+
+            assertTrue(report.requests() > 0, "Queries should have been answered");
+            assertEquals(0, report.errors());
+            assertEquals(report.requests() + report.rejected(), server.getServed() + server.getRejected());
+            assertTrue(report.p50Millis() <= report.p90Millis() && report.p90Millis() <= report.p99Millis()
+                       && report.p99Millis() <= report.maxMillis(), report.toString());
+        }
+    }
+
+    @Test
+    void testPercentiles() {
+        long[] sorted = new long[100];
+        Arrays.setAll(sorted, i -> (i + 1) * 1_000_000L);
+        assertEquals(50.0, SearchLoadGenerator.percentileMillis(sorted, 0.50));
+        assertEquals(99.0, SearchLoadGenerator.percentileMillis(sorted, 0.99));
+        assertEquals(100.0, SearchLoadGenerator.percentileMillis(sorted, 1.0));
+        assertEquals(0.0, SearchLoadGenerator.percentileMillis(new long[0], 0.5));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static HttpResponse<String> get(HttpClient http, URI uri) throws IOException, InterruptedException {
+        return http.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
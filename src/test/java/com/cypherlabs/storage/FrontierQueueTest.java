@@ -0,0 +1,111 @@
+package com.cypherlabs.storage;
+
+import com.cypherlabs.crawler.CrawlPriority;
+import com.cypherlabs.crawler.Url;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrontierQueueTest {
+
+    private static Url url(int i) {
+        return new Url("http://a.com/page-" + i + ".html");
+    }
+
+    @Test
+    void testHighestPriorityFirstThenOldestFirst() {
+        FrontierQueue queue = new FrontierQueue();
+        queue.offer(url(1), 1, Math::max);
+        queue.offer(url(2), 5, Math::max);
+        queue.offer(url(3), 1, Math::max);
+        queue.offer(url(4), 3, Math::max);
+
+        assertEquals(List.of(url(2), url(4), url(1), url(3)), drain(queue));
+        assertTrue(queue.poll().isEmpty());
+    }
+
+    @Test
+    void testOfferingAQueuedUrlMergesItsPriority() {
+        FrontierQueue queue = new FrontierQueue();
+        CrawlPriority opic = CrawlPriority.Standard.OPIC;
+        assertTrue(queue.offer(url(1), 0.5, opic::merge));
+        assertTrue(queue.offer(url(2), 0.4, opic::merge));
+        assertFalse(queue.offer(url(2), 0.3, opic::merge), "A queued url should not be queued twice");
+
+        assertEquals(2, queue.size());
+        assertEquals(0.7, queue.priorityOf(url(2)).orElseThrow(), 1e-9);
+        assertEquals(List.of(url(2), url(1)), drain(queue));
+        assertTrue(queue.priorityOf(url(2)).isEmpty());
+    }
+
+    /**
+     * Entry of the reference queue, ordered the way urls are polled.
+     */
+    private record Queued(Url url, double priority, long sequence) implements Comparable<Queued> {
+        @Override
+        public int compareTo(Queued other) {
+            int byPriority = Double.compare(other.priority, priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    @Test
+    void testMatchesReferenceQueueUnderRandomOperations() {
+        // enough urls to grow every buffer and to compact the arena as urls are polled
+        FrontierQueue queue = new FrontierQueue();
+        NavigableSet<Queued> reference = new TreeSet<>();
+        Map<Url, Queued> queuedByUrl = new HashMap<>();
+        long sequence = 0;
+        Random random = new Random(11);
+        for (int round = 0; round < 200_000; round++) {
+            if (random.nextInt(3) > 0) {
+                Url url = url(random.nextInt(50_000));
+                double priority = random.nextInt(100);
+                boolean added = queue.offer(url, priority, Double::sum);
+                Queued queued = queuedByUrl.get(url);
+                assertEquals(queued == null, added);
+                if (queued == null) {
+                    queued = new Queued(url, priority, sequence++);
+                } else {
+                    reference.remove(queued);
+                    queued = new Queued(url, queued.priority() + priority, queued.sequence());
+                }
+                reference.add(queued);
+                queuedByUrl.put(url, queued);
+            } else if (!reference.isEmpty()) {
+                Queued expected = reference.pollFirst();
+                queuedByUrl.remove(expected.url());
+                FrontierQueue.Entry entry = queue.poll().orElseThrow();
+                assertEquals(expected.url(), entry.url());
+                assertEquals(expected.priority(), entry.priority());
+            }
+            if (round % 10_000 == 0) {
+                assertEquals(reference.size(), queue.size());
+            }
+        }
+        for (Queued expected : reference) {
+            assertEquals(expected.url(), queue.poll().orElseThrow().url());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void testPriorities() {
+        assertEquals(-2, CrawlPriority.Standard.DEPTH.link(CrawlPriority.Standard.DEPTH.link(0, 3), 7));
+        assertEquals(-1, CrawlPriority.Standard.DEPTH.merge(-3, -1));
+        assertEquals(0.25, CrawlPriority.Standard.OPIC.link(1, 4));
+        assertEquals(CrawlPriority.Standard.INLINKS, CrawlPriority.fromName("InLinks"));
+        assertThrows(IllegalArgumentException.class, () -> CrawlPriority.fromName("random"));
+    }
+
+    private static List<Url> drain(FrontierQueue queue) {
+        List<Url> urls = new ArrayList<>();
+        Optional<FrontierQueue.Entry> entry;
+        while ((entry = queue.poll()).isPresent()) {
+            urls.add(entry.get().url());
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,46 @@
+package com.cypherlabs.storage;
+
+import com.cypherlabs.crawler.Url;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NearDuplicateIndexTest {
+
+    private static final Url ORIGINAL = new Url("http://a.com/page");
+    private static final Url MIRROR = new Url("http://mirror.a.com/page");
+
+    @Test
+    void testFindsFingerprintsWithinMaxDistance() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        long fingerprint = 0x0123456789ABCDEFL;
+        assertTrue(index.findOrAdd(fingerprint, ORIGINAL).isEmpty(), "First document is an original");
+
+        // flip one bit in three different bands
+        long nearDuplicate = fingerprint ^ (1L << 2) ^ (1L << 20) ^ (1L << 40);
+        assertEquals(Optional.of(ORIGINAL), index.findOrAdd(nearDuplicate, MIRROR));
+        // flip three bits in the same band
+        assertEquals(Optional.of(ORIGINAL), index.find(fingerprint ^ 0b111L));
+    }
+
+    @Test
+    void testIgnoresFingerprintsBeyondMaxDistance() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        long fingerprint = 0x0123456789ABCDEFL;
+        index.findOrAdd(fingerprint, ORIGINAL);
+
+        long distinct = fingerprint ^ (1L << 1) ^ (1L << 17) ^ (1L << 33) ^ (1L << 49);
+        assertTrue(index.findOrAdd(distinct, MIRROR).isEmpty(), "Four bits apart is not a near-duplicate");
+        assertEquals(Optional.of(MIRROR), index.find(distinct), "Distinct document should have been indexed");
+    }
+
+    @Test
+    void testZeroDistanceMatchesExactlyOnly() {
+        NearDuplicateIndex index = new NearDuplicateIndex(0);
+        index.findOrAdd(42L, ORIGINAL);
+        assertEquals(Optional.of(ORIGINAL), index.find(42L));
+        assertTrue(index.find(43L).isEmpty());
+    }
+}
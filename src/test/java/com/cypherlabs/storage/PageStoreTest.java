@@ -0,0 +1,92 @@
+package com.cypherlabs.storage;
+
+import com.cypherlabs.crawler.Url;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PageStoreTest {
+
+    private static byte[] page(int i) {
+        return ("<html><body><p>page " + i + "</p>" + "<div class=\"nav\">home about contact</div>".repeat(20)
+                + "</body></html>").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Url url(int i) {
+        return new Url("http://a.com/" + i + ".html");
+    }
+
+    @Test
+    void testPagesAreReadBackAcrossBlocks() throws IOException {
+        Path storeDir = Files.createTempDirectory("page-store");
+        try (PageStore store = new PageStore(storeDir, 4 * 1024)) {
+            for (int i = 0; i < 100; i++) {
+                store.append(url(i), page(i));
+            }
+        }
+
+        try (PageStoreReader reader = PageStoreReader.open(storeDir)) {
+            assertEquals(100, reader.size());
+            assertTrue(reader.blockOffsets().size() > 1, "Pages should span several blocks");
+            for (int i = 0; i < 100; i++) {
+                assertArrayEquals(page(i), reader.read(url(i)).orElseThrow());
+            }
+            assertEquals(Optional.empty(), reader.read(url(100)));
+
+            Map<Url, byte[]> pageByUrl = new HashMap<>();
+            for (long blockOffset : reader.blockOffsets()) {
+                reader.readPages(blockOffset).forEach(p -> pageByUrl.put(p.url(), p.body()));
+            }
+            assertEquals(100, pageByUrl.size());
+            assertArrayEquals(page(42), pageByUrl.get(url(42)));
+        }
+
+        long uncompressed = 0;
+        for (int i = 0; i < 100; i++) {
+            uncompressed += page(i).length;
+        }
+        assertTrue(Files.size(storeDir.resolve(PageStore.DATA_FILE_NAME)) < uncompressed / 4,
+                "Repetitive markup should compress well");
+    }
+
+    @Test
+    void testReopenedStoreAppendsAndLastVersionWins() throws IOException {
+        Path storeDir = Files.createTempDirectory("page-store");
+        try (PageStore store = new PageStore(storeDir)) {
+            store.append(url(0), page(0));
+            store.append(url(1), page(1));
+        }
+        byte[] changed = "<html><body>changed</body></html>".getBytes(StandardCharsets.UTF_8);
+        try (PageStore store = new PageStore(storeDir)) {
+            store.append(url(1), changed);
+        }
+
+        try (PageStoreReader reader = PageStoreReader.open(storeDir)) {
+            assertEquals(2, reader.size());
+            List<PageStoreReader.StoredPage> pages = reader.blockOffsets().stream()
+                    .flatMap(offset -> {
+                        try {
+                            return reader.readPages(offset).stream();
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    })
+                    .toList();
+            assertEquals(2, pages.size());
+            assertArrayEquals(page(0), pages.get(0).body());
+            assertEquals(url(1), pages.get(1).url());
+            assertArrayEquals(changed, pages.get(1).body(), "Last stored version of a url should win");
+            assertArrayEquals(page(0), reader.read(url(0)).orElseThrow());
+            assertArrayEquals(changed, reader.read(url(1)).orElseThrow());
+        }
+    }
+}
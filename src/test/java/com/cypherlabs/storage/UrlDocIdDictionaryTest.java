@@ -0,0 +1,86 @@
+package com.cypherlabs.storage;
+
+import com.cypherlabs.crawler.Url;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UrlDocIdDictionaryTest {
+
+    private static Url url(int i) {
+        return new Url("http://a.com/page-" + i + ".html");
+    }
+
+    @Test
+    void testConcurrentAddsAssignDenseUniqueDocIds() throws Exception {
+        // a tiny first table, so that tables are added while threads insert
+        UrlDocIdDictionary dict = new UrlDocIdDictionary(16);
+        int urlCount = 50_000;
+        int threads = 8;
+        List<Map<Url, Integer>> seenByThread = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<Map<Url, Integer>>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                futures.add(executor.submit(() -> {
+                    // every thread adds every url, in its own order, so threads race on the same urls
+                    List<Integer> order = new ArrayList<>();
+                    for (int i = 0; i < urlCount; i++) {
+                        order.add(i);
+                    }
+                    Collections.shuffle(order, new Random(seed));
+                    Map<Url, Integer> seen = new HashMap<>();
+                    for (int i : order) {
+                        seen.put(url(i), dict.addIfAbsent(url(i)));
+                    }
+                    return seen;
+                }));
+            }
+            for (Future<Map<Url, Integer>> future : futures) {
+                seenByThread.add(future.get());
+            }
+        }
+
+        assertEquals(urlCount, dict.size());
+        Set<Integer> docIds = new HashSet<>();
+        for (int i = 0; i < urlCount; i++) {
+            int docId = dict.getDocId(url(i)).orElseThrow();
+            for (Map<Url, Integer> seen : seenByThread) {
+                assertEquals(docId, seen.get(url(i)), "Every thread should get the same doc ID for a url");
+            }
+            assertEquals(url(i), dict.getUrl(docId).orElseThrow());
+            docIds.add(docId);
+        }
+        assertEquals(urlCount, docIds.size());
+        assertEquals(0, Collections.min(docIds));
+        assertEquals(urlCount - 1, Collections.max(docIds));
+        assertTrue(dict.getDocId(url(urlCount)).isEmpty());
+        assertTrue(dict.getUrl(urlCount).isEmpty());
+    }
+
+    @Test
+    void testRecordsAreWrittenAsWriteUtf() throws IOException {
+        UrlDocIdDictionary dict = new UrlDocIdDictionary();
+        List<Url> urls = List.of(new Url("http://a.com/"), new Url("http://a.com/café?q=€"),
+                new Url("http://a.com/nul\u0000"), new Url("http://a.com/" + "x".repeat(5000)));
+        urls.forEach(dict::addIfAbsent);
+        assertEquals(1, dict.addIfAbsent(urls.get(1)));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        DataOutputStream expectedOut = new DataOutputStream(expected);
+        for (Url url : urls) {
+            expectedOut.writeUTF(url.address());
+        }
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        dict.writeRecords(new DataOutputStream(actual));
+
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        assertEquals(urls, dict.getAllUrlsInOrder());
+    }
+}